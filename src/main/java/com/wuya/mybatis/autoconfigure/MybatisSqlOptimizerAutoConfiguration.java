@@ -1,7 +1,9 @@
 package com.wuya.mybatis.autoconfigure;
 
+import com.wuya.mybatis.cache.AnalysisStore;
 import com.wuya.mybatis.cache.CacheFactory;
 import com.wuya.mybatis.cache.CacheProperties;
+import com.wuya.mybatis.cache.JdbcAnalysisStore;
 import com.wuya.mybatis.optimizer.SqlAnalysisInterceptor;
 import com.wuya.mybatis.optimizer.SqlAnalysisReporter;
 import com.wuya.mybatis.optimizer.SqlOptimizationAdvice;
@@ -12,15 +14,18 @@ import com.wuya.mybatis.optimizer.analyzer.MysqlExplainResultAnalyzer;
 import com.wuya.mybatis.optimizer.analyzer.OracleExplainResultAnalyzer;
 import com.wuya.mybatis.optimizer.analyzer.PostgreExplainResultAnalyzer;
 import com.wuya.mybatis.optimizer.report.DefaultAnalysisReporter;
+import com.wuya.mybatis.optimizer.stats.SqlExecutionStatsRegistry;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.boot.autoconfigure.MybatisAutoConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -28,6 +33,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.sql.DataSource;
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -64,6 +70,8 @@ public class MybatisSqlOptimizerAutoConfiguration {
      * @param analyzers 解释结果分析器列表
      * @param adviceGenerators SQL优化建议生成器列表
      * @param reporters SQL分析报告器列表
+     * @param cacheFactory 缓存工厂
+     * @param statsRegistry 语句执行统计注册表，未启用统计时不存在
      * @return SQL分析拦截器实例
      */
     @Bean
@@ -73,8 +81,22 @@ public class MybatisSqlOptimizerAutoConfiguration {
             List<ExplainResultAnalyzer> analyzers,
             List<SqlOptimizationAdvice> adviceGenerators,
             List<SqlAnalysisReporter> reporters,
-            CacheFactory cacheFactory) {
-        return new SqlAnalysisInterceptor(properties, analyzers, adviceGenerators, reporters,cacheFactory);
+            CacheFactory cacheFactory,
+            ObjectProvider<SqlExecutionStatsRegistry> statsRegistry) {
+        return new SqlAnalysisInterceptor(properties, analyzers, adviceGenerators, reporters, cacheFactory,
+                statsRegistry.getIfAvailable());
+    }
+
+    /**
+     * 注册语句执行统计注册表
+     *
+     * @param properties SQL优化属性
+     * @return 语句执行统计注册表实例
+     */
+    @Bean
+    @ConditionalOnProperty(name = "mybatis.optimizer.stats-enabled", matchIfMissing = true)
+    public SqlExecutionStatsRegistry sqlExecutionStatsRegistry(SqlOptimizerProperties properties) {
+        return new SqlExecutionStatsRegistry(properties.getStatsMaxStatements());
     }
 
     /**
@@ -184,43 +206,71 @@ public class MybatisSqlOptimizerAutoConfiguration {
     /**
      * 注册缓存工厂
      * @param cacheProperties
+     * @param analysisStore 共享的二级分析结果存储，未配置时不存在
      * @return
      */
     @Bean
-    public CacheFactory cacheFactory(CacheProperties cacheProperties) {
-        return new CacheFactory(cacheProperties);
+    public CacheFactory cacheFactory(CacheProperties cacheProperties, ObjectProvider<AnalysisStore> analysisStore) {
+        return new CacheFactory(cacheProperties, analysisStore.getIfUnique());
+    }
+
+    /**
+     * 注册基于数据库表的共享分析结果存储
+     *
+     * @param cacheProperties 缓存配置属性
+     * @param properties SQL优化器配置属性，同步分析时在业务线程上访问存储，不等待连接预算
+     * @param dataSource 存储表所在的数据源
+     * @return 共享分析结果存储实例
+     */
+    @Bean
+    @ConditionalOnBean(DataSource.class)
+    @ConditionalOnMissingBean(AnalysisStore.class)
+    @ConditionalOnProperty(name = "mybatis.optimizer.cache.shared-store-enabled", havingValue = "true")
+    public JdbcAnalysisStore jdbcAnalysisStore(CacheProperties cacheProperties, SqlOptimizerProperties properties,
+                                               DataSource dataSource) {
+        log.info("[mybatisOptimizer] 发现 mybatis.optimizer.cache.shared-store-enabled:true 启用共享分析结果存储 {}",
+                cacheProperties.getSharedStoreTable());
+        Duration timeout = cacheProperties.getSharedStoreConnectionTimeout();
+        return new JdbcAnalysisStore(dataSource, cacheProperties.getSharedStoreTable(),
+                cacheProperties.getSharedStoreLease(), cacheProperties.isSharedStoreInitializeSchema(),
+                cacheProperties.getSharedStoreMaxConnections(),
+                properties.isAsyncAnalysis() && timeout != null ? timeout.toMillis() : 0L);
     }
 
     /**
      * 注册MySQL解释结果分析器
      * 
+     * @param properties SQL优化器配置属性
      * @return MySQL解释结果分析器实例
      */
     @Bean
     @ConditionalOnClass(name = "com.mysql.jdbc.Driver")
-    public MysqlExplainResultAnalyzer mysqlExplainResultAnalyzer() {
-        return new MysqlExplainResultAnalyzer();
+    public MysqlExplainResultAnalyzer mysqlExplainResultAnalyzer(SqlOptimizerProperties properties) {
+        return new MysqlExplainResultAnalyzer(properties.getMysqlExplainFormat());
     }
     
     /**
      * 注册PostgreSQL解释结果分析器
      * 
+     * @param properties SQL优化器配置属性
      * @return PostgreSQL解释结果分析器实例
      */
     @Bean
     @ConditionalOnClass(name = "org.postgresql.Driver")
-    public PostgreExplainResultAnalyzer postgreExplainResultAnalyzer() {
-        return new PostgreExplainResultAnalyzer();
+    public PostgreExplainResultAnalyzer postgreExplainResultAnalyzer(SqlOptimizerProperties properties) {
+        return new PostgreExplainResultAnalyzer(properties.getPostgreExplainMode(),
+                properties.getPostgreAnalyzeCostThreshold());
     }
     
     /**
      * 注册Oracle解释结果分析器
      * 
+     * @param properties SQL优化器配置属性
      * @return Oracle解释结果分析器实例
      */
     @Bean
     @ConditionalOnClass(name = "oracle.jdbc.OracleDriver")
-    public OracleExplainResultAnalyzer oracleExplainResultAnalyzer() {
-        return new OracleExplainResultAnalyzer();
+    public OracleExplainResultAnalyzer oracleExplainResultAnalyzer(SqlOptimizerProperties properties) {
+        return new OracleExplainResultAnalyzer(properties.getOraclePlanSource());
     }
 }
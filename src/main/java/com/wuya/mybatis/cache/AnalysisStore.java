@@ -0,0 +1,57 @@
+package com.wuya.mybatis.cache;
+
+import java.util.Collection;
+
+/**
+ * 多个节点共享的二级分析结果存储
+ * 本地缓存未命中时先按SQL指纹查找其他节点发布的分析结果；都没有时通过认领取得该指纹的分析租约，
+ * 同一时间只有一个节点对新SQL执行EXPLAIN，其余节点跳过本次分析，之后从存储中取得结果。
+ * 实现通过 Spring Bean 注册，由 {@link CacheFactory} 提供给拦截器；方法失败时抛出运行时异常，拦截器退回到只使用本地缓存
+ */
+public interface AnalysisStore {
+
+    /**
+     * 查找已发布的分析结果
+     *
+     * @param fingerprint SQL指纹
+     * @return 分析结果，未发布时返回null
+     */
+    StoredAnalysis find(String fingerprint);
+
+    /**
+     * 认领指纹的分析租约
+     * 只有没有其他节点持有未到期的租约，且给定时间之后没有发布过分析结果时才认领成功
+     *
+     * @param fingerprint SQL指纹
+     * @param staleBeforeMillis 在该时间之前发布的分析结果视为需要重新分析
+     * @return 认领成功返回true，调用方随后必须调用 {@link #publish} 或 {@link #release}
+     */
+    boolean claim(String fingerprint, long staleBeforeMillis);
+
+    /**
+     * 发布分析结果并释放租约
+     *
+     * @param fingerprint SQL指纹
+     * @param payload 序列化的分析结果
+     */
+    void publish(String fingerprint, byte[] payload);
+
+    /**
+     * 放弃租约，不发布分析结果
+     *
+     * @param fingerprint SQL指纹
+     */
+    void release(String fingerprint);
+
+    /**
+     * 删除分析结果，用于 DDL 后使相关结果失效
+     *
+     * @param fingerprints SQL指纹
+     */
+    void remove(Collection<String> fingerprints);
+
+    /**
+     * 删除所有分析结果
+     */
+    void clear();
+}
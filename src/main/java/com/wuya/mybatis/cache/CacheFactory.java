@@ -2,16 +2,29 @@ package com.wuya.mybatis.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Weigher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+
 /**
  * 缓存工厂类，用于创建缓存对象
  * @author chenjunwen
  * @date 2023-07-06
  */
 public class CacheFactory {
+    private static final Logger logger = LoggerFactory.getLogger(CacheFactory.class);
+
     // 缓存配置属性
     private final CacheProperties properties;
+    // 共享的二级分析结果存储，可为null
+    private final AnalysisStore analysisStore;
 
     /**
      * 构造函数，初始化缓存工厂
@@ -19,7 +32,18 @@ public class CacheFactory {
      * @param properties 缓存配置属性
      */
     public CacheFactory(CacheProperties properties) {
+        this(properties, null);
+    }
+
+    /**
+     * 构造函数，初始化缓存工厂
+     *
+     * @param properties 缓存配置属性
+     * @param analysisStore 共享的二级分析结果存储，可为null
+     */
+    public CacheFactory(CacheProperties properties, AnalysisStore analysisStore) {
         this.properties = properties;
+        this.analysisStore = analysisStore;
     }
 
     /**
@@ -30,24 +54,156 @@ public class CacheFactory {
      * @return 缓存对象或null
      */
     public <K, V> Cache<K, V> getCache() {
-        return properties.isEnabled() ? createRealCache() : null;
+        return getCache(null);
+    }
+
+    /**
+     * 获取缓存对象如果缓存未启用，返回null
+     *
+     * @param evictionListener 条目因容量或过期被淘汰时的同步回调，可为null
+     * @param <K> 缓存键的类型
+     * @param <V> 缓存值的类型
+     * @return 缓存对象或null
+     */
+    public <K, V> Cache<K, V> getCache(RemovalListener<K, V> evictionListener) {
+        return getCache(evictionListener, null);
+    }
+
+    /**
+     * 获取缓存对象如果缓存未启用，返回null
+     *
+     * @param evictionListener 条目因容量或过期被淘汰时的同步回调，可为null
+     * @param weigher 条目权重，配置了内存预算（maxWeight 或 spec 中的 maximumWeight）时使用，可为null
+     * @param <K> 缓存键的类型
+     * @param <V> 缓存值的类型
+     * @return 缓存对象或null
+     */
+    public <K, V> Cache<K, V> getCache(RemovalListener<K, V> evictionListener, Weigher<K, V> weigher) {
+        return properties.isEnabled() ? createRealCache(evictionListener, weigher) : null;
+    }
+
+    /**
+     * 获取缓存条目的提前刷新时间
+     *
+     * @return 刷新时间，缓存未启用或未配置时返回null
+     */
+    public Duration getRefreshAfter() {
+        return properties.isEnabled() ? properties.getRefreshAfter() : null;
+    }
+
+    /**
+     * 获取缓存条目写入后的过期时间，使用 spec 时从 expireAfterWrite 读取
+     *
+     * @return 过期时间，缓存未启用或未配置时返回null
+     */
+    public Duration getExpireAfter() {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        if (!StringUtils.hasText(properties.getSpec())) {
+            return properties.getExpireTime();
+        }
+        for (String option : properties.getSpec().split(",")) {
+            String[] pair = option.trim().split("=", 2);
+            if (pair.length == 2 && "expireAfterWrite".equals(pair[0].trim())) {
+                return parseSpecDuration(pair[1].trim());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析 Caffeine 规格中的时长，格式为数字加单位 d/h/m/s
+     */
+    private static Duration parseSpecDuration(String value) {
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (value.toLowerCase(Locale.ROOT).charAt(value.length() - 1)) {
+            case 'd':
+                return Duration.ofDays(amount);
+            case 'h':
+                return Duration.ofHours(amount);
+            case 'm':
+                return Duration.ofMinutes(amount);
+            case 's':
+                return Duration.ofSeconds(amount);
+            default:
+                throw new IllegalArgumentException("无法解析的缓存过期时间: " + value);
+        }
+    }
+
+    /**
+     * 打开分析结果的本地持久化存储
+     * 缓存未启用、未配置目录或目录不可用时返回null，不影响缓存本身
+     *
+     * @return 持久化存储或null
+     */
+    public PersistentPlanStore getPlanStore() {
+        if (!properties.isEnabled() || !StringUtils.hasText(properties.getStoreDir())) {
+            return null;
+        }
+        Duration expireAfter = getExpireAfter();
+        try {
+            return new PersistentPlanStore(Paths.get(properties.getStoreDir()), properties.getStoreMaxSize().toBytes(),
+                    expireAfter != null ? expireAfter.toMillis() : 0L);
+        } catch (IOException e) {
+            logger.warn("无法打开分析结果持久化存储，本次运行不持久化: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取共享的二级分析结果存储
+     *
+     * @return 分析结果存储，缓存未启用或未配置时返回null
+     */
+    public AnalysisStore getAnalysisStore() {
+        return properties.isEnabled() ? analysisStore : null;
+    }
+
+    /**
+     * 是否紧凑编码缓存的执行计划
+     *
+     * @return 紧凑编码返回true
+     */
+    public boolean isCompactPlans() {
+        return properties.isCompactPlans();
     }
 
     /**
      * 创建真实的缓存对象根据配置属性初始化缓存
      * 
+     * @param evictionListener 淘汰回调，可为null
+     * @param weigher 条目权重，可为null
      * @param <K> 缓存键的类型
      * @param <V> 缓存值的类型
      * @return 缓存对象
      */
-    private <K, V> Cache<K, V> createRealCache() {
-        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+    private <K, V> Cache<K, V> createRealCache(RemovalListener<K, V> evictionListener, Weigher<K, V> weigher) {
         // 如果配置了缓存规格Caffeine原生配置，直接从规格创建缓存
-        if (StringUtils.hasText(properties.getSpec())) {
-            return Caffeine.from(properties.getSpec()).build();
+        boolean spec = StringUtils.hasText(properties.getSpec());
+        Caffeine<Object, Object> builder = spec ? Caffeine.from(properties.getSpec()) : configure(Caffeine.newBuilder());
+        // 按内存预算淘汰时必须提供权重函数，未提供时每个条目权重为 1
+        if (spec ? properties.getSpec().contains("maximumWeight") : properties.getMaxWeight() != null) {
+            Caffeine<K, V> weighted = builder.weigher(weigher != null ? weigher : (key, value) -> 1);
+            return evictionListener != null ? weighted.evictionListener(evictionListener).build() : weighted.build();
         }
-        // 配置缓存的最大容量
-        if (properties.getMaxSize() != null) {
+        if (evictionListener != null) {
+            return builder.evictionListener(evictionListener).build();
+        }
+        return builder.build();
+    }
+
+    /**
+     * 按分项配置初始化缓存构建器
+     *
+     * @param builder 缓存构建器
+     * @return 缓存构建器
+     */
+    private Caffeine<Object, Object> configure(Caffeine<Object, Object> builder) {
+        // 配置缓存的最大容量，配置了内存预算时按权重淘汰
+        if (properties.getMaxWeight() != null) {
+            builder.maximumWeight(properties.getMaxWeight().toBytes());
+        } else if (properties.getMaxSize() != null) {
             builder.maximumSize(properties.getMaxSize());
         }
         // 配置缓存的过期时间
@@ -58,7 +214,6 @@ public class CacheFactory {
         if (properties.isRecordStats()) {
             builder.recordStats();
         }
-        // 构建并返回缓存对象
-        return builder.build();
+        return builder;
     }
 }
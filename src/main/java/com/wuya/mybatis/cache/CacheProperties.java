@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import org.springframework.util.unit.DataSize;
+
 import java.time.Duration;
 
 /**
@@ -13,6 +15,7 @@ import java.time.Duration;
  spec: "maximumSize=1000,expireAfterWrite=1h,recordStats" # Caffeine原生配置
  # 或分项配置：
  # max-size: 1000
+ # max-weight: 32MB  # 按内存预算淘汰，配置后替代 max-size
  # expire-time: 1h
  # record-stats: true
  * @author chenjunwen
@@ -36,6 +39,17 @@ public class CacheProperties {
      * 缓存的最大大小，默认值为 1000。
      */
     private Integer maxSize = 1000;
+
+    /**
+     * 缓存的内存预算，按分析结果估算的常驻字节数加权淘汰，配置后替代 maxSize；
+     * 使用 spec 时可写入 maximumWeight（单位字节），默认值为 null，即按条目数淘汰。
+     */
+    private DataSize maxWeight;
+
+    /**
+     * 是否把缓存的执行计划紧凑编码为 byte[]，报告时再解码，同样的内存可缓存更多SQL指纹，默认值为 true。
+     */
+    private boolean compactPlans = true;
     
     /**
      * 缓存的过期时间，默认值为 1 小时。
@@ -46,4 +60,53 @@ public class CacheProperties {
      * 表示是否记录缓存操作的统计信息，默认值为 true。
      */
     private boolean recordStats = true;
+
+    /**
+     * 分析结果提前刷新的时间，缓存的分析结果超过该时间后再次命中时，由分析线程在后台重新分析并替换，
+     * 频繁执行的SQL不会因过期而集中重新分析；只在异步分析时生效，为null表示不刷新，默认值为 30 分钟。
+     */
+    private Duration refreshAfter = Duration.ofMinutes(30);
+
+    /**
+     * 分析结果的本地持久化目录，配置后分析结果追加写入该目录，重启时重新装入缓存，未过期的SQL不再重新分析；
+     * 同一目录只能由一个进程使用，默认值为 null，即不持久化。
+     */
+    private String storeDir;
+
+    /**
+     * 持久化文件的大小上限，超过后丢弃最早写入的分析结果，默认值为 64MB。
+     */
+    private DataSize storeMaxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 是否启用基于数据库表的共享分析结果存储，多个节点共享分析结果，同一SQL只由一个节点执行EXPLAIN，默认值为 false。
+     * 也可以注册自定义的 {@link AnalysisStore} Bean 替代
+     */
+    private boolean sharedStoreEnabled = false;
+
+    /**
+     * 共享分析结果存储的表名，可带模式名，默认值为 sql_analysis_store。
+     */
+    private String sharedStoreTable = "sql_analysis_store";
+
+    /**
+     * 分析租约时长，认领的节点在该时间内未发布结果时其他节点可重新认领，默认值为 2 分钟。
+     */
+    private Duration sharedStoreLease = Duration.ofMinutes(2);
+
+    /**
+     * 共享分析结果存储的表不存在时是否自动创建，默认值为 true。
+     */
+    private boolean sharedStoreInitializeSchema = true;
+
+    /**
+     * 同时访问共享分析结果表的最大连接数，与 EXPLAIN 的连接预算相互独立，默认值为 1。
+     */
+    private int sharedStoreMaxConnections = 1;
+
+    /**
+     * 共享分析结果表的连接预算耗尽时分析线程的最长等待时间，同步分析时业务线程不等待；
+     * 超时后查找视为未发布，认领失败时由本节点分析，默认值为 0，即不等待。
+     */
+    private Duration sharedStoreConnectionTimeout = Duration.ZERO;
 }
@@ -0,0 +1,346 @@
+package com.wuya.mybatis.cache;
+
+import com.wuya.mybatis.exception.SqlOptimizerException;
+import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.connection.AnalysisConnection;
+import com.wuya.mybatis.optimizer.connection.AnalysisConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * 基于数据库表的共享分析结果存储
+ * 表结构：fingerprint_key（SQL指纹的 SHA-256，主键）、payload（序列化的分析结果，未发布时为空）、written_at（发布时间）、
+ * lease_owner / lease_until（分析租约的持有节点和到期时间）。
+ * 认领先以条件 UPDATE 抢占已存在的行，行不存在时以 INSERT 抢占，主键冲突说明其他节点已抢先；
+ * 节点在分析中途退出时租约到期后可被其他节点重新认领。时间使用各节点的本地时钟，租约时长应远大于节点间的时钟偏差。
+ * 所有语句在自动提交模式下执行，不参与业务事务，归还连接前恢复原来的自动提交设置。
+ * 存储使用独立于 EXPLAIN 的连接预算：分析线程持有分析连接时访问存储不会与分析争抢同一预算而互相等待；
+ * 预算耗尽时查找视为未发布，其余操作失败，不等待或只等待配置的时间，不阻塞业务线程
+ */
+public class JdbcAnalysisStore implements AnalysisStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcAnalysisStore.class);
+
+    // 表名只允许字母、数字、下划线和模式名分隔符
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final DataSource dataSource;
+    // 访问存储表的连接预算，与 EXPLAIN 的连接预算相互独立
+    private final AnalysisConnectionManager connectionManager;
+    private final String table;
+    private final long leaseMillis;
+    // 当前节点的租约标识
+    private final String owner;
+
+    private final String findSql;
+    private final String claimSql;
+    private final String insertClaimSql;
+    private final String publishSql;
+    private final String insertPublishSql;
+    private final String releaseSql;
+    private final String removeSql;
+    private final String clearSql;
+
+    /**
+     * 构造函数，最多同时使用一个连接，预算耗尽时不等待
+     *
+     * @param dataSource 存储表所在的数据源
+     * @param table 表名，可带模式名
+     * @param lease 分析租约时长，应大于一次分析的耗时
+     * @param initializeSchema 表不存在时是否自动创建
+     */
+    public JdbcAnalysisStore(DataSource dataSource, String table, Duration lease, boolean initializeSchema) {
+        this(dataSource, table, lease, initializeSchema, 1, 0L);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param dataSource 存储表所在的数据源
+     * @param table 表名，可带模式名
+     * @param lease 分析租约时长，应大于一次分析的耗时
+     * @param initializeSchema 表不存在时是否自动创建
+     * @param maxConnections 同时访问存储表的最大连接数，小于等于0表示不限制
+     * @param connectionTimeoutMillis 连接预算耗尽时的最长等待时间（毫秒），0表示不等待
+     */
+    public JdbcAnalysisStore(DataSource dataSource, String table, Duration lease, boolean initializeSchema,
+                             int maxConnections, long connectionTimeoutMillis) {
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("共享分析结果存储的表名不合法: " + table);
+        }
+        this.dataSource = dataSource;
+        this.connectionManager = new AnalysisConnectionManager(maxConnections, Math.max(0L, connectionTimeoutMillis),
+                false, 0L, 0);
+        this.table = table;
+        this.leaseMillis = lease.toMillis();
+        String node = ManagementFactory.getRuntimeMXBean().getName();
+        String suffix = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+        this.owner = (node.length() > 48 ? node.substring(0, 48) : node) + "-" + suffix;
+        this.findSql = "SELECT payload, written_at FROM " + table + " WHERE fingerprint_key = ? AND payload IS NOT NULL";
+        this.claimSql = "UPDATE " + table + " SET lease_owner = ?, lease_until = ? WHERE fingerprint_key = ?"
+                + " AND lease_until < ? AND (payload IS NULL OR written_at < ?)";
+        this.insertClaimSql = "INSERT INTO " + table + " (fingerprint_key, written_at, lease_owner, lease_until) VALUES (?, 0, ?, ?)";
+        this.publishSql = "UPDATE " + table + " SET payload = ?, written_at = ?, lease_owner = NULL, lease_until = 0"
+                + " WHERE fingerprint_key = ?";
+        this.insertPublishSql = "INSERT INTO " + table + " (fingerprint_key, payload, written_at, lease_until) VALUES (?, ?, ?, 0)";
+        this.releaseSql = "UPDATE " + table + " SET lease_owner = NULL, lease_until = 0 WHERE fingerprint_key = ? AND lease_owner = ?";
+        this.removeSql = "DELETE FROM " + table + " WHERE fingerprint_key = ?";
+        this.clearSql = "DELETE FROM " + table;
+        if (initializeSchema) {
+            initializeSchema();
+        }
+    }
+
+    /**
+     * 查找已发布的分析结果，连接预算耗尽时视为未发布
+     */
+    @Override
+    public StoredAnalysis find(String fingerprint) {
+        try (AnalysisConnection lease = connectionManager.acquire(dataSource)) {
+            if (lease == null) {
+                return null;
+            }
+            return find(autoCommit(lease), fingerprint);
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("查找共享分析结果失败", e);
+        }
+    }
+
+    private StoredAnalysis find(Connection connection, String fingerprint) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(findSql)) {
+            ps.setString(1, keyOf(fingerprint));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                byte[] payload = rs.getBytes(1);
+                return payload != null ? new StoredAnalysis(fingerprint, payload, rs.getLong(2)) : null;
+            }
+        }
+    }
+
+    @Override
+    public boolean claim(String fingerprint, long staleBeforeMillis) {
+        String key = keyOf(fingerprint);
+        long now = System.currentTimeMillis();
+        try (AnalysisConnection lease = open()) {
+            Connection connection = autoCommit(lease);
+            try (PreparedStatement ps = connection.prepareStatement(claimSql)) {
+                ps.setString(1, owner);
+                ps.setLong(2, now + leaseMillis);
+                ps.setString(3, key);
+                ps.setLong(4, now);
+                ps.setLong(5, staleBeforeMillis);
+                if (ps.executeUpdate() > 0) {
+                    return true;
+                }
+            }
+            // 行不存在时插入抢占，主键冲突说明已有结果或其他节点持有租约
+            try (PreparedStatement ps = connection.prepareStatement(insertClaimSql)) {
+                ps.setString(1, key);
+                ps.setString(2, owner);
+                ps.setLong(3, now + leaseMillis);
+                ps.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                if (isDuplicateKey(e)) {
+                    return false;
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("认领共享分析租约失败", e);
+        }
+    }
+
+    @Override
+    public void publish(String fingerprint, byte[] payload) {
+        String key = keyOf(fingerprint);
+        long now = System.currentTimeMillis();
+        try (AnalysisConnection lease = open()) {
+            Connection connection = autoCommit(lease);
+            if (update(connection, key, payload, now) > 0) {
+                return;
+            }
+            // 租约行已被 DDL 失效删除，重新插入
+            try (PreparedStatement ps = connection.prepareStatement(insertPublishSql)) {
+                ps.setString(1, key);
+                ps.setBytes(2, payload);
+                ps.setLong(3, now);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                if (!isDuplicateKey(e)) {
+                    throw e;
+                }
+                update(connection, key, payload, now);
+            }
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("发布共享分析结果失败", e);
+        }
+    }
+
+    private int update(Connection connection, String key, byte[] payload, long now) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(publishSql)) {
+            ps.setBytes(1, payload);
+            ps.setLong(2, now);
+            ps.setString(3, key);
+            return ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void release(String fingerprint) {
+        try (AnalysisConnection lease = open();
+             PreparedStatement ps = autoCommit(lease).prepareStatement(releaseSql)) {
+            ps.setString(1, keyOf(fingerprint));
+            ps.setString(2, owner);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("释放共享分析租约失败", e);
+        }
+    }
+
+    @Override
+    public void remove(Collection<String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        try (AnalysisConnection lease = open();
+             PreparedStatement ps = autoCommit(lease).prepareStatement(removeSql)) {
+            for (String fingerprint : fingerprints) {
+                ps.setString(1, keyOf(fingerprint));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("删除共享分析结果失败", e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try (AnalysisConnection lease = open();
+             Statement statement = autoCommit(lease).createStatement()) {
+            statement.executeUpdate(clearSql);
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("清空共享分析结果失败", e);
+        }
+    }
+
+    /**
+     * 关闭存储，之后不再访问存储表
+     */
+    @Override
+    public void close() {
+        connectionManager.close();
+    }
+
+    /**
+     * 在连接预算内获取连接，预算耗尽时失败
+     */
+    private AnalysisConnection open() throws SQLException {
+        AnalysisConnection lease = connectionManager.acquire(dataSource);
+        if (lease == null) {
+            throw new SqlOptimizerException("共享分析结果存储的连接预算已耗尽");
+        }
+        return lease;
+    }
+
+    /**
+     * 切换到自动提交模式，归还连接时恢复原来的设置
+     */
+    private static Connection autoCommit(AnalysisConnection lease) throws SQLException {
+        Connection connection = lease.getConnection();
+        if (!connection.getAutoCommit()) {
+            connection.setAutoCommit(true);
+        }
+        return connection;
+    }
+
+    /**
+     * 表不存在时按数据库类型创建
+     */
+    private void initializeSchema() {
+        try (AnalysisConnection lease = open()) {
+            Connection connection = autoCommit(lease);
+            DatabaseMetaData metaData = connection.getMetaData();
+            if (tableExists(metaData)) {
+                return;
+            }
+            DatabaseType type = DatabaseType.fromProductName(metaData.getDatabaseProductName());
+            String bigint = type == DatabaseType.ORACLE ? "NUMBER(19)" : "BIGINT";
+            String blob = type == DatabaseType.POSTGRE ? "BYTEA" : type == DatabaseType.MYSQL ? "LONGBLOB" : "BLOB";
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE " + table + " (fingerprint_key VARCHAR(64) NOT NULL PRIMARY KEY, payload "
+                        + blob + ", written_at " + bigint + " NOT NULL, lease_owner VARCHAR(64), lease_until " + bigint + " NOT NULL)");
+                logger.info("已创建共享分析结果存储表 {}", table);
+            } catch (SQLException e) {
+                // 多个节点同时启动时可能已被其他节点创建
+                if (!tableExists(metaData)) {
+                    throw e;
+                }
+            }
+        } catch (SQLException e) {
+            throw new SqlOptimizerException("初始化共享分析结果存储表失败: " + table, e);
+        }
+    }
+
+    /**
+     * 按原样、大写、小写查找表，不同数据库保存未加引号的标识符时大小写不同
+     */
+    private boolean tableExists(DatabaseMetaData metaData) throws SQLException {
+        for (String candidate : new String[]{table, table.toUpperCase(Locale.ROOT), table.toLowerCase(Locale.ROOT)}) {
+            int dot = candidate.indexOf('.');
+            String schema = dot > 0 ? candidate.substring(0, dot) : null;
+            try (ResultSet rs = metaData.getTables(null, schema, candidate.substring(dot + 1), null)) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 主键冲突：SQLState 23xxx（完整性约束违反）
+     */
+    private static boolean isDuplicateKey(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("23");
+    }
+
+    /**
+     * SQL指纹可能很长，主键使用其 SHA-256 的十六进制形式
+     */
+    private static String keyOf(String fingerprint) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] digest = sha256.digest(fingerprint.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,327 @@
+package com.wuya.mybatis.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 本地持久化的分析结果存储
+ * 分析结果以追加方式写入目录下的单个文件，重启时通过内存映射读取并重新装入缓存，滚动发布后不必重新分析所有SQL。
+ * 记录格式为 [长度][CRC32][类型][写入时间][指纹][内容]，进程中途退出留下的不完整记录在加载时被截掉；
+ * DDL 使缓存失效时追加删除记录。加载时只保留每个指纹最新且未过期的记录并重写文件，
+ * 文件超过上限时同样重写，仍超过时丢弃最早写入的记录。
+ * 进程间互斥使用单独的锁文件，重写时数据文件被替换，锁始终保持；新文件打开成功后才关闭旧文件
+ */
+public class PersistentPlanStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentPlanStore.class);
+
+    // 存储文件名
+    private static final String FILE_NAME = "analysis-plans.dat";
+    // 锁文件名
+    private static final String LOCK_FILE_NAME = "analysis-plans.lock";
+
+    // 记录类型
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    // 记录头：长度 + CRC32
+    private static final int HEADER_BYTES = 8;
+
+    private final Path file;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    // 锁文件的通道和进程锁，存储关闭前一直持有
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    // 数据文件的通道，重写后替换为新文件的通道
+    private FileChannel channel;
+
+    /**
+     * 打开存储，同一目录同时只能被一个进程使用
+     *
+     * @param directory 存储目录，不存在时创建
+     * @param maxBytes 文件大小上限
+     * @param maxAgeMillis 记录的最大存在时间，超过后不再加载，0表示不限制
+     * @throws IOException 目录不可写或已被其他进程使用
+     */
+    public PersistentPlanStore(Path directory, long maxBytes, long maxAgeMillis) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(FILE_NAME);
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // 同一进程内已打开
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IOException("分析结果存储已被其他进程使用: " + file);
+        }
+        this.lock = acquired;
+        try {
+            this.channel = openChannel();
+        } catch (IOException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开数据文件，写入位置在文件末尾
+     */
+    private FileChannel openChannel() throws IOException {
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        opened.position(opened.size());
+        return opened;
+    }
+
+    /**
+     * 加载每个指纹最新且未过期的记录，并以这些记录重写文件
+     *
+     * @return 按写入顺序排列的记录
+     * @throws IOException 读写失败
+     */
+    public synchronized List<StoredAnalysis> load() throws IOException {
+        Map<String, StoredAnalysis> records = read();
+        rewrite(records.values());
+        return new ArrayList<>(records.values());
+    }
+
+    /**
+     * 追加一条分析结果
+     *
+     * @param fingerprint SQL指纹
+     * @param payload 序列化的分析结果
+     * @throws IOException 写入失败
+     */
+    public synchronized void put(String fingerprint, byte[] payload) throws IOException {
+        append(PUT, fingerprint, payload);
+        if (channel.size() > maxBytes) {
+            Map<String, StoredAnalysis> records = read();
+            rewrite(records.values());
+        }
+    }
+
+    /**
+     * 追加删除记录
+     *
+     * @param fingerprints SQL指纹
+     * @throws IOException 写入失败
+     */
+    public synchronized void remove(Collection<String> fingerprints) throws IOException {
+        for (String fingerprint : fingerprints) {
+            append(REMOVE, fingerprint, new byte[0]);
+        }
+    }
+
+    /**
+     * 追加清空记录，之前的记录不再加载
+     *
+     * @throws IOException 写入失败
+     */
+    public synchronized void clear() throws IOException {
+        append(CLEAR, "", new byte[0]);
+    }
+
+    /**
+     * 刷盘并释放文件锁
+     *
+     * @throws IOException 关闭失败
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (lockChannel.isOpen()) {
+            try {
+                channel.force(false);
+                channel.close();
+            } finally {
+                lock.release();
+                lockChannel.close();
+            }
+        }
+    }
+
+    private void append(byte type, String fingerprint, byte[] payload) throws IOException {
+        write(channel, type, System.currentTimeMillis(), fingerprint, payload);
+    }
+
+    private static void write(FileChannel target, byte type, long writtenAtMillis, String fingerprint,
+                              byte[] payload) throws IOException {
+        byte[] key = fingerprint.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 13 + key.length + payload.length);
+        buffer.position(HEADER_BYTES);
+        buffer.put(type).putLong(writtenAtMillis).putInt(key.length).put(key).put(payload);
+        int length = buffer.capacity() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    /**
+     * 通过内存映射读取文件，遇到不完整或校验失败的记录时截掉文件的剩余部分；
+     * 记录内容都复制到堆内，读取结束后立即释放映射，之后才能替换文件
+     */
+    private Map<String, StoredAnalysis> read() throws IOException {
+        Map<String, StoredAnalysis> records = new LinkedHashMap<>();
+        long size = channel.size();
+        if (size == 0) {
+            return records;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        try {
+            read(buffer, records);
+        } finally {
+            unmap(buffer);
+        }
+        if (maxAgeMillis > 0) {
+            long now = System.currentTimeMillis();
+            records.values().removeIf(record -> now - record.getWrittenAtMillis() >= maxAgeMillis);
+        }
+        return records;
+    }
+
+    private void read(MappedByteBuffer buffer, Map<String, StoredAnalysis> records) {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 13 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            byte type = body.get();
+            long writtenAtMillis = body.getLong();
+            int keyLength = body.getInt();
+            if (keyLength < 0 || keyLength > body.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            body.get(key);
+            String fingerprint = new String(key, StandardCharsets.UTF_8);
+            if (type == CLEAR) {
+                records.clear();
+            } else if (type == REMOVE) {
+                records.remove(fingerprint);
+            } else if (type == PUT) {
+                byte[] payload = new byte[body.remaining()];
+                body.get(payload);
+                // 重新放入以保持按写入时间排序
+                records.remove(fingerprint);
+                records.put(fingerprint, new StoredAnalysis(fingerprint, payload, writtenAtMillis));
+            }
+        }
+        if (buffer.hasRemaining()) {
+            logger.warn("分析结果存储 {} 末尾有 {} 字节不完整的记录，已忽略", file, buffer.remaining());
+        }
+    }
+
+    /**
+     * 释放内存映射，映射未释放时 Windows 不允许替换文件；
+     * JDK 9+ 使用 Unsafe.invokeCleaner，JDK 8 使用 DirectBuffer 的 Cleaner，都不可用时等待GC释放
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("释放分析结果存储的内存映射失败: {}", e.toString());
+        }
+    }
+
+    /**
+     * 以给定记录重写文件，先写临时文件再原子替换；超过大小上限时丢弃最早写入的记录，直到不超过上限的一半。
+     * 替换或打开新文件失败时继续使用原来的通道
+     */
+    private void rewrite(Collection<StoredAnalysis> records) throws IOException {
+        List<StoredAnalysis> kept = new ArrayList<>(records);
+        long total = 0;
+        for (StoredAnalysis record : kept) {
+            total += sizeOf(record);
+        }
+        int dropped = 0;
+        if (total > maxBytes) {
+            while (total > maxBytes / 2 && dropped < kept.size()) {
+                total -= sizeOf(kept.get(dropped++));
+            }
+        }
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (StoredAnalysis record : kept.subList(dropped, kept.size())) {
+                write(out, PUT, record.getWrittenAtMillis(), record.getFingerprint(), record.getPayload());
+            }
+            out.force(false);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        FileChannel replaced = channel;
+        channel = openChannel();
+        replaced.close();
+        if (dropped > 0) {
+            logger.info("分析结果存储超过 {} 字节，已丢弃最早写入的 {} 条记录", maxBytes, dropped);
+        }
+    }
+
+    private static long sizeOf(StoredAnalysis record) {
+        return HEADER_BYTES + 13L + record.getFingerprint().length() * 3L + record.getPayload().length;
+    }
+}
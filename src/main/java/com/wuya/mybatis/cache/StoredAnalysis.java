@@ -0,0 +1,41 @@
+package com.wuya.mybatis.cache;
+
+/**
+ * 存储中的一条分析结果
+ * 内容为序列化的分析结果，写入时间用于计算分析结果的存在时间，判断刷新和过期
+ */
+public final class StoredAnalysis {
+    // SQL指纹
+    private final String fingerprint;
+    // 序列化的分析结果
+    private final byte[] payload;
+    // 写入时间（毫秒）
+    private final long writtenAtMillis;
+
+    public StoredAnalysis(String fingerprint, byte[] payload, long writtenAtMillis) {
+        this.fingerprint = fingerprint;
+        this.payload = payload;
+        this.writtenAtMillis = writtenAtMillis;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getWrittenAtMillis() {
+        return writtenAtMillis;
+    }
+
+    /**
+     * 获取写入后经过的时间
+     *
+     * @return 毫秒数
+     */
+    public long getAgeMillis() {
+        return Math.max(0L, System.currentTimeMillis() - writtenAtMillis);
+    }
+}
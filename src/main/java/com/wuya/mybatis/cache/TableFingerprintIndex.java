@@ -0,0 +1,85 @@
+package com.wuya.mybatis.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 表/索引 -> SQL指纹 反向索引
+ * 记录每个缓存的分析结果涉及的表和索引，DDL 只使分析涉及到的表或索引的缓存失效。
+ * 名称统一为不带模式名和引号的小写形式
+ */
+public class TableFingerprintIndex {
+
+    // 表或索引名 -> SQL指纹
+    private final Map<String, Set<String>> index = new ConcurrentHashMap<>();
+
+    /**
+     * 登记指纹涉及的表和索引
+     *
+     * @param fingerprint SQL指纹
+     * @param names 表名和索引名
+     */
+    public void register(String fingerprint, Collection<String> names) {
+        for (String name : names) {
+            index.computeIfAbsent(normalize(name), k -> ConcurrentHashMap.newKeySet()).add(fingerprint);
+        }
+    }
+
+    /**
+     * 移除指纹的登记
+     *
+     * @param fingerprint SQL指纹
+     * @param names 登记时的表名和索引名
+     */
+    public void unregister(String fingerprint, Collection<String> names) {
+        for (String name : names) {
+            index.computeIfPresent(normalize(name), (k, fingerprints) -> {
+                fingerprints.remove(fingerprint);
+                return fingerprints.isEmpty() ? null : fingerprints;
+            });
+        }
+    }
+
+    /**
+     * 取出并移除涉及给定表或索引的所有指纹
+     *
+     * @param name 表名或索引名
+     * @return SQL指纹
+     */
+    public Set<String> remove(String name) {
+        Set<String> fingerprints = index.remove(normalize(name));
+        return fingerprints != null ? fingerprints : Collections.emptySet();
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        index.clear();
+    }
+
+    /**
+     * 统一名称：去掉模式名和引号并转为小写
+     *
+     * @param name 原始名称，如 "public"."Orders"、`db`.`t`
+     * @return 统一后的名称
+     */
+    public static String normalize(String name) {
+        String trimmed = name.trim();
+        int dot = trimmed.lastIndexOf('.');
+        if (dot >= 0) {
+            trimmed = trimmed.substring(dot + 1);
+        }
+        if (trimmed.length() > 1) {
+            char first = trimmed.charAt(0);
+            if (first == '"' || first == '`' || first == '[') {
+                trimmed = trimmed.substring(1, trimmed.length() - 1);
+            }
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,37 +1,132 @@
 package com.wuya.mybatis.optimizer;
 
+import com.wuya.mybatis.optimizer.async.AnalysisEvent;
+import com.wuya.mybatis.optimizer.async.AnalysisEventExecutor;
+import com.wuya.mybatis.optimizer.async.AnalysisEventHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 异步SQL分析执行器类
- * 使用线程池来执行异步SQL分析任务
+ * 使用线程池来执行异步SQL分析任务，同一SQL指纹的分析在排队或执行期间只保留一个。
+ * 队列满时按配置的策略丢弃任务并计数，永远不会向业务线程抛出异常
  */
-public class AsyncSqlAnalysisExecutor {
-    
+public class AsyncSqlAnalysisExecutor implements AnalysisEventExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncSqlAnalysisExecutor.class);
+
+    /**
+     * 队列满时的丢弃策略
+     */
+    public enum RejectPolicy {
+        /**
+         * 丢弃新提交的任务
+         */
+        DISCARD,
+        /**
+         * 保留耗时最长的任务：队列按耗时排序，耗时长的任务先分析；队列满时新任务比耗时最短的任务更慢则替换掉该任务，否则丢弃新任务
+         */
+        DISCARD_CHEAPEST
+    }
+
     private final ThreadPoolExecutor executor;
+    // 队列满时的丢弃策略
+    private final RejectPolicy rejectPolicy;
+    // 分析事件处理器，通过 dispatch 提交时使用
+    private final AnalysisEventHandler handler;
+    // 分析线程每次最多合并处理的分析事件数
+    private final int batchSize;
+    // 正在排队或执行中的分析任务键（SQL指纹）
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // 因相同任务已在排队或执行而被合并丢弃的次数
+    private final LongAdder deduplicated = new LongAdder();
+    // 因队列已满被丢弃的次数
+    private final LongAdder rejected = new LongAdder();
+    // 任务提交序号，代价相同的任务按提交顺序执行
+    private final AtomicLong sequence = new AtomicLong();
 
     /**
      * 构造函数，初始化线程池
      *
      * @param poolSize       线程池大小，决定了同时可以执行的线程数量
-     * @param asyncQueueSize
+     * @param asyncQueueSize 队列大小
      */
     public AsyncSqlAnalysisExecutor(int poolSize, int asyncQueueSize) {
-        // 创建阻塞队列，用于存储等待执行的任务
-        BlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>(asyncQueueSize);
+        this(poolSize, asyncQueueSize, RejectPolicy.DISCARD);
+    }
+
+    /**
+     * 构造函数，初始化线程池
+     *
+     * @param poolSize       线程池大小，决定了同时可以执行的线程数量
+     * @param asyncQueueSize 队列大小
+     * @param rejectPolicy   队列满时的丢弃策略
+     */
+    public AsyncSqlAnalysisExecutor(int poolSize, int asyncQueueSize, RejectPolicy rejectPolicy) {
+        this(poolSize, asyncQueueSize, rejectPolicy, null);
+    }
+
+    /**
+     * 构造函数，初始化线程池
+     *
+     * @param poolSize       线程池大小，决定了同时可以执行的线程数量
+     * @param asyncQueueSize 队列大小
+     * @param rejectPolicy   队列满时的丢弃策略
+     * @param handler        分析事件处理器，用于 {@link #dispatch}
+     */
+    public AsyncSqlAnalysisExecutor(int poolSize, int asyncQueueSize, RejectPolicy rejectPolicy,
+                                    AnalysisEventHandler handler) {
+        this(poolSize, asyncQueueSize, rejectPolicy, handler, 1);
+    }
+
+    /**
+     * 构造函数，初始化线程池
+     *
+     * @param poolSize       线程池大小，决定了同时可以执行的线程数量
+     * @param asyncQueueSize 队列大小
+     * @param rejectPolicy   队列满时的丢弃策略
+     * @param handler        分析事件处理器，用于 {@link #dispatch}
+     * @param batchSize      分析线程每次最多从队列中合并取出的分析事件数，交给 {@link AnalysisEventHandler#onBatch} 一起处理
+     */
+    public AsyncSqlAnalysisExecutor(int poolSize, int asyncQueueSize, RejectPolicy rejectPolicy,
+                                    AnalysisEventHandler handler, int batchSize) {
+        this.handler = handler;
+        this.batchSize = Math.max(1, batchSize);
+        this.rejectPolicy = rejectPolicy != null ? rejectPolicy : RejectPolicy.DISCARD;
+        // 创建阻塞队列，用于存储等待执行的任务；DISCARD_CHEAPEST 使用按代价排序的队列，替换最便宜的任务只需 O(log n)
+        BlockingQueue<Runnable> taskQueue = this.rejectPolicy == RejectPolicy.DISCARD_CHEAPEST ?
+                new CostOrderedQueue(asyncQueueSize) : new LinkedBlockingQueue<>(asyncQueueSize);
         // 初始化线程池
         // 核心线程数和最大线程数都设置为poolSize，保持线程池大小恒定
         // 空闲线程存活时间为60秒，若无任务执行则自动终止
-        // 使用AbortPolicy处理超出线程池的任务，直接抛出异常
+        // 队列满时由丢弃策略处理，不抛出异常
         this.executor = new ThreadPoolExecutor(
                 poolSize,
                 poolSize,
                 60L, TimeUnit.SECONDS,
                 taskQueue,
-                new ThreadPoolExecutor.AbortPolicy()
+                new SheddingPolicy()
         );
     }
 
@@ -40,14 +135,372 @@ public class AsyncSqlAnalysisExecutor {
      * @param task 要执行的任务，实现Runnable接口的对象
      */
     public void submit(Runnable task) {
-        executor.execute(task);
+        submit(null, 0L, task);
+    }
+
+    /**
+     * 按键合并提交任务
+     * 相同键的任务已在排队或执行时不再提交，直接丢弃并计数
+     *
+     * @param key 任务键，通常为SQL指纹
+     * @param task 要执行的任务
+     * @return 任务被提交返回true，被合并丢弃返回false
+     */
+    public boolean submit(String key, Runnable task) {
+        return submit(key, 0L, task);
+    }
+
+    /**
+     * 按键合并提交任务，并携带任务代价用于队列满时的取舍
+     *
+     * @param key 任务键，通常为SQL指纹，为null时不合并
+     * @param cost 任务代价，通常为SQL执行耗时，DISCARD_CHEAPEST 策略下优先保留代价大的任务
+     * @param task 要执行的任务
+     * @return 任务进入队列返回true，被合并或丢弃返回false
+     */
+    public boolean submit(String key, long cost, Runnable task) {
+        if (key != null && !inFlight.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        AnalysisTask analysisTask = new AnalysisTask(key, cost, null, task);
+        executor.execute(analysisTask);
+        return !analysisTask.discarded;
+    }
+
+    /**
+     * 提交一次分析事件，事件代价为执行耗时
+     *
+     * @param mappedStatement MyBatis 语句
+     * @param boundSql 本次执行的 BoundSql
+     * @param fingerprint SQL 指纹
+     * @param elapsedNanos 执行耗时（纳秒）
+     * @return 分析被接受返回true，被合并或丢弃返回false
+     */
+    @Override
+    public boolean dispatch(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos) {
+        if (fingerprint != null && !inFlight.add(fingerprint)) {
+            deduplicated.increment();
+            return false;
+        }
+        AnalysisEvent event = new AnalysisEvent(mappedStatement, boundSql, fingerprint, elapsedNanos);
+        AnalysisTask analysisTask = new AnalysisTask(fingerprint, elapsedNanos, event, () -> handler.onEvent(event));
+        executor.execute(analysisTask);
+        return !analysisTask.discarded;
+    }
+
+    /**
+     * 获取因相同任务已在排队或执行而被合并丢弃的次数
+     *
+     * @return 合并丢弃次数
+     */
+    @Override
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * 获取因队列已满被丢弃的次数
+     *
+     * @return 丢弃次数
+     */
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
     }
 
     /**
      * 关闭线程池
      * 停止接收新任务，并等待所有已提交的任务完成执行后关闭
      */
+    @Override
     public void shutdown() {
         executor.shutdown();
     }
+
+    /**
+     * 丢弃任务并释放其占用的键
+     */
+    private void discard(AnalysisTask task) {
+        task.discarded = true;
+        if (task.key != null) {
+            inFlight.remove(task.key);
+        }
+        rejected.increment();
+    }
+
+    /**
+     * 从队列中继续取出排队的分析事件，与当前事件合并为一批处理
+     *
+     * @param first 当前执行的分析任务
+     */
+    private void runBatch(AnalysisTask first) {
+        List<AnalysisTask> tasks = new ArrayList<>(batchSize);
+        tasks.add(first);
+        Runnable next;
+        while (tasks.size() < batchSize && (next = executor.getQueue().poll()) != null) {
+            AnalysisTask task = (AnalysisTask) next;
+            if (task.event == null) {
+                task.run();
+            } else {
+                tasks.add(task);
+            }
+        }
+        List<AnalysisEvent> events = new ArrayList<>(tasks.size());
+        for (AnalysisTask task : tasks) {
+            events.add(task.event);
+        }
+        try {
+            handler.onBatch(events);
+        } catch (Exception e) {
+            logger.warn("SQL分析任务执行失败", e);
+        } finally {
+            for (AnalysisTask task : tasks) {
+                if (task.key != null) {
+                    inFlight.remove(task.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 分析任务，携带合并键和代价
+     */
+    private final class AnalysisTask implements Runnable {
+        private final String key;
+        private final long cost;
+        private final long seq = sequence.getAndIncrement();
+        // 通过 dispatch 提交的分析事件，可与其他排队的事件合并处理
+        private final AnalysisEvent event;
+        private final Runnable delegate;
+        private volatile boolean discarded;
+
+        private AnalysisTask(String key, long cost, AnalysisEvent event, Runnable delegate) {
+            this.key = key;
+            this.cost = cost;
+            this.event = event;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            if (event != null && batchSize > 1) {
+                runBatch(this);
+                return;
+            }
+            try {
+                delegate.run();
+            } catch (Exception e) {
+                logger.warn("SQL分析任务执行失败", e);
+            } finally {
+                if (key != null) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 队列满时的丢弃处理，只计数不抛异常
+     */
+    private final class SheddingPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            AnalysisTask task = (AnalysisTask) r;
+            AnalysisTask dropped = task;
+            if (rejectPolicy == RejectPolicy.DISCARD_CHEAPEST && !pool.isShutdown()) {
+                dropped = ((CostOrderedQueue) pool.getQueue()).offerReplacingCheapest(task);
+                if (dropped == null) {
+                    return;
+                }
+            }
+            discard(dropped);
+            if (rejected.sum() % 1000 == 1) {
+                logger.warn("SQL分析队列已满，已丢弃 {} 个分析任务", rejected.sum());
+            }
+        }
+    }
+
+    /**
+     * 按代价排序的有界任务队列，分析线程先取出代价最大的任务，队列满时在锁内以 O(log n) 替换代价最小的任务，
+     * 业务线程提交时不遍历队列
+     */
+    private final class CostOrderedQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+        private final int capacity;
+        // 按代价升序，代价相同时后提交的在前：first() 为最便宜的任务，last() 为最贵且最早提交的任务
+        private final TreeSet<AnalysisTask> tasks = new TreeSet<>(Comparator.<AnalysisTask>comparingLong(t -> t.cost)
+                .thenComparing(Comparator.<AnalysisTask>comparingLong(t -> t.seq).reversed()));
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+
+        private CostOrderedQueue(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        /**
+         * 队列满时用新任务替换代价更小的最便宜任务
+         *
+         * @param task 新任务
+         * @return 被丢弃的任务（被替换的任务或新任务本身），新任务直接入队时返回null
+         */
+        private AnalysisTask offerReplacingCheapest(AnalysisTask task) {
+            lock.lock();
+            try {
+                if (tasks.size() < capacity) {
+                    enqueue(task);
+                    return null;
+                }
+                AnalysisTask cheapest = tasks.first();
+                if (cheapest.cost >= task.cost) {
+                    return task;
+                }
+                tasks.pollFirst();
+                enqueue(task);
+                return cheapest;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void enqueue(AnalysisTask task) {
+            tasks.add(task);
+            notEmpty.signal();
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            lock.lock();
+            try {
+                if (tasks.size() >= capacity) {
+                    return false;
+                }
+                enqueue((AnalysisTask) task);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 任务只通过 execute 非阻塞提交，队列满时交给丢弃策略，不等待空位
+         */
+        @Override
+        public void put(Runnable task) {
+            add(task);
+        }
+
+        @Override
+        public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+            return offer(task);
+        }
+
+        @Override
+        public Runnable poll() {
+            lock.lock();
+            try {
+                return tasks.pollLast();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (tasks.isEmpty()) {
+                    notEmpty.await();
+                }
+                return tasks.pollLast();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (tasks.isEmpty()) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return tasks.pollLast();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable peek() {
+            lock.lock();
+            try {
+                return tasks.isEmpty() ? null : tasks.last();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            lock.lock();
+            try {
+                return o instanceof AnalysisTask && tasks.remove(o);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return tasks.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return capacity - size();
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            lock.lock();
+            try {
+                int n = 0;
+                while (n < maxElements && !tasks.isEmpty()) {
+                    c.add(tasks.pollLast());
+                    n++;
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 返回按执行顺序排列的快照，不反映之后的修改
+         */
+        @Override
+        public Iterator<Runnable> iterator() {
+            lock.lock();
+            try {
+                return new ArrayList<Runnable>(tasks.descendingSet()).iterator();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
@@ -0,0 +1,131 @@
+package com.wuya.mybatis.optimizer;
+
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRuleEngine;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRuleProvider;
+import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.helper.ParsedStatementCache;
+import lombok.Getter;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.wuya.mybatis.optimizer.helper.SqlHepler.prepareSql;
+
+/**
+ * SQL分析上下文
+ * 一次分析中所有优化建议生成器共享的 SQL 信息：原始 SQL、规范化文本、指纹以及只解析一次的语法树，
+ * 避免每个生成器各自调用 prepareSql 和 CCJSqlParserUtil.parse
+ */
+public class SqlAnalysisContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlAnalysisContext.class);
+
+    // 原始SQL
+    @Getter
+    private final String sql;
+    // SQL指纹
+    @Getter
+    private final String fingerprint;
+    // 数据库类型
+    @Getter
+    private final DatabaseType databaseType;
+    // 已解析语句缓存，为null时直接解析
+    private final ParsedStatementCache statementCache;
+    // 语法树规则引擎，为null时每个生成器单独遍历
+    private final SqlAstRuleEngine ruleEngine;
+
+    private String normalizedSql;
+    private String upperSql;
+    private Statement statement;
+    private boolean parsed;
+    private Map<SqlAstRuleProvider, List<String>> astAdvice;
+
+    public SqlAnalysisContext(String sql, String fingerprint, DatabaseType databaseType) {
+        this(sql, fingerprint, databaseType, null);
+    }
+
+    public SqlAnalysisContext(String sql, String fingerprint, DatabaseType databaseType,
+                              ParsedStatementCache statementCache) {
+        this(sql, fingerprint, databaseType, statementCache, null);
+    }
+
+    public SqlAnalysisContext(String sql, String fingerprint, DatabaseType databaseType,
+                              ParsedStatementCache statementCache, SqlAstRuleEngine ruleEngine) {
+        this.sql = sql;
+        this.fingerprint = fingerprint;
+        this.databaseType = databaseType;
+        this.statementCache = statementCache;
+        this.ruleEngine = ruleEngine;
+    }
+
+    /**
+     * 获取去除注释、压缩空白后的 SQL
+     *
+     * @return 规范化的 SQL
+     */
+    public String getNormalizedSql() {
+        if (normalizedSql == null) {
+            normalizedSql = prepareSql(sql);
+        }
+        return normalizedSql;
+    }
+
+    /**
+     * 获取大写的规范化 SQL，用于不区分大小写的文本匹配
+     *
+     * @return 大写的规范化 SQL
+     */
+    public String getUpperSql() {
+        if (upperSql == null) {
+            upperSql = getNormalizedSql().toUpperCase();
+        }
+        return upperSql;
+    }
+
+    /**
+     * 获取解析后的语法树，首次调用时解析（有缓存时按指纹从缓存获取），之后复用
+     *
+     * @return 语法树，解析失败返回null
+     */
+    public Statement getStatement() {
+        if (!parsed) {
+            parsed = true;
+            if (statementCache != null) {
+                String key = fingerprint != null && !fingerprint.isEmpty() ? fingerprint : getNormalizedSql();
+                statement = statementCache.get(key, getNormalizedSql());
+                return statement;
+            }
+            try {
+                statement = CCJSqlParserUtil.parse(getNormalizedSql());
+            } catch (Exception e) {
+                logger.warn("jsqlparser SQL分析失败: {}", e.getMessage());
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * 获取规则提供者在语法树上报告的建议
+     * 引擎包含该提供者时，所有提供者的规则在首次调用时一起遍历一次语法树，之后直接返回结果
+     *
+     * @param provider 规则提供者
+     * @return 建议列表，SQL 无法解析时为空
+     */
+    public List<String> getAstAdvice(SqlAstRuleProvider provider) {
+        if (ruleEngine == null || !ruleEngine.contains(provider)) {
+            Map<SqlAstRuleProvider, List<String>> own =
+                    new SqlAstRuleEngine(Collections.singletonList(provider)).evaluate(getStatement());
+            return own.getOrDefault(provider, new ArrayList<>());
+        }
+        if (astAdvice == null) {
+            astAdvice = ruleEngine.evaluate(getStatement());
+        }
+        return new ArrayList<>(astAdvice.getOrDefault(provider, Collections.emptyList()));
+    }
+}
@@ -1,16 +1,42 @@
 package com.wuya.mybatis.optimizer;
 
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Policy;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.wuya.mybatis.cache.AnalysisStore;
 import com.wuya.mybatis.cache.CacheFactory;
+import com.wuya.mybatis.cache.PersistentPlanStore;
+import com.wuya.mybatis.cache.StoredAnalysis;
+import com.wuya.mybatis.cache.TableFingerprintIndex;
 import com.wuya.mybatis.exception.SqlOptimizerException;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRuleEngine;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRuleProvider;
+import com.wuya.mybatis.optimizer.analyzer.DatabaseInfo;
+import com.wuya.mybatis.optimizer.analyzer.DatabaseInfoRegistry;
 import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.async.AnalysisEvent;
+import com.wuya.mybatis.optimizer.async.AnalysisEventExecutor;
+import com.wuya.mybatis.optimizer.async.AnalysisEventHandler;
+import com.wuya.mybatis.optimizer.async.RingBufferAnalysisExecutor;
+import com.wuya.mybatis.optimizer.async.VirtualThreadAnalysisExecutor;
+import com.wuya.mybatis.optimizer.connection.AnalysisConnection;
+import com.wuya.mybatis.optimizer.connection.AnalysisConnectionManager;
 import com.wuya.mybatis.optimizer.analyzer.ExplainResultAnalyzer;
+import com.wuya.mybatis.optimizer.helper.ParsedStatementCache;
+import com.wuya.mybatis.optimizer.helper.SqlDdlHelper;
+import com.wuya.mybatis.optimizer.helper.SqlFingerprintHelper;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
+import com.wuya.mybatis.optimizer.sampling.StatementRateLimiter;
+import com.wuya.mybatis.optimizer.stats.SqlExecutionStatsRegistry;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.util.TablesNamesFinder;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.plugin.*;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -18,15 +44,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 
+import java.io.IOException;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.sql.DataSource;
+
 import static com.wuya.mybatis.optimizer.helper.SqlHepler.shouldExplain;
 
 /**
@@ -49,16 +88,46 @@ public class SqlAnalysisInterceptor implements Interceptor, DisposableBean {
 
     // SQL优化属性配置
     private final SqlOptimizerProperties properties;
-    // SQL解释结果分析器列表
-    private final List<ExplainResultAnalyzer> analyzers;
     // SQL优化建议生成器列表
     private final List<SqlOptimizationAdvice> adviceGenerators;
     // SQL分析报告器列表
     private final List<SqlAnalysisReporter> reporters;
     // 异步SQL分析执行器
-    private final AsyncSqlAnalysisExecutor asyncExecutor;
-    // SQL分析缓存
-    private final Cache<String, SqlExplainResult> analysisCache;
+    private final AnalysisEventExecutor asyncExecutor;
+    // SQL分析结果缓存，键为SQL指纹，值为不可变的分析结果
+    private final Cache<String, SqlAnalysisOutcome> analysisCache;
+    // SQL -> 指纹缓存，避免每次执行都重新计算指纹
+    private final Cache<String, String> fingerprintCache;
+    // 语句执行统计注册表
+    private final SqlExecutionStatsRegistry statsRegistry;
+    // 按语句限流的采样器，未配置时使用全局采样率
+    private final StatementRateLimiter rateLimiter;
+    // 分析连接管理器，限制分析占用的连接数并复用连接
+    private final AnalysisConnectionManager connectionManager;
+    // 数据源 -> 数据库类型/版本及对应分析器
+    private final DatabaseInfoRegistry databaseInfoRegistry;
+    // 按SQL指纹缓存的语法树，含解析失败的负缓存
+    private final ParsedStatementCache statementCache;
+    // 合并所有生成器语法树规则的引擎，每次分析只遍历一次语法树
+    private final SqlAstRuleEngine ruleEngine;
+    // 表/索引 -> SQL指纹 反向索引，DDL 后只使相关的分析结果失效
+    private final TableFingerprintIndex tableIndex = new TableFingerprintIndex();
+    // 分析结果提前刷新的时间（纳秒），0表示不刷新
+    private final long refreshAfterNanos;
+    // 正在后台刷新的SQL指纹
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    // 是否紧凑编码缓存的执行计划
+    private final boolean compactPlans;
+    // 分析结果的本地持久化存储，未配置时为null
+    private final PersistentPlanStore planStore;
+    // 分析结果的过期时间（纳秒），0表示不过期
+    private final long expireAfterNanos;
+    // 多个节点共享的二级分析结果存储，未配置时为null
+    private final AnalysisStore sharedStore;
+    // 正在分析的SQL指纹 -> 分析结果，同一指纹并发分析时其余线程等待，不在缓存的计算函数中执行EXPLAIN和存储读写
+    private final Map<String, CompletableFuture<SqlAnalysisOutcome>> inFlight = new ConcurrentHashMap<>();
+    // 语句id -> 是否可能为 DDL，按映射的静态文本只判断一次，普通的增删改不构建BoundSql
+    private final Map<String, Boolean> ddlStatements = new ConcurrentHashMap<>();
 
     /**
      * 构造函数
@@ -73,17 +142,277 @@ public class SqlAnalysisInterceptor implements Interceptor, DisposableBean {
                                   List<ExplainResultAnalyzer> analyzers,
                                   List<SqlOptimizationAdvice> adviceGenerators,
                                   List<SqlAnalysisReporter> reporters, CacheFactory cacheFactory) {
+        this(properties, analyzers, adviceGenerators, reporters, cacheFactory,
+                properties.isStatsEnabled() ? new SqlExecutionStatsRegistry(properties.getStatsMaxStatements()) : null);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param properties SQL优化属性配置
+     * @param analyzers SQL解释结果分析器列表
+     * @param adviceGenerators SQL优化建议生成器列表
+     * @param reporters SQL分析报告器列表
+     * @param cacheFactory 缓存工厂，用于创建SQL分析缓存
+     * @param statsRegistry 语句执行统计注册表，为null时不统计
+     */
+    public SqlAnalysisInterceptor(SqlOptimizerProperties properties,
+                                  List<ExplainResultAnalyzer> analyzers,
+                                  List<SqlOptimizationAdvice> adviceGenerators,
+                                  List<SqlAnalysisReporter> reporters, CacheFactory cacheFactory,
+                                  SqlExecutionStatsRegistry statsRegistry) {
         this.properties = properties;
-        this.analyzers = analyzers;
+        this.databaseInfoRegistry = new DatabaseInfoRegistry(analyzers);
+        this.statementCache = new ParsedStatementCache(properties.getParseCacheSize(), properties.getParseTimeoutMillis());
         this.adviceGenerators = adviceGenerators != null ? adviceGenerators : Collections.emptyList();
+        this.ruleEngine = new SqlAstRuleEngine(this.adviceGenerators.stream()
+                .filter(SqlAstRuleProvider.class::isInstance)
+                .map(SqlAstRuleProvider.class::cast)
+                .collect(Collectors.toList()));
         this.reporters = reporters;
-        this.asyncExecutor = properties.isAsyncAnalysis() ?
-                new AsyncSqlAnalysisExecutor(properties.getAsyncThreads(),properties.getAsyncQueueSize()) : null;
-        this.analysisCache = cacheFactory.getCache();
+        this.asyncExecutor = properties.isAsyncAnalysis() ? createAsyncExecutor(properties) : null;
+        this.analysisCache = cacheFactory.getCache((String fingerprint, SqlAnalysisOutcome outcome, RemovalCause cause) -> {
+            if (fingerprint != null && outcome != null) {
+                tableIndex.unregister(fingerprint, outcome.getObjects());
+            }
+        }, (String fingerprint, SqlAnalysisOutcome outcome) -> 40 + 2 * fingerprint.length() + outcome.getEstimatedBytes());
+        this.compactPlans = cacheFactory.isCompactPlans();
+        Duration expireAfter = cacheFactory.getExpireAfter();
+        this.expireAfterNanos = expireAfter != null ? expireAfter.toNanos() : 0L;
+        this.planStore = analysisCache != null ? cacheFactory.getPlanStore() : null;
+        this.sharedStore = analysisCache != null ? cacheFactory.getAnalysisStore() : null;
+        if (planStore != null) {
+            restoreFromStore();
+        }
+        Duration refreshAfter = cacheFactory.getRefreshAfter();
+        this.refreshAfterNanos = refreshAfter != null ? refreshAfter.toNanos() : 0L;
+        this.fingerprintCache = properties.getFingerprintCacheSize() > 0 ?
+                Caffeine.newBuilder().maximumSize(properties.getFingerprintCacheSize()).build() : null;
+        this.statsRegistry = statsRegistry;
+        this.rateLimiter = properties.getStatementAnalysesPerMinute() > 0 ?
+                new StatementRateLimiter(properties.getStatementAnalysesPerMinute(), properties.getStatementAnalysisBurst()) : null;
+        // 异步分析线程等待连接预算并复用空闲连接；同步分析在业务线程上执行，最多等待配置的时间，连接用完即还
+        boolean async = properties.isAsyncAnalysis();
+        this.connectionManager = new AnalysisConnectionManager(properties.getExplainMaxConnections(),
+                async ? -1L : properties.getExplainConnectionTimeoutMillis(),
+                async && properties.isExplainConnectionReuse(),
+                properties.getExplainConnectionIdleMillis(), properties.getExplainStatementCacheSize());
+    }
+
+    /**
+     * 从持久化存储装入上次运行的分析结果，分析时间按写入时间回推，到期后照常刷新和过期
+     */
+    private void restoreFromStore() {
+        List<StoredAnalysis> records;
+        try {
+            records = planStore.load();
+        } catch (IOException e) {
+            logger.warn("读取分析结果持久化存储失败", e);
+            return;
+        }
+        int restored = 0;
+        for (StoredAnalysis record : records) {
+            try {
+                SqlAnalysisOutcome outcome = SqlAnalysisOutcome.fromBytes(record.getPayload(),
+                        TimeUnit.MILLISECONDS.toNanos(record.getAgeMillis()), compactPlans);
+                cacheOutcome(record.getFingerprint(), outcome);
+                restored++;
+            } catch (RuntimeException e) {
+                logger.debug("忽略无法解析的持久化分析结果 [{}]", record.getFingerprint(), e);
+            }
+        }
+        logger.info("已从持久化存储装入 {} 条SQL分析结果", restored);
+    }
+
+    /**
+     * 把成功的分析结果追加到持久化存储，写入失败只记录日志
+     *
+     * @param fingerprint SQL指纹
+     * @param outcome 分析结果
+     */
+    private void persist(String fingerprint, SqlAnalysisOutcome outcome) {
+        if (planStore == null || outcome.isFailed()) {
+            return;
+        }
+        try {
+            planStore.put(fingerprint, outcome.toBytes());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("写入分析结果持久化存储失败 [{}]: {}", fingerprint, e.getMessage());
+        }
+    }
+
+    /**
+     * 从共享存储读取其他节点发布的分析结果，不写入本地缓存；已过期或读取失败时返回null
+     *
+     * @param fingerprint SQL指纹
+     * @return 分析结果或null
+     */
+    private SqlAnalysisOutcome loadShared(String fingerprint) {
+        if (sharedStore == null) {
+            return null;
+        }
+        StoredAnalysis stored;
+        try {
+            stored = sharedStore.find(fingerprint);
+        } catch (RuntimeException e) {
+            logger.warn("读取共享分析结果失败: {}", e.getMessage());
+            return null;
+        }
+        if (stored == null) {
+            return null;
+        }
+        long ageNanos = TimeUnit.MILLISECONDS.toNanos(stored.getAgeMillis());
+        if (expireAfterNanos > 0 && ageNanos >= expireAfterNanos) {
+            return null;
+        }
+        try {
+            return SqlAnalysisOutcome.fromBytes(stored.getPayload(), ageNanos, compactPlans);
+        } catch (RuntimeException e) {
+            // 格式不兼容（如升级后版本不同），删除后由认领的节点重新分析
+            logger.debug("忽略无法解析的共享分析结果 [{}]", fingerprint, e);
+            removeShared(Collections.singleton(fingerprint));
+            return null;
+        }
+    }
+
+    /**
+     * 认领共享存储中指纹的分析租约，未配置共享存储或存储不可用时总是由本节点分析
+     *
+     * @param fingerprint SQL指纹
+     * @param freshNanos 在该时间内发布的结果视为仍然有效，0表示已发布的结果一直有效
+     * @return 由本节点分析返回true
+     */
+    private boolean claimShared(String fingerprint, long freshNanos) {
+        if (sharedStore == null) {
+            return true;
+        }
+        long staleBeforeMillis = freshNanos > 0 ? System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(freshNanos) : 0L;
+        try {
+            return sharedStore.claim(fingerprint, staleBeforeMillis);
+        } catch (RuntimeException e) {
+            logger.warn("认领共享分析租约失败，由本节点分析: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 发布成功的分析结果并释放租约；分析失败时保留租约直到到期，其他节点不会立即重复失败的分析
+     *
+     * @param fingerprint SQL指纹
+     * @param outcome 分析结果
+     */
+    private void publishShared(String fingerprint, SqlAnalysisOutcome outcome) {
+        if (sharedStore == null || outcome.isFailed()) {
+            return;
+        }
+        try {
+            sharedStore.publish(fingerprint, outcome.toBytes());
+        } catch (RuntimeException e) {
+            logger.warn("发布共享分析结果失败 [{}]: {}", fingerprint, e.getMessage());
+        }
+    }
+
+    /**
+     * 放弃租约
+     *
+     * @param fingerprint SQL指纹
+     */
+    private void releaseShared(String fingerprint) {
+        try {
+            sharedStore.release(fingerprint);
+        } catch (RuntimeException e) {
+            logger.warn("释放共享分析租约失败 [{}]: {}", fingerprint, e.getMessage());
+        }
+    }
+
+    /**
+     * 从共享存储删除分析结果，空集合表示删除所有结果
+     *
+     * @param fingerprints SQL指纹
+     */
+    private void removeShared(Collection<String> fingerprints) {
+        if (sharedStore == null) {
+            return;
+        }
+        try {
+            if (fingerprints.isEmpty()) {
+                sharedStore.clear();
+            } else {
+                sharedStore.remove(fingerprints);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("从共享存储删除分析结果失败: {}", e.getMessage());
+        }
     }
 
     /**
-     * 拦截MyBatis操作，对SQL进行分析
+     * 采用其他节点发布的分析结果，写入本地缓存和持久化存储
+     *
+     * @param fingerprint SQL指纹
+     * @param outcome 分析结果
+     */
+    private void adopt(String fingerprint, SqlAnalysisOutcome outcome) {
+        cacheOutcome(fingerprint, outcome);
+        persist(fingerprint, outcome);
+    }
+
+    /**
+     * 写入或替换缓存的分析结果并更新反向索引
+     * 淘汰回调只在容量和过期淘汰时触发，替换时由这里移除旧结果涉及而新结果不再涉及的表和索引
+     *
+     * @param fingerprint SQL指纹
+     * @param outcome 分析结果
+     */
+    private void cacheOutcome(String fingerprint, SqlAnalysisOutcome outcome) {
+        tableIndex.register(fingerprint, outcome.getObjects());
+        SqlAnalysisOutcome previous = analysisCache.asMap().put(fingerprint, outcome);
+        if (previous != null && previous != outcome) {
+            Set<String> stale = new HashSet<>(previous.getObjects());
+            stale.removeAll(outcome.getObjects());
+            tableIndex.unregister(fingerprint, stale);
+        }
+    }
+
+    /**
+     * 根据配置创建异步分析执行器
+     *
+     * @param properties SQL优化属性配置
+     * @return 异步分析执行器
+     */
+    private AnalysisEventExecutor createAsyncExecutor(SqlOptimizerProperties properties) {
+        AnalysisEventHandler handler = new AnalysisEventHandler() {
+            @Override
+            public void onEvent(AnalysisEvent event) {
+                handleAnalysis(event);
+            }
+
+            @Override
+            public void onBatch(List<AnalysisEvent> events) {
+                handleAnalysisBatch(events);
+            }
+        };
+        if (properties.getExecutor() == SqlOptimizerProperties.ExecutorType.VIRTUAL) {
+            return new VirtualThreadAnalysisExecutor(properties.getVirtualMaxConcurrency(), handler);
+        }
+        if (properties.getAsyncQueueType() == SqlOptimizerProperties.AsyncQueueType.RING) {
+            return new RingBufferAnalysisExecutor(properties.getAsyncThreads(), properties.getAsyncQueueSize(),
+                    properties.getAsyncBatchSize(), handler);
+        }
+        return new AsyncSqlAnalysisExecutor(properties.getAsyncThreads(), properties.getAsyncQueueSize(),
+                properties.getAsyncRejectPolicy(), handler, properties.getAsyncBatchSize());
+    }
+
+    /**
+     * 获取语句执行统计注册表
+     *
+     * @return 统计注册表，未启用统计时返回null
+     */
+    public SqlExecutionStatsRegistry getStatsRegistry() {
+        return statsRegistry;
+    }
+
+    /**
+     * 拦截MyBatis操作，记录执行统计并对SQL进行分析
      *
      * @param invocation MyBatis拦截器调用对象
      * @return 操作结果
@@ -91,102 +420,560 @@ public class SqlAnalysisInterceptor implements Interceptor, DisposableBean {
      */
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
-        // 判断是否启用SQL分析以及是否满足采样率条件
-        if (!properties.isEnabled() ||
-                (properties.getSampleRate() < 1.0 &&
-                        ThreadLocalRandom.current().nextDouble() >= properties.getSampleRate())) {
+        // 判断是否启用SQL分析
+        if (!properties.isEnabled()) {
             return invocation.proceed();
         }
 
-        // 记录SQL执行开始时间
-        long startTime = System.currentTimeMillis();
+        // 获取MappedStatement对象
+        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+
+        // 记录SQL执行耗时（纳秒）
+        long startNanos = System.nanoTime();
         // 执行MyBatis操作并获取结果
         Object result = invocation.proceed();
-        // 记录SQL执行结束时间
-        long endTime = System.currentTimeMillis();
-        // 计算SQL执行时间
-        long executionTime = endTime - startTime;
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        // 记录每一次执行的统计信息，已有BoundSql时带上SQL指纹，否则按配置决定是否为统计构建BoundSql
+        BoundSql boundSql = null;
+        String fingerprint = null;
+        if (statsRegistry != null) {
+            if (statsByFingerprint(invocation)) {
+                boundSql = resolveBoundSql(invocation);
+                fingerprint = fingerprintOf(boundSql.getSql());
+            }
+            statsRegistry.record(mappedStatement.getId(), fingerprint, elapsedNanos);
+        }
 
-        // 只分析超过阈值的SQL或配置了explainAll
-        if (properties.isExplainAll() || executionTime > properties.getThresholdMillis()) {
-            analyzeSql(invocation, executionTime);
+        // 改变执行计划的DDL（通过update执行）使相关的分析结果失效，只有DDL语句才构建BoundSql
+        if (analysisCache != null && mappedStatement.getSqlCommandType() == SqlCommandType.UPDATE
+                && mayBeDdl(mappedStatement)) {
+            if (boundSql == null) {
+                boundSql = resolveBoundSql(invocation);
+            }
+            invalidateForDdl(boundSql.getSql());
+        }
+
+        // 计算SQL执行时间（毫秒）
+        long executionTime = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+
+        // 只分析超过阈值的SQL或配置了explainAll，并且满足采样条件；BoundSql和指纹只在需要分析时构建
+        if ((properties.isExplainAll() || executionTime > properties.getThresholdMillis())
+                && shouldSample(mappedStatement)) {
+            if (boundSql == null) {
+                boundSql = resolveBoundSql(invocation);
+            }
+            if (fingerprint == null) {
+                fingerprint = fingerprintOf(boundSql.getSql());
+            }
+            analyzeSql(mappedStatement, boundSql, fingerprint, elapsedNanos);
         }
 
         return result;
     }
 
     /**
-     * 分析SQL性能并生成优化建议
+     * 判断本次执行是否需要分析
+     * 配置了按语句限流时，每条语句按令牌桶限流（首次出现一定分析）；否则按全局采样率随机采样
+     *
+     * @param mappedStatement MyBatis语句对象
+     * @return 需要分析返回true
+     */
+    private boolean shouldSample(MappedStatement mappedStatement) {
+        if (rateLimiter != null) {
+            return rateLimiter.tryAcquire(mappedStatement.getId());
+        }
+        return properties.getSampleRate() >= 1.0 ||
+                ThreadLocalRandom.current().nextDouble() < properties.getSampleRate();
+    }
+
+    /**
+     * 判断本次执行是否按 语句id + SQL指纹 统计
+     * AUTO 只在6参数的query已携带BoundSql且指纹有缓存时使用指纹，不为统计额外构建BoundSql或切分SQL
      *
      * @param invocation MyBatis拦截器调用对象
-     * @param executionTime SQL执行时间
+     * @return 按指纹统计返回true
      */
-    private void analyzeSql(Invocation invocation, long executionTime) {
-        // 获取MappedStatement对象
-        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
-        // 获取参数对象
-        Object parameter = invocation.getArgs()[1];
-        // 获取BoundSql对象
-        BoundSql boundSql = mappedStatement.getBoundSql(parameter);
-        // 获取SQL语句
-        String sql = boundSql.getSql();
+    private boolean statsByFingerprint(Invocation invocation) {
+        switch (properties.getStatsKey()) {
+            case FINGERPRINT:
+                return true;
+            case STATEMENT:
+                return false;
+            default:
+                return fingerprintCache != null && invocation.getArgs().length == 6;
+        }
+    }
+
+    /**
+     * 获取本次执行的BoundSql
+     * 6参数的query方法已携带MyBatis构建好的BoundSql，直接复用；其余方法在执行后需要时再构建
+     *
+     * @param invocation MyBatis拦截器调用对象
+     * @return BoundSql对象
+     */
+    private BoundSql resolveBoundSql(Invocation invocation) {
+        Object[] args = invocation.getArgs();
+        if (args.length == 6) {
+            return (BoundSql) args[5];
+        }
+        return ((MappedStatement) args[0]).getBoundSql(args[1]);
+    }
+
+    /**
+     * 判断update语句是否可能是DDL，按语句id只判断一次
+     * 根据映射中SQL开头的静态文本判断，不构建BoundSql；Provider 或以动态标签开头的映射需要在 ddl-statements 中声明
+     *
+     * @param mappedStatement MyBatis语句对象
+     * @return 可能是DDL返回true
+     */
+    private boolean mayBeDdl(MappedStatement mappedStatement) {
+        return ddlStatements.computeIfAbsent(mappedStatement.getId(),
+                id -> properties.getDdlStatements().contains(id) || SqlDdlHelper.isDdlSource(mappedStatement.getSqlSource()));
+    }
+
+    /**
+     * 获取SQL指纹，优先从指纹缓存中获取
+     *
+     * @param sql SQL语句
+     * @return SQL指纹
+     */
+    private String fingerprintOf(String sql) {
+        return fingerprintCache != null ?
+                fingerprintCache.get(sql, SqlFingerprintHelper::fingerprint) :
+                SqlFingerprintHelper.fingerprint(sql);
+    }
 
+    /**
+     * DDL 执行后使涉及的表或索引相关的分析结果失效，不带表名的 DDL（如 ANALYZE）使所有分析结果失效
+     *
+     * @param sql 执行的SQL
+     */
+    private void invalidateForDdl(String sql) {
+        List<String> objects = SqlDdlHelper.affectedObjects(sql);
+        if (objects == null) {
+            return;
+        }
+        if (objects.isEmpty()) {
+            analysisCache.invalidateAll();
+            tableIndex.clear();
+            if (planStore != null) {
+                try {
+                    planStore.clear();
+                } catch (IOException e) {
+                    logger.warn("清空分析结果持久化存储失败: {}", e.getMessage());
+                }
+            }
+            removeShared(Collections.emptySet());
+            logger.info("检测到DDL，已清空SQL分析缓存: {}", sql);
+            return;
+        }
+        int invalidated = 0;
+        for (String name : objects) {
+            Set<String> fingerprints = tableIndex.remove(name);
+            // 显式失效不触发淘汰回调，逐条移除并注销这些结果涉及的其他表和索引
+            for (String fingerprint : fingerprints) {
+                SqlAnalysisOutcome removed = analysisCache.asMap().remove(fingerprint);
+                if (removed != null) {
+                    tableIndex.unregister(fingerprint, removed.getObjects());
+                }
+            }
+            invalidated += fingerprints.size();
+            if (planStore != null && !fingerprints.isEmpty()) {
+                try {
+                    planStore.remove(fingerprints);
+                } catch (IOException e) {
+                    logger.warn("从分析结果持久化存储删除失败: {}", e.getMessage());
+                }
+            }
+            if (!fingerprints.isEmpty()) {
+                removeShared(fingerprints);
+            }
+        }
+        logger.info("检测到DDL，已使 {} 条相关的SQL分析结果失效: {}", invalidated, objects);
+    }
+
+    /**
+     * 分析SQL性能并生成优化建议
+     *
+     * @param mappedStatement MyBatis语句对象
+     * @param boundSql 本次执行的BoundSql对象，分析过程不再重新构建
+     * @param fingerprint SQL指纹
+     * @param elapsedNanos SQL执行耗时（纳秒）
+     */
+    private void analyzeSql(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos) {
         // 判断是否需要执行分析
-        if (!shouldExplain(sql)) return;
-
-        // 定义SQL分析任务
-        Runnable analysisTask = () -> {
-            try (Connection connection = mappedStatement.getConfiguration()
-                    .getEnvironment()
-                    .getDataSource()
-                    .getConnection()) {
-                // 获取数据库类型
-                DatabaseType dbType = DatabaseType.fromUrl(connection.getMetaData().getURL());
-                // 缓存分析结果
-                Supplier<SqlExplainResult> sqlExplainResultSupplier = () -> {
+        if (!shouldExplain(boundSql.getSql())) return;
+
+        // 选择同步/异步执行分析
+        if (properties.isAsyncAnalysis() && asyncExecutor != null) {
+            // 同一指纹的分析已在排队或执行时合并，避免慢SQL风暴下重复EXPLAIN；队列满时丢弃，不影响业务线程
+            asyncExecutor.dispatch(mappedStatement, boundSql, fingerprint, elapsedNanos);
+        } else {
+            // 同步分析失败只记录日志，不影响已成功的业务调用
+            try {
+                handleAnalysis(new AnalysisEvent(mappedStatement, boundSql, fingerprint, elapsedNanos));
+            } catch (Exception e) {
+                logger.warn("SQL分析失败 [{}]", mappedStatement.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 执行一次SQL分析：缓存命中时直接报告，不获取连接，命中的结果较旧时再在后台重新分析；
+     * 否则获取执行计划、生成优化建议并缓存后报告
+     *
+     * @param event 分析事件
+     */
+    private void handleAnalysis(AnalysisEvent event) {
+        SqlAnalysisOutcome cached = cachedOutcome(event);
+        boolean refresh = false;
+        if (cached != null) {
+            report(cached, event);
+            if (!(refresh = startRefresh(event, cached))) {
+                return;
+            }
+        }
+        try (AnalysisConnection analysisConnection = connectionManager.acquire(dataSourceOf(event))) {
+            // 分析连接预算耗尽，跳过本次分析
+            if (analysisConnection == null) {
+                return;
+            }
+            if (refresh) {
+                refresh(analysisConnection.getConnection(), event);
+            } else {
+                analyze(analysisConnection.getConnection(), event);
+            }
+        } catch (SqlOptimizerException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SqlOptimizerException("SQL分析失败", e);
+        } finally {
+            if (refresh) {
+                refreshing.remove(event.getFingerprint());
+            }
+        }
+    }
+
+    /**
+     * 批量执行SQL分析：缓存命中的事件直接报告，其余以及需要刷新的事件按数据源分组，
+     * 同一数据源的分析在一个连接上连续执行，单个分析失败不影响其余分析
+     *
+     * @param events 分析事件
+     */
+    private void handleAnalysisBatch(List<AnalysisEvent> events) {
+        if (events.size() == 1) {
+            handleAnalysis(events.get(0));
+            return;
+        }
+        Map<DataSource, List<AnalysisEvent>> groups = new IdentityHashMap<>();
+        Set<AnalysisEvent> refreshEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AnalysisEvent event : events) {
+            SqlAnalysisOutcome cached = cachedOutcome(event);
+            if (cached != null) {
+                try {
+                    report(cached, event);
+                } catch (Exception e) {
+                    logger.warn("SQL分析报告失败: {}", event.getStatementId(), e);
+                }
+                if (!startRefresh(event, cached)) {
+                    continue;
+                }
+                refreshEvents.add(event);
+            }
+            groups.computeIfAbsent(dataSourceOf(event), ds -> new ArrayList<>()).add(event);
+        }
+        for (Map.Entry<DataSource, List<AnalysisEvent>> group : groups.entrySet()) {
+            try (AnalysisConnection analysisConnection = connectionManager.acquire(group.getKey())) {
+                // 分析连接预算耗尽，跳过这一组分析
+                if (analysisConnection == null) {
+                    continue;
+                }
+                for (AnalysisEvent event : group.getValue()) {
                     try {
-                        return analyzers.stream()
-                                .filter(a -> a.getDatabaseType() == dbType)
-                                .findFirst()
-                                .orElseThrow(() -> new SqlOptimizerException("No analyzer found for database: " + dbType))
-                                .analyze(connection, boundSql,invocation);
+                        if (refreshEvents.contains(event)) {
+                            refresh(analysisConnection.getConnection(), event);
+                        } else {
+                            analyze(analysisConnection.getConnection(), event);
+                        }
                     } catch (Exception e) {
-                        throw new SqlOptimizerException("get SqlExplainResult fail message: ",e);
+                        logger.warn("SQL分析失败: {}", event.getStatementId(), e);
                     }
-                };
-
-                // 获取分析结果，是否从缓存中获取
-                SqlExplainResult explainResult;
-                if (analysisCache != null) {
-                    explainResult = analysisCache.get(sql, k -> sqlExplainResultSupplier.get());
-                } else {
-                    explainResult = sqlExplainResultSupplier.get();
                 }
-
-                // 记录统计信息（可选）
-                logCacheStats();
-                // 设置执行时间
-                Objects.requireNonNull(explainResult).setExecutionTime(executionTime);
-                // 生成优化建议
-                List<String> adviceList = adviceGenerators.stream()
-                        .filter(advice -> advice.supports(dbType))
-                        .flatMap(advice -> advice.generateAdvice(explainResult).stream())
-                        .collect(Collectors.toList());
-                explainResult.setAdviceList(adviceList);
-
-                // 报告结果
-                reporters.forEach(reporter -> reporter.report(explainResult, dbType,mappedStatement.getId()));
             } catch (Exception e) {
-                throw new SqlOptimizerException("SQL分析失败", e);
+                logger.warn("获取分析连接失败", e);
             }
-        };
+        }
+        for (AnalysisEvent event : refreshEvents) {
+            refreshing.remove(event.getFingerprint());
+        }
+    }
 
-        // 选择同步/异步执行分析
-        if (properties.isAsyncAnalysis() && asyncExecutor != null) {
-            asyncExecutor.submit(analysisTask);
+    private static DataSource dataSourceOf(AnalysisEvent event) {
+        return event.getMappedStatement().getConfiguration().getEnvironment().getDataSource();
+    }
+
+    /**
+     * 从缓存中查找分析结果
+     *
+     * @param event 分析事件
+     * @return 缓存的分析结果，未缓存时返回null
+     */
+    private SqlAnalysisOutcome cachedOutcome(AnalysisEvent event) {
+        if (analysisCache == null) {
+            return null;
+        }
+        String fingerprint = event.getFingerprint();
+        SqlAnalysisOutcome cached = analysisCache.getIfPresent(fingerprint);
+        // 从持久化存储装入的结果按原分析时间过期，缓存本身只从装入时开始计时
+        if (cached != null && expireAfterNanos > 0 && cached.getAgeNanos() >= expireAfterNanos) {
+            if (analysisCache.asMap().remove(fingerprint, cached)) {
+                tableIndex.unregister(fingerprint, cached.getObjects());
+            }
+            cached = null;
+        }
+        // 本地未命中时查找其他节点发布的结果
+        if (cached == null && (cached = loadShared(fingerprint)) != null) {
+            adopt(fingerprint, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * 判断命中的分析结果是否需要提前刷新，需要时占用该指纹的刷新标记，同一指纹同时只刷新一次；
+     * 只在异步分析线程上刷新，同步分析时不在业务线程上重新执行EXPLAIN，结果到期后由过期策略重新分析
+     *
+     * @param event 分析事件
+     * @param cached 命中的分析结果
+     * @return 需要刷新返回true，调用方负责刷新后释放标记
+     */
+    private boolean startRefresh(AnalysisEvent event, SqlAnalysisOutcome cached) {
+        return asyncExecutor != null && refreshAfterNanos > 0 && cached.getAgeNanos() >= refreshAfterNanos
+                && refreshing.add(event.getFingerprint());
+    }
+
+    /**
+     * 在后台重新分析一个已缓存的事件并替换缓存，本次执行已基于旧结果报告，不再重复报告；
+     * 重新分析失败时保留原有的成功结果
+     *
+     * @param connection 分析连接
+     * @param event 分析事件
+     */
+    private void refresh(Connection connection, AnalysisEvent event) throws SQLException {
+        DatabaseInfo databaseInfo = databaseInfoRegistry.resolve(dataSourceOf(event), connection);
+        ExplainResultAnalyzer analyzer = databaseInfoRegistry.analyzerFor(databaseInfo.getType());
+        if (analyzer == null) {
+            return;
+        }
+        String fingerprint = event.getFingerprint();
+        if (!claimShared(fingerprint, refreshAfterNanos)) {
+            // 其他节点正在刷新或已经刷新，采用其发布的较新结果
+            SqlAnalysisOutcome shared = loadShared(fingerprint);
+            SqlAnalysisOutcome cached = analysisCache.getIfPresent(fingerprint);
+            if (shared != null && (cached == null || shared.getAgeNanos() < cached.getAgeNanos())) {
+                adopt(fingerprint, shared);
+            }
+            return;
+        }
+        SqlAnalysisOutcome outcome;
+        try {
+            outcome = computeOutcome(connection, event, databaseInfo, analyzer);
+        } catch (RuntimeException e) {
+            if (sharedStore != null) {
+                releaseShared(fingerprint);
+            }
+            throw e;
+        }
+        SqlAnalysisOutcome cached = analysisCache.getIfPresent(fingerprint);
+        if (!outcome.isFailed() || cached == null || cached.isFailed()) {
+            cacheOutcome(fingerprint, outcome);
+            persist(fingerprint, outcome);
+        }
+        publishShared(fingerprint, outcome);
+    }
+
+    /**
+     * 在给定连接上分析一个事件，分析结果按SQL指纹缓存，分析失败同样缓存；
+     * 分析和存储读写在缓存的计算函数之外执行，不占用缓存的锁
+     *
+     * @param connection 分析连接
+     * @param event 分析事件
+     */
+    private void analyze(Connection connection, AnalysisEvent event) throws SQLException {
+        // 获取数据库类型和版本，每个数据源只解析一次
+        DatabaseInfo databaseInfo = databaseInfoRegistry.resolve(dataSourceOf(event), connection);
+        DatabaseType dbType = databaseInfo.getType();
+        ExplainResultAnalyzer analyzer = databaseInfoRegistry.analyzerFor(dbType);
+        if (analyzer == null) {
+            throw new SqlOptimizerException("No analyzer found for database: " + dbType);
+        }
+
+        // 获取分析结果，同一指纹并发分析时只执行一次
+        SqlAnalysisOutcome outcome;
+        if (analysisCache != null) {
+            String fingerprint = event.getFingerprint();
+            CompletableFuture<SqlAnalysisOutcome> analysis = new CompletableFuture<>();
+            CompletableFuture<SqlAnalysisOutcome> running = inFlight.putIfAbsent(fingerprint, analysis);
+            if (running != null) {
+                outcome = await(running);
+            } else {
+                try {
+                    // 等待期间其他线程可能已完成分析
+                    outcome = analysisCache.getIfPresent(fingerprint);
+                    if (outcome == null) {
+                        outcome = loadOrCompute(connection, event, databaseInfo, analyzer);
+                    }
+                    analysis.complete(outcome);
+                } catch (RuntimeException e) {
+                    analysis.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(fingerprint, analysis);
+                }
+            }
         } else {
-            analysisTask.run();
+            outcome = computeOutcome(connection, event, databaseInfo, analyzer);
+        }
+
+        // 其他节点持有该SQL的分析租约，本次不报告，之后从共享存储取得结果
+        if (outcome == null) {
+            logger.debug("其他节点正在分析该SQL，跳过本次分析: {}", event.getStatementId());
+            return;
+        }
+
+        // 记录统计信息（可选）
+        logCacheStats();
+        report(outcome, event);
+    }
+
+    /**
+     * 认领分析租约后执行分析，写入本地缓存、持久化存储并发布到共享存储；
+     * 其他节点持有租约时采用其已发布的结果
+     *
+     * @return 分析结果，其他节点正在分析且没有已发布的结果时返回null
+     */
+    private SqlAnalysisOutcome loadOrCompute(Connection connection, AnalysisEvent event,
+                                             DatabaseInfo databaseInfo, ExplainResultAnalyzer analyzer) {
+        String fingerprint = event.getFingerprint();
+        if (!claimShared(fingerprint, expireAfterNanos)) {
+            // 其他节点正在分析该SQL或刚刚发布了结果，不在本节点重复EXPLAIN
+            SqlAnalysisOutcome shared = loadShared(fingerprint);
+            if (shared != null) {
+                adopt(fingerprint, shared);
+            }
+            return shared;
+        }
+        SqlAnalysisOutcome computed;
+        try {
+            computed = computeOutcome(connection, event, databaseInfo, analyzer);
+        } catch (RuntimeException e) {
+            if (sharedStore != null) {
+                releaseShared(fingerprint);
+            }
+            throw e;
+        }
+        cacheOutcome(fingerprint, computed);
+        persist(fingerprint, computed);
+        publishShared(fingerprint, computed);
+        return computed;
+    }
+
+    /**
+     * 等待其他线程对同一指纹的分析结果，分析失败时抛出其异常
+     */
+    private static SqlAnalysisOutcome await(CompletableFuture<SqlAnalysisOutcome> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行EXPLAIN并生成与执行无关的优化建议，生成器共享同一个分析上下文，SQL只解析一次
+     *
+     * @return 分析结果，分析失败时返回失败结果
+     */
+    private SqlAnalysisOutcome computeOutcome(Connection connection, AnalysisEvent event,
+                                              DatabaseInfo databaseInfo, ExplainResultAnalyzer analyzer) {
+        MappedStatement mappedStatement = event.getMappedStatement();
+        BoundSql boundSql = event.getBoundSql();
+        DatabaseType dbType = databaseInfo.getType();
+        SqlExplainResult explainResult;
+        try {
+            explainResult = analyzer.analyze(connection, mappedStatement, boundSql, databaseInfo);
+        } catch (Exception e) {
+            logger.warn("获取执行计划失败 [{}]", mappedStatement.getId(), e);
+            return SqlAnalysisOutcome.failed(dbType, boundSql.getSql(), String.valueOf(e.getMessage()));
+        }
+        SqlAnalysisContext context = new SqlAnalysisContext(boundSql.getSql(), event.getFingerprint(), dbType, statementCache, ruleEngine);
+        List<String> adviceList = adviceGenerators.stream()
+                .filter(advice -> !advice.isExecutionDependent() && advice.supports(dbType))
+                .flatMap(advice -> advice.generateAdvice(explainResult, context).stream())
+                .collect(Collectors.toList());
+        return SqlAnalysisOutcome.of(dbType, explainResult, adviceList, objectsOf(context, explainResult), compactPlans);
+    }
+
+    /**
+     * 收集分析涉及的表和索引：语法树中的表名，以及执行计划中访问的表和使用的索引
+     *
+     * @param context 分析上下文
+     * @param explainResult 执行计划
+     * @return 表名和索引名
+     */
+    private static Set<String> objectsOf(SqlAnalysisContext context, SqlExplainResult explainResult) {
+        Set<String> objects = new HashSet<>();
+        Statement statement = context.getStatement();
+        if (statement != null) {
+            try {
+                objects.addAll(new TablesNamesFinder().getTables(statement));
+            } catch (RuntimeException e) {
+                logger.debug("提取SQL中的表名失败", e);
+            }
         }
+        PlanNode root = explainResult.getPlanRoot();
+        if (root != null) {
+            root.accept((node, parent, depth) -> {
+                if (node.getRelation() != null) {
+                    objects.add(node.getRelation());
+                }
+                if (node.getIndex() != null) {
+                    objects.add(node.getIndex());
+                }
+            });
+        }
+        return objects;
+    }
+
+    /**
+     * 基于分析结果生成本次执行的结果副本，补充依赖执行数据的建议后报告
+     *
+     * @param outcome 分析结果
+     * @param event 分析事件
+     */
+    private void report(SqlAnalysisOutcome outcome, AnalysisEvent event) {
+        if (outcome.isFailed()) {
+            logger.debug("SQL分析已失败，跳过报告 [{}]: {}", event.getStatementId(), outcome.getFailure());
+            return;
+        }
+        DatabaseType dbType = outcome.getDatabaseType();
+        SqlExplainResult explainResult = outcome.toExplainResult(event.getBoundSql().getSql(),
+                TimeUnit.NANOSECONDS.toMillis(event.getElapsedNanos()));
+        SqlAnalysisContext context = null;
+        for (SqlOptimizationAdvice advice : adviceGenerators) {
+            if (advice.isExecutionDependent() && advice.supports(dbType)) {
+                if (context == null) {
+                    context = new SqlAnalysisContext(event.getBoundSql().getSql(), event.getFingerprint(), dbType, statementCache, ruleEngine);
+                }
+                explainResult.getAdviceList().addAll(advice.generateAdvice(explainResult, context));
+            }
+        }
+
+        // 报告结果
+        reporters.forEach(reporter -> reporter.report(explainResult, dbType, event.getStatementId()));
     }
 
     /**
@@ -198,6 +985,11 @@ public class SqlAnalysisInterceptor implements Interceptor, DisposableBean {
         if (asyncExecutor != null) {
             asyncExecutor.shutdown();
         }
+        connectionManager.close();
+        statementCache.close();
+        if (planStore != null) {
+            planStore.close();
+        }
     }
 
     /**
@@ -0,0 +1,399 @@
+package com.wuya.mybatis.optimizer;
+
+import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.plan.PlanCodec;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SQL分析结果的不可变快照
+ * 按SQL指纹缓存，包含执行计划、与执行无关的优化建议以及分析失败信息。
+ * 缓存命中时不需要获取连接，也不需要重新运行建议生成器；每次执行通过 {@link #toExplainResult} 得到独立的结果副本，
+ * 执行耗时等与单次执行相关的数据只写入副本。
+ * 执行计划可以紧凑编码为 byte[] 保存（见 {@link PlanCodec}），创建时估算常驻内存字节数，作为缓存按内存预算淘汰的权重
+ */
+public final class SqlAnalysisOutcome {
+
+    // 序列化格式版本
+    private static final int SERIAL_VERSION = 1;
+
+    // 估算内存时使用的对象头、字符串、映射条目和计划节点开销（字节）
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int ENTRY_OVERHEAD = 32;
+    private static final int PLAN_NODE_OVERHEAD = 152;
+
+    // 数据库类型
+    private final DatabaseType databaseType;
+    // 执行计划，只读，不对外暴露；紧凑编码时不含结果行和计划树
+    private final SqlExplainResult plan;
+    // 紧凑编码的结果行和计划树，未编码时为null
+    private final byte[] encodedPlan;
+    // 与执行无关的优化建议
+    private final List<String> advice;
+    // 分析失败原因，成功时为null
+    private final String failure;
+    // 执行计划涉及的表和索引，用于DDL后使缓存失效
+    private final Set<String> objects;
+    // 分析完成时间（System.nanoTime），用于判断是否需要提前刷新
+    private final long analyzedAtNanos;
+    // 估算的常驻内存字节数
+    private final int estimatedBytes;
+
+    private SqlAnalysisOutcome(DatabaseType databaseType, SqlExplainResult plan, byte[] encodedPlan, List<String> advice,
+                               String failure, Set<String> objects) {
+        this(databaseType, plan, encodedPlan, advice, failure, objects, 0L);
+    }
+
+    private SqlAnalysisOutcome(DatabaseType databaseType, SqlExplainResult plan, byte[] encodedPlan, List<String> advice,
+                               String failure, Set<String> objects, long ageNanos) {
+        this.analyzedAtNanos = System.nanoTime() - ageNanos;
+        this.databaseType = databaseType;
+        this.plan = plan;
+        this.encodedPlan = encodedPlan;
+        this.advice = advice;
+        this.failure = failure;
+        this.objects = objects;
+        this.estimatedBytes = estimateBytes();
+    }
+
+    /**
+     * 创建成功的分析结果
+     *
+     * @param databaseType 数据库类型
+     * @param plan 分析器返回的执行计划，之后不得再修改
+     * @param advice 与执行无关的优化建议
+     * @param objects 执行计划涉及的表和索引
+     * @return 分析结果
+     */
+    public static SqlAnalysisOutcome of(DatabaseType databaseType, SqlExplainResult plan, List<String> advice,
+                                        Set<String> objects) {
+        return of(databaseType, plan, advice, objects, false);
+    }
+
+    /**
+     * 创建成功的分析结果
+     *
+     * @param databaseType 数据库类型
+     * @param plan 分析器返回的执行计划，之后不得再修改
+     * @param advice 与执行无关的优化建议
+     * @param objects 执行计划涉及的表和索引
+     * @param compact 是否把结果行和计划树编码为 byte[] 保存，否则保留对象形式并复用列名字符串
+     * @return 分析结果
+     */
+    public static SqlAnalysisOutcome of(DatabaseType databaseType, SqlExplainResult plan, List<String> advice,
+                                        Set<String> objects, boolean compact) {
+        List<Map<String, Object>> rows = plan.getExplainResults();
+        byte[] encodedPlan = null;
+        if (compact) {
+            encodedPlan = PlanCodec.encode(rows, plan.getPlanRoot());
+            plan.setExplainResults(null);
+            plan.setPlanRoot(null);
+        } else {
+            plan.setExplainResults(rows != null ? internKeys(rows) : Collections.emptyList());
+        }
+        plan.setAdviceList(null);
+        return new SqlAnalysisOutcome(databaseType, plan, encodedPlan, Collections.unmodifiableList(new ArrayList<>(advice)),
+                null, Collections.unmodifiableSet(new HashSet<>(objects)));
+    }
+
+    /**
+     * 创建失败的分析结果，缓存后同一指纹在过期前不再重复分析
+     *
+     * @param databaseType 数据库类型，未知时为null
+     * @param sql SQL语句
+     * @param failure 失败原因
+     * @return 分析结果
+     */
+    public static SqlAnalysisOutcome failed(DatabaseType databaseType, String sql, String failure) {
+        SqlExplainResult plan = new SqlExplainResult();
+        plan.setSql(sql);
+        plan.setExplainResults(Collections.emptyList());
+        return new SqlAnalysisOutcome(databaseType, plan, null, Collections.emptyList(),
+                failure != null ? failure : "unknown", Collections.emptySet());
+    }
+
+    /**
+     * 序列化成功的分析结果，用于持久化保存；执行计划使用 {@link PlanCodec} 编码
+     *
+     * @return 序列化结果
+     * @throws IllegalStateException 分析失败的结果不序列化
+     */
+    public byte[] toBytes() {
+        if (isFailed()) {
+            throw new IllegalStateException("分析失败的结果不序列化");
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(encodedPlan != null ? encodedPlan.length + 256 : 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(SERIAL_VERSION);
+            writeNullable(out, databaseType != null ? databaseType.name() : null);
+            writeNullable(out, plan.getSql());
+            out.writeDouble(plan.getPlanningTime() != null ? plan.getPlanningTime() : Double.NaN);
+            writeLong(out, plan.getSharedHitBlocks());
+            writeLong(out, plan.getSharedReadBlocks());
+            writeLong(out, plan.getTempReadBlocks());
+            writeLong(out, plan.getTempWrittenBlocks());
+            out.writeByte(plan.getJit() == null ? 0 : plan.getJit() ? 1 : 2);
+            byte[] encoded = encodedPlan != null ? encodedPlan : PlanCodec.encode(plan.getExplainResults(), plan.getPlanRoot());
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            writeStrings(out, advice);
+            writeStrings(out, objects);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 反序列化 {@link #toBytes()} 的结果
+     *
+     * @param bytes 序列化结果
+     * @param ageNanos 分析结果已存在的时间（纳秒），用于判断刷新和过期
+     * @param compact 是否保持执行计划的紧凑编码
+     * @return 分析结果
+     * @throws UncheckedIOException 格式或版本不正确
+     */
+    public static SqlAnalysisOutcome fromBytes(byte[] bytes, long ageNanos, boolean compact) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int version = in.readUnsignedByte();
+            if (version != SERIAL_VERSION) {
+                throw new IOException("不支持的分析结果版本: " + version);
+            }
+            String type = readNullable(in);
+            SqlExplainResult plan = new SqlExplainResult();
+            plan.setSql(readNullable(in));
+            double planningTime = in.readDouble();
+            plan.setPlanningTime(Double.isNaN(planningTime) ? null : planningTime);
+            plan.setSharedHitBlocks(readLong(in));
+            plan.setSharedReadBlocks(readLong(in));
+            plan.setTempReadBlocks(readLong(in));
+            plan.setTempWrittenBlocks(readLong(in));
+            byte jit = in.readByte();
+            plan.setJit(jit == 0 ? null : jit == 1);
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            List<String> advice = Collections.unmodifiableList(readStrings(in));
+            Set<String> objects = Collections.unmodifiableSet(new HashSet<>(readStrings(in)));
+            if (!compact) {
+                PlanCodec.Decoded decoded = PlanCodec.decode(encoded);
+                plan.setExplainResults(internKeys(decoded.getRows()));
+                plan.setPlanRoot(decoded.getRoot());
+                encoded = null;
+            }
+            return new SqlAnalysisOutcome(type != null ? DatabaseType.valueOf(type) : null, plan, encoded, advice,
+                    null, objects, ageNanos);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value.length() > 16000 ? value.substring(0, 16000) : value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeLong(value != null ? value : Long.MIN_VALUE);
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        long value = in.readLong();
+        return value == Long.MIN_VALUE ? null : value;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeNullable(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            values.add(readNullable(in));
+        }
+        return values;
+    }
+
+    /**
+     * 复制结果行并复用列名字符串，所有缓存条目共享同一份列名
+     */
+    private static List<Map<String, Object>> internKeys(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> interned = new LinkedHashMap<>(row.size() * 2);
+            row.forEach((key, value) -> interned.put(key != null ? key.intern() : null, value));
+            copy.add(Collections.unmodifiableMap(interned));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * 生成本次执行的分析结果副本，优化建议列表为缓存建议的可修改副本，可继续追加依赖本次执行数据的建议。
+     * 同一指纹的不同执行（如 IN 列表长度不同）共享缓存的执行计划，SQL 使用本次执行的 SQL 而不是首次分析时的 SQL
+     *
+     * @param sql           本次执行的 SQL
+     * @param executionTime 本次执行耗时（毫秒）
+     * @return 独立的分析结果，可由报告器任意使用
+     */
+    public SqlExplainResult toExplainResult(String sql, long executionTime) {
+        SqlExplainResult result = new SqlExplainResult();
+        result.setSql(sql);
+        if (encodedPlan != null) {
+            PlanCodec.Decoded decoded = PlanCodec.decode(encodedPlan);
+            result.setExplainResults(decoded.getRows());
+            result.setPlanRoot(decoded.getRoot());
+        } else {
+            // 缓存的结果行和计划树被所有执行共享，复制后再交给报告器
+            List<Map<String, Object>> rows = null;
+            if (plan.getExplainResults() != null) {
+                rows = new ArrayList<>(plan.getExplainResults().size());
+                for (Map<String, Object> row : plan.getExplainResults()) {
+                    rows.add(new LinkedHashMap<>(row));
+                }
+            }
+            result.setExplainResults(rows);
+            result.setPlanRoot(plan.getPlanRoot() != null ? plan.getPlanRoot().copy() : null);
+        }
+        result.setPlanningTime(plan.getPlanningTime());
+        result.setSharedHitBlocks(plan.getSharedHitBlocks());
+        result.setSharedReadBlocks(plan.getSharedReadBlocks());
+        result.setTempReadBlocks(plan.getTempReadBlocks());
+        result.setTempWrittenBlocks(plan.getTempWrittenBlocks());
+        result.setJit(plan.getJit());
+        result.setExecutionTime(executionTime);
+        result.setAdviceList(new ArrayList<>(advice));
+        return result;
+    }
+
+    /**
+     * 获取执行计划树，只读；紧凑编码时每次调用都解码出新的计划树
+     *
+     * @return 计划树根节点，可能为null
+     */
+    public PlanNode getPlanRoot() {
+        return encodedPlan != null ? PlanCodec.decode(encodedPlan).getRoot() : plan.getPlanRoot();
+    }
+
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+
+    public List<String> getAdvice() {
+        return advice;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public Set<String> getObjects() {
+        return objects;
+    }
+
+    /**
+     * 获取分析结果的存在时间
+     *
+     * @return 距分析完成的纳秒数
+     */
+    public long getAgeNanos() {
+        return System.nanoTime() - analyzedAtNanos;
+    }
+
+    /**
+     * 是否为分析失败的结果
+     *
+     * @return 失败返回true
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * 获取估算的常驻内存字节数，用作缓存权重
+     *
+     * @return 字节数
+     */
+    public int getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * 估算常驻内存：字符串按每字符 2 字节计，集合、映射条目和计划节点按固定开销计，编码后的计划按数组长度计
+     */
+    private int estimateBytes() {
+        long bytes = OBJECT_OVERHEAD * 4L + 64;
+        bytes += stringBytes(plan.getSql()) + stringBytes(failure);
+        bytes += collectionBytes(advice) + collectionBytes(objects);
+        if (encodedPlan != null) {
+            bytes += OBJECT_OVERHEAD + encodedPlan.length;
+        } else {
+            bytes += rowsBytes(plan.getExplainResults()) + nodeBytes(plan.getPlanRoot());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + 2L * value.length();
+    }
+
+    private static long collectionBytes(Collection<String> values) {
+        long bytes = OBJECT_OVERHEAD * 3L;
+        for (String value : values) {
+            bytes += ENTRY_OVERHEAD + stringBytes(value);
+        }
+        return bytes;
+    }
+
+    private static long rowsBytes(List<Map<String, Object>> rows) {
+        long bytes = OBJECT_OVERHEAD * 3L;
+        for (Map<String, Object> row : rows) {
+            // 列名已复用，只计映射结构和值
+            bytes += OBJECT_OVERHEAD * 4L + 8L * row.size() * 2;
+            for (Object value : row.values()) {
+                bytes += ENTRY_OVERHEAD + (value instanceof String ? stringBytes((String) value) : OBJECT_OVERHEAD + 8);
+            }
+        }
+        return bytes;
+    }
+
+    private static long nodeBytes(PlanNode root) {
+        if (root == null) {
+            return 0;
+        }
+        long[] bytes = new long[1];
+        root.accept((node, parent, depth) -> bytes[0] += PLAN_NODE_OVERHEAD
+                + stringBytes(node.getOperation()) + stringBytes(node.getAccessType())
+                + stringBytes(node.getSelectType()) + stringBytes(node.getRelation())
+                + stringBytes(node.getIndex()) + stringBytes(node.getExtra())
+                + stringBytes(node.getSortKey()) + stringBytes(node.getSortMethod())
+                + stringBytes(node.getStrategy()) + 8L * node.getChildren().size());
+        return bytes[0];
+    }
+}
@@ -1,5 +1,6 @@
 package com.wuya.mybatis.optimizer;
 
+import com.wuya.mybatis.optimizer.plan.PlanNode;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -27,6 +28,12 @@ public class SqlExplainResult {
      */
     private List<Map<String, Object>> explainResults;
 
+    /**
+     * 执行计划树
+     * 由分析器从 EXPLAIN 结果构建的类型化计划树，建议生成器基于它做分析，不支持时为null
+     */
+    private PlanNode planRoot;
+
     /**
      * SQL语句的执行时间（毫秒）
      * 用于衡量SQL语句的执行效率
@@ -69,4 +76,10 @@ public class SqlExplainResult {
      * 表示SQL执行过程中写入到临时文件的数据块数量，写入量大可能影响性能
      */
     private Long tempWrittenBlocks; 
+
+    /**
+     * 是否使用了JIT编译
+     * PostgreSQL特有，执行计划中包含JIT信息时为true
+     */
+    private Boolean jit;
 }
@@ -16,6 +16,24 @@ public interface SqlOptimizationAdvice {
      * @return
      */
     List<String> generateAdvice(SqlExplainResult explainResult);
+    /**
+     * 基于共享的分析上下文生成优化建议
+     * 需要解析 SQL 的生成器应覆盖此方法，从上下文中获取已解析的语法树，默认忽略上下文
+     * @param explainResult
+     * @param context 本次分析的 SQL 上下文
+     * @return
+     */
+    default List<String> generateAdvice(SqlExplainResult explainResult, SqlAnalysisContext context) {
+        return generateAdvice(explainResult);
+    }
+    /**
+     * 建议是否依赖单次执行的数据（如执行耗时）
+     * 不依赖执行数据的建议随执行计划一起缓存，缓存命中时不再重新生成；依赖执行数据的建议每次执行都重新生成
+     * @return 默认false
+     */
+    default boolean isExecutionDependent() {
+        return false;
+    }
     /**
      * 是否支持该数据库类型
      * @param dbType
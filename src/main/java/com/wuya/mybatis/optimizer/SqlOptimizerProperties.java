@@ -1,5 +1,8 @@
 package com.wuya.mybatis.optimizer;
 
+import com.wuya.mybatis.optimizer.analyzer.MysqlExplainResultAnalyzer;
+import com.wuya.mybatis.optimizer.analyzer.OracleExplainResultAnalyzer;
+import com.wuya.mybatis.optimizer.helper.PgExplainExecutor;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -20,6 +23,54 @@ import java.util.stream.Collectors;
 @Getter
 @ConfigurationProperties(prefix = "mybatis.optimizer")
 public class SqlOptimizerProperties {
+
+    /**
+     * 异步分析执行方式
+     */
+    public enum ExecutorType {
+        /**
+         * 固定数量的平台线程（asyncThreads）
+         */
+        PLATFORM,
+        /**
+         * 每次分析一个虚拟线程，并发数由信号量限制（需要 Java 21+，否则退化为平台线程）
+         */
+        VIRTUAL
+    }
+
+    /**
+     * 异步分析队列类型
+     */
+    public enum AsyncQueueType {
+        /**
+         * 线程池 + LinkedBlockingQueue
+         */
+        LINKED,
+        /**
+         * 预分配的多生产者/单消费者环形缓冲区，每个分析线程一个，批量取出处理
+         */
+        RING
+    }
+
+    /**
+     * 执行统计的键
+     */
+    public enum StatsKey {
+        /**
+         * 已有 BoundSql 且指纹已缓存时（携带 BoundSql 的6参数 query）按 语句id + SQL指纹 统计，
+         * 其余执行按语句id统计，不为统计额外构建 BoundSql
+         */
+        AUTO,
+        /**
+         * 只按语句id统计
+         */
+        STATEMENT,
+        /**
+         * 每次执行都按 语句id + SQL指纹 统计，需要时为统计构建 BoundSql
+         */
+        FINGERPRINT
+    }
+
     // 是否启用SQL优化器
     private boolean enabled = true;
     // 是否解释所有SQL语句，无论其执行时间是否超过阈值
@@ -46,13 +97,64 @@ public class SqlOptimizerProperties {
 
     // 采样率，决定分析的SQL语句比例
     private double sampleRate = 1;
+    // 每条语句每分钟最多分析次数，大于0时按语句令牌桶限流（首次出现一定分析）并替代全局采样率，0表示不限制
+    private int statementAnalysesPerMinute = 0;
+    // 按语句限流时允许的突发分析次数
+    private int statementAnalysisBurst = 1;
 
     // 是否进行异步分析
     private boolean asyncAnalysis = true;
+    // 异步分析执行方式：PLATFORM 固定线程池，VIRTUAL 虚拟线程
+    private ExecutorType executor = ExecutorType.PLATFORM;
+    // VIRTUAL 模式下的最大并发分析数
+    private int virtualMaxConcurrency = 16;
     // 异步分析线程数
     private int asyncThreads = 2;
     // 异步分析队列大小
     private int asyncQueueSize = 1000;
+    // 异步分析队列类型：LINKED 线程池队列，RING 预分配环形缓冲区
+    private AsyncQueueType asyncQueueType = AsyncQueueType.LINKED;
+    // 分析线程每次批量取出的最大事件数，同一数据源的事件在一个连接上连续执行EXPLAIN
+    private int asyncBatchSize = 32;
+    // 异步分析队列满时的丢弃策略（LINKED 队列有效）：DISCARD 丢弃新任务，DISCARD_CHEAPEST 按执行耗时排序并优先保留耗时长的任务
+    private AsyncSqlAnalysisExecutor.RejectPolicy asyncRejectPolicy = AsyncSqlAnalysisExecutor.RejectPolicy.DISCARD;
+
+    // 通过 Provider 或以动态标签开头的映射执行 DDL 的语句id，执行后使相关的分析结果失效；其他语句按映射开头的静态文本识别 DDL
+    private Set<String> ddlStatements = Collections.emptySet();
+
+    // 是否记录每条语句的执行统计（次数、累计耗时、分位耗时）
+    private boolean statsEnabled = true;
+    // 执行统计的键：AUTO 有 BoundSql 时按 语句id + SQL指纹，否则按语句id；STATEMENT 只按语句id；FINGERPRINT 总是按 语句id + SQL指纹
+    private StatsKey statsKey = StatsKey.AUTO;
+    // 最多统计的条目数（语句id 或 语句id + SQL指纹）
+    private int statsMaxStatements = 5000;
+    // SQL指纹缓存大小，0表示不缓存
+    private int fingerprintCacheSize = 10000;
+    // 按SQL指纹缓存的语法树数量（含解析失败的语句）
+    private int parseCacheSize = 2000;
+    // 单条SQL解析的超时时间（毫秒），超时视为解析失败且不再重复解析
+    private long parseTimeoutMillis = 2000L;
+
+    // 每个数据源同时用于EXPLAIN的最大连接数（含空闲的复用连接），超出时异步分析等待、同步分析跳过，0表示不限制
+    private int explainMaxConnections = 2;
+    // 同步分析时业务线程等待分析连接预算的最长时间（毫秒），0表示不等待；异步分析线程一直等待
+    private long explainConnectionTimeoutMillis = 0L;
+    // 异步分析时是否把分析连接归还到按数据源共享的空闲池复用并缓存EXPLAIN语句
+    private boolean explainConnectionReuse = true;
+    // 复用的分析连接空闲多久后关闭（毫秒）
+    private long explainConnectionIdleMillis = 60000L;
+    // 每个复用连接缓存的EXPLAIN语句数
+    private int explainStatementCacheSize = 64;
+
+    // MySQL的EXPLAIN格式：TRADITIONAL 传统表格，JSON 带代价信息，ANALYZE 8.0.18+ 执行SELECT取实际行数与耗时
+    private MysqlExplainResultAnalyzer.ExplainFormat mysqlExplainFormat = MysqlExplainResultAnalyzer.ExplainFormat.JSON;
+    // PostgreSQL的EXPLAIN方式：PLAIN 只估算，GENERIC_PLAN 不绑定参数（16+），ANALYZE 在回滚的保存点内执行，AUTO 查询语句估算代价超过阈值才 ANALYZE（DML 只估算）
+    private PgExplainExecutor.ExplainMode postgreExplainMode = PgExplainExecutor.ExplainMode.AUTO;
+    // AUTO 方式下触发 EXPLAIN ANALYZE 的估算总代价阈值
+    private double postgreAnalyzeCostThreshold = 10000D;
+
+    // Oracle执行计划来源：CURSOR 按SQL_ID读取V$SQL_PLAN中游标的实际计划（找不到时退化为EXPLAIN PLAN），EXPLAIN_PLAN 每次执行EXPLAIN PLAN
+    private OracleExplainResultAnalyzer.PlanSource oraclePlanSource = OracleExplainResultAnalyzer.PlanSource.CURSOR;
 
     // 允许在WHERE子句中使用的函数白名单
     private Set<String> whereFunctionAllowed = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
@@ -34,6 +34,16 @@ public class CommonAdviceGenerator implements SqlOptimizationAdvice {
         return adviceList;
     }
 
+    /**
+     * 建议基于本次执行耗时，每次执行都重新生成
+     *
+     * @return true
+     */
+    @Override
+    public boolean isExecutionDependent() {
+        return true;
+    }
+
     /**
      * 判断当前建议生成器是否支持指定的数据库类型
      * 
@@ -3,12 +3,12 @@ package com.wuya.mybatis.optimizer.advice;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
 import com.wuya.mybatis.optimizer.SqlOptimizationAdvice;
 import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * JOIN操作优化建议生成器
@@ -18,6 +18,11 @@ import java.util.regex.Pattern;
  */
 public class JoinAdviceGenerator implements SqlOptimizationAdvice {
 
+    // 大表扫描的行数阈值
+    private static final long LARGE_TABLE_ROWS = 10000;
+    // 嵌套循环总处理行数阈值
+    private static final long NESTED_LOOP_ROWS = 10000;
+
     /**
      * 根据SQL执行计划生成优化建议
      * 
@@ -26,22 +31,23 @@ public class JoinAdviceGenerator implements SqlOptimizationAdvice {
      */
     @Override
     public List<String> generateAdvice(SqlExplainResult explainResult) {
-        List<String> adviceList = new ArrayList<>();
-
-        // 遍历SQL执行计划中的每一行
-        for (Map<String, Object> row : explainResult.getExplainResults()) {
+        PlanNode root = explainResult.getPlanRoot();
+        if (root == null) {
+            return new ArrayList<>();
+        }
+        Set<String> adviceList = new LinkedHashSet<>();
+        // 一次遍历计划树
+        root.accept((node, parent, depth) -> {
             // MySQL执行计划分析
-            if ("ALL".equals(row.get("type"))) {
+            if ("ALL".equals(node.getAccessType())) {
                 adviceList.add("全表扫描JOIN操作检测到，考虑添加适当的索引");
             }
-
             // PostgreSQL执行计划分析
-            if (row.containsKey("EXPLAIN") && isProblematicJoin(row.get("EXPLAIN").toString())) {
-                adviceList.addAll(analyzeJoinPerformance(row.get("EXPLAIN").toString()));
+            if (isJoin(node)) {
+                adviceList.addAll(analyzeJoinPerformance(node));
             }
-        }
-
-        return adviceList;
+        });
+        return new ArrayList<>(adviceList);
     }
 
     /**
@@ -57,71 +63,66 @@ public class JoinAdviceGenerator implements SqlOptimizationAdvice {
     }
 
     /**
-     * 判断是否是有问题的JOIN操作
-     * - 检测逻辑需要区分：
-     * - 驱动表（外表）的扫描方式
-     * - 被驱动表（内表）是否有效使用索引
-     * @param explainPlan
-     * @return
+     * 判断是否是连接节点
+     * @param node 计划节点
+     * @return 连接节点返回true
      */
-    boolean isProblematicJoin(String explainPlan) {
-        return hasLargeTableSeqScan(explainPlan) ||
-                hasInefficientNestedLoop(explainPlan);
+    boolean isJoin(PlanNode node) {
+        return node.is("Nested Loop") || node.is("Hash Join") || node.is("Merge Join");
     }
 
     /**
      * 判断是否有大表扫描
-     * @param explainPlan
+     * 连接的一侧对大表做顺序扫描，另一侧使用了索引
+     * @param join 连接节点
      * @return
      */
-    boolean hasLargeTableSeqScan(String explainPlan) {
-        // 使用正则提取执行计划中的扫描信息
-        Pattern pattern = Pattern.compile(
-                "Seq Scan on (\\w+).*rows=(\\d+).*" +
-                        "->.*Index Scan on \\w+.*"  // 确保被驱动表用了索引
-        );
-        Matcher matcher = pattern.matcher(explainPlan);
-
-        if (matcher.find()) {
-            String tableName = matcher.group(1);
-            int rows = Integer.parseInt(matcher.group(2));
-            return rows > 10000;  // 自定义大表阈值
+    boolean hasLargeTableSeqScan(PlanNode join) {
+        boolean largeSeqScan = false;
+        boolean indexScan = false;
+        for (PlanNode child : join.getChildren()) {
+            PlanNode scan = firstScan(child);
+            if (scan == null) {
+                continue;
+            }
+            if (scan.is("Seq Scan") && scan.getRows() > LARGE_TABLE_ROWS) {
+                largeSeqScan = true;
+            } else if (scan.getIndex() != null) {
+                indexScan = true;
+            }
         }
-        return false;
+        return largeSeqScan && indexScan;
     }
 
     /**
      * 判断是否有inefficient nested loop
-     * @param explainPlan
+     * 外表顺序扫描、内表走索引，但外表行数乘以内表循环次数过大
+     * @param join 连接节点
      * @return
      */
-    boolean hasInefficientNestedLoop(String explainPlan) {
-        // 当外层大表循环次数过多时，即使内表用索引也可能低效
-        Pattern pattern = Pattern.compile(
-                "Nested Loop.*loops=(\\d+).*" +
-                        "->.*Seq Scan on (\\w+).*rows=(\\d+).*" +
-                        "->.*Index Scan.*"
-        );
-        Matcher matcher = pattern.matcher(explainPlan);
-
-        if (matcher.find()) {
-            int loops = Integer.parseInt(matcher.group(1));
-            int rows = Integer.parseInt(matcher.group(3));
-            return loops * rows > 10000;  // 总处理行数阈值
+    boolean hasInefficientNestedLoop(PlanNode join) {
+        if (!join.is("Nested Loop") || join.getChildren().size() < 2) {
+            return false;
         }
-        return false;
+        PlanNode outer = firstScan(join.getChildren().get(0));
+        PlanNode inner = firstScan(join.getChildren().get(1));
+        if (outer == null || inner == null || !outer.is("Seq Scan") || inner.getIndex() == null) {
+            return false;
+        }
+        long loops = Math.max(1, inner.getLoops());
+        return loops * Math.max(0, outer.getRows()) > NESTED_LOOP_ROWS;
     }
 
     /**
      * 分析JOIN性能
-     * @param explainPlan
+     * @param join 连接节点
      * @return
      */
-    public List<String> analyzeJoinPerformance(String explainPlan) {
+    public List<String> analyzeJoinPerformance(PlanNode join) {
         List<String> adviceList = new ArrayList<>();
 
         // 规则1：大表作为驱动表且 Seq Scan
-        if (hasLargeTableSeqScan(explainPlan)) {
+        if (hasLargeTableSeqScan(join)) {
             adviceList.add(
                     "🚨 驱动表使用顺序扫描且数据量大："+
                     "1. 考虑为驱动表添加条件索引"+
@@ -130,7 +131,7 @@ public class JoinAdviceGenerator implements SqlOptimizationAdvice {
         }
 
         // 规则2：低效嵌套循环
-        if (hasInefficientNestedLoop(explainPlan)) {
+        if (hasInefficientNestedLoop(join)) {
             adviceList.add(
           "  🚨 检测到高成本嵌套循环："+
           "  1. 设置 enable_nestloop=off 强制使用其他JOIN算法"+
@@ -139,8 +140,7 @@ public class JoinAdviceGenerator implements SqlOptimizationAdvice {
         }
 
         // 规则3：缺失JOIN条件索引（补充检测）
-        if (explainPlan.contains("Hash Join") &&
-                explainPlan.contains("Seq Scan")) {
+        if (join.is("Hash Join") && join.contains("Seq Scan")) {
             adviceList.add(
            " ℹ️ Hash Join 需要全表扫描："+
            " 如果这是高频查询，考虑添加索引改用 Nested Loop");
@@ -148,4 +148,18 @@ public class JoinAdviceGenerator implements SqlOptimizationAdvice {
 
         return adviceList;
     }
+
+    /**
+     * 沿单子节点链（Hash、Materialize等）向下找到第一个扫描节点
+     */
+    private static PlanNode firstScan(PlanNode node) {
+        PlanNode current = node;
+        while (current != null) {
+            if (current.getRelation() != null) {
+                return current;
+            }
+            current = current.getChildren().size() == 1 ? current.getChildren().get(0) : null;
+        }
+        return null;
+    }
 }
@@ -3,10 +3,11 @@ package com.wuya.mybatis.optimizer.advice;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
 import com.wuya.mybatis.optimizer.SqlOptimizationAdvice;
 import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 /**
  * MySQL优化建议生成器
  * 该类实现了SqlOptimizationAdvice接口，专门针对MySQL数据库的SQL执行计划进行分析，
@@ -15,89 +16,185 @@ import java.util.Map;
  * @date 2023-07-07 09:08:09
  */
 public class MySqlAdviceGenerator implements SqlOptimizationAdvice {
+    // 范围扫描、全索引扫描只有在占查询代价的比例不低于该值时才提示
+    private static final double SIGNIFICANT_SHARE = 0.2;
+    // 范围扫描、全索引扫描行数低于该值时不提示
+    private static final long MIN_SCAN_ROWS = 100;
+
     /**
      * 根据SQL执行计划生成优化建议
+     * 每个节点按代价加权：有实际执行信息时取实际行数×循环次数，否则取估算代价，再否则取估算行数；
+     * 建议按代价从高到低排序，范围扫描和全索引扫描只在代价占比较高时提示
      * 
      * @param explainResult SQL执行计划的解析结果，包含执行计划的详细信息
      * @return 返回一个包含优化建议的字符串列表
      */
     @Override
     public List<String> generateAdvice(SqlExplainResult explainResult) {
-        List<String> adviceList = new ArrayList<>();
+        PlanNode root = explainResult.getPlanRoot();
+        if (root == null) {
+            return new ArrayList<>();
+        }
+        // 参与查询的表数量，用于判断是否为JOIN；以及所有表访问的总代价
+        int[] tableCount = new int[1];
+        double[] totalWeight = new double[1];
+        root.accept((node, parent, depth) -> {
+            if (node.getRelation() != null) {
+                tableCount[0]++;
+            }
+            if (node.getAccessType() != null) {
+                totalWeight[0] += weight(node);
+            }
+        });
+        List<Finding> findings = new ArrayList<>();
+        root.accept((node, parent, depth) -> collect(node, tableCount[0] > 1, totalWeight[0], findings));
+        // 稳定排序，相同代价保持计划顺序
+        findings.sort(Comparator.comparingDouble((Finding finding) -> finding.weight).reversed());
+        List<String> adviceList = new ArrayList<>(findings.size());
+        for (Finding finding : findings) {
+            adviceList.add(finding.advice);
+        }
+        return adviceList;
+    }
+
+    /**
+     * 节点代价权重
+     *
+     * @param node 计划节点
+     * @return 权重，未知时为0
+     */
+    private static double weight(PlanNode node) {
+        if (node.getActualRows() >= 0) {
+            return (double) node.getActualRows() * Math.max(node.getLoops(), 1);
+        }
+        if (node.getTotalCost() >= 0) {
+            return node.getTotalCost();
+        }
+        return Math.max(node.getEstimatedRows(), 0);
+    }
 
-        for (Map<String, Object> row : explainResult.getExplainResults()) {
-            String type = String.valueOf(row.get("type"));
-            String key = String.valueOf(row.get("key"));
+    /**
+     * 检查单个计划节点，建议按节点代价记录
+     *
+     * @param node 计划节点
+     * @param join 查询是否包含多个表
+     * @param totalWeight 所有表访问的总代价
+     * @param findings 带代价的优化建议
+     */
+    private void collect(PlanNode node, boolean join, double totalWeight, List<Finding> findings) {
+        double weight = weight(node);
+        List<String> adviceList = new ArrayList<>();
+        checkNode(node, join, totalWeight > 0 ? weight / totalWeight : 1D, adviceList);
+        for (String advice : adviceList) {
+            findings.add(new Finding(weight, advice));
+        }
+    }
 
-            // 检测全表扫描情况
-            if ("ALL".equalsIgnoreCase(type) && "null".equals(key)) {
-                adviceList.add("检测到全表扫描，建议为表 " + row.get("table") + " 添加索引");
-            }
-            // 检测全索引扫描情况
-            else if ("index".equalsIgnoreCase(type)) {
-                adviceList.add("检测到全索引扫描（索引：" + key + "），建议优化查询条件");
+    /**
+     * 检查单个计划节点
+     *
+     * @param node 计划节点
+     * @param join 查询是否包含多个表
+     * @param share 节点占所有表访问代价的比例
+     * @param adviceList 优化建议列表
+     */
+    private void checkNode(PlanNode node, boolean join, double share, List<String> adviceList) {
+        String extra = node.getExtra();
+        if (extra != null) {
+            // 检测使用临时表的情况
+            if (extra.contains("Using temporary")) {
+                adviceList.add("检测到使用临时表，建议优化GROUP BY或ORDER BY子句");
             }
-            // 检测未使用索引的情况
-            else if ("ref".equalsIgnoreCase(type) && "null".equals(key)) {
-                adviceList.add("查询未使用任何索引，表：" + row.get("table"));
+            // 检测文件排序的情况
+            if (extra.contains("Using filesort")) {
+                adviceList.add("检测到文件排序，建议为ORDER BY子句添加索引");
             }
+        }
 
-            Object extra = row.get("Extra");
-            if (extra != null) {
-                // 检测使用临时表的情况
-                if ("Using temporary".equals(String.valueOf(extra))) {
-                    adviceList.add("检测到使用临时表，建议优化GROUP BY或ORDER BY子句");
-                }
-                // 检测文件排序的情况
-                if ("Using filesort".equals(String.valueOf(extra))) {
-                    adviceList.add("检测到文件排序，建议为ORDER BY子句添加索引");
-                }
-            }
+        // 检测低效子查询的情况
+        String selectType = node.getSelectType();
+        if ("DEPENDENT SUBQUERY".equalsIgnoreCase(selectType) || "UNCACHEABLE SUBQUERY".equalsIgnoreCase(selectType)) {
+            adviceList.add("检测到低效子查询，建议重写为JOIN操作");
+        }
 
-            // 检测索引合并的情况
-            if ("index_merge".equalsIgnoreCase(type)) {
-                adviceList.add("检测到索引合并，表：" + row.get("table") + "，建议创建复合索引以获得更好性能");
-            }
+        // 检测派生表的情况
+        if ("DERIVED".equalsIgnoreCase(selectType)) {
+            adviceList.add("检测到派生表(FROM子句中的子查询)，建议简化查询");
+        }
 
-            // 检测范围扫描的情况
-            if ("range".equalsIgnoreCase(type)) {
-                adviceList.add("检测到范围扫描，索引：" + key + "，请检查范围是否过大");
-            }
+        String type = node.getAccessType();
+        String key = node.getIndex();
+        if (type == null) {
+            return;
+        }
+        long rows = node.getRows();
+        boolean significant = share >= SIGNIFICANT_SHARE && rows >= MIN_SCAN_ROWS;
+        String cost = costShare(share);
 
-            // 检测低效子查询的情况
-            if ("DEPENDENT SUBQUERY".equalsIgnoreCase(type) || "UNCACHEABLE SUBQUERY".equalsIgnoreCase(type)) {
-                adviceList.add("检测到低效子查询，建议重写为JOIN操作");
-            }
+        // 检测全表扫描情况
+        if ("ALL".equalsIgnoreCase(type) && key == null) {
+            adviceList.add("检测到全表扫描，建议为表 " + node.getRelation() + " 添加索引" + cost);
+        }
+        // 检测全索引扫描情况
+        else if ("index".equalsIgnoreCase(type) && significant) {
+            adviceList.add("检测到全索引扫描（索引：" + key + "），建议优化查询条件" + cost);
+        }
+        // 检测未使用索引的情况
+        else if ("ref".equalsIgnoreCase(type) && key == null) {
+            adviceList.add("查询未使用任何索引，表：" + node.getRelation());
+        }
 
-            // 检测派生表的情况
-            if ("DERIVED".equalsIgnoreCase(type)) {
-                adviceList.add("检测到派生表(FROM子句中的子查询)，建议简化查询");
-            }
+        // 检测索引合并的情况
+        if ("index_merge".equalsIgnoreCase(type)) {
+            adviceList.add("检测到索引合并，表：" + node.getRelation() + "，建议创建复合索引以获得更好性能");
+        }
 
-            // 索引选择性检测
-            if (row.containsKey("rows") && row.containsKey("filtered")) {
-                long rows = Long.parseLong(String.valueOf(row.get("rows")));
-                double filtered = Double.parseDouble(String.valueOf(row.get("filtered")));
-                if (filtered > 50.0 && rows > 1000) {
-                    adviceList.add("索引选择性不足，索引 " + key + " 过滤了" + filtered + "%数据，建议优化索引或查询条件");
-                }
-            }
+        // 检测范围扫描的情况
+        if ("range".equalsIgnoreCase(type) && significant) {
+            adviceList.add("检测到范围扫描，索引：" + key + "，请检查范围是否过大" + cost);
+        }
 
-            // 大表JOIN检测
-            if (row.containsKey("join_type") && row.containsKey("rows")) {
-                long estimatedRows = Long.parseLong(String.valueOf(row.get("rows")));
-                if (estimatedRows > 100000) {
-                    adviceList.add("大表JOIN操作（估计行数：" + estimatedRows + "），建议考虑分页或优化JOIN策略");
-                }
+        // 索引选择性检测
+        long estimatedRows = node.getEstimatedRows();
+        if (estimatedRows >= 0 && node.getFiltered() >= 0) {
+            double filtered = node.getFiltered();
+            if (filtered > 50.0 && estimatedRows > 1000) {
+                adviceList.add("索引选择性不足，索引 " + key + " 过滤了" + filtered + "%数据，建议优化索引或查询条件");
             }
+        }
 
-            // 未使用覆盖索引的情况
-            if ("Using index condition".equals(String.valueOf(extra))) {
-                adviceList.add("未使用覆盖索引，查询需要回表操作，建议扩展索引包含所有查询字段");
-            }
+        // 大表JOIN检测
+        if (join && rows > 100000) {
+            adviceList.add("大表JOIN操作（" + (node.getActualRows() >= 0 ? "实际" : "估计") + "行数：" + rows + "），建议考虑分页或优化JOIN策略");
         }
 
-        return adviceList;
+        // 未使用覆盖索引的情况
+        if (extra != null && extra.contains("Using index condition")) {
+            adviceList.add("未使用覆盖索引，查询需要回表操作，建议扩展索引包含所有查询字段");
+        }
+    }
+
+    /**
+     * 代价占比说明，占全部代价时不追加
+     */
+    private static String costShare(double share) {
+        if (share >= 1D) {
+            return "";
+        }
+        return "（约占查询代价 " + Math.round(share * 100) + "%）";
+    }
+
+    /**
+     * 带代价权重的优化建议
+     */
+    private static final class Finding {
+        private final double weight;
+        private final String advice;
+
+        private Finding(double weight, String advice) {
+            this.weight = weight;
+            this.advice = advice;
+        }
     }
 
     /**
@@ -3,10 +3,10 @@ package com.wuya.mybatis.optimizer.advice;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
 import com.wuya.mybatis.optimizer.SqlOptimizationAdvice;
 import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 针对PostgreSQL的SQL优化建议生成器
@@ -90,75 +90,64 @@ public class PostgreSQLAdviceGenerator implements SqlOptimizationAdvice {
     }
 
     /**
-     * 分析执行计划中的节点，并提供优化建议
+     * 遍历执行计划树中的节点，并提供优化建议
      * 
      * @param result SQL解释结果对象
      * @param adviceList 保存优化建议的列表
      */
     private void analyzePlanNodes(SqlExplainResult result, List<String> adviceList) {
-        if (result.getExplainResults() == null) return;
-
-        for (Map<String, Object> plan : result.getExplainResults()) {
-            if (!plan.containsKey("PlanNodes")) continue;
-
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> nodes = (List<Map<String, Object>>) plan.get("PlanNodes");
-
-            for (Map<String, Object> node : nodes) {
-                String nodeType = String.valueOf(node.get("Node Type"));
-                long actualRows = node.containsKey("Actual Rows") ?
-                        Long.parseLong(node.get("Actual Rows").toString()) : 0;
-                double actualTime = node.containsKey("Actual Total Time") ?
-                        Double.parseDouble(node.get("Actual Total Time").toString()) : 0;
-
-                // 顺序扫描分析
-                if ("Seq Scan".equals(nodeType)) {
-                    handleSeqScan(node, actualRows, adviceList);
-                }
-                // 索引扫描分析
-                else if ("Index Scan".equals(nodeType) || "Index Only Scan".equals(nodeType)) {
-                    handleIndexScan(node, nodeType, actualRows, adviceList);
-                }
-                // 连接操作分析
-                else if (nodeType.contains("Join")) {
-                    handleJoinOperation(node, nodeType, actualTime, adviceList);
-                }
-                // 排序操作分析
-                else if ("Sort".equals(nodeType)) {
-                    handleSortOperation(node, adviceList);
-                }
-                // 聚合操作分析
-                else if ("Aggregate".equals(nodeType)) {
-                    handleAggregateOperation(node, adviceList);
-                }
-                // 哈希操作分析
-                else if ("Hash".equals(nodeType) || "Hash Join".equals(nodeType)) {
-                    handleHashOperation(node, nodeType, adviceList);
-                }
-                // 并行查询分析
-                else if (node.containsKey("Workers") &&
-                        Integer.parseInt(node.get("Workers").toString()) > 0) {
-                    handleParallelQuery(node, adviceList);
-                }
+        if (result.getPlanRoot() == null) return;
+
+        result.getPlanRoot().accept((node, parent, depth) -> {
+            String nodeType = node.getOperation();
+            if (nodeType == null) {
+                return;
             }
-        }
+            // 顺序扫描分析
+            if ("Seq Scan".equals(nodeType)) {
+                handleSeqScan(node, adviceList);
+            }
+            // 索引扫描分析
+            else if ("Index Scan".equals(nodeType) || "Index Only Scan".equals(nodeType)) {
+                handleIndexScan(node, nodeType, adviceList);
+            }
+            // 连接操作分析
+            else if (nodeType.contains("Join") || "Nested Loop".equals(nodeType)) {
+                handleJoinOperation(node, nodeType, adviceList);
+            }
+            // 排序操作分析
+            else if ("Sort".equals(nodeType)) {
+                handleSortOperation(node, adviceList);
+            }
+            // 聚合操作分析
+            else if ("Aggregate".equals(nodeType)) {
+                handleAggregateOperation(node, adviceList);
+            }
+            // 哈希操作分析
+            else if ("Hash".equals(nodeType)) {
+                handleHashOperation(node, nodeType, adviceList);
+            }
+            // 并行查询分析
+            else if (node.getWorkersPlanned() > 0) {
+                handleParallelQuery(node, adviceList);
+            }
+        });
     }
 
     /**
      * 处理顺序扫描节点的分析逻辑
      * 
      * @param node 执行计划节点
-     * @param actualRows 实际扫描的行数
      * @param adviceList 保存优化建议的列表
      */
-    private void handleSeqScan(Map<String, Object> node, long actualRows, List<String> adviceList) {
-        String relationName = String.valueOf(node.get("Relation Name"));
+    private void handleSeqScan(PlanNode node, List<String> adviceList) {
+        String relationName = node.getRelation();
 
         adviceList.add("检测到全表扫描(Seq Scan)表: " + relationName +
-                "，扫描行数: " + actualRows + "，建议添加合适索引");
+                "，扫描行数: " + Math.max(0, node.getRows()) + "，建议添加合适索引");
 
-        if (node.containsKey("Filter") && !"false".equals(String.valueOf(node.get("Filter")))) {
-            adviceList.add("表 " + relationName + " 有未使用索引的过滤条件: " + node.get("Filter"));
+        if (node.getExtra() != null && !"false".equals(node.getExtra())) {
+            adviceList.add("表 " + relationName + " 有未使用索引的过滤条件: " + node.getExtra());
         }
     }
 
@@ -167,25 +156,21 @@ public class PostgreSQLAdviceGenerator implements SqlOptimizationAdvice {
      * 
      * @param node 执行计划节点
      * @param nodeType 节点类型
-     * @param actualRows 实际扫描的行数
      * @param adviceList 保存优化建议的列表
      */
-    private void handleIndexScan(Map<String, Object> node, String nodeType, long actualRows,
-                                 List<String> adviceList) {
-        String indexName = String.valueOf(node.get("Index Name"));
-        String relationName = String.valueOf(node.get("Relation Name"));
+    private void handleIndexScan(PlanNode node, String nodeType, List<String> adviceList) {
+        String indexName = node.getIndex();
+        String relationName = node.getRelation();
+        long actualRows = node.getRows();
 
         if (actualRows > 10000) {
             adviceList.add(nodeType + " 扫描大量行(" + actualRows + ")，索引: " + indexName +
                     "，表: " + relationName + "，建议优化查询条件");
         }
 
-        if ("Index Only Scan".equals(nodeType) && node.containsKey("Heap Fetches")) {
-            long heapFetches = Long.parseLong(node.get("Heap Fetches").toString());
-            if (heapFetches > 0) {
-                adviceList.add("Index Only Scan 检测到 " + heapFetches + " 次堆取操作，索引: " +
-                        indexName + "，建议执行VACUUM或增加索引包含列");
-            }
+        if ("Index Only Scan".equals(nodeType) && node.getHeapFetches() > 0) {
+            adviceList.add("Index Only Scan 检测到 " + node.getHeapFetches() + " 次堆取操作，索引: " +
+                    indexName + "，建议执行VACUUM或增加索引包含列");
         }
     }
 
@@ -194,19 +179,16 @@ public class PostgreSQLAdviceGenerator implements SqlOptimizationAdvice {
      * 
      * @param node 执行计划节点
      * @param nodeType 节点类型
-     * @param actualTime 实际耗时
      * @param adviceList 保存优化建议的列表
      */
-    private void handleJoinOperation(Map<String, Object> node, String nodeType,
-                                     double actualTime, List<String> adviceList) {
+    private void handleJoinOperation(PlanNode node, String nodeType, List<String> adviceList) {
+        double actualTime = node.getActualTimeMs();
         if (actualTime > 100.0) { // 超过100ms认为高成本
             adviceList.add("高成本连接操作(" + nodeType + ")，耗时: " +
                     String.format("%.2fms", actualTime) + "，建议检查连接条件");
         }
 
-        if ("Nested Loop".equals(nodeType) &&
-                node.containsKey("Inner Unique") &&
-                !Boolean.parseBoolean(node.get("Inner Unique").toString())) {
+        if ("Nested Loop".equals(nodeType) && Boolean.FALSE.equals(node.getInnerUnique())) {
             adviceList.add("Nested Loop连接检测到非唯一内表，可能导致性能问题");
         }
     }
@@ -217,14 +199,13 @@ public class PostgreSQLAdviceGenerator implements SqlOptimizationAdvice {
      * @param node 执行计划节点
      * @param adviceList 保存优化建议的列表
      */
-    private void handleSortOperation(Map<String, Object> node, List<String> adviceList) {
-        if (node.containsKey("Sort Key")) {
-            adviceList.add("检测到排序操作，排序键: " + node.get("Sort Key") +
+    private void handleSortOperation(PlanNode node, List<String> adviceList) {
+        if (node.getSortKey() != null) {
+            adviceList.add("检测到排序操作，排序键: " + node.getSortKey() +
                     "，建议为这些字段创建索引");
         }
 
-        if (node.containsKey("Sort Method") &&
-                String.valueOf(node.get("Sort Method")).contains("external")) {
+        if (node.getSortMethod() != null && node.getSortMethod().contains("external")) {
             adviceList.add("排序操作使用了磁盘临时文件，建议增加work_mem参数");
         }
     }
@@ -235,15 +216,15 @@ public class PostgreSQLAdviceGenerator implements SqlOptimizationAdvice {
      * @param node 执行计划节点
      * @param adviceList 保存优化建议的列表
      */
-    private void handleAggregateOperation(Map<String, Object> node, List<String> adviceList) {
-        if ("HashAggregate".equals(node.get("Strategy"))) {
+    private void handleAggregateOperation(PlanNode node, List<String> adviceList) {
+        if ("Hashed".equals(node.getStrategy())) {
             adviceList.add("检测到Hash聚合操作，考虑调整hash_mem_multiplier参数");
-        } else if ("SortedAggregate".equals(node.get("Strategy"))) {
+        } else if ("Sorted".equals(node.getStrategy())) {
             adviceList.add("检测到排序聚合操作，建议确保数据已正确排序");
         }
 
-        if (node.containsKey("Group Key")) {
-            adviceList.add("聚合操作使用分组键: " + node.get("Group Key") +
+        if (node.getSortKey() != null) {
+            adviceList.add("聚合操作使用分组键: " + node.getSortKey() +
                     "，建议为这些字段创建索引");
         }
     }
@@ -255,63 +236,28 @@ public class PostgreSQLAdviceGenerator implements SqlOptimizationAdvice {
      * @param nodeType 节点类型
      * @param adviceList 保存优化建议的列表
      */
-    private void handleHashOperation(Map<String, Object> node, String nodeType,
-                                     List<String> adviceList) {
-        // 提取 Plan Width 并解析为整数
-        if (node.containsKey("Plan Width")) {
-            try {
-                int planWidth = Integer.parseInt(node.get("Plan Width").toString());
-                if (planWidth > 100) {
-                    adviceList.add(nodeType + " 操作处理宽行(宽度: " + planWidth +
-                            " bytes)，建议减少查询字段");
-                }
-            } catch (NumberFormatException e) {
-                // 记录日志，忽略非法值
-                System.err.println("Invalid 'Plan Width' value: " + node.get("Plan Width"));
-            }
-        }
-    
-        // 提取 Hash Buckets 和 Hash Batches 并解析为整数
-        if (node.containsKey("Hash Buckets")) {
-            try {
-//                int buckets = Integer.parseInt(node.get("Hash Buckets").toString());
-                int batches = getBatchesValue(node);
-    
-                if (batches > 1) {
-                    adviceList.add("Hash操作使用了多批次(batches=" + batches + ")，建议增加work_mem");
-                }
-            } catch (NumberFormatException e) {
-                // 记录日志，忽略非法值
-                System.err.println("Invalid 'Hash Buckets' or 'Hash Batches' value: " + 
-                                   node.get("Hash Buckets") + ", " + node.get("Hash Batches"));
-            }
+    private void handleHashOperation(PlanNode node, String nodeType, List<String> adviceList) {
+        if (node.getWidth() > 100) {
+            adviceList.add(nodeType + " 操作处理宽行(宽度: " + node.getWidth() +
+                    " bytes)，建议减少查询字段");
         }
-    }
-    
-    // 辅助方法：获取 Hash Batches 的值，默认为 1
-    private int getBatchesValue(Map<String, Object> node) {
-        if (node.containsKey("Hash Batches")) {
-            try {
-                return Integer.parseInt(node.get("Hash Batches").toString());
-            } catch (NumberFormatException e) {
-                // 记录日志，返回默认值
-                System.err.println("Invalid 'Hash Batches' value: " + node.get("Hash Batches"));
-            }
+
+        if (node.getHashBatches() > 1) {
+            adviceList.add("Hash操作使用了多批次(batches=" + node.getHashBatches() + ")，建议增加work_mem");
         }
-        return 1; // 默认值
     }
+
 /**
  * 处理并行查询情况，给出配置建议
  * 
  * @param node 包含并行查询相关信息的节点
  * @param adviceList 保存配置建议的列表
  */
-private void handleParallelQuery(Map<String, Object> node, List<String> adviceList) {
-    // 实际分配的工作进程数
-    int workers = Integer.parseInt(node.get("Workers").toString());
-    // 计划分配的工作进程数，如果没有设置，则使用实际分配数
-    int plannedWorkers = node.containsKey("Workers Planned") ?
-            Integer.parseInt(node.get("Workers Planned").toString()) : workers;
+private void handleParallelQuery(PlanNode node, List<String> adviceList) {
+    // 计划分配的工作进程数
+    int plannedWorkers = node.getWorkersPlanned();
+    // 实际分配的工作进程数，如果没有执行，则使用计划数
+    int workers = node.getWorkersLaunched() >= 0 ? node.getWorkersLaunched() : plannedWorkers;
 
     // 如果实际工作进程数小于计划数，提示用户检查max_worker_processes设置
     if (workers < plannedWorkers) {
@@ -319,8 +265,8 @@ private void handleParallelQuery(Map<String, Object> node, List<String> adviceLi
                 ", actual=" + workers + ")，检查max_worker_processes设置");
     }
 
-    // 如果指定了工作进程数，提示用户考虑调整max_parallel_workers_per_gather参数
-    if (node.containsKey("Worker Number")) {
+    // 提示用户考虑调整max_parallel_workers_per_gather参数
+    if (node.getWorkersLaunched() >= 0) {
         adviceList.add("检测到并行查询执行，工作进程数: " + workers +
                 "，考虑调整max_parallel_workers_per_gather参数");
     }
@@ -351,9 +297,7 @@ private void checkConfigurationAdvice(SqlExplainResult result, List<String> advi
     }
 
     // 如果检测到JIT编译，提示用户考虑调整jit_相关参数
-    if (result.getExplainResults().stream()
-            .anyMatch(plan -> plan.containsKey("JIT") &&
-                    "true".equals(String.valueOf(plan.get("JIT"))))) {
+    if (Boolean.TRUE.equals(result.getJit())) {
         adviceList.add("检测到JIT编译，复杂查询考虑调整jit_相关参数");
     }
 }
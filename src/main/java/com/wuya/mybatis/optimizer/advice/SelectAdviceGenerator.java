@@ -1,10 +1,16 @@
 package com.wuya.mybatis.optimizer.advice;
 
+import com.wuya.mybatis.optimizer.SqlAnalysisContext;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
 import com.wuya.mybatis.optimizer.SqlOptimizationAdvice;
+import com.wuya.mybatis.optimizer.advice.rule.DistinctWithoutWhereRule;
+import com.wuya.mybatis.optimizer.advice.rule.SelectStarRule;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRule;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRuleProvider;
 import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -14,7 +20,11 @@ import java.util.List;
  * @author chenjunwen
  * @date 2020-08-01 15:07
  */
-public class SelectAdviceGenerator implements SqlOptimizationAdvice {
+public class SelectAdviceGenerator implements SqlOptimizationAdvice, SqlAstRuleProvider {
+
+    private static final List<SqlAstRule> RULES = Collections.unmodifiableList(Arrays.asList(
+            new SelectStarRule(), new DistinctWithoutWhereRule()));
+
     /**
      * 根据SQL解析结果生成优化建议
      * 该方法会检查SQL语句中是否包含一些可能影响性能的SELECT查询模式，
@@ -25,25 +35,29 @@ public class SelectAdviceGenerator implements SqlOptimizationAdvice {
      */
     @Override
     public List<String> generateAdvice(SqlExplainResult explainResult) {
-        // 初始化优化建议列表
-        List<String> adviceList = new ArrayList<>();
-        // 获取SQL语句，并转换为大写以进行不区分大小写的比较
-        String sql = explainResult.getSql().toUpperCase();
-
-        // 检查SQL语句中是否包含SELECT *模式
-        if (sql.contains("SELECT *")) {
-            // 如果包含，添加建议避免使用SELECT *，而应明确指定需要的列
-            adviceList.add("避免使用SELECT *，明确指定需要的列");
-        }
-
-        // 检查SQL语句中是否包含SELECT DISTINCT且不包含WHERE子句的模式
-        if (sql.contains("SELECT DISTINCT") && !sql.contains("WHERE")) {
-            // 如果包含，添加建议指出无条件的DISTINCT查询可能导致性能问题
-            adviceList.add("无条件的DISTINCT查询可能导致性能问题");
-        }
-
-        // 返回优化建议列表
-        return adviceList;
+        return generateAdvice(explainResult, new SqlAnalysisContext(explainResult.getSql(), null, null));
+    }
+
+    /**
+     * 基于共享的分析上下文生成优化建议，规则在上下文的单次语法树遍历中执行，覆盖子查询、UNION 和 CTE
+     *
+     * @param explainResult SQL解析结果，包含SQL语句及其相关信息
+     * @param context 本次分析的 SQL 上下文
+     * @return 优化建议列表，包含一个或多个建议字符串
+     */
+    @Override
+    public List<String> generateAdvice(SqlExplainResult explainResult, SqlAnalysisContext context) {
+        return context.getAstAdvice(this);
+    }
+
+    /**
+     * 获取SELECT相关的语法树规则：SELECT * 和无条件 DISTINCT
+     *
+     * @return 规则列表
+     */
+    @Override
+    public List<SqlAstRule> getAstRules() {
+        return RULES;
     }
 
     /**
@@ -1,18 +1,20 @@
 package com.wuya.mybatis.optimizer.advice;
 
+import com.wuya.mybatis.optimizer.SqlAnalysisContext;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
 import com.wuya.mybatis.optimizer.SqlOptimizationAdvice;
 import com.wuya.mybatis.optimizer.SqlOptimizerProperties;
+import com.wuya.mybatis.optimizer.advice.rule.FunctionOnColumnRule;
+import com.wuya.mybatis.optimizer.advice.rule.LeadingWildcardLikeRule;
+import com.wuya.mybatis.optimizer.advice.rule.OrConditionRule;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRule;
+import com.wuya.mybatis.optimizer.advice.rule.SqlAstRuleProvider;
 import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-
-import static com.wuya.mybatis.optimizer.helper.SqlFunctionHelper.audit;
 
 /**
  * WHERE子句优化建议生成器
@@ -21,11 +23,10 @@ import static com.wuya.mybatis.optimizer.helper.SqlFunctionHelper.audit;
  * @author chenjunwen
  * @date 2023-07-06
  */
-public class WhereClauseAdviceGenerator implements SqlOptimizationAdvice {
+public class WhereClauseAdviceGenerator implements SqlOptimizationAdvice, SqlAstRuleProvider {
 
-    private static final Logger logger = LoggerFactory.getLogger(WhereClauseAdviceGenerator.class);
-    // 允许在SQL中使用的上层函数集合
-    private final Set<String> allowedFunctionsUpper;
+    // WHERE子句相关的语法树规则
+    private final List<SqlAstRule> rules;
 
     /**
      * 构造函数，通过@Autowired注解自动注入SqlOptimizerProperties
@@ -33,7 +34,10 @@ public class WhereClauseAdviceGenerator implements SqlOptimizationAdvice {
      */
     @Autowired
     public WhereClauseAdviceGenerator(SqlOptimizerProperties properties) {
-        this.allowedFunctionsUpper = properties.getAllowedFunctionsUpper();
+        this.rules = Collections.unmodifiableList(Arrays.asList(
+                new LeadingWildcardLikeRule(),
+                new FunctionOnColumnRule(properties.getAllowedFunctionsUpper()),
+                new OrConditionRule()));
     }
 
     /**
@@ -44,28 +48,27 @@ public class WhereClauseAdviceGenerator implements SqlOptimizationAdvice {
      */
     @Override
     public List<String> generateAdvice(SqlExplainResult explainResult) {
-        List<String> adviceList = new ArrayList<>();
-        String sql = explainResult.getSql().toUpperCase();
-
-        // 检查LIKE条件是否以通配符开头，如果是，则添加建议
-        if (sql.contains("LIKE '%") || sql.contains("LIKE \'%")) {
-            adviceList.add("LIKE条件以通配符开头，无法使用索引");
-        }
-
-        // WHERE条件中使用函数，可能导致索引失效
-        try {
-            List<String> audit = audit(sql, allowedFunctionsUpper);
-            adviceList.addAll(audit);
-        } catch (Exception e) {
-            logger.error("jsqlparser SQL分析失败", e);
-        }
+        return generateAdvice(explainResult, new SqlAnalysisContext(explainResult.getSql(), null, null));
+    }
 
-        // 检查是否存在多个OR条件，如果是，则建议使用UNION ALL优化
-        if (sql.matches(".*\\bWHERE\\b.*\\bOR\\b.*")) {
-            adviceList.add("多个OR条件，考虑使用UNION ALL优化");
-        }
+    /**
+     * 基于共享的分析上下文生成SQL优化建议，规则在上下文的单次语法树遍历中执行，覆盖子查询、UNION 和 CTE
+     * @param explainResult SQL解析结果，包含SQL文本等信息
+     * @param context 本次分析的 SQL 上下文，复用已解析的语法树
+     * @return 优化建议列表，每个元素是一条优化建议
+     */
+    @Override
+    public List<String> generateAdvice(SqlExplainResult explainResult, SqlAnalysisContext context) {
+        return context.getAstAdvice(this);
+    }
 
-        return adviceList;
+    /**
+     * 获取WHERE子句相关的语法树规则：前导通配符LIKE、列上函数和OR条件
+     * @return 规则列表
+     */
+    @Override
+    public List<SqlAstRule> getAstRules() {
+        return rules;
     }
 
     /**
@@ -0,0 +1,25 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.statement.select.PlainSelect;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 无条件 DISTINCT 规则：查询块使用 DISTINCT 但没有 WHERE 条件
+ */
+public class DistinctWithoutWhereRule implements SqlAstRule {
+
+    @Override
+    public Set<Class<?>> nodeTypes() {
+        return Collections.singleton(PlainSelect.class);
+    }
+
+    @Override
+    public void check(Object node, SqlAstRuleContext context) {
+        PlainSelect plainSelect = (PlainSelect) node;
+        if (plainSelect.getDistinct() != null && plainSelect.getWhere() == null) {
+            context.report("无条件的DISTINCT查询可能导致性能问题");
+        }
+    }
+}
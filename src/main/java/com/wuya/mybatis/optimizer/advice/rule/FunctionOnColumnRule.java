@@ -0,0 +1,36 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import com.wuya.mybatis.optimizer.helper.SqlFunctionHelper;
+import net.sf.jsqlparser.expression.Function;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 列上函数规则：WHERE 条件中对列使用非白名单函数，可能导致索引失效
+ */
+public class FunctionOnColumnRule implements SqlAstRule {
+
+    // 允许在WHERE子句中使用的函数（大写）
+    private final Set<String> allowedFunctionsUpper;
+
+    public FunctionOnColumnRule(Set<String> allowedFunctionsUpper) {
+        this.allowedFunctionsUpper = allowedFunctionsUpper;
+    }
+
+    @Override
+    public Set<Class<?>> nodeTypes() {
+        return Collections.singleton(Function.class);
+    }
+
+    @Override
+    public void check(Object node, SqlAstRuleContext context) {
+        if (context.getClause() != SqlAstRuleContext.Clause.WHERE) {
+            return;
+        }
+        String warning = SqlFunctionHelper.functionOnColumnWarning((Function) node, allowedFunctionsUpper);
+        if (warning != null) {
+            context.report(warning);
+        }
+    }
+}
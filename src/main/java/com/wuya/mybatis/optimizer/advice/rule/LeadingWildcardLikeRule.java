@@ -0,0 +1,27 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 前导通配符规则：LIKE 的模式是以 % 开头的字符串字面量
+ */
+public class LeadingWildcardLikeRule implements SqlAstRule {
+
+    @Override
+    public Set<Class<?>> nodeTypes() {
+        return Collections.singleton(LikeExpression.class);
+    }
+
+    @Override
+    public void check(Object node, SqlAstRuleContext context) {
+        LikeExpression like = (LikeExpression) node;
+        if (!like.isNot() && like.getRightExpression() instanceof StringValue
+                && ((StringValue) like.getRightExpression()).getValue().startsWith("%")) {
+            context.report("LIKE条件以通配符开头，无法使用索引");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * LIMIT 规则：深度分页、不合理的 LIMIT 值、缺少 ORDER BY 和硬编码 LIMIT
+ */
+public class LimitRule implements SqlAstRule {
+
+    @Override
+    public Set<Class<?>> nodeTypes() {
+        return Collections.singleton(PlainSelect.class);
+    }
+
+    @Override
+    public void check(Object node, SqlAstRuleContext context) {
+        PlainSelect plainSelect = (PlainSelect) node;
+        Limit limit = plainSelect.getLimit();
+        if (limit == null) {
+            return;
+        }
+        // 1. 检测深度分页
+        checkDeepOffset(plainSelect, limit, context);
+
+        // 2. 检测不合理的 LIMIT 值
+        checkLimitValue(limit, context);
+
+        // 3. 检测缺少 ORDER BY
+        checkMissingOrderBy(plainSelect, context);
+
+        // 4. 检测硬编码 LIMIT
+        checkHardcodedLimit(limit, context);
+    }
+
+    /**
+     * 检查深度分页，OFFSET 可以写在 LIMIT 中（LIMIT m, n）或单独的 OFFSET 子句中（LIMIT n OFFSET m）
+     *
+     * @param plainSelect 查询块
+     * @param limit Limit对象，表示SQL语句中的LIMIT子句
+     * @param context 规则上下文，用于报告优化建议
+     */
+    private static void checkDeepOffset(PlainSelect plainSelect, Limit limit, SqlAstRuleContext context) {
+        Expression offsetExpression = limit.getOffset();
+        if (offsetExpression == null && plainSelect.getOffset() != null) {
+            offsetExpression = plainSelect.getOffset().getOffset();
+        }
+        // 只检查字面量 OFFSET，参数化查询（如 OFFSET ?）跳过
+        if (offsetExpression instanceof LongValue) {
+            long offset = ((LongValue) offsetExpression).getValue();
+            if (offset > 10000) {
+                context.report("🚨 深度分页警告: OFFSET " + offset + " 过大\n" +
+                        "  优化方案:\n" +
+                        "  1. 改用 WHERE id > last_id LIMIT n\n" +
+                        "  2. 使用延迟关联: SELECT t.* FROM table t JOIN (SELECT id ...) tmp ON t.id=tmp.id");
+            }
+        }
+    }
+
+    /**
+     * 检查不合理的LIMIT值
+     * @param limit
+     * @param context
+     */
+    private static void checkLimitValue(Limit limit, SqlAstRuleContext context) {
+        // 只检查字面量 LIMIT，参数化查询（如 LIMIT ?）跳过
+        if (!(limit.getRowCount() instanceof LongValue)) {
+            return;
+        }
+        long limitValue = ((LongValue) limit.getRowCount()).getValue();
+        if (limitValue > 1000) {
+            context.report("⚠️ 大结果集警告: LIMIT " + limitValue + " 可能返回过多数据\n" +
+                    "  建议分批查询（如每次 LIMIT 500）");
+        } else if (limitValue == 1) {
+            context.report("⚠️ 单行限制: LIMIT 1 可能意外截断数据，请确认是否预期");
+        }
+    }
+
+    /**
+     * 检查缺少ORDER BY
+     * @param select
+     * @param context
+     */
+    private static void checkMissingOrderBy(PlainSelect select, SqlAstRuleContext context) {
+        if (select.getLimit() != null && select.getOrderByElements() == null) {
+            context.report("⚠️ 稳定性警告: 使用 LIMIT 但未指定 ORDER BY\n" +
+                    "  建议添加如 ORDER BY create_time DESC");
+        }
+    }
+
+    /**
+     * 检查硬编码LIMIT
+     * @param limit
+     * @param context
+     */
+    private static void checkHardcodedLimit(Limit limit, SqlAstRuleContext context) {
+        if (limit.toString().matches("(?i)LIMIT\\s+\\d+")) {
+            context.report("ℹ️ 规范建议: LIMIT 值建议使用参数化查询（如 LIMIT :pageSize）");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * OR 条件规则：WHERE 条件中使用 OR，可考虑改写为 UNION ALL
+ */
+public class OrConditionRule implements SqlAstRule {
+
+    @Override
+    public Set<Class<?>> nodeTypes() {
+        return Collections.singleton(OrExpression.class);
+    }
+
+    @Override
+    public void check(Object node, SqlAstRuleContext context) {
+        if (context.getClause() == SqlAstRuleContext.Clause.WHERE) {
+            context.report("多个OR条件，考虑使用UNION ALL优化");
+        }
+    }
+}
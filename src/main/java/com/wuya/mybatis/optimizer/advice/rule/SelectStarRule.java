@@ -0,0 +1,34 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.SelectItem;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * SELECT * 规则：查询块的选择列中包含 * 或 t.*
+ */
+public class SelectStarRule implements SqlAstRule {
+
+    @Override
+    public Set<Class<?>> nodeTypes() {
+        return Collections.singleton(PlainSelect.class);
+    }
+
+    @Override
+    public void check(Object node, SqlAstRuleContext context) {
+        PlainSelect plainSelect = (PlainSelect) node;
+        if (plainSelect.getSelectItems() == null) {
+            return;
+        }
+        for (SelectItem<?> item : plainSelect.getSelectItems()) {
+            // AllTableColumns 是 AllColumns 的子类
+            if (item.getExpression() instanceof AllColumns) {
+                context.report("避免使用SELECT *，明确指定需要的列");
+                return;
+            }
+        }
+    }
+}
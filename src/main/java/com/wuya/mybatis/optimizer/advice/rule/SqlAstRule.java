@@ -0,0 +1,22 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import java.util.Set;
+
+/**
+ * SQL 语法树规则
+ * 规则声明关注的语法树节点类型，由 {@link SqlAstRuleEngine} 在一次遍历中把匹配的节点交给规则检查
+ */
+public interface SqlAstRule {
+    /**
+     * 关注的节点类型，按节点的实际类型精确匹配
+     * @return 节点类型集合
+     */
+    Set<Class<?>> nodeTypes();
+
+    /**
+     * 检查一个节点，发现问题时通过 {@link SqlAstRuleContext#report} 报告建议
+     * @param node 语法树节点，类型为 {@link #nodeTypes()} 之一
+     * @param context 遍历上下文
+     */
+    void check(Object node, SqlAstRuleContext context);
+}
@@ -0,0 +1,35 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.statement.select.PlainSelect;
+
+/**
+ * 规则遍历上下文
+ * 提供当前节点所在的子句和所属的查询块，并收集规则报告的建议
+ */
+public interface SqlAstRuleContext {
+
+    /**
+     * 节点所在的子句
+     */
+    enum Clause {
+        SELECT, FROM, JOIN_ON, WHERE, GROUP_BY, HAVING, ORDER_BY, OTHER
+    }
+
+    /**
+     * 获取当前节点所在的子句
+     * @return 子句
+     */
+    Clause getClause();
+
+    /**
+     * 获取当前节点所属的最内层查询块
+     * @return 查询块，不在查询中（如 UPDATE 的 WHERE）时返回null
+     */
+    PlainSelect getCurrentSelect();
+
+    /**
+     * 报告一条优化建议，同一生成器的相同建议只保留一条
+     * @param advice 建议内容
+     */
+    void report(String advice);
+}
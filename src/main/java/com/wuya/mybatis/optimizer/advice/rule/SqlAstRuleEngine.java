@@ -0,0 +1,294 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.delete.Delete;
+import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.statement.select.*;
+import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.statement.update.UpdateSet;
+
+import java.util.*;
+
+/**
+ * SQL 语法树规则引擎
+ * 按节点类型索引所有规则，对语法树只做一次遍历（覆盖子查询、UNION 和 CTE），每个节点只分派给关注该类型的规则，
+ * 规则开销与 SQL 长度成线性关系，与启用的规则数量无关
+ */
+public class SqlAstRuleEngine {
+
+    // 节点类型 -> 关注该类型的规则
+    private final Map<Class<?>, List<RegisteredRule>> rulesByType = new HashMap<>();
+    // 参与遍历的规则提供者
+    private final Set<SqlAstRuleProvider> providers = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * 构造函数
+     * @param providers 规则提供者
+     */
+    public SqlAstRuleEngine(Collection<? extends SqlAstRuleProvider> providers) {
+        for (SqlAstRuleProvider provider : providers) {
+            this.providers.add(provider);
+            for (SqlAstRule rule : provider.getAstRules()) {
+                for (Class<?> type : rule.nodeTypes()) {
+                    rulesByType.computeIfAbsent(type, t -> new ArrayList<>()).add(new RegisteredRule(provider, rule));
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断提供者的规则是否由该引擎执行
+     * @param provider 规则提供者
+     * @return 包含返回true
+     */
+    public boolean contains(SqlAstRuleProvider provider) {
+        return providers.contains(provider);
+    }
+
+    /**
+     * 遍历语法树执行所有规则
+     * @param statement 已解析的语句
+     * @return 每个提供者报告的建议，没有建议的提供者不在结果中
+     */
+    public Map<SqlAstRuleProvider, List<String>> evaluate(Statement statement) {
+        Walker walker = new Walker();
+        if (statement != null && !rulesByType.isEmpty()) {
+            walker.walkStatement(statement);
+        }
+        Map<SqlAstRuleProvider, List<String>> result = new IdentityHashMap<>();
+        walker.advice.forEach((provider, advice) -> result.put(provider, new ArrayList<>(advice)));
+        return result;
+    }
+
+    /**
+     * 已注册的规则及其提供者
+     */
+    private static final class RegisteredRule {
+        private final SqlAstRuleProvider provider;
+        private final SqlAstRule rule;
+
+        private RegisteredRule(SqlAstRuleProvider provider, SqlAstRule rule) {
+            this.provider = provider;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * 一次遍历的状态：当前子句、查询块栈和收集到的建议
+     */
+    private final class Walker extends ExpressionVisitorAdapter implements SqlAstRuleContext {
+        private final Map<SqlAstRuleProvider, Set<String>> advice = new IdentityHashMap<>();
+        private final Deque<PlainSelect> selects = new ArrayDeque<>();
+        private Clause clause = Clause.OTHER;
+        private SqlAstRuleProvider reporting;
+
+        @Override
+        public Clause getClause() {
+            return clause;
+        }
+
+        @Override
+        public PlainSelect getCurrentSelect() {
+            return selects.peek();
+        }
+
+        @Override
+        public void report(String text) {
+            advice.computeIfAbsent(reporting, p -> new LinkedHashSet<>()).add(text);
+        }
+
+        /**
+         * 把节点分派给关注其类型的规则
+         */
+        private void emit(Object node) {
+            List<RegisteredRule> rules = rulesByType.get(node.getClass());
+            if (rules == null) {
+                return;
+            }
+            for (RegisteredRule registered : rules) {
+                reporting = registered.provider;
+                registered.rule.check(node, this);
+            }
+            reporting = null;
+        }
+
+        private void walkStatement(Statement statement) {
+            if (statement instanceof Select) {
+                walkSelect((Select) statement);
+            } else if (statement instanceof Update) {
+                Update update = (Update) statement;
+                emit(update);
+                walkWithItems(update.getWithItemsList());
+                if (update.getUpdateSets() != null) {
+                    for (UpdateSet set : update.getUpdateSets()) {
+                        walkExpression(set.getValues(), Clause.OTHER);
+                    }
+                }
+                walkFromItem(update.getFromItem());
+                walkJoins(update.getJoins());
+                walkExpression(update.getWhere(), Clause.WHERE);
+            } else if (statement instanceof Delete) {
+                Delete delete = (Delete) statement;
+                emit(delete);
+                walkWithItems(delete.getWithItemsList());
+                walkJoins(delete.getJoins());
+                walkExpression(delete.getWhere(), Clause.WHERE);
+            } else if (statement instanceof Insert) {
+                Insert insert = (Insert) statement;
+                emit(insert);
+                walkSelect(insert.getSelect());
+            } else {
+                emit(statement);
+            }
+        }
+
+        private void walkSelect(Select select) {
+            if (select == null) {
+                return;
+            }
+            emit(select);
+            walkWithItems(select.getWithItemsList());
+            if (select instanceof PlainSelect) {
+                walkPlainSelect((PlainSelect) select);
+            } else if (select instanceof SetOperationList) {
+                for (Select branch : ((SetOperationList) select).getSelects()) {
+                    walkSelect(branch);
+                }
+            } else if (select instanceof ParenthesedSelect) {
+                walkSelect(((ParenthesedSelect) select).getSelect());
+            }
+            walkOrderBy(select.getOrderByElements());
+        }
+
+        private void walkPlainSelect(PlainSelect plainSelect) {
+            selects.push(plainSelect);
+            Clause saved = clause;
+            try {
+                if (plainSelect.getSelectItems() != null) {
+                    for (SelectItem<?> item : plainSelect.getSelectItems()) {
+                        walkExpression(item.getExpression(), Clause.SELECT);
+                    }
+                }
+                walkFromItem(plainSelect.getFromItem());
+                walkJoins(plainSelect.getJoins());
+                walkExpression(plainSelect.getWhere(), Clause.WHERE);
+                GroupByElement groupBy = plainSelect.getGroupBy();
+                if (groupBy != null) {
+                    walkExpression(groupBy.getGroupByExpressionList(), Clause.GROUP_BY);
+                }
+                walkExpression(plainSelect.getHaving(), Clause.HAVING);
+            } finally {
+                clause = saved;
+                selects.pop();
+            }
+        }
+
+        private void walkWithItems(List<WithItem> withItems) {
+            if (withItems != null) {
+                for (WithItem withItem : withItems) {
+                    walkSelect(withItem.getSelect());
+                }
+            }
+        }
+
+        private void walkFromItem(FromItem fromItem) {
+            if (fromItem instanceof ParenthesedSelect) {
+                walkSelect((ParenthesedSelect) fromItem);
+            } else if (fromItem instanceof ParenthesedFromItem) {
+                ParenthesedFromItem parenthesed = (ParenthesedFromItem) fromItem;
+                walkFromItem(parenthesed.getFromItem());
+                walkJoins(parenthesed.getJoins());
+            } else if (fromItem != null) {
+                emit(fromItem);
+            }
+        }
+
+        private void walkJoins(List<Join> joins) {
+            if (joins == null) {
+                return;
+            }
+            for (Join join : joins) {
+                emit(join);
+                walkFromItem(join.getRightItem());
+                if (join.getOnExpressions() != null) {
+                    for (Expression on : join.getOnExpressions()) {
+                        walkExpression(on, Clause.JOIN_ON);
+                    }
+                }
+            }
+        }
+
+        private void walkOrderBy(List<OrderByElement> orderBy) {
+            if (orderBy != null) {
+                for (OrderByElement element : orderBy) {
+                    walkExpression(element.getExpression(), Clause.ORDER_BY);
+                }
+            }
+        }
+
+        private void walkExpression(Expression expression, Clause target) {
+            if (expression == null) {
+                return;
+            }
+            Clause saved = clause;
+            clause = target;
+            try {
+                expression.accept(this);
+            } finally {
+                clause = saved;
+            }
+        }
+
+        @Override
+        public void visit(Function function) {
+            emit(function);
+            super.visit(function);
+        }
+
+        @Override
+        public void visit(OrExpression expr) {
+            emit(expr);
+            super.visit(expr);
+        }
+
+        @Override
+        public void visit(LikeExpression expr) {
+            emit(expr);
+            super.visit(expr);
+        }
+
+        @Override
+        public void visit(InExpression expr) {
+            emit(expr);
+            super.visit(expr);
+        }
+
+        @Override
+        public void visit(ExistsExpression expr) {
+            emit(expr);
+            super.visit(expr);
+        }
+
+        @Override
+        public void visit(ParenthesedSelect select) {
+            Clause saved = clause;
+            try {
+                walkSelect(select);
+            } finally {
+                clause = saved;
+            }
+        }
+
+        @Override
+        public void visit(Select select) {
+            walkSelect(select);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import java.util.List;
+
+/**
+ * 提供语法树规则的优化建议生成器
+ * 同一次分析中所有提供者的规则合并到一次语法树遍历中执行，建议按提供者分别返回
+ */
+public interface SqlAstRuleProvider {
+    /**
+     * 获取该生成器的语法树规则
+     * @return 规则列表
+     */
+    List<SqlAstRule> getAstRules();
+}
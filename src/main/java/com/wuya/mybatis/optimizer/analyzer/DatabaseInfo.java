@@ -0,0 +1,101 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import lombok.Getter;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+/**
+ * 数据库产品与版本信息
+ * 每个数据源只解析一次，供分析器选择合适的 EXPLAIN 方式（如 MySQL 8.0.18+ 的 EXPLAIN ANALYZE、PostgreSQL 16 的 GENERIC_PLAN）
+ */
+@Getter
+public class DatabaseInfo {
+
+    // 数据库类型
+    private final DatabaseType type;
+    // 数据库产品名
+    private final String productName;
+    // 数据库产品版本
+    private final String productVersion;
+    // 主版本号
+    private final int majorVersion;
+    // 次版本号
+    private final int minorVersion;
+
+    public DatabaseInfo(DatabaseType type, String productName, String productVersion, int majorVersion, int minorVersion) {
+        this.type = type;
+        this.productName = productName;
+        this.productVersion = productVersion;
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+    }
+
+    /**
+     * 从 JDBC 元数据解析数据库信息，产品名无法识别时退回按 URL 判断
+     *
+     * @param metaData JDBC 元数据
+     * @return 数据库信息
+     * @throws SQLException 读取元数据失败
+     */
+    public static DatabaseInfo from(DatabaseMetaData metaData) throws SQLException {
+        String productName = metaData.getDatabaseProductName();
+        DatabaseType type = DatabaseType.fromProductName(productName);
+        if (type == DatabaseType.UNKNOWN) {
+            type = DatabaseType.fromUrl(metaData.getURL());
+        }
+        return new DatabaseInfo(type, productName, metaData.getDatabaseProductVersion(),
+                metaData.getDatabaseMajorVersion(), metaData.getDatabaseMinorVersion());
+    }
+
+    /**
+     * 判断数据库版本是否不低于给定版本
+     *
+     * @param major 主版本号
+     * @param minor 次版本号
+     * @return 不低于给定版本返回true
+     */
+    public boolean isAtLeast(int major, int minor) {
+        return majorVersion > major || (majorVersion == major && minorVersion >= minor);
+    }
+
+    /**
+     * 判断数据库版本是否不低于给定版本，补丁号从产品版本字符串中解析（如 MySQL 的 8.0.18）
+     *
+     * @param major 主版本号
+     * @param minor 次版本号
+     * @param patch 补丁号
+     * @return 不低于给定版本返回true
+     */
+    public boolean isAtLeast(int major, int minor, int patch) {
+        if (majorVersion != major || minorVersion != minor) {
+            return isAtLeast(major, minor);
+        }
+        return patchVersion() >= patch;
+    }
+
+    /**
+     * 从产品版本字符串中解析补丁号，解析失败返回0
+     */
+    private int patchVersion() {
+        if (productVersion == null) {
+            return 0;
+        }
+        String[] parts = productVersion.split("[^0-9]+");
+        int index = 0;
+        for (String part : parts) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (index++ == 2) {
+                return Integer.parseInt(part);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return type.getName() + " " + productVersion;
+    }
+}
@@ -0,0 +1,123 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据源信息注册表
+ * 按数据源实例缓存数据库类型和版本，并按数据库类型分派分析器，避免每次分析都读取元数据和遍历分析器列表。
+ * 数据源数量很少且几乎不变，使用写时复制的 IdentityHashMap，读取无锁。
+ * 路由数据源（类层次中有名为 *RoutingDataSource 的类，如 Spring 的 AbstractRoutingDataSource）每次可能路由到不同类型或版本的数据库，
+ * 改为按连接的 JDBC URL 缓存
+ */
+public class DatabaseInfoRegistry {
+
+    // 按数据库类型分派的分析器
+    private final Map<DatabaseType, ExplainResultAnalyzer> analyzers = new EnumMap<>(DatabaseType.class);
+    // 数据源 -> 数据库信息
+    private volatile Map<DataSource, DatabaseInfo> databaseInfos = new IdentityHashMap<>();
+    // JDBC URL -> 数据库信息，用于路由数据源
+    private final Map<String, DatabaseInfo> databaseInfosByUrl = new ConcurrentHashMap<>();
+    // 数据源类型 -> 是否为路由数据源
+    private final Map<Class<?>, Boolean> routingTypes = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param analyzers 分析器列表，同一数据库类型有多个分析器时使用第一个
+     */
+    public DatabaseInfoRegistry(List<ExplainResultAnalyzer> analyzers) {
+        if (analyzers != null) {
+            for (ExplainResultAnalyzer analyzer : analyzers) {
+                this.analyzers.putIfAbsent(analyzer.getDatabaseType(), analyzer);
+            }
+        }
+    }
+
+    /**
+     * 获取数据源对应的数据库信息，首次访问时从连接元数据解析
+     *
+     * @param dataSource 数据源
+     * @param connection 该数据源上的连接，首次解析或路由数据源时使用
+     * @return 数据库信息
+     * @throws SQLException 读取元数据失败
+     */
+    public DatabaseInfo resolve(DataSource dataSource, Connection connection) throws SQLException {
+        if (isRouting(dataSource)) {
+            return resolveByUrl(connection);
+        }
+        DatabaseInfo info = databaseInfos.get(dataSource);
+        if (info != null) {
+            return info;
+        }
+        info = DatabaseInfo.from(connection.getMetaData());
+        synchronized (this) {
+            DatabaseInfo existing = databaseInfos.get(dataSource);
+            if (existing != null) {
+                return existing;
+            }
+            Map<DataSource, DatabaseInfo> copy = new IdentityHashMap<>(databaseInfos);
+            copy.put(dataSource, info);
+            databaseInfos = copy;
+        }
+        return info;
+    }
+
+    /**
+     * 按连接的 JDBC URL 获取数据库信息，URL 不可用时每次从元数据解析
+     */
+    private DatabaseInfo resolveByUrl(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String url = metaData.getURL();
+        if (url == null) {
+            return DatabaseInfo.from(metaData);
+        }
+        DatabaseInfo info = databaseInfosByUrl.get(url);
+        if (info == null) {
+            info = DatabaseInfo.from(metaData);
+            databaseInfosByUrl.putIfAbsent(url, info);
+        }
+        return info;
+    }
+
+    /**
+     * 判断是否为路由数据源，按类名判断以免依赖具体框架
+     */
+    private boolean isRouting(DataSource dataSource) {
+        return dataSource != null && routingTypes.computeIfAbsent(dataSource.getClass(), type -> {
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                if (c.getSimpleName().endsWith("RoutingDataSource")) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 获取已解析的数据库信息
+     *
+     * @param dataSource 数据源
+     * @return 数据库信息，尚未解析或为路由数据源时返回null
+     */
+    public DatabaseInfo get(DataSource dataSource) {
+        return databaseInfos.get(dataSource);
+    }
+
+    /**
+     * 获取数据库类型对应的分析器
+     *
+     * @param type 数据库类型
+     * @return 分析器，不支持时返回null
+     */
+    public ExplainResultAnalyzer analyzerFor(DatabaseType type) {
+        return analyzers.get(type);
+    }
+}
@@ -34,4 +34,25 @@ public enum DatabaseType {
         }
         return UNKNOWN;
     }
+
+    /**
+     * 根据 JDBC 元数据中的数据库产品名判断数据库类型
+     *
+     * @param productName DatabaseMetaData#getDatabaseProductName 的返回值
+     * @return 数据库类型，无法识别时返回 UNKNOWN
+     */
+    public static DatabaseType fromProductName(String productName) {
+        if (productName == null) {
+            return UNKNOWN;
+        }
+        String name = productName.toLowerCase();
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        } else if (name.contains("postgresql")) {
+            return POSTGRE;
+        } else if (name.contains("oracle")) {
+            return ORACLE;
+        }
+        return UNKNOWN;
+    }
 }
\ No newline at end of file
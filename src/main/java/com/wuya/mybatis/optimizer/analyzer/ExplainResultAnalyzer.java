@@ -2,14 +2,20 @@ package com.wuya.mybatis.optimizer.analyzer;
 
 
 import com.wuya.mybatis.optimizer.SqlExplainResult;
+import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.RowBounds;
 
 import java.sql.Connection;
 
 /**
  * 分析器接口
- * 用于定义分析SQL执行计划和获取数据库类型的操作
+ * 用于定义分析SQL执行计划和获取数据库类型的操作。
+ * 新的实现应覆盖 {@link #analyze(Connection, MappedStatement, BoundSql)}；
+ * 只实现了旧方法 {@link #analyze(Connection, BoundSql, Invocation)} 的分析器仍可使用，由默认实现桥接
  * 
  * @author chenjunwen
  * @date 2020-09-02 16:08:04
@@ -18,13 +24,53 @@ public interface ExplainResultAnalyzer {
     /**
      * 分析给定SQL的执行计划
      *
+     * @param connection      数据库连接，用于执行SQL和获取数据库信息
+     * @param mappedStatement 当前执行的MyBatis语句，用于获取配置信息
+     * @param boundSql        本次执行时已构建的BoundSql，包含SQL和参数，分析器不应重新构建
+     * @return SqlExplainResult对象，包含SQL的执行计划分析结果
+     * @throws Exception 如果分析过程中发生错误，则抛出异常
+     */
+    default SqlExplainResult analyze(Connection connection, MappedStatement mappedStatement, BoundSql boundSql) throws Exception {
+        // 按拦截的 Executor 方法参数构造调用对象：查询使用携带 BoundSql 的6参数形式，其余为 update 的2参数形式
+        Object[] args = mappedStatement.getSqlCommandType() == SqlCommandType.SELECT ?
+                new Object[]{mappedStatement, boundSql.getParameterObject(), RowBounds.DEFAULT,
+                        Executor.NO_RESULT_HANDLER, null, boundSql} :
+                new Object[]{mappedStatement, boundSql.getParameterObject()};
+        return analyze(connection, boundSql, new Invocation(null, null, args));
+    }
+
+    /**
+     * 分析给定SQL的执行计划（旧版接口）
+     * 分析在SQL执行之后进行，传入的调用对象只携带参数，不能调用 {@link Invocation#proceed()}
+     *
      * @param connection 数据库连接，用于执行SQL和获取数据库信息
      * @param boundSql   包含执行SQL所需的所有数据的对象
      * @param invocation MyBatis的拦截器调用对象，用于获取当前执行的SQL语句
      * @return SqlExplainResult对象，包含SQL的执行计划分析结果
      * @throws Exception 如果分析过程中发生错误，则抛出异常
+     * @deprecated 使用 {@link #analyze(Connection, MappedStatement, BoundSql)}，MappedStatement 直接作为参数传入
+     */
+    @Deprecated
+    default SqlExplainResult analyze(Connection connection, BoundSql boundSql, Invocation invocation) throws Exception {
+        throw new UnsupportedOperationException(getClass().getName()
+                + " 需要实现 analyze(Connection, MappedStatement, BoundSql)");
+    }
+
+    /**
+     * 分析给定SQL的执行计划，可根据数据库版本选择不同的 EXPLAIN 方式
+     * 默认忽略版本信息，委托给 {@link #analyze(Connection, MappedStatement, BoundSql)}
+     *
+     * @param connection      数据库连接，用于执行SQL和获取数据库信息
+     * @param mappedStatement 当前执行的MyBatis语句，用于获取配置信息
+     * @param boundSql        本次执行时已构建的BoundSql，包含SQL和参数，分析器不应重新构建
+     * @param databaseInfo    数据源对应的数据库产品和版本信息
+     * @return SqlExplainResult对象，包含SQL的执行计划分析结果
+     * @throws Exception 如果分析过程中发生错误，则抛出异常
      */
-    SqlExplainResult analyze(Connection connection, BoundSql boundSql, Invocation invocation) throws Exception;
+    default SqlExplainResult analyze(Connection connection, MappedStatement mappedStatement, BoundSql boundSql,
+                                     DatabaseInfo databaseInfo) throws Exception {
+        return analyze(connection, mappedStatement, boundSql);
+    }
     
     /**
      * 获取当前分析器支持的数据库类型
@@ -2,27 +2,15 @@ package com.wuya.mybatis.optimizer.analyzer;
 
 
 import com.wuya.mybatis.optimizer.SqlExplainResult;
-import com.wuya.mybatis.optimizer.helper.ParameterWrapper;
-import com.wuya.mybatis.optimizer.helper.SqlHepler;
-import org.apache.ibatis.builder.StaticSqlSource;
-import org.apache.ibatis.executor.Executor;
-import org.apache.ibatis.mapping.*;
-import org.apache.ibatis.plugin.Invocation;
-import org.apache.ibatis.reflection.wrapper.BeanWrapper;
-import org.apache.ibatis.session.Configuration;
-import org.apache.ibatis.session.ResultContext;
-import org.apache.ibatis.session.ResultHandler;
-import org.apache.ibatis.session.RowBounds;
-import org.apache.ibatis.transaction.Transaction;
-import org.apache.ibatis.transaction.TransactionFactory;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.PropertyAccessorFactory;
-
-import java.beans.PropertyDescriptor;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+
 import java.sql.*;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * MySQL分析器实现
@@ -32,186 +20,235 @@ import java.util.stream.Collectors;
  */
 public class MysqlExplainResultAnalyzer implements ExplainResultAnalyzer {
 
-    private static final Logger logger = LoggerFactory.getLogger(MysqlExplainResultAnalyzer.class);
+    /**
+     * EXPLAIN 输出格式
+     */
+    public enum ExplainFormat {
+        /**
+         * 传统表格格式，没有代价信息
+         */
+        TRADITIONAL,
+        /**
+         * EXPLAIN FORMAT=JSON，包含查询代价和每个表的读取代价，不执行语句（需要 5.6.5+）
+         */
+        JSON,
+        /**
+         * EXPLAIN ANALYZE 树形格式，包含实际行数和耗时，会执行语句（需要 8.0.18+，只用于 SELECT，其他语句退化为 JSON）
+         */
+        ANALYZE
+    }
+
+    // EXPLAIN 输出格式
+    private final ExplainFormat explainFormat;
+
+    public MysqlExplainResultAnalyzer() {
+        this(ExplainFormat.JSON);
+    }
+
+    /**
+     * @param explainFormat EXPLAIN 输出格式，为null时使用 JSON
+     */
+    public MysqlExplainResultAnalyzer(ExplainFormat explainFormat) {
+        this.explainFormat = explainFormat != null ? explainFormat : ExplainFormat.JSON;
+    }
 
     /**
-     * 分析SQL语句的执行计划
+     * 分析SQL语句的执行计划，数据库版本未知，ANALYZE 退化为 JSON
      *
      * @param connection 数据库连接对象，用于执行SQL语句
-     * @param boundSql   包含SQL语句和参数信息的对象
-     * @param invocation
+     * @param mappedStatement 当前执行的MyBatis语句
+     * @param boundSql   本次执行时已构建的BoundSql，包含SQL语句和参数信息
      * @return 返回包含原始SQL和执行计划解析结果的对象
      * @throws Exception 执行过程中可能抛出的异常
      */
     @Override
-    public SqlExplainResult analyze(Connection connection, BoundSql boundSql, Invocation invocation) throws Exception {
+    public SqlExplainResult analyze(Connection connection, MappedStatement mappedStatement, BoundSql boundSql) throws Exception {
+        return analyze(connection, mappedStatement, boundSql, null);
+    }
 
-        // 执行EXPLAIN分析SQL语句，并返回分析结果
-        List<Map<String, Object>> maps = mybatisExplain(invocation);
-        
+    /**
+     * 按数据库版本选择可用的 EXPLAIN 格式分析SQL语句的执行计划
+     *
+     * @param connection 数据库连接对象，用于执行SQL语句
+     * @param mappedStatement 当前执行的MyBatis语句
+     * @param boundSql   本次执行时已构建的BoundSql，包含SQL语句和参数信息
+     * @param databaseInfo 数据库版本信息
+     * @return 返回包含原始SQL和执行计划解析结果的对象
+     * @throws Exception 执行过程中可能抛出的异常
+     */
+    @Override
+    public SqlExplainResult analyze(Connection connection, MappedStatement mappedStatement, BoundSql boundSql,
+                                    DatabaseInfo databaseInfo) throws Exception {
         // 获取原始 SQL
         String originalSql = boundSql.getSql();
 
         // 创建并填充SQL执行结果对象
         SqlExplainResult result = new SqlExplainResult();
         result.setSql(originalSql);
-        result.setExplainResults(maps);
+
+        ExplainFormat format = resolveFormat(mappedStatement, databaseInfo);
+        if (format == ExplainFormat.TRADITIONAL) {
+            List<Map<String, Object>> maps = executeExplain(connection, mappedStatement, boundSql, "EXPLAIN ");
+            result.setExplainResults(maps);
+            result.setPlanRoot(buildPlanTree(maps));
+            return result;
+        }
+
+        String prefix = format == ExplainFormat.ANALYZE ? "EXPLAIN ANALYZE " : "EXPLAIN FORMAT=JSON ";
+        String plan = firstColumn(executeExplain(connection, mappedStatement, boundSql, prefix));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        result.setExplainResults(rows);
+        if (plan == null) {
+            return result;
+        }
+        PlanNode root = format == ExplainFormat.ANALYZE ? MysqlPlanParser.parseTree(plan) : MysqlPlanParser.parseJson(plan);
+        result.setPlanRoot(root);
+        MysqlPlanParser.flatten(root, rows);
         return result;
     }
 
     /**
-     * 解析MyBatis查询语句并返回执行计划信息
-     * 该方法主要用于内部调试和性能分析，通过执行查询的EXPLAIN形式来获取SQL语句的执行计划
-     * 
-     * @param invocation MyBatis拦截器中的调用对象，包含执行的查询信息和参数
-     * @return 返回一个包含执行计划信息的列表，每条信息是一个键值对映射
-     * @throws SQLException 如果执行过程中发生SQL异常
+     * 根据配置和数据库版本确定实际使用的 EXPLAIN 格式
+     * MariaDB 的 EXPLAIN ANALYZE 语法与 MySQL 不同，不使用 ANALYZE
      */
-    private List<Map<String, Object>> mybatisExplain(Invocation invocation) throws SQLException {
-        // 从invocation中获取MappedStatement对象，它包含了映射信息和查询定义
-        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
-        // 获取查询参数，这可能是单个参数或者一个参数对象
-        Object parameter = invocation.getArgs()[1];
-        // 调用方法执行EXPLAIN查询，并将结果保存到explainResults列表中
-        return executeExplain(ms, parameter);
+    private ExplainFormat resolveFormat(MappedStatement mappedStatement, DatabaseInfo databaseInfo) {
+        if (databaseInfo == null) {
+            return explainFormat == ExplainFormat.ANALYZE ? ExplainFormat.JSON : explainFormat;
+        }
+        if (explainFormat == ExplainFormat.TRADITIONAL || !databaseInfo.isAtLeast(5, 6, 5)) {
+            return ExplainFormat.TRADITIONAL;
+        }
+        if (explainFormat == ExplainFormat.ANALYZE
+                && (mappedStatement.getSqlCommandType() != SqlCommandType.SELECT
+                || isMariaDb(databaseInfo) || !databaseInfo.isAtLeast(8, 0, 18))) {
+            return ExplainFormat.JSON;
+        }
+        return explainFormat;
+    }
+
+    private static boolean isMariaDb(DatabaseInfo databaseInfo) {
+        String name = databaseInfo.getProductName() + " " + databaseInfo.getProductVersion();
+        return name.toLowerCase().contains("mariadb");
     }
 
     /**
-     * 执行EXPLAIN分析SQL语句，并返回分析结果
-     * 此方法用于获取SQL执行计划，帮助开发者优化SQL性能
-     * 
-     * @param originalMs 原始的MappedStatement对象，包含映射信息
-     * @param parameter 传递给SQL语句的参数对象
-     * @return 返回一个包含EXPLAIN结果的列表，每个结果是一个键值对映射
-     * @throws SQLException 如果执行SQL过程中发生错误
+     * 取 JSON 和树形格式 EXPLAIN 结果的唯一一列
      */
-    private List<Map<String, Object>> executeExplain(MappedStatement originalMs, Object parameter) throws SQLException {
-    
-        // 获取配置对象，用于创建事务和执行器
-        Configuration config = originalMs.getConfiguration();
-        Transaction tx = null;
-        Executor executor = null;
-    
-        try {
-            // 创建事务和Executor
-            tx = config.getEnvironment().getTransactionFactory()
-                    .newTransaction(config.getEnvironment().getDataSource(), null, false);
-            executor = config.newExecutor(tx);
-    
-            // 创建增强版BoundSql
-            BoundSql originalBoundSql = originalMs.getBoundSql(parameter);
-            BoundSql explainBoundSql = createExplainBoundSql(config, originalBoundSql, parameter);
-    
-            // 创建EXPLAIN专用的MappedStatement
-            MappedStatement explainMs = createExplainMappedStatement(originalMs, explainBoundSql);
-    
-            // 执行EXPLAIN
-            ExplainResultHandler handler = new ExplainResultHandler();
-            executor.query(explainMs, explainBoundSql.getParameterObject(),
-                    RowBounds.DEFAULT, handler);
-    
-            return handler.getResults();
-        } finally {
-            // 关闭资源，确保事务和执行器被正确关闭
-            closeResources(executor, tx);
+    private static String firstColumn(List<Map<String, Object>> rows) {
+        if (rows.isEmpty() || rows.get(0).isEmpty()) {
+            return null;
         }
+        Object value = rows.get(0).values().iterator().next();
+        return value != null ? value.toString() : null;
     }
 
     /**
-     *  关闭Executor和Transaction资源
-     * @param executor
-     * @param tx
+     * 将传统格式的EXPLAIN行转换为计划树
+     * 传统格式没有层次结构，按连接顺序把每一行作为根节点的子节点
+     *
+     * @param rows EXPLAIN结果行
+     * @return 计划树根节点
      */
-    private void closeResources(Executor executor, Transaction tx) {
-        if (executor != null) executor.close(false);
-        try {
-            if (tx != null) tx.close();
-        } catch (SQLException e) {
-            logger.debug("关闭Transaction失败", e);
+    static PlanNode buildPlanTree(List<Map<String, Object>> rows) {
+        PlanNode root = new PlanNode();
+        root.setOperation("QUERY");
+        for (Map<String, Object> row : rows) {
+            PlanNode node = new PlanNode();
+            node.setOperation("TABLE");
+            node.setSelectType(text(row.get("select_type")));
+            node.setAccessType(text(row.get("type")));
+            node.setRelation(text(row.get("table")));
+            node.setIndex(text(row.get("key")));
+            node.setExtra(text(row.get("Extra")));
+            node.setEstimatedRows(toLong(row.get("rows")));
+            node.setFiltered(toDouble(row.get("filtered")));
+            root.addChild(node);
         }
+        return root;
     }
-    /**
-     * 创建用于解释查询计划的BoundSql对象
-     * 此方法基于原有的BoundSql对象生成一个新的BoundSql对象，新对象的SQL语句前添加了"EXPLAIN"关键字，
-     * 用于获取SQL语句的执行计划信息这有助于在调试和优化查询性能时，分析数据库如何执行查询
-     * 
-     * @param config MyBatis配置对象，包含了MyBatis的全局配置信息
-     * @param originalBoundSql 原始的BoundSql对象，包含原始的SQL语句和参数映射等信息
-     * @param parameter 传递给SQL语句的参数，可能需要被包装以适应特定的参数处理需求
-     * @return 返回一个新的BoundSql对象，其SQL语句为原始SQL语句前添加了"EXPLAIN"关键字，用于获取执行计划
-     */
-    private BoundSql createExplainBoundSql(Configuration config, BoundSql originalBoundSql, Object parameter) {
-        // 包装参数
-        Object wrappedParameter = ParameterWrapper.wrap(parameter);
-    
-        return new BoundSql(
-                config,
-                "EXPLAIN " + originalBoundSql.getSql(),
-                originalBoundSql.getParameterMappings(),
-                wrappedParameter
-        );
+
+    private static String text(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException ignored) {
+                // 非数字按未知处理
+            }
+        }
+        return PlanNode.UNKNOWN;
     }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException ignored) {
+                // 非数字按未知处理
+            }
+        }
+        return PlanNode.UNKNOWN;
+    }
+
     /**
-     * 创建用于解释查询的MappedStatement
-     * 
-     * @param originalMs 原始的MappedStatement对象，用于获取原始的映射信息
-     * @param explainBoundSql 包含解释查询SQL和参数映射的BoundSql对象
-     * @return 返回一个新的MappedStatement对象，用于执行解释查询
+     * 执行EXPLAIN分析SQL语句，并返回分析结果
+     * 直接在分析连接上预编译 EXPLAIN 语句（复用连接时语句会被缓存），用 MyBatis 的 TypeHandler 绑定参数，
+     * 从 ResultSet 逐行读取结果，不向 Configuration 注册任何 MappedStatement，也不创建 Executor
      * 
-     * 此方法的目的是构建一个新的MappedStatement，专门用于执行带有EXPLAIN前缀的SQL查询，
-     * 以便可以获取查询的执行计划信息这个新的MappedStatement不会使用缓存，并且配置了简单的ResultMap，
-     * 以适应EXPLAIN查询返回的特定格式数据
+     * @param connection 分析连接，EXPLAIN在该连接上执行，不再从数据源另开事务
+     * @param originalMs 原始的MappedStatement对象，提供参数绑定所需的配置
+     * @param originalBoundSql 本次执行时已构建的BoundSql，参数映射和foreach等产生的附加参数直接复用
+     * @param prefix EXPLAIN 前缀，决定输出格式
+     * @return 返回一个包含EXPLAIN结果的列表，每个结果是一个键值对映射
+     * @throws SQLException 如果执行SQL过程中发生错误
      */
-    private MappedStatement createExplainMappedStatement(MappedStatement originalMs,
-                                                         BoundSql explainBoundSql) {
-        // 生成新的MappedStatement的ID
-        String id = originalMs.getId() + "-Explain";
-        Configuration config = originalMs.getConfiguration();
-    
-        // 检查是否已经存在相同的MappedStatement，如果存在则直接返回
-        if (config.hasStatement(id)) {
-            return config.getMappedStatement(id);
+    private List<Map<String, Object>> executeExplain(Connection connection, MappedStatement originalMs,
+                                                     BoundSql originalBoundSql, String prefix) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(prefix + originalBoundSql.getSql())) {
+            // 参数映射与原始SQL一致，按原始BoundSql绑定
+            ParameterHandler parameterHandler = new DefaultParameterHandler(
+                    originalMs, originalBoundSql.getParameterObject(), originalBoundSql);
+            parameterHandler.setParameters(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                return readRows(rs);
+            }
         }
-    
-        // 创建SqlSource，用于生成解释查询的SQL
-        SqlSource sqlSource = new StaticSqlSource(
-                config,
-                explainBoundSql.getSql(),
-                explainBoundSql.getParameterMappings()
-        );
-    
-        // 构建新的MappedStatement对象
-        MappedStatement.Builder builder = new MappedStatement.Builder(
-                config, id, sqlSource, originalMs.getSqlCommandType())
-                .resource(originalMs.getResource())
-                .resultMaps(Collections.singletonList(
-                        new ResultMap.Builder(config, id + "-ResultMap", HashMap.class,
-                                Collections.emptyList()).build()))
-                .flushCacheRequired(false)
-                .useCache(false);
-    
-        // 完成MappedStatement的构建并添加到配置中
-        MappedStatement explainMs = builder.build();
-        config.addMappedStatement(explainMs);
-        return explainMs;
     }
 
     /**
-     * 处理EXPLAIN结果
-     * @author wuya
+     * 按列标签读取结果集的所有行
+     *
+     * @param rs 结果集
+     * @return 结果行
+     * @throws SQLException 读取失败
      */
-    private static class ExplainResultHandler implements ResultHandler<Map<String, Object>> {
-        private final List<Map<String, Object>> results = new ArrayList<>();
-
-        @Override
-        public void handleResult(ResultContext<? extends Map<String, Object>> resultContext) {
-            results.add(new LinkedHashMap<>(resultContext.getResultObject()));
+    private static List<Map<String, Object>> readRows(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
         }
-
-        public List<Map<String, Object>> getResults() {
-            return Collections.unmodifiableList(results);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        while (rs.next()) {
+            Map<String, Object> row = new LinkedHashMap<>(columnCount * 2);
+            for (int i = 0; i < columnCount; i++) {
+                row.put(labels[i], rs.getObject(i + 1));
+            }
+            rows.add(row);
         }
+        return Collections.unmodifiableList(rows);
     }
+
     /**
      * 获取数据库类型
      * @return 返回数据库类型为MySQL
@@ -0,0 +1,384 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MySQL 执行计划解析器
+ * 把 EXPLAIN FORMAT=JSON 和 EXPLAIN ANALYZE（树形格式）的输出转换为统一的计划树，
+ * 表访问节点沿用传统 EXPLAIN 的 type/Extra 写法，建议生成器不需要区分格式
+ */
+final class MysqlPlanParser {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // 树形格式中的估算代价与行数，如 (cost=0.35..4.95 rows=9)
+    private static final Pattern COST = Pattern.compile("\\(cost=(?:([\\d.e+]+)\\.\\.)?([\\d.e+]+) rows=([\\d.e+]+)\\)");
+    // 树形格式中的实际耗时与行数，如 (actual time=0.153..0.200 rows=9 loops=1)
+    private static final Pattern ACTUAL = Pattern.compile(
+            "\\(actual time=([\\d.e+]+)\\.\\.([\\d.e+]+) rows=([\\d.e+]+) loops=(\\d+)\\)");
+    // 树形格式中的表访问，如 Index lookup on t1 using idx_a
+    private static final Pattern TABLE_ACCESS = Pattern.compile(
+            "^(.*?) on (\\S+)(?: using (\\S+))?");
+
+    private MysqlPlanParser() {
+    }
+
+    /**
+     * 解析 EXPLAIN FORMAT=JSON 的输出
+     *
+     * @param json EXPLAIN 输出的 JSON 文本
+     * @return 计划树根节点
+     * @throws IOException JSON 格式错误
+     */
+    static PlanNode parseJson(String json) throws IOException {
+        JsonNode tree = MAPPER.readTree(json);
+        PlanNode root = new PlanNode();
+        root.setOperation("QUERY");
+        JsonNode queryBlock = tree.path("query_block");
+        if (queryBlock.isObject()) {
+            parseQueryBlock(queryBlock, root);
+        }
+        return root;
+    }
+
+    /**
+     * 解析查询块：查询代价写入当前节点，其余字段作为子节点
+     */
+    private static void parseQueryBlock(JsonNode block, PlanNode node) {
+        node.setTotalCost(toDouble(block.path("cost_info").path("query_cost")));
+        if (block.has("message")) {
+            node.setExtra(block.get("message").asText());
+        }
+        parseChildren(block, node);
+    }
+
+    /**
+     * 解析对象中的计划相关字段
+     */
+    private static void parseChildren(JsonNode object, PlanNode parent) {
+        Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            switch (name) {
+                case "table":
+                    parent.addChild(parseTable(value));
+                    break;
+                case "nested_loop":
+                    PlanNode loop = new PlanNode();
+                    loop.setOperation("NESTED LOOP");
+                    for (JsonNode element : value) {
+                        parseChildren(element, loop);
+                    }
+                    parent.addChild(loop);
+                    break;
+                case "ordering_operation":
+                    parent.addChild(parseOperation("ORDER", value));
+                    break;
+                case "grouping_operation":
+                    parent.addChild(parseOperation("GROUP", value));
+                    break;
+                case "duplicates_removal":
+                    parent.addChild(parseOperation("DISTINCT", value));
+                    break;
+                case "windowing":
+                    parent.addChild(parseOperation("WINDOW", value));
+                    break;
+                case "union_result":
+                    PlanNode union = parseOperation("UNION", value);
+                    for (JsonNode spec : value.path("query_specifications")) {
+                        PlanNode query = new PlanNode();
+                        query.setOperation("QUERY");
+                        query.setSelectType("UNION");
+                        parseQueryBlock(spec.path("query_block"), query);
+                        union.addChild(query);
+                    }
+                    parent.addChild(union);
+                    break;
+                default:
+                    if (name.endsWith("subqueries") && value.isArray()) {
+                        for (JsonNode subquery : value) {
+                            parent.addChild(parseSubquery(subquery));
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 解析排序、分组、去重等操作节点
+     */
+    private static PlanNode parseOperation(String operation, JsonNode value) {
+        PlanNode node = new PlanNode();
+        node.setOperation(operation);
+        node.setTotalCost(toDouble(value.path("cost_info").path("sort_cost")));
+        node.setExtra(extra(value));
+        parseChildren(value, node);
+        return node;
+    }
+
+    /**
+     * 解析子查询，依赖外层或不可缓存的子查询按传统 select_type 标记
+     */
+    private static PlanNode parseSubquery(JsonNode subquery) {
+        PlanNode node = new PlanNode();
+        node.setOperation("QUERY");
+        if (subquery.path("dependent").asBoolean(false)) {
+            node.setSelectType("DEPENDENT SUBQUERY");
+        } else if (!subquery.path("cacheable").asBoolean(true)) {
+            node.setSelectType("UNCACHEABLE SUBQUERY");
+        } else {
+            node.setSelectType("SUBQUERY");
+        }
+        parseQueryBlock(subquery.path("query_block"), node);
+        return node;
+    }
+
+    /**
+     * 解析表访问节点，代价取本表的读取代价与计算代价之和
+     */
+    private static PlanNode parseTable(JsonNode table) {
+        PlanNode node = new PlanNode();
+        node.setOperation("TABLE");
+        node.setRelation(text(table.get("table_name")));
+        node.setAccessType(text(table.get("access_type")));
+        node.setIndex(text(table.get("key")));
+        node.setEstimatedRows(toLong(table.get("rows_examined_per_scan")));
+        node.setFiltered(toDouble(table.get("filtered")));
+        JsonNode costInfo = table.path("cost_info");
+        double readCost = toDouble(costInfo.get("read_cost"));
+        double evalCost = toDouble(costInfo.get("eval_cost"));
+        if (readCost >= 0 || evalCost >= 0) {
+            node.setTotalCost(Math.max(readCost, 0) + Math.max(evalCost, 0));
+        }
+        node.setExtra(extra(table));
+        JsonNode derived = table.get("materialized_from_subquery");
+        if (derived != null) {
+            PlanNode query = new PlanNode();
+            query.setOperation("QUERY");
+            query.setSelectType("DERIVED");
+            parseQueryBlock(derived.path("query_block"), query);
+            node.addChild(query);
+        }
+        return node;
+    }
+
+    /**
+     * 把 JSON 中的布尔标记还原为传统 Extra 的写法
+     */
+    private static String extra(JsonNode object) {
+        StringBuilder sb = new StringBuilder();
+        if (object.has("attached_condition")) {
+            appendExtra(sb, "Using where");
+        }
+        if (object.path("using_index").asBoolean(false)) {
+            appendExtra(sb, "Using index");
+        }
+        if (object.has("index_condition")) {
+            appendExtra(sb, "Using index condition");
+        }
+        if (object.path("using_temporary_table").asBoolean(false)) {
+            appendExtra(sb, "Using temporary");
+        }
+        if (object.path("using_filesort").asBoolean(false)) {
+            appendExtra(sb, "Using filesort");
+        }
+        if (object.has("using_join_buffer")) {
+            appendExtra(sb, "Using join buffer (" + object.get("using_join_buffer").asText() + ")");
+        }
+        if (object.has("message")) {
+            appendExtra(sb, object.get("message").asText());
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private static void appendExtra(StringBuilder sb, String value) {
+        if (sb.length() > 0) {
+            sb.append("; ");
+        }
+        sb.append(value);
+    }
+
+    /**
+     * 解析 EXPLAIN ANALYZE 的树形输出
+     * 每行以 "-> " 开头，缩进表示层级
+     *
+     * @param tree EXPLAIN ANALYZE 输出文本
+     * @return 计划树根节点
+     */
+    static PlanNode parseTree(String tree) {
+        PlanNode root = new PlanNode();
+        root.setOperation("QUERY");
+        Deque<PlanNode> stack = new ArrayDeque<>();
+        Deque<Integer> indents = new ArrayDeque<>();
+        for (String line : tree.split("\n")) {
+            int arrow = line.indexOf("-> ");
+            if (arrow < 0) {
+                continue;
+            }
+            PlanNode node = parseTreeLine(line.substring(arrow + 3).trim());
+            while (!indents.isEmpty() && indents.peek() >= arrow) {
+                indents.pop();
+                stack.pop();
+            }
+            (stack.isEmpty() ? root : stack.peek()).addChild(node);
+            stack.push(node);
+            indents.push(arrow);
+        }
+        // 查询代价取最外层节点的代价
+        if (root.getChildren().size() == 1) {
+            root.setTotalCost(root.getChildren().get(0).getTotalCost());
+        }
+        return root;
+    }
+
+    /**
+     * 解析树形格式的单行
+     */
+    private static PlanNode parseTreeLine(String line) {
+        PlanNode node = new PlanNode();
+        int paren = line.indexOf("  (");
+        String description = paren > 0 ? line.substring(0, paren) : line;
+        Matcher cost = COST.matcher(line);
+        if (cost.find()) {
+            if (cost.group(1) != null) {
+                node.setStartupCost(Double.parseDouble(cost.group(1)));
+            }
+            node.setTotalCost(Double.parseDouble(cost.group(2)));
+            node.setEstimatedRows((long) Double.parseDouble(cost.group(3)));
+        }
+        Matcher actual = ACTUAL.matcher(line);
+        if (actual.find()) {
+            node.setActualTimeMs(Double.parseDouble(actual.group(2)));
+            node.setActualRows((long) Double.parseDouble(actual.group(3)));
+            node.setLoops(Long.parseLong(actual.group(4)));
+        } else if (line.contains("(never executed)")) {
+            node.setActualRows(0);
+            node.setLoops(0);
+        }
+        int colon = description.indexOf(": ");
+        String operation = colon > 0 ? description.substring(0, colon) : description;
+        node.setOperation(operation);
+        if (colon > 0) {
+            node.setExtra(description.substring(colon + 2));
+        }
+        Matcher access = TABLE_ACCESS.matcher(description);
+        if (colon < 0 && access.find()) {
+            String kind = access.group(1);
+            node.setOperation(kind);
+            node.setRelation(access.group(2));
+            node.setIndex(access.group(3));
+            node.setAccessType(accessType(kind));
+            if (kind.startsWith("Covering index")) {
+                node.setExtra("Using index");
+            }
+        }
+        if (operation.startsWith("Select #")) {
+            node.setSelectType(operation.contains("dependent") ? "DEPENDENT SUBQUERY" : "SUBQUERY");
+        }
+        if (operation.startsWith("Sort")) {
+            node.setExtra("Using filesort");
+        } else if (operation.startsWith("Temporary table") || operation.startsWith("Materialize")) {
+            node.setExtra("Using temporary");
+        }
+        return node;
+    }
+
+    /**
+     * 把树形格式的访问方式映射为传统 EXPLAIN 的 type
+     */
+    private static String accessType(String kind) {
+        if (kind.startsWith("Table scan")) {
+            return "ALL";
+        }
+        if (kind.contains("range scan")) {
+            return "range";
+        }
+        if (kind.startsWith("Single-row")) {
+            return "eq_ref";
+        }
+        if (kind.contains("lookup")) {
+            return "ref";
+        }
+        if (kind.contains("index scan") || kind.startsWith("Index scan")) {
+            return "index";
+        }
+        return null;
+    }
+
+    /**
+     * 先序展开计划树，生成用于报告展示的行
+     *
+     * @param root 计划树根节点
+     * @param rows 输出行
+     */
+    static void flatten(PlanNode root, List<Map<String, Object>> rows) {
+        root.accept((node, parent, depth) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("depth", depth);
+            row.put("operation", node.getOperation());
+            putIfPresent(row, "select_type", node.getSelectType());
+            putIfPresent(row, "table", node.getRelation());
+            putIfPresent(row, "type", node.getAccessType());
+            putIfPresent(row, "key", node.getIndex());
+            if (node.getEstimatedRows() >= 0) {
+                row.put("rows", node.getEstimatedRows());
+            }
+            if (node.getTotalCost() >= 0) {
+                row.put("cost", node.getTotalCost());
+            }
+            if (node.getActualRows() >= 0) {
+                row.put("actual_rows", node.getActualRows());
+                row.put("loops", node.getLoops());
+                row.put("actual_time", node.getActualTimeMs() + " ms");
+            }
+            putIfPresent(row, "Extra", node.getExtra());
+            rows.add(row);
+        });
+    }
+
+    private static void putIfPresent(Map<String, Object> row, String key, Object value) {
+        if (value != null) {
+            row.put(key, value);
+        }
+    }
+
+    private static String text(JsonNode value) {
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static long toLong(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return PlanNode.UNKNOWN;
+        }
+        return value.isNumber() ? value.asLong() : (long) toDouble(value);
+    }
+
+    private static double toDouble(JsonNode value) {
+        if (value == null || value.isNull() || value.isMissingNode()) {
+            return PlanNode.UNKNOWN;
+        }
+        if (value.isNumber()) {
+            return value.asDouble();
+        }
+        try {
+            return Double.parseDouble(value.asText());
+        } catch (NumberFormatException e) {
+            return PlanNode.UNKNOWN;
+        }
+    }
+}
@@ -1,23 +1,35 @@
 package com.wuya.mybatis.optimizer.analyzer;
 
+import com.wuya.mybatis.exception.SqlOptimizerException;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
+import com.wuya.mybatis.optimizer.helper.SqlPlaceholderHelper;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
 import org.apache.ibatis.mapping.BoundSql;
-import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Oracle数据库执行计划分析器
- * 该类实现了ExplainResultAnalyzer接口，用于分析Oracle数据库的SQL执行计划
+ * 该类实现了ExplainResultAnalyzer接口，用于分析Oracle数据库的SQL执行计划。
+ * 优先按本地计算的 SQL_ID 从 V$SQL_PLAN 读取游标实际使用的计划，没有游标或没有 V$ 视图权限时
+ * 以每次分析唯一的 statement_id 执行 EXPLAIN PLAN，计划行按结构化字段转换为计划树
  * @author chenjunwen
  * @date 2023-07-07
  */
@@ -25,61 +37,277 @@ public class OracleExplainResultAnalyzer implements ExplainResultAnalyzer{
 
     private static final Logger logger = LoggerFactory.getLogger(OracleExplainResultAnalyzer.class);
 
+    /**
+     * 执行计划来源
+     */
+    public enum PlanSource {
+        /**
+         * 先按 SQL_ID 读取共享池中游标的实际计划，找不到时退化为 EXPLAIN_PLAN
+         */
+        CURSOR,
+        /**
+         * 每次执行 EXPLAIN PLAN
+         */
+        EXPLAIN_PLAN
+    }
+
+    // 计划行的公共字段，V$SQL_PLAN 与 PLAN_TABLE 均包含
+    private static final String PLAN_COLUMNS = "ID, PARENT_ID, OPERATION, OPTIONS, OBJECT_NAME, OBJECT_TYPE, "
+            + "COST, CARDINALITY, BYTES, ACCESS_PREDICATES, FILTER_PREDICATES";
+
+    // 按 SQL_ID 读取最近活跃的子游标的计划
+    private static final String CURSOR_PLAN_SQL = "SELECT " + PLAN_COLUMNS + " FROM V$SQL_PLAN"
+            + " WHERE SQL_ID = ? AND CHILD_NUMBER = (SELECT CHILD_NUMBER FROM ("
+            + "SELECT CHILD_NUMBER FROM V$SQL WHERE SQL_ID = ? ORDER BY LAST_ACTIVE_TIME DESC) WHERE ROWNUM = 1)"
+            + " ORDER BY ID";
+
+    private static final String PLAN_TABLE_SQL = "SELECT " + PLAN_COLUMNS + " FROM PLAN_TABLE"
+            + " WHERE STATEMENT_ID = ? ORDER BY ID";
+
+    // SQL_ID 使用的 base32 字母表
+    private static final char[] SQL_ID_ALPHABET = "0123456789abcdfghjkmnpqrstuvwxyz".toCharArray();
+
+    // statement_id 前缀，区分不同的 JVM
+    private static final String STATEMENT_ID_PREFIX = "MYB_"
+            + Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36) + "_";
+    // statement_id 序号
+    private static final AtomicLong STATEMENT_SEQUENCE = new AtomicLong();
+
+    // 执行计划来源
+    private final PlanSource planSource;
+    // V$ 视图不可访问时不再尝试游标计划
+    private volatile boolean cursorUnavailable;
+
+    public OracleExplainResultAnalyzer() {
+        this(PlanSource.CURSOR);
+    }
+
+    /**
+     * @param planSource 执行计划来源，为null时使用 CURSOR
+     */
+    public OracleExplainResultAnalyzer(PlanSource planSource) {
+        this.planSource = planSource != null ? planSource : PlanSource.CURSOR;
+    }
+
     /**
      * 分析SQL语句的执行计划
      *
      * @param connection 数据库连接对象，用于执行SQL语句
+     * @param mappedStatement 当前执行的MyBatis语句
      * @param boundSql   包含SQL语句的信息
-     * @param invocation
      * @return SqlExplainResult对象，包含分析结果
-     * @throws Exception 如果分析过程中发生错误，则抛出异常
+     * @throws Exception 如果分析过程中发生错误，则抛出异常；读取执行计划失败时抛出 SqlOptimizerException
      */
     @Override
-    public SqlExplainResult analyze(Connection connection, BoundSql boundSql, Invocation invocation) throws Exception {
-        // 获取SQL语句
+    public SqlExplainResult analyze(Connection connection, MappedStatement mappedStatement, BoundSql boundSql) throws Exception {
+        // 获取SQL语句，? 占位符改写为驱动发送给数据库时的 :1、:2 形式
         String sql = boundSql.getSql();
+        String oracleSql = SqlPlaceholderHelper.toPositional(sql, ":");
 
         // 创建SqlExplainResult对象，用于存储分析结果
         SqlExplainResult result = new SqlExplainResult();
         result.setSql(sql);
+        result.setExplainResults(new ArrayList<>());
+
+        try {
+            List<PlanRow> rows = null;
+            if (planSource == PlanSource.CURSOR && !cursorUnavailable) {
+                rows = readCursorPlan(connection, oracleSql);
+            }
+            if (rows == null || rows.isEmpty()) {
+                rows = explainPlan(connection, oracleSql);
+            }
+            result.setPlanRoot(buildPlanTree(rows, result.getExplainResults()));
+        } catch (SQLException e) {
+            // 抛出以便记录为分析失败，而不是缓存一个空的分析结果
+            throw new SqlOptimizerException("Oracle执行计划分析失败，请确保有PLAN_TABLE访问权限", e);
+        }
+        return result;
+    }
+
+    /**
+     * 按 SQL_ID 从 V$SQL_PLAN 读取游标的实际执行计划
+     *
+     * @param connection 数据库连接
+     * @param oracleSql  数据库收到的SQL文本
+     * @return 计划行，没有游标时为空
+     */
+    private List<PlanRow> readCursorPlan(Connection connection, String oracleSql) {
+        String sqlId = sqlId(oracleSql);
+        try (PreparedStatement ps = connection.prepareStatement(CURSOR_PLAN_SQL)) {
+            ps.setString(1, sqlId);
+            ps.setString(2, sqlId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return readRows(rs);
+            }
+        } catch (SQLException e) {
+            // ORA-00942：没有 V$ 视图的查询权限
+            if (e.getErrorCode() == 942) {
+                cursorUnavailable = true;
+                logger.info("无法访问V$SQL_PLAN，改用EXPLAIN PLAN获取执行计划");
+            } else {
+                logger.debug("读取游标执行计划失败，SQL_ID: {}", sqlId, e);
+            }
+            return null;
+        }
+    }
 
+    /**
+     * 以唯一的 statement_id 执行 EXPLAIN PLAN，读取后删除计划行
+     *
+     * @param connection 数据库连接
+     * @param oracleSql  SQL文本
+     * @return 计划行
+     * @throws SQLException 执行失败
+     */
+    private List<PlanRow> explainPlan(Connection connection, String oracleSql) throws SQLException {
+        String statementId = STATEMENT_ID_PREFIX + Long.toString(STATEMENT_SEQUENCE.incrementAndGet(), 36);
         try (Statement stmt = connection.createStatement()) {
-            // 1. 先清除可能存在的旧解释计划
-            try {
-                stmt.execute("DELETE FROM plan_table WHERE statement_id = 'MYBATIS_ANALYZER'");
+            stmt.execute("EXPLAIN PLAN SET statement_id = '" + statementId + "' FOR " + oracleSql);
+        }
+        try (PreparedStatement ps = connection.prepareStatement(PLAN_TABLE_SQL)) {
+            ps.setString(1, statementId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return readRows(rs);
+            }
+        } finally {
+            try (PreparedStatement ps = connection.prepareStatement("DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = ?")) {
+                ps.setString(1, statementId);
+                ps.executeUpdate();
             } catch (SQLException e) {
-                // 忽略错误，plan_table可能不存在
+                logger.debug("清理PLAN_TABLE失败，statement_id: {}", statementId, e);
             }
+        }
+    }
+
+    private static List<PlanRow> readRows(ResultSet rs) throws SQLException {
+        List<PlanRow> rows = new ArrayList<>();
+        while (rs.next()) {
+            PlanRow row = new PlanRow();
+            row.id = rs.getInt("ID");
+            row.parentId = rs.getObject("PARENT_ID") != null ? rs.getInt("PARENT_ID") : -1;
+            row.operation = rs.getString("OPERATION");
+            row.options = rs.getString("OPTIONS");
+            row.objectName = rs.getString("OBJECT_NAME");
+            row.objectType = rs.getString("OBJECT_TYPE");
+            row.cost = rs.getObject("COST") != null ? rs.getDouble("COST") : PlanNode.UNKNOWN;
+            row.cardinality = rs.getObject("CARDINALITY") != null ? rs.getLong("CARDINALITY") : PlanNode.UNKNOWN;
+            row.bytes = rs.getObject("BYTES") != null ? rs.getLong("BYTES") : PlanNode.UNKNOWN;
+            row.accessPredicates = rs.getString("ACCESS_PREDICATES");
+            row.filterPredicates = rs.getString("FILTER_PREDICATES");
+            rows.add(row);
+        }
+        return rows;
+    }
 
-            // 2. 生成新的解释计划
-            stmt.execute("EXPLAIN PLAN SET statement_id = 'MYBATIS_ANALYZER' FOR " + sql);
-
-            // 3. 使用DBMS_XPLAN获取格式化的执行计划
-            String query = "SELECT * FROM TABLE(DBMS_XPLAN.DISPLAY("
-                    + "table_name => 'PLAN_TABLE', "
-                    + "statement_id => 'MYBATIS_ANALYZER', "
-                    + "format => 'ALL'))";
-            List<Map<String, Object>> explainResults = new ArrayList<>();
-            try (ResultSet rs = stmt.executeQuery(
-                    query)) {
-
-                while (rs.next()) {
-                Map<String, Object> row = new LinkedHashMap<>();
-                row.put("PLAN_TABLE_OUTPUT", rs.getString(1));
-                explainResults.add(row);
+    /**
+     * 按 ID/PARENT_ID 把计划行组装为计划树，同时按 ID 顺序生成报告行
+     *
+     * @param rows 按 ID 排序的计划行
+     * @param explainResults 报告行
+     * @return 计划树根节点，没有计划行时返回null
+     */
+    static PlanNode buildPlanTree(List<PlanRow> rows, List<Map<String, Object>> explainResults) {
+        Map<Integer, PlanNode> nodes = new HashMap<>(rows.size() * 2);
+        PlanNode root = null;
+        for (PlanRow row : rows) {
+            PlanNode node = new PlanNode();
+            node.setOperation(row.options != null ? row.operation + " " + row.options : row.operation);
+            if (row.objectType != null && row.objectType.startsWith("INDEX")) {
+                node.setIndex(row.objectName);
+            } else {
+                node.setRelation(row.objectName);
             }
-        } catch (Exception e) {
-                logger.error("Oracle执行计划分析失败，请确保有DBMS_XPLAN权限和PLAN_TABLE访问权", e);
+            node.setTotalCost(row.cost);
+            node.setEstimatedRows(row.cardinality);
+            if (row.bytes > 0 && row.cardinality > 0) {
+                node.setWidth((int) (row.bytes / row.cardinality));
+            }
+            node.setExtra(predicates(row));
+            PlanNode parent = nodes.get(row.parentId);
+            if (parent != null) {
+                parent.addChild(node);
+            } else if (root == null) {
+                root = node;
+            }
+            nodes.put(row.id, node);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("Id", row.id);
+            result.put("Operation", node.getOperation());
+            result.put("Name", row.objectName);
+            result.put("Rows", row.cardinality);
+            result.put("Cost", row.cost);
+            if (node.getExtra() != null) {
+                result.put("Predicates", node.getExtra());
             }
-        result.setExplainResults(explainResults);
+            explainResults.add(result);
+        }
+        return root;
     }
 
-        return result;
+    private static String predicates(PlanRow row) {
+        if (row.accessPredicates == null) {
+            return row.filterPredicates != null ? "filter(" + row.filterPredicates + ")" : null;
+        }
+        String access = "access(" + row.accessPredicates + ")";
+        return row.filterPredicates != null ? access + " filter(" + row.filterPredicates + ")" : access;
+    }
+
+    /**
+     * 计算 SQL 文本的 SQL_ID
+     * 与 Oracle 相同：文本加结尾的 \0 做 MD5，取摘要后 8 字节（两个小端 32 位整数）组成 64 位值，按 base32 编码为 13 位
+     *
+     * @param sql 数据库收到的SQL文本
+     * @return SQL_ID
+     */
+    static String sqlId(String sql) {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        md5.update(sql.getBytes(StandardCharsets.UTF_8));
+        byte[] digest = md5.digest(new byte[]{0});
+        long msb = littleEndianInt(digest, 8);
+        long lsb = littleEndianInt(digest, 12);
+        long value = (msb << 32) | lsb;
+        char[] sqlId = new char[13];
+        for (int i = sqlId.length - 1; i >= 0; i--) {
+            sqlId[i] = SQL_ID_ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(sqlId);
+    }
+
+    private static long littleEndianInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFFL)
+                | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16
+                | (bytes[offset + 3] & 0xFFL) << 24;
+    }
+
+    /**
+     * V$SQL_PLAN / PLAN_TABLE 的一行
+     */
+    static final class PlanRow {
+        private int id;
+        private int parentId;
+        private String operation;
+        private String options;
+        private String objectName;
+        private String objectType;
+        private double cost;
+        private long cardinality;
+        private long bytes;
+        private String accessPredicates;
+        private String filterPredicates;
     }
 
     /**
      * 获取数据库类型
-     * 
+     *
      * @return DatabaseType 枚举值，表示Oracle数据库
      */
     @Override
@@ -1,199 +1,332 @@
 package com.wuya.mybatis.optimizer.analyzer;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wuya.mybatis.optimizer.SqlExplainResult;
+import com.wuya.mybatis.optimizer.helper.PgExplainExecutor.ExplainMode;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
-import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
-import static com.wuya.mybatis.optimizer.helper.PgExplainExecutor.executeExplain;
+import static com.wuya.mybatis.optimizer.helper.PgExplainExecutor.executeAnalyze;
+import static com.wuya.mybatis.optimizer.helper.PgExplainExecutor.executeGenericPlan;
+import static com.wuya.mybatis.optimizer.helper.PgExplainExecutor.executePlain;
 
 /**
  * PostgreSQL分析器实现
+ * 使用流式 JsonParser 单次扫描 EXPLAIN (FORMAT JSON) 的输出，同时构建计划树、扁平化的节点列表和汇总指标，
+ * 不创建中间的 JsonNode 或 Map 树。默认只估算代价，估算代价较高的查询语句才在回滚的保存点内执行 EXPLAIN ANALYZE
  * @author chenjunwen
  * @date 2020-08-05 16:09
  */
 public class PostgreExplainResultAnalyzer implements ExplainResultAnalyzer {
+
+    // 共享的线程安全 JSON 工厂
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    // EXPLAIN 方式
+    private final ExplainMode explainMode;
+    // AUTO 方式下触发 EXPLAIN ANALYZE 的估算总代价阈值
+    private final double analyzeCostThreshold;
+
+    public PostgreExplainResultAnalyzer() {
+        this(ExplainMode.AUTO, 10000D);
+    }
+
+    /**
+     * @param explainMode          EXPLAIN 方式，为null时使用 AUTO
+     * @param analyzeCostThreshold AUTO 方式下根节点估算总代价不低于该值时才执行 EXPLAIN ANALYZE
+     */
+    public PostgreExplainResultAnalyzer(ExplainMode explainMode, double analyzeCostThreshold) {
+        this.explainMode = explainMode != null ? explainMode : ExplainMode.AUTO;
+        this.analyzeCostThreshold = analyzeCostThreshold;
+    }
+
     /**
-     * 分析SQL执行计划
+     * 分析SQL执行计划，数据库版本未知，GENERIC_PLAN 退化为 PLAIN
      *
      * @param connection 数据库连接
+     * @param ms         当前执行的MyBatis语句
      * @param boundSql   MyBatis的BoundSql对象，包含SQL语句和参数
-     * @param invocation
      * @return SqlExplainResult对象，包含分析结果
      * @throws Exception 执行SQL或解析结果时可能抛出的异常
      */
     @Override
-    public SqlExplainResult analyze(Connection connection, BoundSql boundSql, Invocation invocation) throws Exception {
-
-        Object[] args = invocation.getArgs();
-        MappedStatement ms = (MappedStatement) args[0];
-
-
+    public SqlExplainResult analyze(Connection connection, MappedStatement ms, BoundSql boundSql) throws Exception {
+        return analyze(connection, ms, boundSql, null);
+    }
 
+    /**
+     * 按配置的 EXPLAIN 方式分析SQL执行计划
+     * PLAIN 与 GENERIC_PLAN 不执行语句；ANALYZE 在保存点内执行并回滚；
+     * AUTO 先取估算计划，查询语句代价超过阈值才执行 ANALYZE，并以 ANALYZE 的结果为准；DML 只取估算计划
+     *
+     * @param connection   数据库连接
+     * @param ms           当前执行的MyBatis语句
+     * @param boundSql     MyBatis的BoundSql对象，包含SQL语句和参数
+     * @param databaseInfo 数据库版本信息，GENERIC_PLAN 需要 PostgreSQL 16+
+     * @return SqlExplainResult对象，包含分析结果
+     * @throws Exception 执行SQL或解析结果时可能抛出的异常
+     */
+    @Override
+    public SqlExplainResult analyze(Connection connection, MappedStatement ms, BoundSql boundSql,
+                                    DatabaseInfo databaseInfo) throws Exception {
         String originalSql = boundSql.getSql();
-        // 执行查询并返回结果
-        ResultSet rs = executeExplain(connection, originalSql, boundSql, ms.getConfiguration());
+        Configuration config = ms.getConfiguration();
+        switch (explainMode) {
+            case GENERIC_PLAN:
+                if (databaseInfo != null && databaseInfo.isAtLeast(16, 0)) {
+                    return toResult(originalSql, executeGenericPlan(connection, originalSql));
+                }
+                return toResult(originalSql, executePlain(connection, originalSql, boundSql, config));
+            case ANALYZE:
+                return toResult(originalSql, executeAnalyze(connection, originalSql, boundSql, config));
+            case AUTO:
+                SqlExplainResult estimated = toResult(originalSql, executePlain(connection, originalSql, boundSql, config));
+                PlanNode root = estimated.getPlanRoot();
+                if (ms.getSqlCommandType() != SqlCommandType.SELECT
+                        || root == null || root.getTotalCost() < analyzeCostThreshold) {
+                    return estimated;
+                }
+                return toResult(originalSql, executeAnalyze(connection, originalSql, boundSql, config));
+            case PLAIN:
+            default:
+                return toResult(originalSql, executePlain(connection, originalSql, boundSql, config));
+        }
+    }
 
+    /**
+     * 将JSON格式的执行计划转换为分析结果，解析失败时保留原始JSON
+     */
+    private SqlExplainResult toResult(String originalSql, String jsonResult) {
         SqlExplainResult result = new SqlExplainResult();
         result.setSql(originalSql);
-        List<Map<String, Object>> explainResults = new ArrayList<>();
-        while (rs.next()) {
-            String jsonResult = rs.getString(1);
-
-            // 解析JSON格式的EXPLAIN结果
-            try {
-                Map<String, Object> planMap = parseExplainJson(jsonResult);
-                parse(result, jsonResult);
-                explainResults.add(planMap);
-            } catch (Exception e) {
-                // 解析失败时保留原始JSON
-                Map<String, Object> row = new LinkedHashMap<>();
-                row.put("EXPLAIN", jsonResult);
-                explainResults.add(row);
-            }
+        result.setExplainResults(new ArrayList<>());
+        if (jsonResult == null) {
+            return result;
+        }
+        // 解析JSON格式的EXPLAIN结果
+        try {
+            parse(result, jsonResult);
+        } catch (IOException e) {
+            result.getExplainResults().clear();
+            result.setPlanRoot(null);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("EXPLAIN", jsonResult);
+            result.getExplainResults().add(row);
         }
-        result.setExplainResults(explainResults);
-
         return result;
     }
+
     /**
      * 解析SQL执行计划的JSON表示，并将解析结果存储在SqlExplainResult对象中
-     * 此方法主要负责解析JSON格式的SQL执行计划，并将解析出的信息填充到result对象中
+     * 单次流式扫描：计划树写入 planRoot，按先序扁平化的节点写入 explainResults，计划时间、缓冲区等汇总指标写入对应字段
      * 
-     * @param result 用于存储解析结果的对象
+     * @param result 用于存储解析结果的对象，explainResults 不能为null
      * @param jsonExplain SQL执行计划的JSON字符串表示
-     * @throws Exception 当解析JSON过程中发生错误时抛出
+     * @throws IOException 当解析JSON过程中发生错误时抛出
      */
-    public void parse(SqlExplainResult result, String jsonExplain) throws Exception {
-        // 创建ObjectMapper实例，用于JSON解析
-        ObjectMapper mapper = new ObjectMapper();
-        // 将JSON字符串解析为JsonNode对象，便于后续处理
-        JsonNode root = mapper.readTree(jsonExplain);
-    
-        // 提取并解析基础执行计划
-        JsonNode plan = root.path(0).path("Plan");
-        // 递归解析执行计划节点，并将结果存储在Map中
-        Map<String, Object> planMap = parsePlanNode(plan);
-        // 将解析后的执行计划添加到结果列表中
-        result.getExplainResults().add(planMap);
-    
-        // 设置基础指标
-        // 从执行计划中提取并设置实际总执行时间
-        result.setExecutionTime(plan.path("Actual Total Time").asLong());
-        // 从根节点中提取并设置查询计划时间
-        result.setPlanningTime(root.path(0).path("Planning Time").asDouble());
-    
-        // 处理缓冲区信息
-        JsonNode buffers = root.path(0).path("Buffers");
-        // 如果缓冲区信息存在，则进一步解析并设置相关指标
-        if (!buffers.isMissingNode()) {
-            // 从缓冲区信息中提取并设置共享块命中数
-            result.setSharedHitBlocks(buffers.path("Shared Hit Blocks").asLong());
-            // 从缓冲区信息中提取并设置共享块读取数
-            result.setSharedReadBlocks(buffers.path("Shared Read Blocks").asLong());
-            // 从缓冲区信息中提取并设置临时块读取数
-            result.setTempReadBlocks(buffers.path("Temp Read Blocks").asLong());
-            // 从缓冲区信息中提取并设置临时块写入数
-            result.setTempWrittenBlocks(buffers.path("Temp Written Blocks").asLong());
+    public void parse(SqlExplainResult result, String jsonExplain) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(jsonExplain)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("EXPLAIN JSON 应为数组");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                parseQuery(parser, result);
+            }
         }
     }
 
     /**
-     * 解析给定的Plan节点并将其转换为一个映射
-     * 该方法主要用于将JSON格式的Plan节点解析到一个Map中，以便于后续处理和访问
-     * 它递归地解析节点及其子节点，并将相关信息存储在映射中
-     *
-     * @param node 代表Plan节点的JsonNode对象
-     * @return 包含解析后信息的Map对象
+     * 解析一个查询的计划对象：Plan、Planning Time、Execution Time、JIT
      */
-    private Map<String, Object> parsePlanNode(JsonNode node) {
-        // 创建一个有序的映射来存储解析后的信息
-        Map<String, Object> map = new LinkedHashMap<>();
-    
-        // 基础字段
-        // 将节点类型、总成本、计划行数、实际行数和实际时间添加到映射中
-        map.put("Node Type", node.path("Node Type").asText());
-        map.put("Total Cost", node.path("Total Cost").asDouble());
-        map.put("Plan Rows", node.path("Plan Rows").asInt());
-        map.put("Actual Rows", node.path("Actual Rows").asInt());
-        map.put("Actual Time", node.path("Actual Total Time").asDouble() + " ms");
-    
-        // 递归处理子节点
-        // 如果当前节点有子节点，则递归调用parsePlanNode方法解析每个子节点
-        if (node.has("Plans")) {
-            List<Map<String, Object>> subPlans = new ArrayList<>();
-            node.path("Plans").forEach(subPlan -> subPlans.add(parsePlanNode(subPlan)));
-            map.put("Sub Plans", subPlans);
+    private void parseQuery(JsonParser parser, SqlExplainResult result) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "Plan":
+                    result.setPlanRoot(parseNode(parser, result, 0));
+                    break;
+                case "Planning Time":
+                    result.setPlanningTime(parser.getValueAsDouble());
+                    break;
+                case "Execution Time":
+                    result.setExecutionTime((long) parser.getValueAsDouble());
+                    break;
+                case "JIT":
+                    result.setJit(Boolean.TRUE);
+                    parser.skipChildren();
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
         }
-    
-        // 返回填充了解析信息的映射
-        return map;
     }
+
     /**
-     * 获取数据库类型
-     * @return DatabaseType枚举值，表示支持的数据库类型
+     * 解析一个计划节点及其子节点
+     * 节点先于子节点加入扁平化列表；根节点上的缓冲区统计是整个查询的累计值，写入汇总指标
+     *
+     * @param parser 位于节点 START_OBJECT 的解析器
+     * @param result 分析结果
+     * @param depth  节点深度
+     * @return 计划树节点
      */
-    @Override
-    public DatabaseType getDatabaseType() {
-        return DatabaseType.POSTGRE;
+    private PlanNode parseNode(JsonParser parser, SqlExplainResult result, int depth) throws IOException {
+        PlanNode node = new PlanNode();
+        Map<String, Object> row = new LinkedHashMap<>();
+        result.getExplainResults().add(row);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "Node Type":
+                    node.setOperation(parser.getText());
+                    break;
+                case "Relation Name":
+                    node.setRelation(parser.getText());
+                    break;
+                case "Index Name":
+                    node.setIndex(parser.getText());
+                    break;
+                case "Filter":
+                    node.setExtra(parser.getText());
+                    break;
+                case "Startup Cost":
+                    node.setStartupCost(parser.getValueAsDouble());
+                    break;
+                case "Total Cost":
+                    node.setTotalCost(parser.getValueAsDouble());
+                    break;
+                case "Plan Rows":
+                    node.setEstimatedRows((long) parser.getValueAsDouble());
+                    break;
+                case "Plan Width":
+                    node.setWidth(parser.getValueAsInt());
+                    break;
+                case "Actual Rows":
+                    node.setActualRows((long) parser.getValueAsDouble());
+                    break;
+                case "Actual Loops":
+                    node.setLoops(parser.getValueAsLong());
+                    break;
+                case "Actual Total Time":
+                    node.setActualTimeMs(parser.getValueAsDouble());
+                    break;
+                case "Sort Key":
+                case "Group Key":
+                    node.setSortKey(readText(parser));
+                    break;
+                case "Sort Method":
+                    node.setSortMethod(parser.getText());
+                    break;
+                case "Strategy":
+                    node.setStrategy(parser.getText());
+                    break;
+                case "Hash Batches":
+                    node.setHashBatches(parser.getValueAsInt());
+                    break;
+                case "Heap Fetches":
+                    node.setHeapFetches(parser.getValueAsLong());
+                    break;
+                case "Workers Planned":
+                    node.setWorkersPlanned(parser.getValueAsInt());
+                    break;
+                case "Workers Launched":
+                    node.setWorkersLaunched(parser.getValueAsInt());
+                    break;
+                case "Inner Unique":
+                    node.setInnerUnique(parser.getValueAsBoolean());
+                    break;
+                case "Shared Hit Blocks":
+                    if (depth == 0) {
+                        result.setSharedHitBlocks(parser.getValueAsLong());
+                    }
+                    break;
+                case "Shared Read Blocks":
+                    if (depth == 0) {
+                        result.setSharedReadBlocks(parser.getValueAsLong());
+                    }
+                    break;
+                case "Temp Read Blocks":
+                    if (depth == 0) {
+                        result.setTempReadBlocks(parser.getValueAsLong());
+                    }
+                    break;
+                case "Temp Written Blocks":
+                    if (depth == 0) {
+                        result.setTempWrittenBlocks(parser.getValueAsLong());
+                    }
+                    break;
+                case "Plans":
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        node.addChild(parseNode(parser, result, depth + 1));
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        fillRow(row, node, depth);
+        return node;
     }
 
-
     /**
-     * 解析JSON格式的EXPLAIN输出
-     * @param jsonResult JSON格式的EXPLAIN结果字符串
-     * @return 解析后的Map对象，包含执行计划信息
-     * @throws Exception 解析JSON时可能抛出的异常
+     * 填充扁平化节点的展示字段
      */
-    public Map<String, Object> parseExplainJson(String jsonResult) throws Exception {
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, Object> planMap = mapper.readValue(jsonResult, new TypeReference<Map<String, Object>>() {});
-
-        // 提取计划树并扁平化处理
-        List<Map<String, Object>> planNodes = flattenPlanTree(planMap.get("Plan"));
-        planMap.put("PlanNodes", planNodes);
-
-        return planMap;
+    private static void fillRow(Map<String, Object> row, PlanNode node, int depth) {
+        row.put("Depth", depth);
+        row.put("Node Type", node.getOperation());
+        if (node.getRelation() != null) {
+            row.put("Relation Name", node.getRelation());
+        }
+        if (node.getIndex() != null) {
+            row.put("Index Name", node.getIndex());
+        }
+        row.put("Total Cost", node.getTotalCost());
+        row.put("Plan Rows", node.getEstimatedRows());
+        if (node.getActualRows() >= 0) {
+            row.put("Actual Rows", node.getActualRows());
+            row.put("Actual Time", node.getActualTimeMs() + " ms");
+        }
     }
 
-
     /**
-     * 扁平化处理计划树结构
-     * @param planNode 当前计划节点对象
-     * @return 扁平化后的计划节点列表
+     * 读取文本或文本数组，数组以逗号连接
      */
-    private List<Map<String, Object>> flattenPlanTree(Object planNode) {
-        List<Map<String, Object>> result = new ArrayList<>();
-        if (planNode instanceof Map) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> node = (Map<String, Object>) planNode;
-
-            // 创建当前节点的扁平化副本
-            Map<String, Object> flatNode = new LinkedHashMap<>(node);
-            flatNode.remove("Plans"); // 移除子节点引用
-
-            result.add(flatNode);
-
-            // 递归处理子节点
-            if (node.containsKey("Plans")) {
-                Object plans = node.get("Plans");
-                if (plans instanceof List) {
-                    for (Object child : (List<?>) plans) {
-                        result.addAll(flattenPlanTree(child));
-                    }
-                }
+    private static String readText(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            return parser.getText();
+        }
+        StringBuilder sb = new StringBuilder();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (sb.length() > 0) {
+                sb.append(", ");
             }
+            sb.append(parser.getText());
         }
-        return result;
+        return sb.toString();
+    }
+
+    /**
+     * 获取数据库类型
+     * @return DatabaseType枚举值，表示支持的数据库类型
+     */
+    @Override
+    public DatabaseType getDatabaseType() {
+        return DatabaseType.POSTGRE;
     }
 }
@@ -0,0 +1,55 @@
+package com.wuya.mybatis.optimizer.async;
+
+import lombok.Getter;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * SQL分析事件
+ * 只保存分析所需的最少信息：语句、本次执行的BoundSql引用、SQL指纹和执行耗时。
+ * 环形缓冲区模式下事件对象预先分配并被重复使用，处理器不得在处理结束后继续持有事件
+ */
+@Getter
+public class AnalysisEvent {
+    // MyBatis 语句
+    private MappedStatement mappedStatement;
+    // 本次执行的 BoundSql
+    private BoundSql boundSql;
+    // SQL 指纹
+    private String fingerprint;
+    // 执行耗时（纳秒）
+    private long elapsedNanos;
+
+    public AnalysisEvent() {
+    }
+
+    public AnalysisEvent(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos) {
+        set(mappedStatement, boundSql, fingerprint, elapsedNanos);
+    }
+
+    /**
+     * 填充事件内容
+     */
+    void set(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos) {
+        this.mappedStatement = mappedStatement;
+        this.boundSql = boundSql;
+        this.fingerprint = fingerprint;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * 清空事件内容，释放对 BoundSql 等对象的引用
+     */
+    void clear() {
+        set(null, null, null, 0L);
+    }
+
+    /**
+     * MyBatis 语句 id
+     *
+     * @return 语句 id
+     */
+    public String getStatementId() {
+        return mappedStatement != null ? mappedStatement.getId() : null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.wuya.mybatis.optimizer.async;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * 异步SQL分析事件执行器
+ * 实现必须保证提交方法不阻塞、不抛出异常：队列已满或相同指纹的分析正在进行时直接丢弃并计数
+ */
+public interface AnalysisEventExecutor {
+
+    /**
+     * 提交一次分析
+     *
+     * @param mappedStatement MyBatis 语句
+     * @param boundSql 本次执行的 BoundSql
+     * @param fingerprint SQL 指纹，用于合并相同的分析
+     * @param elapsedNanos 执行耗时（纳秒）
+     * @return 分析被接受返回true，被合并或丢弃返回false
+     */
+    boolean dispatch(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos);
+
+    /**
+     * 获取因相同分析已在排队或执行而被合并丢弃的次数
+     *
+     * @return 合并丢弃次数
+     */
+    long getDeduplicatedCount();
+
+    /**
+     * 获取因容量不足被丢弃的次数
+     *
+     * @return 丢弃次数
+     */
+    long getRejectedCount();
+
+    /**
+     * 关闭执行器
+     */
+    void shutdown();
+}
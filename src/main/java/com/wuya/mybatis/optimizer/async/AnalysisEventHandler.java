@@ -0,0 +1,40 @@
+package com.wuya.mybatis.optimizer.async;
+
+import java.util.List;
+
+/**
+ * SQL分析事件处理器
+ */
+@FunctionalInterface
+public interface AnalysisEventHandler {
+    /**
+     * 处理一个分析事件
+     *
+     * @param event 分析事件，处理结束后可能被重复使用，不得继续持有
+     */
+    void onEvent(AnalysisEvent event);
+
+    /**
+     * 处理一批分析事件，默认逐个调用 {@link #onEvent}，单个事件失败不影响其余事件，处理完后抛出第一个异常
+     * 实现可以按数据源分组，在同一个连接上连续执行多个 EXPLAIN
+     *
+     * @param events 分析事件，处理结束后可能被重复使用，不得继续持有
+     */
+    default void onBatch(List<AnalysisEvent> events) {
+        RuntimeException failure = null;
+        for (AnalysisEvent event : events) {
+            try {
+                onEvent(event);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
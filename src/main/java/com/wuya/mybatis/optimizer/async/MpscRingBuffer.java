@@ -0,0 +1,123 @@
+package com.wuya.mybatis.optimizer.async;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 预分配的多生产者/单消费者环形缓冲区
+ * 每个槽位带一个序号（Vyukov 有界队列算法）：生产者通过一次 CAS 占用槽位并原地填充预分配的元素，
+ * 消费者批量读取已发布的槽位。入队不分配节点、不加锁
+ */
+public class MpscRingBuffer<E> {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final int capacity;
+    // 下一个待占用的位置（生产者共享）
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个待消费的位置（只由消费者线程访问）
+    private long head;
+
+    /**
+     * 构造函数
+     *
+     * @param requestedCapacity 期望容量，向上取整为2的幂
+     * @param factory 槽位元素工厂，用于预分配
+     */
+    public MpscRingBuffer(int requestedCapacity, Supplier<E> factory) {
+        int size = 1;
+        while (size < Math.max(2, requestedCapacity)) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = factory.get();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 生产者占用一个槽位
+     *
+     * @return 占用到的位置，缓冲区已满时返回 -1
+     */
+    public long tryClaim() {
+        while (true) {
+            long pos = tail.get();
+            long diff = sequences.get((int) pos & mask) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+            } else if (diff < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * 获取位置对应的预分配元素
+     *
+     * @param pos 位置
+     * @return 元素
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long pos) {
+        return (E) slots[(int) pos & mask];
+    }
+
+    /**
+     * 生产者填充完成后发布槽位
+     * 使用 volatile 写，保证之后对消费者休眠标记的读取不会被重排到发布之前
+     *
+     * @param pos 位置
+     */
+    public void publish(long pos) {
+        sequences.set((int) pos & mask, pos + 1);
+    }
+
+    /**
+     * 消费者批量取出已发布的元素，元素在调用 {@link #release(int)} 前不会被生产者覆盖
+     *
+     * @param batch 接收元素的列表
+     * @param limit 最多取出数量
+     * @return 取出的数量
+     */
+    public int peek(List<E> batch, int limit) {
+        int count = 0;
+        long pos = head;
+        while (count < limit && sequences.get((int) pos & mask) == pos + 1) {
+            batch.add(get(pos));
+            pos++;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 消费者释放已处理的元素，使槽位可以被生产者重新占用
+     *
+     * @param count 释放数量，必须等于之前 peek 取出的数量
+     */
+    public void release(int count) {
+        for (int i = 0; i < count; i++) {
+            sequences.lazySet((int) head & mask, head + capacity);
+            head++;
+        }
+    }
+
+    /**
+     * 缓冲区容量
+     *
+     * @return 容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
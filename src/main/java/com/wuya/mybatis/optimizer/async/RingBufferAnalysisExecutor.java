@@ -0,0 +1,161 @@
+package com.wuya.mybatis.optimizer.async;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于环形缓冲区的异步SQL分析执行器
+ * 每个分析线程独占一个 {@link MpscRingBuffer}，事件按SQL指纹散列到固定的缓冲区，
+ * 业务线程提交时只需一次 CAS 并原地填充预分配的事件，不创建任务对象；分析线程批量取出事件处理
+ */
+public class RingBufferAnalysisExecutor implements AnalysisEventExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RingBufferAnalysisExecutor.class);
+
+    // 空闲时的最长休眠时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Worker[] workers;
+    private final AnalysisEventHandler handler;
+    private final int batchSize;
+    // 正在排队或执行中的SQL指纹
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // 因相同分析已在排队或执行而被合并丢弃的次数
+    private final LongAdder deduplicated = new LongAdder();
+    // 因缓冲区已满被丢弃的次数
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * 构造函数
+     *
+     * @param threads 分析线程数，每个线程一个缓冲区
+     * @param capacity 缓冲区总容量，平均分配到每个线程
+     * @param batchSize 每次批量取出的最大事件数
+     * @param handler 事件处理器
+     */
+    public RingBufferAnalysisExecutor(int threads, int capacity, int batchSize, AnalysisEventHandler handler) {
+        int workerCount = Math.max(1, threads);
+        this.handler = handler;
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(new MpscRingBuffer<>(Math.max(2, capacity / workerCount), AnalysisEvent::new));
+            Thread thread = new Thread(workers[i], "mybatis-sql-analyzer-ring-" + i);
+            thread.setDaemon(true);
+            workers[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    @Override
+    public boolean dispatch(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos) {
+        if (!running) {
+            rejected.increment();
+            return false;
+        }
+        if (!inFlight.add(fingerprint)) {
+            deduplicated.increment();
+            return false;
+        }
+        Worker worker = workers[(fingerprint.hashCode() & Integer.MAX_VALUE) % workers.length];
+        long pos = worker.ring.tryClaim();
+        if (pos < 0) {
+            inFlight.remove(fingerprint);
+            rejected.increment();
+            return false;
+        }
+        worker.ring.get(pos).set(mappedStatement, boundSql, fingerprint, elapsedNanos);
+        worker.ring.publish(pos);
+        if (worker.sleeping) {
+            LockSupport.unpark(worker.thread);
+        }
+        return true;
+    }
+
+    @Override
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 关闭执行器，分析线程处理完已提交的事件后退出
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * 分析线程，单一消费者
+     */
+    private final class Worker implements Runnable {
+        private final MpscRingBuffer<AnalysisEvent> ring;
+        private final List<AnalysisEvent> batch;
+        private volatile Thread thread;
+        private volatile boolean sleeping;
+
+        private Worker(MpscRingBuffer<AnalysisEvent> ring) {
+            this.ring = ring;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                int count = ring.peek(batch, batchSize);
+                if (count == 0) {
+                    if (!running) {
+                        return;
+                    }
+                    sleeping = true;
+                    if (ring.peek(batch, 1) == 0) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    sleeping = false;
+                    count = batch.size();
+                    if (count == 0) {
+                        continue;
+                    }
+                }
+                process(count);
+            }
+        }
+
+        /**
+         * 处理一批事件并释放槽位
+         */
+        private void process(int count) {
+            try {
+                handler.onBatch(batch);
+            } catch (Exception e) {
+                logger.warn("SQL分析任务执行失败", e);
+            } finally {
+                for (AnalysisEvent event : batch) {
+                    inFlight.remove(event.getFingerprint());
+                    event.clear();
+                }
+                batch.clear();
+                ring.release(count);
+            }
+        }
+    }
+}
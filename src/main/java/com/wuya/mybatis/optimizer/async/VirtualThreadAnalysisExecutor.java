@@ -0,0 +1,158 @@
+package com.wuya.mybatis.optimizer.async;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于虚拟线程的异步SQL分析执行器
+ * 分析过程几乎都是阻塞的 JDBC I/O，每次分析在一个新的虚拟线程上执行，并发数由信号量限制，
+ * 慢SQL突增时可以及时分析而不占用固定的平台线程。
+ * 项目以 Java 8 为编译基线，虚拟线程通过反射调用 {@code Thread.ofVirtual()} 创建；
+ * 运行在 Java 21 以下时自动退化为守护平台线程
+ */
+public class VirtualThreadAnalysisExecutor implements AnalysisEventExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadAnalysisExecutor.class);
+
+    private static final String THREAD_NAME_PREFIX = "mybatis-sql-analyzer-virtual-";
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final AnalysisEventHandler handler;
+    // 正在执行中的SQL指纹
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // 因相同分析正在执行而被合并丢弃的次数
+    private final LongAdder deduplicated = new LongAdder();
+    // 因并发数已满被丢弃的次数
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * 构造函数
+     *
+     * @param maxConcurrency 最大并发分析数
+     * @param handler 事件处理器
+     */
+    public VirtualThreadAnalysisExecutor(int maxConcurrency, AnalysisEventHandler handler) {
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+        this.handler = handler;
+        ThreadFactory virtualFactory = virtualThreadFactory();
+        if (virtualFactory == null) {
+            logger.warn("[mybatisOptimizer] 当前JDK不支持虚拟线程(需要Java 21+)，异步分析使用平台线程");
+            this.threadFactory = platformThreadFactory();
+        } else {
+            this.threadFactory = virtualFactory;
+        }
+    }
+
+    /**
+     * 当前运行环境是否支持虚拟线程
+     *
+     * @return 支持返回true
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory() != null;
+    }
+
+    @Override
+    public boolean dispatch(MappedStatement mappedStatement, BoundSql boundSql, String fingerprint, long elapsedNanos) {
+        if (!running) {
+            rejected.increment();
+            return false;
+        }
+        if (!inFlight.add(fingerprint)) {
+            deduplicated.increment();
+            return false;
+        }
+        if (!permits.tryAcquire()) {
+            inFlight.remove(fingerprint);
+            rejected.increment();
+            return false;
+        }
+        AnalysisEvent event = new AnalysisEvent(mappedStatement, boundSql, fingerprint, elapsedNanos);
+        try {
+            threadFactory.newThread(() -> run(event)).start();
+            return true;
+        } catch (Throwable e) {
+            release(fingerprint);
+            rejected.increment();
+            logger.warn("创建SQL分析线程失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 执行分析并释放并发许可
+     */
+    private void run(AnalysisEvent event) {
+        try {
+            handler.onEvent(event);
+        } catch (Exception e) {
+            logger.warn("SQL分析任务执行失败", e);
+        } finally {
+            release(event.getFingerprint());
+        }
+    }
+
+    private void release(String fingerprint) {
+        inFlight.remove(fingerprint);
+        permits.release();
+    }
+
+    @Override
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 关闭执行器，不再接收新的分析，已开始的分析继续执行完成
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+    }
+
+    /**
+     * 通过反射创建虚拟线程工厂
+     *
+     * @return 虚拟线程工厂，不支持时返回null
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 平台守护线程工厂
+     */
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
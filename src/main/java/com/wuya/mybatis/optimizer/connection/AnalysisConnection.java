@@ -0,0 +1,221 @@
+package com.wuya.mybatis.optimizer.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分析专用的数据库连接
+ * 分析器拿到的是连接代理：close() 不会真正关闭连接，由 {@link AnalysisConnectionManager} 统一归还到空闲池或关闭；
+ * 复用模式下 prepareStatement(String) 返回按 SQL 缓存的 PreparedStatement，其 close() 只清空参数
+ */
+public class AnalysisConnection implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisConnection.class);
+
+    // 超过该空闲时间再次使用前校验连接有效性
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 10_000L;
+
+    private final Connection physical;
+    private final Connection proxy;
+    private final AnalysisConnectionManager.Pool pool;
+    private final boolean reusable;
+    private final boolean initialAutoCommit;
+    private final Map<String, PreparedStatement> statementCache;
+    private volatile boolean closed;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+
+    AnalysisConnection(Connection physical, AnalysisConnectionManager.Pool pool, boolean reusable,
+                       int statementCacheSize) throws SQLException {
+        this.physical = physical;
+        this.pool = pool;
+        this.reusable = reusable;
+        this.initialAutoCommit = physical.getAutoCommit();
+        this.statementCache = reusable && statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler());
+    }
+
+    /**
+     * 获取供分析器使用的连接
+     *
+     * @return 连接代理
+     */
+    public Connection getConnection() {
+        return proxy;
+    }
+
+    /**
+     * 归还连接：先回滚未提交的事务并恢复获取时的自动提交设置，物理连接通常来自业务连接池，关闭时同样需要恢复；
+     * 复用模式下放回数据源的空闲池，连接预算随连接保留；否则关闭物理连接并释放连接预算
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            resetState();
+        } catch (SQLException e) {
+            logger.debug("重置分析连接状态失败，关闭连接", e);
+            closePhysical();
+            return;
+        }
+        if (!reusable) {
+            closePhysical();
+            return;
+        }
+        lastUsedMillis = System.currentTimeMillis();
+        pool.release(this);
+    }
+
+    /**
+     * 从空闲池取出后校验连接，空闲较久的连接失效时关闭
+     *
+     * @return 连接可用返回true
+     */
+    boolean tryUse() {
+        if (closed) {
+            return false;
+        }
+        if (System.currentTimeMillis() - lastUsedMillis > VALIDATE_AFTER_IDLE_MILLIS && !isValid()) {
+            closePhysical();
+            return false;
+        }
+        return true;
+    }
+
+    long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    /**
+     * 关闭缓存的语句和物理连接，并释放连接预算
+     */
+    synchronized void closePhysical() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (statementCache != null) {
+            statementCache.values().forEach(AnalysisConnection::closeQuietly);
+            statementCache.clear();
+        }
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            logger.debug("关闭分析连接失败", e);
+        } finally {
+            pool.onClosed();
+        }
+    }
+
+    /**
+     * 回滚未提交的事务并恢复自动提交设置
+     */
+    private void resetState() throws SQLException {
+        if (!physical.getAutoCommit()) {
+            physical.rollback();
+        }
+        if (physical.getAutoCommit() != initialAutoCommit) {
+            physical.setAutoCommit(initialAutoCommit);
+        }
+    }
+
+    private boolean isValid() {
+        try {
+            return physical.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取缓存的 PreparedStatement，不存在时创建
+     */
+    private PreparedStatement cachedStatement(String sql) throws SQLException {
+        PreparedStatement statement = statementCache.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = physical.prepareStatement(sql);
+            statementCache.put(sql, statement);
+        }
+        PreparedStatement target = statement;
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (p, method, args) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        target.clearParameters();
+                        return null;
+                    }
+                    return invoke(target, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.debug("关闭缓存语句失败", e);
+        }
+    }
+
+    /**
+     * 连接代理：忽略 close()，复用模式下缓存 prepareStatement(String)
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterCount() == 0) {
+                return null;
+            }
+            if ("isClosed".equals(name) && method.getParameterCount() == 0) {
+                return closed || physical.isClosed();
+            }
+            if (statementCache != null && "prepareStatement".equals(name)
+                    && method.getParameterCount() == 1 && args[0] instanceof String) {
+                return cachedStatement((String) args[0]);
+            }
+            return AnalysisConnection.invoke(physical, method, args);
+        }
+    }
+
+    /**
+     * 按访问顺序淘汰的语句缓存
+     */
+    private static final class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private StatementCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() > maxSize) {
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.wuya.mybatis.optimizer.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分析连接管理器
+ * 为 EXPLAIN 流量提供独立的连接预算：每个数据源同时打开的分析连接数有上限，不与业务线程争抢连接池。
+ * 预算耗尽时分析线程等待其他分析归还连接，业务线程上的同步分析等待超时后跳过本次分析。
+ * 开启复用后连接归还到按数据源共享的空闲池并缓存其上的 PreparedStatement，预算随连接而不是随线程占用，
+ * 任意分析线程都可以取用空闲连接，空闲超时后由后台线程关闭
+ */
+public class AnalysisConnectionManager implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisConnectionManager.class);
+
+    // 每个数据源同时打开的最大分析连接数，小于等于0表示不限制
+    private final int maxConnections;
+    // 等待连接预算的最长时间（毫秒），小于0表示一直等待
+    private final long acquireTimeoutMillis;
+    // 是否复用连接
+    private final boolean reuse;
+    // 复用连接的空闲超时时间（毫秒）
+    private final long idleTimeoutMillis;
+    // 每个复用连接缓存的语句数
+    private final int statementCacheSize;
+
+    // 按数据源实例区分的连接预算和空闲连接
+    private final Map<DataSource, Pool> pools = new ConcurrentHashMap<>();
+    // 因预算耗尽未能获取连接的次数
+    private final LongAdder exhausted = new LongAdder();
+    private volatile ScheduledExecutorService idleReaper;
+    private volatile boolean closed;
+
+    /**
+     * 构造函数
+     *
+     * @param maxConnections       每个数据源同时打开的最大分析连接数，小于等于0表示不限制
+     * @param acquireTimeoutMillis 等待连接预算的最长时间（毫秒），小于0表示一直等待直到有连接归还
+     * @param reuse                是否把连接归还到共享的空闲池复用
+     * @param idleTimeoutMillis    复用连接的空闲超时时间（毫秒）
+     * @param statementCacheSize   每个复用连接缓存的语句数
+     */
+    public AnalysisConnectionManager(int maxConnections, long acquireTimeoutMillis, boolean reuse,
+                                     long idleTimeoutMillis, int statementCacheSize) {
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.reuse = reuse;
+        this.idleTimeoutMillis = Math.max(1000L, idleTimeoutMillis);
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * 获取分析连接，优先取用空闲的复用连接
+     *
+     * @param dataSource 数据源
+     * @return 分析连接，等待预算超时或线程被中断时返回null
+     * @throws SQLException 获取物理连接失败
+     */
+    public AnalysisConnection acquire(DataSource dataSource) throws SQLException {
+        Pool pool = pools.computeIfAbsent(dataSource, Pool::new);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, acquireTimeoutMillis));
+        AnalysisConnection connection;
+        try {
+            connection = pool.take(deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (connection == null) {
+            exhausted.increment();
+            if (exhausted.sum() % 1000 == 1) {
+                logger.warn("分析连接预算已耗尽，已跳过 {} 次分析", exhausted.sum());
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * 获取因预算耗尽未能获取连接的次数
+     *
+     * @return 次数
+     */
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    /**
+     * 关闭所有空闲的复用连接并停止后台回收线程，之后归还的连接直接关闭
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledExecutorService reaper = idleReaper;
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        pools.values().forEach(pool -> pool.closeIdle(0L));
+    }
+
+    /**
+     * 延迟启动空闲连接回收线程
+     */
+    private void startIdleReaper() {
+        if (idleReaper != null) {
+            return;
+        }
+        synchronized (this) {
+            if (idleReaper != null) {
+                return;
+            }
+            ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sql-analysis-connection-reaper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(500L, idleTimeoutMillis / 2);
+            reaper.scheduleWithFixedDelay(() -> pools.values().forEach(pool -> pool.closeIdle(idleTimeoutMillis)),
+                    period, period, TimeUnit.MILLISECONDS);
+            idleReaper = reaper;
+        }
+    }
+
+    /**
+     * 单个数据源的连接预算和空闲连接，打开的连接（含空闲连接）占用预算，关闭时释放
+     */
+    final class Pool {
+        private final DataSource dataSource;
+        private final ReentrantLock lock = new ReentrantLock();
+        // 有连接归还或关闭时唤醒等待预算的线程
+        private final Condition available = lock.newCondition();
+        // 空闲连接，后进先出，最近使用的连接优先复用，较久未用的连接在队尾超时关闭
+        private final Deque<AnalysisConnection> idle = new ArrayDeque<>();
+        // 已打开的连接数
+        private int open;
+
+        private Pool(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * 取出空闲连接，没有空闲连接时在预算内打开新连接，预算耗尽时等待
+         *
+         * @param deadline 等待截止时间（System.nanoTime）
+         * @return 分析连接，等待超时返回null
+         */
+        private AnalysisConnection take(long deadline) throws SQLException, InterruptedException {
+            while (true) {
+                AnalysisConnection connection;
+                lock.lock();
+                try {
+                    while ((connection = idle.pollFirst()) == null && maxConnections > 0 && open >= maxConnections) {
+                        if (acquireTimeoutMillis < 0) {
+                            available.await();
+                        } else {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) {
+                                return null;
+                            }
+                            available.awaitNanos(remaining);
+                        }
+                    }
+                    if (connection == null) {
+                        open++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (connection == null) {
+                    return openConnection();
+                }
+                // 校验失败的空闲连接已关闭并释放预算，继续取下一个
+                if (connection.tryUse()) {
+                    return connection;
+                }
+            }
+        }
+
+        /**
+         * 打开新连接，失败时释放已占用的预算
+         */
+        private AnalysisConnection openConnection() throws SQLException {
+            try {
+                Connection physical = dataSource.getConnection();
+                AnalysisConnection connection = new AnalysisConnection(physical, this, reuse, statementCacheSize);
+                if (reuse) {
+                    startIdleReaper();
+                }
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                onClosed();
+                throw e;
+            }
+        }
+
+        /**
+         * 复用连接归还到空闲池，管理器已关闭时直接关闭
+         *
+         * @param connection 分析连接
+         */
+        void release(AnalysisConnection connection) {
+            if (closed) {
+                connection.closePhysical();
+                return;
+            }
+            lock.lock();
+            try {
+                idle.offerFirst(connection);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 连接已关闭，释放其占用的预算
+         */
+        void onClosed() {
+            lock.lock();
+            try {
+                open--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 关闭空闲超时的连接
+         *
+         * @param idleMillis 空闲超时时间，0表示关闭所有空闲连接
+         */
+        private void closeIdle(long idleMillis) {
+            List<AnalysisConnection> expired = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                Iterator<AnalysisConnection> it = idle.descendingIterator();
+                while (it.hasNext()) {
+                    AnalysisConnection connection = it.next();
+                    if (now - connection.getLastUsedMillis() < idleMillis) {
+                        break;
+                    }
+                    it.remove();
+                    expired.add(connection);
+                }
+            } finally {
+                lock.unlock();
+            }
+            expired.forEach(AnalysisConnection::closePhysical);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.wuya.mybatis.optimizer.helper;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已解析语句缓存
+ * 以 SQL 指纹为键缓存 JSqlParser 语法树，解析在共享线程池中带超时执行；解析失败或超时的语句同样被缓存（负缓存），
+ * 超大或方言特有的 SQL 在进程内最多解析一次，失败日志也只打印一次。
+ * 同一指纹的不同字面量变体共享第一次解析的语法树，与按指纹缓存的执行计划保持一致。
+ * JSqlParser 超时后解析线程仍会继续运行，线程池和队列都有上限，大量异常 SQL 不会无限创建线程；
+ * 队列已满时本次不解析，也不缓存
+ */
+public class ParsedStatementCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParsedStatementCache.class);
+
+    // 解析失败的占位结果
+    private static final ParseResult FAILED = new ParseResult(null);
+    // 解析线程数上限
+    private static final int PARSER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // 等待解析的队列长度
+    private static final int PARSER_QUEUE_SIZE = PARSER_THREADS * 4;
+
+    private final Cache<String, ParseResult> cache;
+    // 单次解析的超时时间（毫秒）
+    private final long timeoutMillis;
+    // 解析线程池，所有解析共享，避免 JSqlParser 每次解析都创建线程池
+    private final ExecutorService parserExecutor;
+    // 解析失败或超时的次数
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param maximumSize   最多缓存的语句数（含解析失败的语句）
+     * @param timeoutMillis 单次解析的超时时间（毫秒）
+     */
+    public ParsedStatementCache(long maximumSize, long timeoutMillis) {
+        this.cache = Caffeine.newBuilder().maximumSize(maximumSize).build();
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PARSER_THREADS, PARSER_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(PARSER_QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "sql-analysis-parser-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.parserExecutor = executor;
+    }
+
+    /**
+     * 获取语法树，未缓存时解析
+     *
+     * @param key 缓存键，通常为SQL指纹
+     * @param sql 规范化后的 SQL
+     * @return 语法树，解析失败或超时返回null
+     */
+    public Statement get(String key, String sql) {
+        ParseResult result = cache.get(key, k -> parse(sql));
+        return result != null ? result.statement : null;
+    }
+
+    /**
+     * 获取解析失败或超时的次数
+     *
+     * @return 次数
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * 关闭解析线程池
+     */
+    @Override
+    public void close() {
+        parserExecutor.shutdownNow();
+    }
+
+    private ParseResult parse(String sql) {
+        try {
+            return new ParseResult(CCJSqlParserUtil.parse(sql, parserExecutor,
+                    parser -> parser.withTimeOut(timeoutMillis)));
+        } catch (RejectedExecutionException e) {
+            // 解析线程和队列已满，本次跳过且不缓存，之后可再次解析
+            logger.debug("解析队列已满，跳过本次SQL解析");
+            return null;
+        } catch (Exception e) {
+            failures.increment();
+            logger.warn("jsqlparser SQL分析失败，该语句不再重复解析: {}", e.getMessage());
+            return FAILED;
+        }
+    }
+
+    /**
+     * 解析结果，statement 为null表示解析失败
+     */
+    private static final class ParseResult {
+        private final Statement statement;
+
+        private ParseResult(Statement statement) {
+            this.statement = statement;
+        }
+    }
+}
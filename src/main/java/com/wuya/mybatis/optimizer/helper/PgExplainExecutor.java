@@ -13,26 +13,104 @@ import java.sql.*;
 public class PgExplainExecutor {
 
     /**
-     * 执行EXPLAIN并返回结果
+     * EXPLAIN 方式
+     */
+    public enum ExplainMode {
+        /**
+         * 只估算代价，不执行语句
+         */
+        PLAIN,
+        /**
+         * PostgreSQL 16+ 的 GENERIC_PLAN，不绑定参数、不执行语句；低版本退化为 PLAIN
+         */
+        GENERIC_PLAN,
+        /**
+         * EXPLAIN ANALYZE，在保存点内执行并始终回滚
+         */
+        ANALYZE,
+        /**
+         * 先 PLAIN，查询语句估算代价超过阈值时再在保存点内 ANALYZE，DML 只 PLAIN
+         */
+        AUTO
+    }
+
+    private static final String PLAIN_PREFIX = "EXPLAIN (COSTS, VERBOSE, FORMAT JSON) ";
+    private static final String GENERIC_PLAN_PREFIX = "EXPLAIN (GENERIC_PLAN, COSTS, VERBOSE, FORMAT JSON) ";
+    private static final String ANALYZE_PREFIX = "EXPLAIN (ANALYZE, COSTS, VERBOSE, BUFFERS, FORMAT JSON) ";
+
+    /**
+     * 执行不会运行语句的EXPLAIN，只返回估算的执行计划
      * @param connection 数据库连接
      * @param originalSql 原始SQL
      * @param boundSql MyBatis BoundSql对象
      * @param config MyBatis配置
-     * @return 执行计划结果（JSON格式）
+     * @return 执行计划结果（JSON格式），没有结果时返回null
+     */
+    public static String executePlain(Connection connection,
+                                      String originalSql,
+                                      BoundSql boundSql,
+                                      Configuration config) throws SQLException {
+        return query(connection, PLAIN_PREFIX + originalSql, boundSql, config);
+    }
+
+    /**
+     * 执行 EXPLAIN (GENERIC_PLAN)，? 占位符改写为 $n 且不绑定参数（需要 PostgreSQL 16+）
+     * @param connection 数据库连接
+     * @param originalSql 原始SQL
+     * @return 执行计划结果（JSON格式），没有结果时返回null
      */
-    public static ResultSet executeExplain(Connection connection,
+    public static String executeGenericPlan(Connection connection, String originalSql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(GENERIC_PLAN_PREFIX + SqlPlaceholderHelper.toPositional(originalSql, "$"))) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    /**
+     * 执行 EXPLAIN ANALYZE
+     * 语句在保存点内执行，无论成功与否都回滚到保存点，DML 不会产生实际修改；
+     * 连接原本为自动提交时临时开启事务，结束后回滚并恢复自动提交
+     * @param connection 数据库连接
+     * @param originalSql 原始SQL
+     * @param boundSql MyBatis BoundSql对象
+     * @param config MyBatis配置
+     * @return 执行计划结果（JSON格式），没有结果时返回null
+     */
+    public static String executeAnalyze(Connection connection,
                                         String originalSql,
                                         BoundSql boundSql,
                                         Configuration config) throws SQLException {
-        String explainSql = "EXPLAIN (ANALYZE, COSTS, VERBOSE, BUFFERS, FORMAT JSON) " + originalSql;
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                return query(connection, ANALYZE_PREFIX + originalSql, boundSql, config);
+            } finally {
+                connection.rollback(savepoint);
+            }
+        } finally {
+            if (autoCommit) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
 
+    /**
+     * 绑定参数执行EXPLAIN，在结果集关闭前读取JSON
+     */
+    private static String query(Connection connection, String explainSql,
+                                BoundSql boundSql, Configuration config) throws SQLException {
         try (PreparedStatement ps = connection.prepareStatement(explainSql)) {
             // 绑定所有参数
             PgParameterBinder.bindParameters(ps, boundSql, config);
 
-            // 执行并获取结果
+            // 执行并在结果集关闭前读取JSON
             try (ResultSet rs = ps.executeQuery()) {
-                return rs;
+                return rs.next() ? rs.getString(1) : null;
             }
         }
     }
@@ -0,0 +1,283 @@
+package com.wuya.mybatis.optimizer.helper;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.scripting.xmltags.MixedSqlNode;
+import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.scripting.xmltags.StaticTextSqlNode;
+import org.apache.ibatis.scripting.xmltags.TextSqlNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * DDL 帮助类
+ * 识别会改变执行计划的 DDL（CREATE/DROP INDEX、ALTER/DROP TABLE、ANALYZE、OPTIMIZE TABLE、REINDEX），
+ * 并取出其涉及的表名和索引名，用于使相关的执行计划缓存失效
+ */
+public class SqlDdlHelper {
+
+    // 会影响执行计划的 DDL 的起始关键字
+    private static final Set<String> DDL_KEYWORDS = new HashSet<>(Arrays.asList(
+            "CREATE", "DROP", "ALTER", "ANALYZE", "OPTIMIZE", "REINDEX"));
+
+    /**
+     * 判断SQL是否以会影响执行计划的 DDL 关键字开头，只读取第一个单词，不切分整条SQL
+     *
+     * @param sql SQL语句
+     * @return 以 CREATE/DROP/ALTER/ANALYZE/OPTIMIZE/REINDEX 开头返回true
+     */
+    public static boolean isDdl(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        int len = sql.length();
+        int i = 0;
+        // 跳过开头的空白和注释
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? len : end + 1;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i < len && Character.isLetter(sql.charAt(i))) {
+            i++;
+        }
+        return i > start && DDL_KEYWORDS.contains(sql.substring(start, i).toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 根据映射语句的SQL来源判断是否可能是 DDL，只读取映射中的静态文本，不构建BoundSql
+     * RawSqlSource/StaticSqlSource 读取解析后的SQL；DynamicSqlSource 读取开头的文本节点（含 ${} 的文本开头的关键字同样固定）；
+     * 以 if、foreach 等标签开头的动态SQL和 Provider 生成的SQL无法静态判断，视为不是 DDL
+     *
+     * @param sqlSource 映射语句的SQL来源
+     * @return 开头的静态文本是 DDL 时返回true
+     */
+    public static boolean isDdlSource(SqlSource sqlSource) {
+        try {
+            MetaObject metaObject = SystemMetaObject.forObject(sqlSource);
+            if (sqlSource instanceof RawSqlSource) {
+                return isDdl((String) metaObject.getValue("sqlSource.sql"));
+            }
+            if (sqlSource instanceof StaticSqlSource) {
+                return isDdl((String) metaObject.getValue("sql"));
+            }
+            if (sqlSource instanceof DynamicSqlSource) {
+                return isDdl(leadingText((SqlNode) metaObject.getValue("rootSqlNode")));
+            }
+        } catch (ReflectionException | ClassCastException e) {
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * 取出动态SQL开头的文本，跳过空白文本节点，开头是其他标签时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private static String leadingText(SqlNode node) {
+        if (node instanceof MixedSqlNode) {
+            for (SqlNode child : (List<SqlNode>) SystemMetaObject.forObject(node).getValue("contents")) {
+                String text = leadingText(child);
+                if (text == null || !text.trim().isEmpty()) {
+                    return text;
+                }
+            }
+            return "";
+        }
+        if (node instanceof StaticTextSqlNode || node instanceof TextSqlNode) {
+            return (String) SystemMetaObject.forObject(node).getValue("text");
+        }
+        return null;
+    }
+
+    /**
+     * 取出 DDL 涉及的表名和索引名
+     *
+     * @param sql SQL语句
+     * @return 不是会影响执行计划的 DDL 时返回null；涉及所有表（如不带表名的 ANALYZE）时返回空列表
+     */
+    public static List<String> affectedObjects(String sql) {
+        if (!isDdl(sql)) {
+            return null;
+        }
+        List<String> tokens = tokenize(sql);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        int i = 0;
+        String first = upper(tokens, i++);
+        switch (first) {
+            case "CREATE":
+                // CREATE [UNIQUE|BITMAP] INDEX [CONCURRENTLY] [IF NOT EXISTS] [name] ON [ONLY] table
+                while (i < tokens.size() && !"INDEX".equals(upper(tokens, i))) {
+                    if (!isIndexModifier(upper(tokens, i))) {
+                        return null;
+                    }
+                    i++;
+                }
+                int on = indexOf(tokens, "ON", i);
+                if (on < 0) {
+                    return null;
+                }
+                int table = skip(tokens, on + 1, "ONLY");
+                return table < tokens.size() ? Collections.singletonList(tokens.get(table)) : null;
+            case "DROP":
+                String kind = upper(tokens, i++);
+                if ("INDEX".equals(kind)) {
+                    // DROP INDEX [CONCURRENTLY] [IF EXISTS] name [, name] [ON table]
+                    i = skip(tokens, i, "CONCURRENTLY", "IF", "EXISTS");
+                    return names(tokens, i, "ON");
+                }
+                if ("TABLE".equals(kind)) {
+                    return names(tokens, skip(tokens, i, "IF", "EXISTS"));
+                }
+                return null;
+            case "ALTER":
+                // ALTER TABLE [IF EXISTS] [ONLY] table
+                if (!"TABLE".equals(upper(tokens, i++))) {
+                    return null;
+                }
+                i = skip(tokens, i, "IF", "EXISTS", "ONLY");
+                return i < tokens.size() ? Collections.singletonList(tokens.get(i)) : null;
+            case "ANALYZE":
+            case "OPTIMIZE":
+                // MySQL: ANALYZE [NO_WRITE_TO_BINLOG|LOCAL] TABLE t1, t2；PostgreSQL: ANALYZE [VERBOSE] [t1 [(col)], ...]
+                i = skip(tokens, i, "NO_WRITE_TO_BINLOG", "LOCAL", "VERBOSE", "TABLE");
+                return names(tokens, i);
+            case "REINDEX":
+                // REINDEX {INDEX|TABLE} [CONCURRENTLY] name；REINDEX SCHEMA/DATABASE 影响所有表
+                String target = upper(tokens, i++);
+                if ("INDEX".equals(target) || "TABLE".equals(target)) {
+                    i = skip(tokens, i, "CONCURRENTLY");
+                    return i < tokens.size() ? Collections.singletonList(tokens.get(i)) : null;
+                }
+                return Collections.emptyList();
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isIndexModifier(String token) {
+        return "UNIQUE".equals(token) || "BITMAP".equals(token) || "FULLTEXT".equals(token)
+                || "SPATIAL".equals(token) || "OR".equals(token) || "REPLACE".equals(token);
+    }
+
+    /**
+     * 从 start 开始读取逗号分隔的名称，括号内的列名被跳过，遇到其他关键字时结束；
+     * 遇到 then 关键字时继续读取其后的名称
+     */
+    private static List<String> names(List<String> tokens, int start, String... then) {
+        List<String> names = new ArrayList<>();
+        int depth = 0;
+        boolean expectName = true;
+        for (int i = start; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("(".equals(token)) {
+                depth++;
+            } else if (")".equals(token)) {
+                depth--;
+            } else if (depth > 0) {
+                continue;
+            } else if (",".equals(token)) {
+                expectName = true;
+            } else if (then.length > 0 && then[0].equalsIgnoreCase(token)) {
+                expectName = true;
+            } else if (expectName) {
+                names.add(token);
+                expectName = false;
+            } else {
+                break;
+            }
+        }
+        return names;
+    }
+
+    private static int indexOf(List<String> tokens, String keyword, int start) {
+        for (int i = start; i < tokens.size(); i++) {
+            if (keyword.equals(upper(tokens, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skip(List<String> tokens, int start, String... keywords) {
+        int i = start;
+        outer:
+        while (i < tokens.size()) {
+            String token = upper(tokens, i);
+            for (String keyword : keywords) {
+                if (keyword.equals(token)) {
+                    i++;
+                    continue outer;
+                }
+            }
+            break;
+        }
+        return i;
+    }
+
+    private static String upper(List<String> tokens, int i) {
+        return i < tokens.size() ? tokens.get(i).toUpperCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * 切分为名称（含引号和模式名）、括号和逗号，忽略注释和末尾的分号
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == ';') {
+                i++;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? len : end + 1;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int start = i;
+                while (i < len) {
+                    char ch = sql.charAt(i);
+                    if (ch == '"' || ch == '`') {
+                        int end = sql.indexOf(ch, i + 1);
+                        i = end < 0 ? len : end + 1;
+                    } else if (Character.isWhitespace(ch) || ch == '(' || ch == ')' || ch == ',' || ch == ';') {
+                        break;
+                    } else {
+                        i++;
+                    }
+                }
+                tokens.add(sql.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,285 @@
+package com.wuya.mybatis.optimizer.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQL 指纹帮助类
+ * 将 SQL 归一化为指纹：去除注释、压缩空白、字面量替换为 ?、IN 列表和 VALUES 多行折叠、关键字统一大写。
+ * 同一条 SQL 的不同参数变体（foreach 展开的 IN 列表、批量插入的 VALUES 行数等）得到相同的指纹，
+ * 用作分析缓存的键，避免每个变体都触发一次 EXPLAIN
+ */
+public class SqlFingerprintHelper {
+
+    // 字面量/参数占位符
+    private static final String PLACEHOLDER = "?";
+    // 折叠后的列表占位符
+    private static final String LIST_PLACEHOLDER = "?+";
+
+    /**
+     * 计算 SQL 指纹
+     *
+     * @param sql 原始 SQL
+     * @return 归一化后的 SQL 指纹，sql 为 null 时返回空字符串
+     */
+    public static String fingerprint(String sql) {
+        if (sql == null || sql.isEmpty()) {
+            return "";
+        }
+        List<String> tokens = tokenize(sql);
+        collapseLists(tokens);
+        return join(tokens);
+    }
+
+    /**
+     * 单次扫描将 SQL 切分为词法单元，同时去除注释并替换字面量
+     *
+     * @param sql 原始 SQL
+     * @return 词法单元列表
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            // 空白
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            // 块注释 /* ... */
+            if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+                continue;
+            }
+            // 行注释 -- ...
+            if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? len : end + 1;
+                continue;
+            }
+            // 字符串字面量
+            if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                tokens.add(PLACEHOLDER);
+                continue;
+            }
+            // 带引号的标识符，保留原样
+            if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                tokens.add(sql.substring(i, end));
+                i = end;
+                continue;
+            }
+            // 数字字面量（含十六进制、小数、科学计数法）
+            if (Character.isDigit(c) || (c == '.' && i + 1 < len && Character.isDigit(sql.charAt(i + 1)))) {
+                i = skipNumber(sql, i);
+                tokens.add(PLACEHOLDER);
+                continue;
+            }
+            // 参数占位符 ? 以及 PostgreSQL 的 $1
+            if (c == '?' || (c == '$' && i + 1 < len && Character.isDigit(sql.charAt(i + 1)))) {
+                i++;
+                while (i < len && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                tokens.add(PLACEHOLDER);
+                continue;
+            }
+            // 标识符/关键字，统一大写
+            if (Character.isLetter(c) || c == '_' || c == '@') {
+                int start = i;
+                while (i < len) {
+                    char ch = sql.charAt(i);
+                    if (Character.isLetterOrDigit(ch) || ch == '_' || ch == '$' || ch == '@' || ch == '#') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(sql.substring(start, i).toUpperCase());
+                continue;
+            }
+            // 其他符号，连续的运算符合并为一个单元（如 >=、<>、::、||）
+            if (isOperatorChar(c)) {
+                int start = i;
+                while (i < len && isOperatorChar(sql.charAt(i))
+                        && !(sql.charAt(i) == '-' && i + 1 < len && sql.charAt(i + 1) == '-')
+                        && !(sql.charAt(i) == '/' && i + 1 < len && sql.charAt(i + 1) == '*')) {
+                    i++;
+                }
+                if (i == start) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i));
+                continue;
+            }
+            tokens.add(String.valueOf(c));
+            i++;
+        }
+        return tokens;
+    }
+
+    /**
+     * 折叠 IN 列表与 VALUES 多行
+     * IN (?, ?, ?) 折叠为 IN (?+)；VALUES (..), (..) 中与首行相同的后续行被移除
+     *
+     * @param tokens 词法单元列表
+     */
+    private static void collapseLists(List<String> tokens) {
+        List<String> out = new ArrayList<>(tokens.size());
+        int i = 0;
+        int size = tokens.size();
+        while (i < size) {
+            String token = tokens.get(i);
+            out.add(token);
+            i++;
+            if ("IN".equals(token) && i < size && "(".equals(tokens.get(i))) {
+                int end = placeholderListEnd(tokens, i);
+                if (end > 0) {
+                    out.add("(");
+                    out.add(LIST_PLACEHOLDER);
+                    out.add(")");
+                    i = end + 1;
+                }
+            } else if (("VALUES".equals(token) || "VALUE".equals(token)) && i < size && "(".equals(tokens.get(i))) {
+                int end = matchingParen(tokens, i);
+                if (end < 0) {
+                    continue;
+                }
+                List<String> firstRow = tokens.subList(i, end + 1);
+                out.addAll(firstRow);
+                i = end + 1;
+                // 跳过与首行相同的后续行
+                while (i + 1 < size && ",".equals(tokens.get(i)) && "(".equals(tokens.get(i + 1))) {
+                    int rowEnd = matchingParen(tokens, i + 1);
+                    if (rowEnd < 0 || !firstRow.equals(tokens.subList(i + 1, rowEnd + 1))) {
+                        break;
+                    }
+                    i = rowEnd + 1;
+                }
+            }
+        }
+        tokens.clear();
+        tokens.addAll(out);
+    }
+
+    /**
+     * 判断从 start 开始的括号内是否只有占位符和逗号
+     *
+     * @return 右括号位置，不满足条件返回 -1
+     */
+    private static int placeholderListEnd(List<String> tokens, int start) {
+        boolean expectPlaceholder = true;
+        for (int i = start + 1; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (")".equals(token)) {
+                return expectPlaceholder ? -1 : i;
+            }
+            if (expectPlaceholder ? !PLACEHOLDER.equals(token) : !",".equals(token)) {
+                return -1;
+            }
+            expectPlaceholder = !expectPlaceholder;
+        }
+        return -1;
+    }
+
+    /**
+     * 查找与 start 位置左括号匹配的右括号
+     *
+     * @return 右括号位置，未找到返回 -1
+     */
+    private static int matchingParen(List<String> tokens, int start) {
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("(".equals(token)) {
+                depth++;
+            } else if (")".equals(token) && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 以单个空格拼接词法单元，括号、逗号和点号两侧不加空格
+     */
+    private static String join(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        String prev = null;
+        for (String token : tokens) {
+            if (prev != null && !"(".equals(prev) && !".".equals(prev)
+                    && !")".equals(token) && !",".equals(token) && !".".equals(token)) {
+                sb.append(' ');
+            }
+            sb.append(token);
+            prev = token;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 跳过带引号的内容，支持双写引号和反斜杠转义
+     *
+     * @return 结束引号之后的位置
+     */
+    private static int skipQuoted(String sql, int start, char quote) {
+        int len = sql.length();
+        int i = start + 1;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote == '\'') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return len;
+    }
+
+    /**
+     * 跳过数字字面量
+     *
+     * @return 数字之后的位置
+     */
+    private static int skipNumber(String sql, int start) {
+        int len = sql.length();
+        int i = start;
+        if (sql.charAt(i) == '0' && i + 1 < len && (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+            i += 2;
+            while (i < len && Character.digit(sql.charAt(i), 16) >= 0) {
+                i++;
+            }
+            return i;
+        }
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isDigit(c) || c == '.') {
+                i++;
+            } else if ((c == 'e' || c == 'E') && i + 1 < len
+                    && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+')) {
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 判断是否为运算符字符
+     */
+    private static boolean isOperatorChar(char c) {
+        return "<>=!|&+-*/%^~:".indexOf(c) >= 0;
+    }
+}
@@ -34,10 +34,19 @@ public class SqlFunctionHelper {
      * @throws Exception 如果 SQL 解析失败，则抛出异常
      */
     public static List<String> audit(String sql, Set<String> whereFunctionAllowed) throws Exception {
-        List<String> warnings = new ArrayList<>();
         sql = prepareSql(sql);
-        Statement stmt = CCJSqlParserUtil.parse(sql);
+        return audit(CCJSqlParserUtil.parse(sql), whereFunctionAllowed);
+    }
 
+    /**
+     * 检测已解析语句中所有对列使用的函数（排除白名单）
+     *
+     * @param stmt                 已解析的 SQL 语句
+     * @param whereFunctionAllowed 函数白名单，包含允许使用的函数名
+     * @return 返回一个警告列表，如果 SQL 中使用了非白名单内的函数，则添加相应警告
+     */
+    public static List<String> audit(Statement stmt, Set<String> whereFunctionAllowed) {
+        List<String> warnings = new ArrayList<>();
         stmt.accept(new StatementVisitorAdapter() {
             @Override
             public void visit(Select select) {
@@ -65,23 +74,38 @@ public class SqlFunctionHelper {
         expr.accept(new ExpressionVisitorAdapter() {
             @Override
             public void visit(Function function) {
-                // 1. 跳过白名单函数
-                if (whereFunctionAllowed.contains(function.getName().toUpperCase())) {
-                    return;
-                }
-                // 2. 检测是否作用于列
-                if (isFunctionOnColumn(function)) {
-                    warnings.add(String.format(
-                            "警告: 对列 `%s` 使用函数 `%s()`，可能导致索引失效。白名单函数: %s",
-                            getColumnName(function),
-                            function.getName(),
-                            whereFunctionAllowed
-                    ));
+                String warning = functionOnColumnWarning(function, whereFunctionAllowed);
+                if (warning != null) {
+                    warnings.add(warning);
                 }
             }
         });
     }
 
+    /**
+     * 检查单个函数是否为作用于列的非白名单函数
+     *
+     * @param function             SQL 函数对象
+     * @param whereFunctionAllowed 函数白名单，包含允许使用的函数名
+     * @return 警告内容，函数在白名单中或未作用于列时返回null
+     */
+    public static String functionOnColumnWarning(Function function, Set<String> whereFunctionAllowed) {
+        // 1. 跳过白名单函数
+        if (function.getName() == null || whereFunctionAllowed.contains(function.getName().toUpperCase())) {
+            return null;
+        }
+        // 2. 检测是否作用于列
+        if (!isFunctionOnColumn(function)) {
+            return null;
+        }
+        return String.format(
+                "警告: 对列 `%s` 使用函数 `%s()`，可能导致索引失效。白名单函数: %s",
+                getColumnName(function),
+                function.getName(),
+                whereFunctionAllowed
+        );
+    }
+
     /**
      * 判断函数是否应用于列
      *
@@ -89,6 +113,9 @@ public class SqlFunctionHelper {
      * @return 如果函数应用于列，则返回 true，否则返回 false
      */
     private static boolean isFunctionOnColumn(Function function) {
+        if (function.getParameters() == null) {
+            return false;
+        }
         return function.getParameters().getExpressions().stream()
                 .anyMatch(e -> e instanceof Column);
     }
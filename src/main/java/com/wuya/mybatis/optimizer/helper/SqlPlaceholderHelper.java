@@ -0,0 +1,57 @@
+package com.wuya.mybatis.optimizer.helper;
+
+/**
+ * SQL 参数占位符帮助类
+ * 把 JDBC 的 ? 占位符改写为数据库原生的位置参数（PostgreSQL 的 $1、Oracle 的 :1），
+ * 用于不绑定参数直接执行的 EXPLAIN 语句
+ */
+public class SqlPlaceholderHelper {
+
+    /**
+     * 将 ? 占位符改写为位置参数，跳过字符串、带引号的标识符、注释以及 ?| ?& 等 JSON 运算符
+     *
+     * @param sql    原始SQL
+     * @param marker 位置参数前缀，如 $ 或 :
+     * @return 改写后的SQL
+     */
+    public static String toPositional(String sql, String marker) {
+        StringBuilder sb = new StringBuilder(sql.length() + 16);
+        int index = 0;
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                while (end > 0 && end + 1 < len && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2);
+                }
+                end = end < 0 ? len : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                end = end < 0 ? len : end;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? len : end + 2;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '?' && i + 1 < len && (sql.charAt(i + 1) == '?'
+                    || sql.charAt(i + 1) == '|' || sql.charAt(i + 1) == '&')) {
+                // ?? 为 JDBC 中 ? 运算符的转义写法，?| ?& 为 jsonb 运算符
+                sb.append(sql.charAt(i + 1) == '?' ? "?" : sql.substring(i, i + 2));
+                i += 2;
+            } else if (c == '?') {
+                sb.append(marker).append(++index);
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,316 @@
+package com.wuya.mybatis.optimizer.plan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 执行计划的紧凑二进制编码
+ * 把 EXPLAIN 结果行和计划树编码为一个 byte[]：字符串只写一次并以下标引用（列名、表名、操作名重复出现时只占几个字节），
+ * 数值按原始类型写入。缓存中的执行计划以该形式保存，报告时再解码，避免常驻大量 LinkedHashMap 和节点对象
+ */
+public final class PlanCodec {
+
+    // 格式版本
+    private static final int VERSION = 1;
+
+    // 值类型标记
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte DECIMAL = 5;
+    private static final byte BOOLEAN = 6;
+
+    private PlanCodec() {
+    }
+
+    /**
+     * 编码执行计划
+     *
+     * @param rows EXPLAIN 结果行，可为null
+     * @param root 计划树根节点，可为null
+     * @return 编码结果
+     */
+    public static byte[] encode(List<Map<String, Object>> rows, PlanNode root) {
+        try {
+            Writer writer = new Writer();
+            writer.out.writeByte(VERSION);
+            List<Map<String, Object>> safeRows = rows != null ? rows : Collections.emptyList();
+            writer.writeVarInt(safeRows.size());
+            for (Map<String, Object> row : safeRows) {
+                writer.writeVarInt(row.size());
+                for (Map.Entry<String, Object> entry : row.entrySet()) {
+                    writer.writeString(entry.getKey());
+                    writer.writeValue(entry.getValue());
+                }
+            }
+            writer.out.writeBoolean(root != null);
+            if (root != null) {
+                writer.writeNode(root);
+            }
+            return writer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 解码 EXPLAIN 结果行和计划树
+     *
+     * @param bytes 编码结果
+     * @return 解码结果
+     */
+    public static Decoded decode(byte[] bytes) {
+        try {
+            Reader reader = new Reader(bytes);
+            int version = reader.in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("不支持的执行计划编码版本: " + version);
+            }
+            int rowCount = reader.readVarInt();
+            List<Map<String, Object>> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                int size = reader.readVarInt();
+                Map<String, Object> row = new LinkedHashMap<>(size * 2);
+                for (int j = 0; j < size; j++) {
+                    row.put(reader.readString(), reader.readValue());
+                }
+                rows.add(row);
+            }
+            PlanNode root = reader.in.readBoolean() ? reader.readNode() : null;
+            return new Decoded(rows, root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 解码结果
+     */
+    public static final class Decoded {
+        private final List<Map<String, Object>> rows;
+        private final PlanNode root;
+
+        private Decoded(List<Map<String, Object>> rows, PlanNode root) {
+            this.rows = rows;
+            this.root = root;
+        }
+
+        public List<Map<String, Object>> getRows() {
+            return rows;
+        }
+
+        public PlanNode getRoot() {
+            return root;
+        }
+    }
+
+    /**
+     * 编码器，维护字符串表
+     */
+    private static final class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private void writeNode(PlanNode node) throws IOException {
+            writeString(node.getOperation());
+            writeString(node.getAccessType());
+            writeString(node.getSelectType());
+            writeString(node.getRelation());
+            writeString(node.getIndex());
+            writeString(node.getExtra());
+            writeString(node.getSortKey());
+            writeString(node.getSortMethod());
+            writeString(node.getStrategy());
+            out.writeDouble(node.getStartupCost());
+            out.writeDouble(node.getTotalCost());
+            out.writeDouble(node.getActualTimeMs());
+            out.writeDouble(node.getFiltered());
+            writeVarLong(node.getEstimatedRows());
+            writeVarLong(node.getActualRows());
+            writeVarLong(node.getLoops());
+            writeVarLong(node.getHeapFetches());
+            writeVarLong(node.getWidth());
+            writeVarLong(node.getHashBatches());
+            writeVarLong(node.getWorkersPlanned());
+            writeVarLong(node.getWorkersLaunched());
+            out.writeByte(node.getInnerUnique() == null ? 0 : node.getInnerUnique() ? 1 : 2);
+            writeVarInt(node.getChildren().size());
+            for (PlanNode child : node.getChildren()) {
+                writeNode(child);
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                writeVarLong((Long) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                out.writeByte(INT);
+                writeVarLong(((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof BigDecimal) {
+                out.writeByte(DECIMAL);
+                writeString(value.toString());
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                out.writeByte(STRING);
+                writeString(value.toString());
+            }
+        }
+
+        /**
+         * 写入字符串：首次出现写入内容，之后写入下标；0 表示 null
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            // 新字符串的下标等于解码端当前字符串表的大小
+            writeVarInt(strings.size() + 1);
+            strings.put(value, strings.size());
+            out.writeUTF(value.length() > 16000 ? value.substring(0, 16000) : value);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            writeVarLong(value);
+        }
+
+        /**
+         * 变长整数，-1（未知）等负数经 zigzag 编码后同样只占一个字节
+         */
+        private void writeVarLong(long value) throws IOException {
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7FL) != 0) {
+                out.writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.writeByte((int) v);
+        }
+
+        private byte[] toByteArray() throws IOException {
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * 解码器，与编码器对称地维护字符串表
+     */
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        private Reader(byte[] bytes) {
+            this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+        }
+
+        private PlanNode readNode() throws IOException {
+            PlanNode node = new PlanNode();
+            node.setOperation(readString());
+            node.setAccessType(readString());
+            node.setSelectType(readString());
+            node.setRelation(readString());
+            node.setIndex(readString());
+            node.setExtra(readString());
+            node.setSortKey(readString());
+            node.setSortMethod(readString());
+            node.setStrategy(readString());
+            node.setStartupCost(in.readDouble());
+            node.setTotalCost(in.readDouble());
+            node.setActualTimeMs(in.readDouble());
+            node.setFiltered(in.readDouble());
+            node.setEstimatedRows(readVarLong());
+            node.setActualRows(readVarLong());
+            node.setLoops(readVarLong());
+            node.setHeapFetches(readVarLong());
+            node.setWidth((int) readVarLong());
+            node.setHashBatches((int) readVarLong());
+            node.setWorkersPlanned((int) readVarLong());
+            node.setWorkersLaunched((int) readVarLong());
+            byte innerUnique = in.readByte();
+            node.setInnerUnique(innerUnique == 0 ? null : innerUnique == 1);
+            int children = readVarInt();
+            for (int i = 0; i < children; i++) {
+                node.addChild(readNode());
+            }
+            return node;
+        }
+
+        private Object readValue() throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+                case NULL:
+                    return null;
+                case LONG:
+                    return readVarLong();
+                case INT:
+                    return (int) readVarLong();
+                case DOUBLE:
+                    return in.readDouble();
+                case DECIMAL:
+                    return new BigDecimal(readString());
+                case BOOLEAN:
+                    return in.readBoolean();
+                case STRING:
+                    return readString();
+                default:
+                    throw new IOException("未知的值类型: " + type);
+            }
+        }
+
+        private String readString() throws IOException {
+            int index = readVarInt();
+            if (index == 0) {
+                return null;
+            }
+            if (index - 1 < strings.size()) {
+                return strings.get(index - 1);
+            }
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() throws IOException {
+            long v = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
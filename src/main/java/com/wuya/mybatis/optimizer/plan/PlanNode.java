@@ -0,0 +1,267 @@
+package com.wuya.mybatis.optimizer.plan;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 执行计划节点
+ * 各数据库分析器把 EXPLAIN 结果转换为统一的计划树，数值字段使用基本类型，未知值为 -1，
+ * 建议生成器通过 {@link PlanVisitor} 遍历计划树，不再对 Map 行做字符串解析
+ */
+@Getter
+@Setter
+public class PlanNode {
+
+    // 未知数值
+    public static final long UNKNOWN = -1L;
+
+    /**
+     * 节点操作，如 PostgreSQL 的 Node Type（Seq Scan、Hash Join）、Oracle 的 OPERATION
+     */
+    private String operation;
+
+    /**
+     * 访问类型，如 MySQL 的 type（ALL、index、range、ref）
+     */
+    private String accessType;
+
+    /**
+     * 查询块类型，如 MySQL 的 select_type（SIMPLE、DERIVED、DEPENDENT SUBQUERY）
+     */
+    private String selectType;
+
+    /**
+     * 访问的表
+     */
+    private String relation;
+
+    /**
+     * 使用的索引
+     */
+    private String index;
+
+    /**
+     * 附加信息，如 MySQL 的 Extra、PostgreSQL 的 Filter
+     */
+    private String extra;
+
+    /**
+     * 启动代价
+     */
+    private double startupCost = UNKNOWN;
+
+    /**
+     * 总代价
+     */
+    private double totalCost = UNKNOWN;
+
+    /**
+     * 估算行数
+     */
+    private long estimatedRows = UNKNOWN;
+
+    /**
+     * 实际行数（每次循环）
+     */
+    private long actualRows = UNKNOWN;
+
+    /**
+     * 循环次数
+     */
+    private long loops = UNKNOWN;
+
+    /**
+     * 实际总耗时（毫秒）
+     */
+    private double actualTimeMs = UNKNOWN;
+
+    /**
+     * 过滤后保留的行比例（百分比），MySQL 的 filtered
+     */
+    private double filtered = UNKNOWN;
+
+    /**
+     * 行宽（字节）
+     */
+    private int width = (int) UNKNOWN;
+
+    // PostgreSQL 节点的常用属性
+    /**
+     * 排序键或分组键
+     */
+    private String sortKey;
+
+    /**
+     * 排序方法，如 external merge
+     */
+    private String sortMethod;
+
+    /**
+     * 聚合策略，如 Hashed、Sorted
+     */
+    private String strategy;
+
+    /**
+     * Hash 批次数
+     */
+    private int hashBatches = (int) UNKNOWN;
+
+    /**
+     * Index Only Scan 的堆取次数
+     */
+    private long heapFetches = UNKNOWN;
+
+    /**
+     * 计划的并行工作进程数
+     */
+    private int workersPlanned = (int) UNKNOWN;
+
+    /**
+     * 实际启动的并行工作进程数
+     */
+    private int workersLaunched = (int) UNKNOWN;
+
+    /**
+     * 连接内表是否唯一
+     */
+    private Boolean innerUnique;
+
+    /**
+     * 子节点
+     */
+    private List<PlanNode> children = Collections.emptyList();
+
+    /**
+     * 添加子节点
+     *
+     * @param child 子节点
+     * @return 当前节点
+     */
+    public PlanNode addChild(PlanNode child) {
+        if (children.isEmpty()) {
+            children = new ArrayList<>(2);
+        }
+        children.add(child);
+        return this;
+    }
+
+    /**
+     * 深度复制以当前节点为根的子树
+     *
+     * @return 与当前子树互不影响的副本
+     */
+    public PlanNode copy() {
+        PlanNode copy = new PlanNode();
+        copy.operation = operation;
+        copy.accessType = accessType;
+        copy.selectType = selectType;
+        copy.relation = relation;
+        copy.index = index;
+        copy.extra = extra;
+        copy.startupCost = startupCost;
+        copy.totalCost = totalCost;
+        copy.estimatedRows = estimatedRows;
+        copy.actualRows = actualRows;
+        copy.loops = loops;
+        copy.actualTimeMs = actualTimeMs;
+        copy.filtered = filtered;
+        copy.width = width;
+        copy.sortKey = sortKey;
+        copy.sortMethod = sortMethod;
+        copy.strategy = strategy;
+        copy.hashBatches = hashBatches;
+        copy.heapFetches = heapFetches;
+        copy.workersPlanned = workersPlanned;
+        copy.workersLaunched = workersLaunched;
+        copy.innerUnique = innerUnique;
+        for (PlanNode child : children) {
+            copy.addChild(child.copy());
+        }
+        return copy;
+    }
+
+    /**
+     * 深度优先先序遍历以当前节点为根的子树
+     *
+     * @param visitor 访问者
+     */
+    public void accept(PlanVisitor visitor) {
+        accept(visitor, null, 0);
+    }
+
+    private void accept(PlanVisitor visitor, PlanNode parent, int depth) {
+        visitor.visit(this, parent, depth);
+        for (PlanNode child : children) {
+            child.accept(visitor, this, depth + 1);
+        }
+    }
+
+    /**
+     * 优先返回实际行数，没有实际行数时返回估算行数
+     *
+     * @return 行数，未知时返回 -1
+     */
+    public long getRows() {
+        return actualRows >= 0 ? actualRows : estimatedRows;
+    }
+
+    /**
+     * 判断是否为给定操作
+     *
+     * @param name 操作名
+     * @return 相同返回true
+     */
+    public boolean is(String name) {
+        return name.equals(operation);
+    }
+
+    /**
+     * 判断子树中（含当前节点）是否存在给定操作
+     *
+     * @param name 操作名
+     * @return 存在返回true
+     */
+    public boolean contains(String name) {
+        if (is(name)) {
+            return true;
+        }
+        for (PlanNode child : children) {
+            if (child.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(operation != null ? operation : accessType);
+        if (relation != null) {
+            sb.append(" on ").append(relation);
+        }
+        if (index != null) {
+            sb.append(" using ").append(index);
+        }
+        if (totalCost >= 0) {
+            sb.append(" cost=").append(totalCost);
+        }
+        if (estimatedRows >= 0) {
+            sb.append(" rows=").append(estimatedRows);
+        }
+        if (actualRows >= 0) {
+            sb.append(" actual=").append(actualRows);
+        }
+        if (loops >= 0) {
+            sb.append(" loops=").append(loops);
+        }
+        if (extra != null) {
+            sb.append(" (").append(extra).append(')');
+        }
+        return sb.toString();
+    }
+}
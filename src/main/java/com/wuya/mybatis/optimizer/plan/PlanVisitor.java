@@ -0,0 +1,16 @@
+package com.wuya.mybatis.optimizer.plan;
+
+/**
+ * 执行计划树访问者
+ */
+@FunctionalInterface
+public interface PlanVisitor {
+    /**
+     * 访问一个计划节点，父节点先于子节点访问
+     *
+     * @param node   当前节点
+     * @param parent 父节点，根节点为null
+     * @param depth  深度，根节点为0
+     */
+    void visit(PlanNode node, PlanNode parent, int depth);
+}
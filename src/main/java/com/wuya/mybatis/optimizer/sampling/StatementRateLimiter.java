@@ -0,0 +1,75 @@
+package com.wuya.mybatis.optimizer.sampling;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按语句限流的采样器
+ * 每个 MappedStatement 一个令牌桶，限制每分钟最多分析 N 次，首次出现的语句一定会被分析。
+ * 分析量随不同语句的数量增长，而不是随流量增长
+ */
+public class StatementRateLimiter {
+
+    // 语句id -> 令牌桶
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // 发放一个令牌的间隔（纳秒）
+    private final long intervalNanos;
+    // 允许的突发容量（纳秒）
+    private final long burstNanos;
+
+    /**
+     * 构造函数
+     *
+     * @param permitsPerMinute 每条语句每分钟最多分析次数，必须大于0
+     * @param burst 允许的突发次数，最小为1
+     */
+    public StatementRateLimiter(int permitsPerMinute, int burst) {
+        if (permitsPerMinute <= 0) {
+            throw new IllegalArgumentException("permitsPerMinute must be positive: " + permitsPerMinute);
+        }
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        this.burstNanos = intervalNanos * (Math.max(1, burst) - 1);
+    }
+
+    /**
+     * 尝试为指定语句获取一次分析许可
+     *
+     * @param statementId MyBatis 语句 id
+     * @return 获取成功返回true
+     */
+    public boolean tryAcquire(String statementId) {
+        TokenBucket bucket = buckets.get(statementId);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(statementId, k -> new TokenBucket(System.nanoTime()));
+        }
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * 无锁令牌桶（GCRA 算法）
+     * 只保存理论到达时间，获取令牌为一次 CAS
+     */
+    private final class TokenBucket {
+        // 理论到达时间
+        private final AtomicLong theoreticalArrival;
+
+        private TokenBucket(long now) {
+            this.theoreticalArrival = new AtomicLong(now);
+        }
+
+        private boolean tryAcquire(long now) {
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long next = Math.max(tat - now, 0) + now + intervalNanos;
+                if (next - now > burstNanos + intervalNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
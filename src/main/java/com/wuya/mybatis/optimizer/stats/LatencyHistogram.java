@@ -0,0 +1,86 @@
+package com.wuya.mybatis.optimizer.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数线性延迟直方图
+ * 每个 2 的幂区间再均分为 8 个子桶，相对误差不超过 12.5%，覆盖 0 ~ 2^42 纳秒（约 73 分钟），
+ * 记录只需一次数组下标计算和一次原子自增，不加锁
+ */
+public class LatencyHistogram {
+
+    // 每个 2 的幂区间的子桶位数
+    private static final int SUB_BUCKET_BITS = 3;
+    // 每个 2 的幂区间的子桶数
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // 可记录的最大指数
+    private static final int MAX_EXPONENT = 42;
+    // 桶总数
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        buckets.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * 计算分位数
+     *
+     * @param percentile 分位（0-100）
+     * @return 分位数对应的耗时上界（纳秒），无数据时返回 0
+     */
+    public long percentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 计算耗时对应的桶下标
+     */
+    static int indexOf(long nanos) {
+        if (nanos < SUB_BUCKET_COUNT) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    /**
+     * 计算桶对应的耗时上界
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKET_COUNT;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKET_COUNT + sub) * width) + width - 1;
+    }
+}
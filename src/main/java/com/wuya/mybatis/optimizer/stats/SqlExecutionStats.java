@@ -0,0 +1,62 @@
+package com.wuya.mybatis.optimizer.stats;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单条语句（MappedStatement id，可带 SQL 指纹）的执行统计
+ * 计数与累计耗时使用分段的 LongAdder，最大值使用 LongAccumulator，热点路径上不加锁
+ */
+public class SqlExecutionStats {
+
+    /**
+     * MyBatis 语句 id
+     */
+    @Getter
+    private final String statementId;
+
+    /**
+     * SQL 指纹，只按语句id统计时为null
+     */
+    @Getter
+    private final String fingerprint;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public SqlExecutionStats(String statementId) {
+        this(statementId, null);
+    }
+
+    public SqlExecutionStats(String statementId, String fingerprint) {
+        this.statementId = statementId;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 记录一次执行
+     *
+     * @param nanos 执行耗时（纳秒）
+     */
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.record(nanos);
+    }
+
+    /**
+     * 生成当前统计的快照
+     *
+     * @return 统计快照
+     */
+    public SqlExecutionStatsSnapshot snapshot() {
+        return new SqlExecutionStatsSnapshot(statementId, fingerprint,
+                count.sum(), totalNanos.sum(), maxNanos.get(),
+                histogram.percentile(50), histogram.percentile(95), histogram.percentile(99));
+    }
+}
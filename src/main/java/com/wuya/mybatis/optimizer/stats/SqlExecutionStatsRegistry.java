@@ -0,0 +1,133 @@
+package com.wuya.mybatis.optimizer.stats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 语句执行统计注册表
+ * 按 MappedStatement id + SQL指纹 记录每一次执行，用于找出累计占用数据库时间最多的语句，
+ * 而不仅仅是单次超过阈值的慢 SQL。调用方没有现成的指纹时只按语句id记录，不为统计构建BoundSql。
+ * 两级 ConcurrentHashMap 在命中时无需分配组合键，记录路径无锁
+ */
+public class SqlExecutionStatsRegistry {
+
+    // 按语句id统计（没有指纹）时内层映射使用的键
+    private static final String NO_FINGERPRINT = "";
+
+    // 语句id -> (指纹 -> 统计)
+    private final ConcurrentMap<String, ConcurrentMap<String, SqlExecutionStats>> statsMap = new ConcurrentHashMap<>();
+    // 最多跟踪的条目数
+    private final int maxEntries;
+    // 当前跟踪的条目数
+    private final AtomicInteger entries = new AtomicInteger();
+    // 因超过上限未被跟踪的执行次数
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * 构造函数
+     *
+     * @param maxEntries 最多跟踪的条目数量（语句id 或 语句id + 指纹），超过后新条目不再统计
+     */
+    public SqlExecutionStatsRegistry(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 按语句id记录一次执行
+     *
+     * @param statementId MyBatis 语句 id
+     * @param nanos 执行耗时（纳秒）
+     */
+    public void record(String statementId, long nanos) {
+        record(statementId, null, nanos);
+    }
+
+    /**
+     * 记录一次执行
+     *
+     * @param statementId MyBatis 语句 id
+     * @param fingerprint SQL 指纹，为null时只按语句id记录
+     * @param nanos 执行耗时（纳秒）
+     */
+    public void record(String statementId, String fingerprint, long nanos) {
+        ConcurrentMap<String, SqlExecutionStats> byFingerprint = statsMap.get(statementId);
+        if (byFingerprint == null) {
+            byFingerprint = statsMap.computeIfAbsent(statementId, k -> new ConcurrentHashMap<>());
+        }
+        String key = fingerprint != null ? fingerprint : NO_FINGERPRINT;
+        SqlExecutionStats stats = byFingerprint.get(key);
+        if (stats == null) {
+            stats = register(byFingerprint, statementId, fingerprint, key);
+            if (stats == null) {
+                dropped.increment();
+                return;
+            }
+        }
+        stats.record(nanos);
+    }
+
+    /**
+     * 注册新的统计项，超过上限时返回 null
+     */
+    private SqlExecutionStats register(ConcurrentMap<String, SqlExecutionStats> byFingerprint,
+                                       String statementId, String fingerprint, String key) {
+        if (entries.incrementAndGet() > maxEntries) {
+            entries.decrementAndGet();
+            return byFingerprint.get(key);
+        }
+        SqlExecutionStats created = new SqlExecutionStats(statementId, fingerprint);
+        SqlExecutionStats existing = byFingerprint.putIfAbsent(key, created);
+        if (existing != null) {
+            entries.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    /**
+     * 获取所有统计快照
+     *
+     * @return 统计快照列表
+     */
+    public List<SqlExecutionStatsSnapshot> snapshot() {
+        List<SqlExecutionStatsSnapshot> snapshots = new ArrayList<>();
+        statsMap.values().forEach(byFingerprint -> byFingerprint.values().forEach(stats -> snapshots.add(stats.snapshot())));
+        return snapshots;
+    }
+    /**
+     * 按累计耗时倒序获取前 N 条语句
+     *
+     * @param limit 数量
+     * @return 统计快照列表
+     */
+    public List<SqlExecutionStatsSnapshot> topByTotalTime(int limit) {
+        return snapshot().stream()
+                .sorted(Comparator.comparingLong(SqlExecutionStatsSnapshot::getTotalNanos).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 因超过跟踪上限未被统计的执行次数
+     *
+     * @return 执行次数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        statsMap.clear();
+        entries.set(0);
+        dropped.reset();
+    }
+}
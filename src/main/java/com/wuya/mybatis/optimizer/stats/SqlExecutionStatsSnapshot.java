@@ -0,0 +1,46 @@
+package com.wuya.mybatis.optimizer.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 语句执行统计快照
+ * 耗时单位均为纳秒
+ */
+@Getter
+@AllArgsConstructor
+public class SqlExecutionStatsSnapshot {
+    // MyBatis 语句 id
+    private final String statementId;
+    // SQL 指纹，只按语句id统计时为null
+    private final String fingerprint;
+    // 执行次数
+    private final long count;
+    // 累计耗时
+    private final long totalNanos;
+    // 最大耗时
+    private final long maxNanos;
+    // 50 分位耗时
+    private final long p50Nanos;
+    // 95 分位耗时
+    private final long p95Nanos;
+    // 99 分位耗时
+    private final long p99Nanos;
+
+    /**
+     * 平均耗时（纳秒）
+     *
+     * @return 平均耗时，无执行记录时返回 0
+     */
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%s count=%d total=%.1fms mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                statementId, fingerprint != null ? " [" + fingerprint + "]" : "", count, totalNanos / 1_000_000.0, getMeanNanos() / 1_000_000.0,
+                p50Nanos / 1_000_000.0, p95Nanos / 1_000_000.0, p99Nanos / 1_000_000.0,
+                maxNanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,274 @@
+package com.wuya.mybatis.cache;
+
+import com.wuya.mybatis.exception.SqlOptimizerException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JdbcAnalysisStore 测试，使用 H2 内存数据库模拟多个节点共享的存储表
+ */
+class JdbcAnalysisStoreTest {
+
+    private static final String TABLE = "sql_analysis_store";
+    private static final String SQL = "select * from orders where id = ?";
+
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    private JdbcAnalysisStore node(Duration lease) {
+        return new JdbcAnalysisStore(dataSource, TABLE, lease, true);
+    }
+
+    @Test
+    void publishedResultIsFound() {
+        JdbcAnalysisStore store = node(Duration.ofMinutes(1));
+        assertNull(store.find(SQL));
+
+        assertTrue(store.claim(SQL, 0L));
+        // 只有租约、尚未发布时没有结果
+        assertNull(store.find(SQL));
+
+        store.publish(SQL, bytes("plan"));
+        StoredAnalysis stored = store.find(SQL);
+        assertNotNull(stored);
+        assertEquals(SQL, stored.getFingerprint());
+        assertArrayEquals(bytes("plan"), stored.getPayload());
+    }
+
+    @Test
+    void secondNodeLosesClaimWhileLeaseIsHeld() {
+        JdbcAnalysisStore first = node(Duration.ofMinutes(1));
+        JdbcAnalysisStore second = node(Duration.ofMinutes(1));
+
+        // 行不存在，INSERT 抢占
+        assertTrue(first.claim(SQL, 0L));
+        // 条件 UPDATE 不命中，INSERT 主键冲突
+        assertFalse(second.claim(SQL, 0L));
+        assertFalse(first.claim(SQL, 0L));
+    }
+
+    @Test
+    void releasedLeaseCanBeClaimedThroughUpdate() {
+        JdbcAnalysisStore first = node(Duration.ofMinutes(1));
+        JdbcAnalysisStore second = node(Duration.ofMinutes(1));
+
+        assertTrue(first.claim(SQL, 0L));
+        first.release(SQL);
+        // 租约行仍在，由条件 UPDATE 认领
+        assertTrue(second.claim(SQL, 0L));
+        // 只有持有者才能释放租约
+        first.release(SQL);
+        assertFalse(first.claim(SQL, 0L));
+    }
+
+    @Test
+    void expiredLeaseCanBeReclaimed() throws InterruptedException {
+        JdbcAnalysisStore first = node(Duration.ofMillis(50));
+        JdbcAnalysisStore second = node(Duration.ofMillis(50));
+
+        assertTrue(first.claim(SQL, 0L));
+        assertFalse(second.claim(SQL, 0L));
+        // 持有租约的节点中途退出，租约到期后被其他节点认领
+        Thread.sleep(100);
+        assertTrue(second.claim(SQL, 0L));
+    }
+
+    @Test
+    void freshResultIsNotReclaimedButStaleResultIs() throws InterruptedException {
+        JdbcAnalysisStore first = node(Duration.ofMinutes(1));
+        JdbcAnalysisStore second = node(Duration.ofMinutes(1));
+
+        assertTrue(first.claim(SQL, 0L));
+        first.publish(SQL, bytes("v1"));
+        assertFalse(second.claim(SQL, 0L));
+
+        Thread.sleep(5);
+        // 在该时间之前发布的结果需要刷新
+        assertTrue(second.claim(SQL, System.currentTimeMillis()));
+        // 刷新期间仍可读取旧结果
+        assertArrayEquals(bytes("v1"), first.find(SQL).getPayload());
+        second.publish(SQL, bytes("v2"));
+        assertArrayEquals(bytes("v2"), first.find(SQL).getPayload());
+    }
+
+    @Test
+    void concurrentClaimsHaveSingleWinner() throws Exception {
+        int nodes = 8;
+        List<JdbcAnalysisStore> stores = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            stores.add(node(Duration.ofMinutes(1)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nodes);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> claims = new ArrayList<>();
+            for (JdbcAnalysisStore store : stores) {
+                Callable<Boolean> claim = () -> {
+                    start.await();
+                    return store.claim(SQL, 0L);
+                };
+                claims.add(executor.submit(claim));
+            }
+            start.countDown();
+            int winners = 0;
+            for (Future<Boolean> claim : claims) {
+                if (claim.get()) {
+                    winners++;
+                }
+            }
+            assertEquals(1, winners);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void publishAfterRemoveReinsertsRow() {
+        JdbcAnalysisStore store = node(Duration.ofMinutes(1));
+        assertTrue(store.claim(SQL, 0L));
+        // 分析期间 DDL 使结果失效，租约行被删除
+        store.remove(Arrays.asList(SQL));
+        store.publish(SQL, bytes("plan"));
+        assertArrayEquals(bytes("plan"), store.find(SQL).getPayload());
+    }
+
+    @Test
+    void removeAndClearDeleteResults() {
+        JdbcAnalysisStore store = node(Duration.ofMinutes(1));
+        String other = "select * from users where id = ?";
+        store.publish(SQL, bytes("a"));
+        store.publish(other, bytes("b"));
+
+        store.remove(Arrays.asList(SQL));
+        assertNull(store.find(SQL));
+        assertNotNull(store.find(other));
+
+        store.clear();
+        assertNull(store.find(other));
+        assertTrue(store.claim(other, 0L));
+    }
+
+    @Test
+    void autoCommitIsRestoredOnPooledConnection() throws Exception {
+        // 模拟连接池：始终返回同一个关闭自动提交的物理连接，close() 只是归还
+        Connection physical = dataSource.getConnection();
+        physical.setAutoCommit(false);
+        DataSource pool = dataSource(() -> (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (p, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                }));
+        JdbcAnalysisStore store = new JdbcAnalysisStore(pool, TABLE, Duration.ofMinutes(1), true);
+        assertTrue(store.claim(SQL, 0L));
+        store.publish(SQL, bytes("plan"));
+        assertNotNull(store.find(SQL));
+
+        assertFalse(physical.getAutoCommit());
+        // 写入已在自动提交模式下提交，其他连接可见
+        assertArrayEquals(bytes("plan"), node(Duration.ofMinutes(1)).find(SQL).getPayload());
+        physical.close();
+    }
+
+    @Test
+    void exhaustedBudgetSkipsLookupWithoutWaiting() throws Exception {
+        node(Duration.ofMinutes(1)).publish(SQL, bytes("plan"));
+        CountDownLatch connecting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean block = new AtomicBoolean();
+        DataSource slow = dataSource(() -> {
+            if (block.get()) {
+                connecting.countDown();
+                release.await();
+            }
+            return dataSource.getConnection();
+        });
+        JdbcAnalysisStore store = new JdbcAnalysisStore(slow, TABLE, Duration.ofMinutes(1), true, 1, 0L);
+        block.set(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 另一个线程占用唯一的连接预算
+            Future<StoredAnalysis> holder = executor.submit(() -> store.find(SQL));
+            assertTrue(connecting.await(5, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            assertNull(store.find(SQL));
+            assertThrows(SqlOptimizerException.class, () -> store.claim(SQL, 0L));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+            release.countDown();
+            assertNotNull(holder.get(5, TimeUnit.SECONDS));
+            block.set(false);
+            assertNotNull(store.find(SQL));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidTableNameIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new JdbcAnalysisStore(dataSource, "t; drop table x", Duration.ofMinutes(1), true));
+    }
+
+    /**
+     * 只实现 getConnection() 的数据源，可作为映射的键
+     */
+    private static DataSource dataSource(Callable<Connection> connections) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (p, method, args) -> {
+                    if ("getConnection".equals(method.getName()) && method.getParameterCount() == 0) {
+                        return connections.call();
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(p);
+                    }
+                    if ("equals".equals(method.getName())) {
+                        return p == args[0];
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
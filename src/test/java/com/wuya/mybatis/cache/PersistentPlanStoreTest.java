@@ -0,0 +1,142 @@
+package com.wuya.mybatis.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PersistentPlanStore 测试
+ */
+class PersistentPlanStoreTest {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripKeepsLatestRecordPerFingerprint() throws IOException {
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            store.put("select * from a where id = ?", bytes("a1"));
+            store.put("select * from b where id = ?", bytes("b1"));
+            store.put("select * from a where id = ?", bytes("a2"));
+            store.put("select * from c where id = ?", bytes("c1"));
+            store.remove(Collections.singleton("select * from b where id = ?"));
+        }
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            List<StoredAnalysis> records = store.load();
+            assertEquals(Arrays.asList("select * from a where id = ?", "select * from c where id = ?"), fingerprints(records));
+            assertArrayEquals(bytes("a2"), records.get(0).getPayload());
+            assertArrayEquals(bytes("c1"), records.get(1).getPayload());
+        }
+    }
+
+    @Test
+    void clearDropsEarlierRecords() throws IOException {
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            store.put("q1", bytes("1"));
+            store.clear();
+            store.put("q2", bytes("2"));
+        }
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            assertEquals(Collections.singletonList("q2"), fingerprints(store.load()));
+        }
+    }
+
+    @Test
+    void truncatedTailIsDroppedAndStoreStaysWritable() throws IOException {
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            store.put("q1", bytes("first"));
+            store.put("q2", bytes("second"));
+        }
+        // 模拟进程在写入最后一条记录时退出
+        Path file = directory.resolve("analysis-plans.dat");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            List<StoredAnalysis> records = store.load();
+            assertEquals(Collections.singletonList("q1"), fingerprints(records));
+            assertArrayEquals(bytes("first"), records.get(0).getPayload());
+            // 重写后继续追加
+            store.put("q3", bytes("third"));
+        }
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            assertEquals(Arrays.asList("q1", "q3"), fingerprints(store.load()));
+        }
+    }
+
+    @Test
+    void storeStaysLockedAcrossRewrite() throws IOException {
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            store.put("q1", bytes("1"));
+            store.load();
+            assertThrows(IOException.class, () -> new PersistentPlanStore(directory, MAX_BYTES, 0));
+            store.put("q2", bytes("2"));
+        }
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 0)) {
+            assertEquals(Arrays.asList("q1", "q2"), fingerprints(store.load()));
+        }
+    }
+
+    @Test
+    void oversizedStoreDropsOldestRecords() throws IOException {
+        long maxBytes = 4096;
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, maxBytes, 0)) {
+            for (int i = 0; i < 40; i++) {
+                store.put("q" + i, new byte[200]);
+            }
+            assertTrue(Files.size(directory.resolve("analysis-plans.dat")) <= maxBytes);
+        }
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, maxBytes, 0)) {
+            List<String> fingerprints = fingerprints(store.load());
+            assertEquals("q39", fingerprints.get(fingerprints.size() - 1));
+            assertTrue(fingerprints.size() < 40);
+        }
+    }
+
+    @Test
+    void expiredRecordsAreNotLoaded() throws IOException {
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 1)) {
+            store.put("q1", bytes("1"));
+        }
+        sleep(5);
+        try (PersistentPlanStore store = new PersistentPlanStore(directory, MAX_BYTES, 1)) {
+            assertTrue(store.load().isEmpty());
+        }
+    }
+
+    private static List<String> fingerprints(List<StoredAnalysis> records) {
+        String[] fingerprints = new String[records.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = records.get(i).getFingerprint();
+        }
+        return Arrays.asList(fingerprints);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
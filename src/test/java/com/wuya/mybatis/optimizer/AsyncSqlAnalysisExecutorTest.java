@@ -0,0 +1,135 @@
+package com.wuya.mybatis.optimizer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AsyncSqlAnalysisExecutor 的合并与队列满丢弃测试
+ */
+class AsyncSqlAnalysisExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private AsyncSqlAnalysisExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 创建单线程执行器，并用一个阻塞的任务占住分析线程，之后提交的任务都进入队列
+     */
+    private AsyncSqlAnalysisExecutor blocked(int queueSize, AsyncSqlAnalysisExecutor.RejectPolicy policy)
+            throws InterruptedException {
+        executor = new AsyncSqlAnalysisExecutor(1, queueSize, policy);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit("blocker", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return executor;
+    }
+
+    private boolean submit(String key, long cost) {
+        return executor.submit(key, cost, () -> executed.add(key));
+    }
+
+    private List<String> drain(int expected) throws InterruptedException {
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executed.size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return executed;
+    }
+
+    @Test
+    void sameKeyIsMergedWhileQueued() throws InterruptedException {
+        blocked(4, AsyncSqlAnalysisExecutor.RejectPolicy.DISCARD);
+        assertTrue(submit("a", 1));
+        assertFalse(submit("a", 1));
+        assertEquals(1, executor.getDeduplicatedCount());
+        assertEquals(Collections.singletonList("a"), drain(1));
+        // 执行完成后同一键可以再次提交
+        boolean resubmitted = false;
+        for (int i = 0; i < 100 && !(resubmitted = submit("a", 1)); i++) {
+            Thread.sleep(5);
+        }
+        assertTrue(resubmitted);
+    }
+
+    @Test
+    void discardDropsNewTaskWhenFull() throws InterruptedException {
+        blocked(2, AsyncSqlAnalysisExecutor.RejectPolicy.DISCARD);
+        assertTrue(submit("a", 10));
+        assertTrue(submit("b", 20));
+        assertFalse(submit("c", 1000));
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(Arrays.asList("a", "b"), drain(2));
+    }
+
+    @Test
+    void discardCheapestReplacesCheaperTask() throws InterruptedException {
+        blocked(2, AsyncSqlAnalysisExecutor.RejectPolicy.DISCARD_CHEAPEST);
+        assertTrue(submit("a", 10));
+        assertTrue(submit("b", 20));
+        // 比队列中最便宜的任务还便宜，丢弃新任务
+        assertFalse(submit("c", 5));
+        assertEquals(1, executor.getRejectedCount());
+        // 替换最便宜的 a
+        assertTrue(submit("d", 30));
+        assertEquals(2, executor.getRejectedCount());
+        // 被替换的任务释放了合并键
+        assertFalse(submit("a", 10));
+        assertEquals(3, executor.getRejectedCount());
+        assertEquals(0, executor.getDeduplicatedCount());
+
+        // 代价大的任务先执行
+        assertEquals(Arrays.asList("d", "b"), drain(2));
+    }
+
+    @Test
+    void discardCheapestRunsEqualCostInSubmissionOrder() throws InterruptedException {
+        blocked(3, AsyncSqlAnalysisExecutor.RejectPolicy.DISCARD_CHEAPEST);
+        assertTrue(submit("a", 10));
+        assertTrue(submit("b", 10));
+        assertTrue(submit("c", 10));
+        // 代价相同不替换
+        assertFalse(submit("d", 10));
+        assertEquals(Arrays.asList("a", "b", "c"), drain(3));
+    }
+
+    @Test
+    void discardCheapestKeepsMostExpensiveUnderLoad() throws InterruptedException {
+        blocked(8, AsyncSqlAnalysisExecutor.RejectPolicy.DISCARD_CHEAPEST);
+        for (int i = 0; i < 100; i++) {
+            submit("sql-" + i, i);
+        }
+        assertEquals(92, executor.getRejectedCount());
+        List<String> result = drain(8);
+        assertEquals(8, result.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals("sql-" + (99 - i), result.get(i));
+        }
+    }
+}
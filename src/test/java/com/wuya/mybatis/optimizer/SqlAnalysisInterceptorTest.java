@@ -0,0 +1,219 @@
+package com.wuya.mybatis.optimizer;
+
+import com.wuya.mybatis.cache.CacheFactory;
+import com.wuya.mybatis.cache.CacheProperties;
+import com.wuya.mybatis.optimizer.analyzer.DatabaseType;
+import com.wuya.mybatis.optimizer.analyzer.ExplainResultAnalyzer;
+import com.wuya.mybatis.optimizer.helper.SqlFingerprintHelper;
+import com.wuya.mybatis.optimizer.stats.SqlExecutionStatsSnapshot;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * SqlAnalysisInterceptor 分析结果缓存路径和执行统计测试，使用同步分析和 H2 内存数据库
+ */
+class SqlAnalysisInterceptorTest {
+
+    private static final String STATEMENT_ID = "test.selectByIds";
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger analyses = new AtomicInteger();
+    private final List<SqlExplainResult> reported = new ArrayList<>();
+    private SqlAnalysisInterceptor interceptor;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (interceptor != null) {
+            interceptor.destroy();
+        }
+    }
+
+    @Test
+    void cacheHitReportsOwnSqlWithoutConnection() throws Throwable {
+        verifyCacheHit(true);
+    }
+
+    @Test
+    void cacheHitReportsOwnSqlWithoutConnectionUncompacted() throws Throwable {
+        verifyCacheHit(false);
+    }
+
+    private void verifyCacheHit(boolean compactPlans) throws Throwable {
+        Configuration configuration = configuration();
+        interceptor = interceptor(compactPlans);
+
+        String first = "SELECT * FROM users WHERE id IN (?, ?)";
+        String second = "SELECT * FROM users WHERE id IN (?, ?, ?)";
+        interceptor.intercept(query(configuration, first));
+        assertEquals(1, analyses.get());
+        assertEquals(1, connections.get());
+
+        // 同一指纹的另一变体命中缓存，不获取连接也不重新分析
+        interceptor.intercept(query(configuration, second));
+        assertEquals(1, analyses.get());
+        assertEquals(1, connections.get());
+
+        assertEquals(2, reported.size());
+        assertEquals(first, reported.get(0).getSql());
+        // 报告的是本次执行的 SQL，而不是首次分析时的 SQL
+        assertEquals(second, reported.get(1).getSql());
+
+        // 每次报告拿到独立的副本，报告器修改不影响缓存和其他报告
+        assertNotSame(reported.get(0), reported.get(1));
+        assertNotSame(reported.get(0).getExplainResults(), reported.get(1).getExplainResults());
+        assertNotSame(reported.get(0).getExplainResults().get(0), reported.get(1).getExplainResults().get(0));
+        assertNotSame(reported.get(0).getAdviceList(), reported.get(1).getAdviceList());
+        reported.get(1).getExplainResults().get(0).put("type", "changed");
+        reported.get(1).getAdviceList().add("changed");
+
+        interceptor.intercept(query(configuration, first));
+        assertEquals(1, connections.get());
+        assertEquals("ALL", reported.get(2).getExplainResults().get(0).get("type"));
+        assertEquals(Collections.emptyList(), reported.get(2).getAdviceList());
+    }
+
+    @Test
+    void statsUseFingerprintOnlyWhenBoundSqlIsAvailable() throws Throwable {
+        Configuration configuration = configuration();
+        SqlOptimizerProperties properties = new SqlOptimizerProperties();
+        properties.setExplainAll(false);
+        properties.setThresholdMillis(Long.MAX_VALUE);
+        interceptor = new SqlAnalysisInterceptor(properties, Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), new CacheFactory(new CacheProperties()));
+
+        String sql = "SELECT * FROM users WHERE id = ?";
+        interceptor.intercept(query(configuration, sql));
+        Invocation withoutBoundSql = query(configuration, sql);
+        Object[] args = withoutBoundSql.getArgs();
+        interceptor.intercept(new Invocation(withoutBoundSql.getTarget(), Executor.class.getMethod("query",
+                MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class),
+                new Object[]{args[0], args[1], args[2], args[3]}));
+
+        List<SqlExecutionStatsSnapshot> stats = interceptor.getStatsRegistry().snapshot();
+        assertEquals(2, stats.size());
+        stats.sort(Comparator.comparing(s -> String.valueOf(s.getFingerprint())));
+        assertEquals(SqlFingerprintHelper.fingerprint(sql), stats.get(0).getFingerprint());
+        // 4参数的query没有现成的BoundSql，只按语句id统计
+        assertNull(stats.get(1).getFingerprint());
+        assertEquals(STATEMENT_ID, stats.get(1).getStatementId());
+    }
+
+    @Test
+    void statsByStatementIgnoreFingerprint() throws Throwable {
+        Configuration configuration = configuration();
+        SqlOptimizerProperties properties = new SqlOptimizerProperties();
+        properties.setExplainAll(false);
+        properties.setThresholdMillis(Long.MAX_VALUE);
+        properties.setStatsKey(SqlOptimizerProperties.StatsKey.STATEMENT);
+        interceptor = new SqlAnalysisInterceptor(properties, Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), new CacheFactory(new CacheProperties()));
+
+        interceptor.intercept(query(configuration, "SELECT * FROM users WHERE id = ?"));
+        interceptor.intercept(query(configuration, "SELECT * FROM users WHERE name = ?"));
+
+        List<SqlExecutionStatsSnapshot> stats = interceptor.getStatsRegistry().snapshot();
+        assertEquals(1, stats.size());
+        assertNull(stats.get(0).getFingerprint());
+        assertEquals(2, stats.get(0).getCount());
+    }
+
+    private SqlAnalysisInterceptor interceptor(boolean compactPlans) {
+        SqlOptimizerProperties properties = new SqlOptimizerProperties();
+        properties.setAsyncAnalysis(false);
+        properties.setExplainAll(true);
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setCompactPlans(compactPlans);
+        return new SqlAnalysisInterceptor(properties, Collections.singletonList(new StubAnalyzer()),
+                Collections.emptyList(), Collections.singletonList((result, dbType, id) -> reported.add(result)),
+                new CacheFactory(cacheProperties));
+    }
+
+    /**
+     * 使用记录连接获取次数的 H2 数据源
+     */
+    private Configuration configuration() {
+        JdbcDataSource target = new JdbcDataSource();
+        target.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (p, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        connections.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+        return new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource));
+    }
+
+    /**
+     * 构造携带 BoundSql 的 6 参数 query 调用，执行器直接返回空结果
+     */
+    private static Invocation query(Configuration configuration, String sql) throws NoSuchMethodException {
+        MappedStatement mappedStatement = new MappedStatement.Builder(configuration, STATEMENT_ID,
+                new StaticSqlSource(configuration, sql), SqlCommandType.SELECT).build();
+        BoundSql boundSql = new BoundSql(configuration, sql, Collections.emptyList(), null);
+        Executor executor = (Executor) Proxy.newProxyInstance(Executor.class.getClassLoader(),
+                new Class<?>[]{Executor.class}, (p, method, args) -> Collections.emptyList());
+        Method method = Executor.class.getMethod("query", MappedStatement.class, Object.class,
+                RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class);
+        return new Invocation(executor, method, new Object[]{mappedStatement, null, RowBounds.DEFAULT,
+                Executor.NO_RESULT_HANDLER, new CacheKey(), boundSql});
+    }
+
+    /**
+     * 返回固定执行计划的分析器，H2 识别为 UNKNOWN 类型
+     */
+    private final class StubAnalyzer implements ExplainResultAnalyzer {
+        @Override
+        public SqlExplainResult analyze(Connection connection, MappedStatement mappedStatement,
+                                        BoundSql boundSql) {
+            analyses.incrementAndGet();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("table", "users");
+            row.put("type", "ALL");
+            SqlExplainResult result = new SqlExplainResult();
+            result.setSql(boundSql.getSql());
+            result.setExplainResults(Collections.singletonList(row));
+            return result;
+        }
+
+        @Override
+        public DatabaseType getDatabaseType() {
+            return DatabaseType.UNKNOWN;
+        }
+    }
+}
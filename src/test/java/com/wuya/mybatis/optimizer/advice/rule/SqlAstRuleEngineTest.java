@@ -0,0 +1,135 @@
+package com.wuya.mybatis.optimizer.advice.rule;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SqlAstRuleEngine 及内置语法树规则测试
+ */
+class SqlAstRuleEngineTest {
+
+    private static final String SELECT_STAR = "避免使用SELECT *，明确指定需要的列";
+    private static final String LEADING_WILDCARD = "LIKE条件以通配符开头，无法使用索引";
+    private static final String OR_CONDITION = "多个OR条件，考虑使用UNION ALL优化";
+    private static final String DISTINCT = "无条件的DISTINCT查询可能导致性能问题";
+
+    private final SqlAstRuleProvider provider = () -> Arrays.asList(
+            new SelectStarRule(),
+            new LeadingWildcardLikeRule(),
+            new OrConditionRule(),
+            new DistinctWithoutWhereRule(),
+            new FunctionOnColumnRule(Collections.singleton("COALESCE")),
+            new LimitRule());
+
+    private List<String> evaluate(String sql) throws JSQLParserException {
+        SqlAstRuleEngine engine = new SqlAstRuleEngine(Collections.singletonList(provider));
+        Map<SqlAstRuleProvider, List<String>> result = engine.evaluate(CCJSqlParserUtil.parse(sql));
+        return result.getOrDefault(provider, Collections.emptyList());
+    }
+
+    @Test
+    void cleanQueryHasNoAdvice() throws JSQLParserException {
+        assertTrue(evaluate("SELECT id, name FROM users WHERE id = ?").isEmpty());
+    }
+
+    @Test
+    void selectStarIsReported() throws JSQLParserException {
+        assertEquals(Collections.singletonList(SELECT_STAR), evaluate("SELECT * FROM users WHERE id = ?"));
+        assertTrue(evaluate("SELECT u.* FROM users u WHERE u.id = ?").contains(SELECT_STAR));
+    }
+
+    @Test
+    void leadingWildcardLikeIsReported() throws JSQLParserException {
+        assertTrue(evaluate("SELECT id FROM users WHERE name LIKE '%abc'").contains(LEADING_WILDCARD));
+        assertFalse(evaluate("SELECT id FROM users WHERE name LIKE 'abc%'").contains(LEADING_WILDCARD));
+        assertFalse(evaluate("SELECT id FROM users WHERE name NOT LIKE '%abc'").contains(LEADING_WILDCARD));
+    }
+
+    @Test
+    void orIsReportedOnlyInWhere() throws JSQLParserException {
+        assertTrue(evaluate("SELECT id FROM users WHERE a = ? OR b = ?").contains(OR_CONDITION));
+        assertFalse(evaluate("SELECT (a = 1 OR b = 2) AS flag FROM users WHERE id = ?").contains(OR_CONDITION));
+    }
+
+    @Test
+    void distinctWithoutWhereIsReported() throws JSQLParserException {
+        assertTrue(evaluate("SELECT DISTINCT name FROM users").contains(DISTINCT));
+        assertFalse(evaluate("SELECT DISTINCT name FROM users WHERE age > ?").contains(DISTINCT));
+    }
+
+    @Test
+    void functionOnColumnInWhereIsReported() throws JSQLParserException {
+        assertEquals(1, evaluate("SELECT id FROM users WHERE UPPER(name) = ?").size());
+        assertTrue(evaluate("SELECT UPPER(name) FROM users WHERE id = ?").isEmpty());
+        assertTrue(evaluate("SELECT id FROM users WHERE COALESCE(name, '') = ?").isEmpty());
+    }
+
+    @Test
+    void rulesReachSubqueriesUnionsAndCtes() throws JSQLParserException {
+        assertTrue(evaluate("SELECT id FROM users WHERE id IN (SELECT user_id FROM orders WHERE note LIKE '%x')")
+                .contains(LEADING_WILDCARD));
+        assertTrue(evaluate("SELECT id FROM a WHERE id = ? UNION ALL SELECT * FROM b WHERE id = ?")
+                .contains(SELECT_STAR));
+        assertTrue(evaluate("WITH t AS (SELECT * FROM users WHERE id = ?) SELECT id FROM t WHERE id = ?")
+                .contains(SELECT_STAR));
+        assertTrue(evaluate("SELECT x.id FROM (SELECT id FROM users WHERE a = ? OR b = ?) x WHERE x.id = ?")
+                .contains(OR_CONDITION));
+    }
+
+    @Test
+    void dmlWhereIsChecked() throws JSQLParserException {
+        assertTrue(evaluate("UPDATE users SET name = ? WHERE a = ? OR b = ?").contains(OR_CONDITION));
+        assertTrue(evaluate("DELETE FROM users WHERE name LIKE '%x'").contains(LEADING_WILDCARD));
+    }
+
+    @Test
+    void duplicateAdviceIsReportedOnce() throws JSQLParserException {
+        List<String> advice = evaluate("SELECT * FROM a WHERE id = ? UNION ALL SELECT * FROM b WHERE id = ?");
+        assertEquals(1, advice.stream().filter(SELECT_STAR::equals).count());
+    }
+
+    @Test
+    void literalLimitValuesAreChecked() throws JSQLParserException {
+        List<String> advice = evaluate("SELECT id FROM users WHERE id > ? ORDER BY id LIMIT 5000 OFFSET 20000");
+        assertTrue(advice.stream().anyMatch(a -> a.contains("OFFSET 20000")));
+        assertTrue(advice.stream().anyMatch(a -> a.contains("LIMIT 5000")));
+        // MySQL 的 LIMIT offset, count 写法
+        assertTrue(evaluate("SELECT id FROM users WHERE id > ? ORDER BY id LIMIT 20000, 10").stream()
+                .anyMatch(a -> a.contains("OFFSET 20000")));
+    }
+
+    @Test
+    void parameterizedLimitIsSkipped() throws JSQLParserException {
+        assertTrue(evaluate("SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ? OFFSET ?").isEmpty());
+    }
+
+    @Test
+    void limitWithoutOrderByIsReported() throws JSQLParserException {
+        assertTrue(evaluate("SELECT id FROM users WHERE id > ? LIMIT ?").stream()
+                .anyMatch(a -> a.contains("ORDER BY")));
+    }
+
+    @Test
+    void providersReceiveOnlyTheirOwnAdvice() throws JSQLParserException {
+        SqlAstRuleProvider stars = () -> Collections.singletonList(new SelectStarRule());
+        SqlAstRuleProvider likes = () -> Collections.singletonList(new LeadingWildcardLikeRule());
+        SqlAstRuleEngine engine = new SqlAstRuleEngine(Arrays.asList(stars, likes));
+        Map<SqlAstRuleProvider, List<String>> result =
+                engine.evaluate(CCJSqlParserUtil.parse("SELECT * FROM users WHERE id = ?"));
+
+        assertEquals(Collections.singletonList(SELECT_STAR), result.get(stars));
+        assertFalse(result.containsKey(likes));
+        assertTrue(engine.contains(stars));
+        assertFalse(engine.contains(provider));
+    }
+}
@@ -0,0 +1,75 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import com.wuya.mybatis.optimizer.SqlExplainResult;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ExplainResultAnalyzer 旧版接口桥接测试
+ */
+class ExplainResultAnalyzerTest {
+
+    private final Configuration configuration = new Configuration();
+
+    private MappedStatement statement(SqlCommandType type) {
+        return new MappedStatement.Builder(configuration, "test." + type, new StaticSqlSource(configuration, "SELECT 1"),
+                type).build();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void legacyAnalyzerReceivesInvocationArguments() throws Exception {
+        AtomicReference<Invocation> captured = new AtomicReference<>();
+        SqlExplainResult expected = new SqlExplainResult();
+        ExplainResultAnalyzer legacy = new ExplainResultAnalyzer() {
+            @Override
+            public SqlExplainResult analyze(Connection connection, BoundSql boundSql, Invocation invocation) {
+                captured.set(invocation);
+                return expected;
+            }
+
+            @Override
+            public DatabaseType getDatabaseType() {
+                return DatabaseType.MYSQL;
+            }
+        };
+        Object parameter = Collections.singletonMap("id", 1);
+        BoundSql boundSql = new BoundSql(configuration, "SELECT 1", Collections.emptyList(), parameter);
+
+        MappedStatement select = statement(SqlCommandType.SELECT);
+        assertSame(expected, legacy.analyze(null, select, boundSql, null));
+        Object[] args = captured.get().getArgs();
+        assertEquals(6, args.length);
+        assertSame(select, args[0]);
+        assertSame(parameter, args[1]);
+        assertSame(boundSql, args[5]);
+
+        MappedStatement update = statement(SqlCommandType.UPDATE);
+        legacy.analyze(null, update, boundSql);
+        args = captured.get().getArgs();
+        assertEquals(2, args.length);
+        assertSame(update, args[0]);
+        assertSame(parameter, args[1]);
+    }
+
+    @Test
+    void analyzerWithoutEitherMethodFails() {
+        ExplainResultAnalyzer empty = () -> DatabaseType.MYSQL;
+        BoundSql boundSql = new BoundSql(configuration, "SELECT 1", Collections.emptyList(), null);
+        assertThrows(UnsupportedOperationException.class,
+                () -> empty.analyze(null, statement(SqlCommandType.SELECT), boundSql));
+    }
+}
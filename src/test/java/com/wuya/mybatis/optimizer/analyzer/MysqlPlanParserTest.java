@@ -0,0 +1,172 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import com.wuya.mybatis.optimizer.plan.PlanNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * MysqlPlanParser 测试
+ */
+class MysqlPlanParserTest {
+
+    private static final String JSON = "{\"query_block\": {"
+            + " \"select_id\": 1, \"cost_info\": {\"query_cost\": \"12.75\"},"
+            + " \"ordering_operation\": {\"using_filesort\": true, \"using_temporary_table\": true,"
+            + "  \"nested_loop\": ["
+            + "   {\"table\": {\"table_name\": \"o\", \"access_type\": \"ALL\", \"rows_examined_per_scan\": 1000,"
+            + "     \"filtered\": \"10.00\", \"attached_condition\": \"(o.status = 1)\","
+            + "     \"cost_info\": {\"read_cost\": \"1.25\", \"eval_cost\": \"10.00\"}}},"
+            + "   {\"table\": {\"table_name\": \"u\", \"access_type\": \"eq_ref\", \"key\": \"PRIMARY\","
+            + "     \"rows_examined_per_scan\": 1, \"filtered\": \"100.00\", \"using_index\": true,"
+            + "     \"cost_info\": {\"read_cost\": \"0.25\", \"eval_cost\": \"0.10\"}}}"
+            + "  ]},"
+            + " \"select_list_subqueries\": [{\"dependent\": true, \"cacheable\": false, \"query_block\": {"
+            + "   \"cost_info\": {\"query_cost\": \"0.35\"},"
+            + "   \"table\": {\"table_name\": \"i\", \"access_type\": \"ref\", \"key\": \"idx_order\"}}}]"
+            + "}}";
+
+    private static final String TREE = ""
+            + "-> Sort: o.created_at DESC  (cost=4.95 rows=9) (actual time=0.210..0.215 rows=9 loops=1)\n"
+            + "    -> Nested loop inner join  (cost=0.35..4.95 rows=9) (actual time=0.153..0.200 rows=9 loops=1)\n"
+            + "        -> Filter: (o.status = 1)  (cost=1.15 rows=3) (actual time=0.100..0.120 rows=3 loops=1)\n"
+            + "            -> Table scan on o  (cost=1.15 rows=10) (actual time=0.050..0.080 rows=10 loops=1)\n"
+            + "        -> Index lookup on u using idx_user (id=o.user_id)  (cost=0.95 rows=3) "
+            + "(actual time=0.010..0.020 rows=3 loops=3)\n"
+            + "    -> Select #2 (subquery in projection; dependent)\n"
+            + "        -> Covering index lookup on i using idx_order (order_id=o.id)  (cost=0.35 rows=1) (never executed)\n";
+
+    @Test
+    void parsesJsonQueryBlock() throws IOException {
+        PlanNode root = MysqlPlanParser.parseJson(JSON);
+        assertEquals("QUERY", root.getOperation());
+        assertEquals(12.75, root.getTotalCost());
+        assertEquals(2, root.getChildren().size());
+
+        PlanNode order = root.getChildren().get(0);
+        assertEquals("ORDER", order.getOperation());
+        assertEquals("Using temporary; Using filesort", order.getExtra());
+        PlanNode loop = order.getChildren().get(0);
+        assertEquals("NESTED LOOP", loop.getOperation());
+        assertEquals(2, loop.getChildren().size());
+    }
+
+    @Test
+    void parsesJsonTableAccess() throws IOException {
+        PlanNode loop = MysqlPlanParser.parseJson(JSON).getChildren().get(0).getChildren().get(0);
+        PlanNode scan = loop.getChildren().get(0);
+        assertEquals("TABLE", scan.getOperation());
+        assertEquals("o", scan.getRelation());
+        assertEquals("ALL", scan.getAccessType());
+        assertNull(scan.getIndex());
+        assertEquals(1000, scan.getEstimatedRows());
+        assertEquals(10.0, scan.getFiltered());
+        assertEquals(11.25, scan.getTotalCost());
+        assertEquals("Using where", scan.getExtra());
+
+        PlanNode lookup = loop.getChildren().get(1);
+        assertEquals("eq_ref", lookup.getAccessType());
+        assertEquals("PRIMARY", lookup.getIndex());
+        assertEquals("Using index", lookup.getExtra());
+    }
+
+    @Test
+    void parsesJsonDependentSubquery() throws IOException {
+        PlanNode subquery = MysqlPlanParser.parseJson(JSON).getChildren().get(1);
+        assertEquals("DEPENDENT SUBQUERY", subquery.getSelectType());
+        assertEquals(0.35, subquery.getTotalCost());
+        PlanNode table = subquery.getChildren().get(0);
+        assertEquals("i", table.getRelation());
+        assertEquals(PlanNode.UNKNOWN, table.getEstimatedRows());
+        assertEquals(PlanNode.UNKNOWN, table.getTotalCost());
+    }
+
+    @Test
+    void parsesJsonMessageWithoutTables() throws IOException {
+        PlanNode root = MysqlPlanParser.parseJson(
+                "{\"query_block\": {\"select_id\": 1, \"message\": \"Impossible WHERE\"}}");
+        assertEquals("Impossible WHERE", root.getExtra());
+        assertEquals(PlanNode.UNKNOWN, root.getTotalCost());
+        assertEquals(0, root.getChildren().size());
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        assertThrows(IOException.class, () -> MysqlPlanParser.parseJson("{\"query_block\": "));
+    }
+
+    @Test
+    void parsesTreeHierarchy() {
+        PlanNode root = MysqlPlanParser.parseTree(TREE);
+        assertEquals(1, root.getChildren().size());
+        PlanNode sort = root.getChildren().get(0);
+        assertEquals(4.95, root.getTotalCost());
+        assertEquals("Sort", sort.getOperation());
+        assertEquals("Using filesort", sort.getExtra());
+        assertEquals(2, sort.getChildren().size());
+
+        PlanNode join = sort.getChildren().get(0);
+        assertEquals("Nested loop inner join", join.getOperation());
+        assertEquals(0.35, join.getStartupCost());
+        assertEquals(4.95, join.getTotalCost());
+        assertEquals(2, join.getChildren().size());
+
+        PlanNode filter = join.getChildren().get(0);
+        assertEquals("Filter", filter.getOperation());
+        assertEquals("(o.status = 1)", filter.getExtra());
+        assertEquals(1, filter.getChildren().size());
+    }
+
+    @Test
+    void parsesTreeTableAccessAndActuals() {
+        PlanNode join = MysqlPlanParser.parseTree(TREE).getChildren().get(0).getChildren().get(0);
+        PlanNode scan = join.getChildren().get(0).getChildren().get(0);
+        assertEquals("Table scan", scan.getOperation());
+        assertEquals("o", scan.getRelation());
+        assertEquals("ALL", scan.getAccessType());
+        assertEquals(10, scan.getEstimatedRows());
+        assertEquals(10, scan.getActualRows());
+        assertEquals(0.080, scan.getActualTimeMs());
+        assertEquals(1, scan.getLoops());
+
+        PlanNode lookup = join.getChildren().get(1);
+        assertEquals("Index lookup", lookup.getOperation());
+        assertEquals("u", lookup.getRelation());
+        assertEquals("idx_user", lookup.getIndex());
+        assertEquals("ref", lookup.getAccessType());
+        assertEquals(3, lookup.getLoops());
+    }
+
+    @Test
+    void parsesTreeSubqueryNeverExecuted() {
+        PlanNode subquery = MysqlPlanParser.parseTree(TREE).getChildren().get(0).getChildren().get(1);
+        assertEquals("DEPENDENT SUBQUERY", subquery.getSelectType());
+        PlanNode covering = subquery.getChildren().get(0);
+        assertEquals("i", covering.getRelation());
+        assertEquals("Using index", covering.getExtra());
+        assertEquals(0, covering.getActualRows());
+        assertEquals(0, covering.getLoops());
+    }
+
+    @Test
+    void flattensInPreOrder() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        MysqlPlanParser.flatten(MysqlPlanParser.parseTree(TREE), rows);
+        assertEquals(8, rows.size());
+        assertEquals("QUERY", rows.get(0).get("operation"));
+        Map<String, Object> scan = rows.get(4);
+        assertEquals(4, scan.get("depth"));
+        assertEquals("o", scan.get("table"));
+        assertEquals("ALL", scan.get("type"));
+        assertEquals(10L, scan.get("actual_rows"));
+        assertFalse(rows.get(6).containsKey("table"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * OracleExplainResultAnalyzer 的 SQL_ID 计算测试
+ */
+class OracleExplainResultAnalyzerTest {
+
+    @Test
+    void sqlIdMatchesOracle() {
+        // 与 V$SQL.SQL_ID 一致
+        assertEquals("a5ks9fhw2v9s1", OracleExplainResultAnalyzer.sqlId("select * from dual"));
+    }
+
+    @Test
+    void sqlIdIsCaseAndWhitespaceSensitive() {
+        String sqlId = OracleExplainResultAnalyzer.sqlId("select * from dual");
+        assertEquals(13, OracleExplainResultAnalyzer.sqlId("SELECT 1 FROM dual").length());
+        assertNotEquals(sqlId, OracleExplainResultAnalyzer.sqlId("SELECT * FROM dual"));
+        assertNotEquals(sqlId, OracleExplainResultAnalyzer.sqlId("select *  from dual"));
+    }
+}
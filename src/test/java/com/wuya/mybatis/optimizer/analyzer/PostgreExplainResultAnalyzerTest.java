@@ -0,0 +1,122 @@
+package com.wuya.mybatis.optimizer.analyzer;
+
+import com.wuya.mybatis.optimizer.SqlExplainResult;
+import com.wuya.mybatis.optimizer.plan.PlanNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PostgreExplainResultAnalyzer 的 EXPLAIN (FORMAT JSON) 解析测试
+ */
+class PostgreExplainResultAnalyzerTest {
+
+    private static final String ANALYZE_JSON = "[{\"Plan\": {"
+            + "\"Node Type\": \"Hash Join\", \"Join Type\": \"Inner\", \"Startup Cost\": 1.5, \"Total Cost\": 120.25,"
+            + " \"Plan Rows\": 100, \"Plan Width\": 48, \"Actual Rows\": 95, \"Actual Loops\": 1,"
+            + " \"Actual Total Time\": 3.2, \"Inner Unique\": true,"
+            + " \"Shared Hit Blocks\": 40, \"Shared Read Blocks\": 7, \"Temp Read Blocks\": 0, \"Temp Written Blocks\": 0,"
+            + " \"Plans\": ["
+            + "  {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"orders\", \"Alias\": \"o\", \"Total Cost\": 80.0,"
+            + "   \"Plan Rows\": 1000, \"Filter\": \"(status = 1)\", \"Actual Rows\": 900, \"Actual Loops\": 1,"
+            + "   \"Shared Hit Blocks\": 30, \"Output\": [\"o.id\", \"o.user_id\"]},"
+            + "  {\"Node Type\": \"Hash\", \"Total Cost\": 20.0, \"Plan Rows\": 50, \"Hash Batches\": 1, \"Plans\": ["
+            + "    {\"Node Type\": \"Index Scan\", \"Relation Name\": \"users\", \"Index Name\": \"users_pkey\","
+            + "     \"Total Cost\": 18.5, \"Plan Rows\": 50, \"Sort Key\": [\"u.id\", \"u.name\"]}"
+            + "  ]}"
+            + " ]},"
+            + " \"Planning Time\": 0.35, \"Triggers\": [], \"Execution Time\": 4.8,"
+            + " \"JIT\": {\"Functions\": 3, \"Options\": {\"Inlining\": false}}}]";
+
+    private final PostgreExplainResultAnalyzer analyzer = new PostgreExplainResultAnalyzer();
+
+    private SqlExplainResult parse(String json) throws IOException {
+        SqlExplainResult result = new SqlExplainResult();
+        result.setExplainResults(new ArrayList<>());
+        analyzer.parse(result, json);
+        return result;
+    }
+
+    @Test
+    void buildsPlanTree() throws IOException {
+        PlanNode root = parse(ANALYZE_JSON).getPlanRoot();
+        assertEquals("Hash Join", root.getOperation());
+        assertEquals(1.5, root.getStartupCost());
+        assertEquals(120.25, root.getTotalCost());
+        assertEquals(100, root.getEstimatedRows());
+        assertEquals(48, root.getWidth());
+        assertEquals(95, root.getActualRows());
+        assertEquals(1, root.getLoops());
+        assertEquals(3.2, root.getActualTimeMs());
+        assertEquals(Boolean.TRUE, root.getInnerUnique());
+        assertEquals(2, root.getChildren().size());
+
+        PlanNode scan = root.getChildren().get(0);
+        assertEquals("Seq Scan", scan.getOperation());
+        assertEquals("orders", scan.getRelation());
+        assertEquals("(status = 1)", scan.getExtra());
+        assertEquals(900, scan.getRows());
+
+        PlanNode hash = root.getChildren().get(1);
+        assertEquals(1, hash.getHashBatches());
+        PlanNode index = hash.getChildren().get(0);
+        assertEquals("users_pkey", index.getIndex());
+        assertEquals("u.id, u.name", index.getSortKey());
+        assertEquals(PlanNode.UNKNOWN, index.getActualRows());
+        assertTrue(root.contains("Index Scan"));
+    }
+
+    @Test
+    void flattensNodesInPreOrder() throws IOException {
+        SqlExplainResult result = parse(ANALYZE_JSON);
+        assertEquals(4, result.getExplainResults().size());
+        Map<String, Object> scan = result.getExplainResults().get(1);
+        assertEquals(1, scan.get("Depth"));
+        assertEquals("Seq Scan", scan.get("Node Type"));
+        assertEquals("orders", scan.get("Relation Name"));
+        assertEquals(900L, scan.get("Actual Rows"));
+        Map<String, Object> index = result.getExplainResults().get(3);
+        assertEquals(2, index.get("Depth"));
+        assertEquals("users_pkey", index.get("Index Name"));
+        assertFalse(index.containsKey("Actual Rows"));
+    }
+
+    @Test
+    void readsQueryLevelMetrics() throws IOException {
+        SqlExplainResult result = parse(ANALYZE_JSON);
+        assertEquals(0.35, result.getPlanningTime());
+        assertEquals(4, result.getExecutionTime());
+        assertEquals(Boolean.TRUE, result.getJit());
+        // 只取根节点的累计值
+        assertEquals(40L, result.getSharedHitBlocks());
+        assertEquals(7L, result.getSharedReadBlocks());
+        assertEquals(0L, result.getTempReadBlocks());
+        assertEquals(0L, result.getTempWrittenBlocks());
+    }
+
+    @Test
+    void estimatedPlanHasNoActualMetrics() throws IOException {
+        SqlExplainResult result = parse("[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"t\","
+                + " \"Startup Cost\": 0.0, \"Total Cost\": 35.5, \"Plan Rows\": 2550, \"Plan Width\": 4}}]");
+        PlanNode root = result.getPlanRoot();
+        assertEquals(35.5, root.getTotalCost());
+        assertEquals(2550, root.getRows());
+        assertEquals(PlanNode.UNKNOWN, root.getLoops());
+        assertNull(result.getPlanningTime());
+        assertNull(result.getSharedHitBlocks());
+        assertNull(result.getJit());
+    }
+
+    @Test
+    void rejectsNonArrayJson() {
+        assertThrows(IOException.class, () -> parse("{\"Plan\": {}}"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.wuya.mybatis.optimizer.async;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * MpscRingBuffer 测试
+ */
+class MpscRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new MpscRingBuffer<>(0, Object::new).capacity());
+        assertEquals(8, new MpscRingBuffer<>(5, Object::new).capacity());
+        assertEquals(16, new MpscRingBuffer<>(16, Object::new).capacity());
+    }
+
+    @Test
+    void claimFailsWhenFullUntilReleased() {
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(4, () -> new long[1]);
+        for (int i = 0; i < 4; i++) {
+            long pos = buffer.tryClaim();
+            assertEquals(i, pos);
+            buffer.get(pos)[0] = i;
+            buffer.publish(pos);
+        }
+        assertEquals(-1, buffer.tryClaim());
+
+        List<long[]> batch = new ArrayList<>();
+        assertEquals(2, buffer.peek(batch, 2));
+        // 取出后释放前槽位仍被占用
+        assertEquals(-1, buffer.tryClaim());
+        buffer.release(2);
+        assertEquals(4, buffer.tryClaim());
+    }
+
+    @Test
+    void slotsArePreallocatedAndReused() {
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(2, () -> new long[1]);
+        long[] first = buffer.get(buffer.tryClaim());
+        buffer.publish(0);
+        List<long[]> batch = new ArrayList<>();
+        buffer.peek(batch, 10);
+        buffer.release(1);
+        buffer.publish(buffer.tryClaim());
+        // 位置 2 与位置 0 共用同一个预分配元素
+        long pos = buffer.tryClaim();
+        assertEquals(2, pos);
+        assertSame(first, buffer.get(pos));
+    }
+
+    @Test
+    void peekStopsAtUnpublishedSlot() {
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(8, () -> new long[1]);
+        long a = buffer.tryClaim();
+        long b = buffer.tryClaim();
+        long c = buffer.tryClaim();
+        buffer.publish(a);
+        buffer.publish(c);
+
+        List<long[]> batch = new ArrayList<>();
+        assertEquals(1, buffer.peek(batch, 10));
+        buffer.release(1);
+
+        buffer.publish(b);
+        batch.clear();
+        assertEquals(2, buffer.peek(batch, 10));
+    }
+
+    @Test
+    void concurrentProducersDeliverEveryElementOnceInOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(64, () -> new long[2]);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        long pos;
+                        while ((pos = buffer.tryClaim()) < 0) {
+                            Thread.yield();
+                        }
+                        long[] slot = buffer.get(pos);
+                        slot[0] = producer;
+                        slot[1] = i;
+                        buffer.publish(pos);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            long[] next = new long[producers];
+            long received = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            List<long[]> batch = new ArrayList<>();
+            while (received < (long) producers * perProducer && System.nanoTime() < deadline) {
+                batch.clear();
+                int count = buffer.peek(batch, 16);
+                for (long[] slot : batch) {
+                    int producer = (int) slot[0];
+                    // 同一生产者的元素按发布顺序到达
+                    assertEquals(next[producer]++, slot[1]);
+                }
+                buffer.release(count);
+                received += count;
+                if (count == 0) {
+                    Thread.yield();
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals((long) producers * perProducer, received);
+            for (long n : next) {
+                assertEquals(perProducer, n);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.wuya.mybatis.optimizer.connection;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AnalysisConnectionManager 及 AnalysisConnection 测试，使用 H2 内存数据库
+ */
+class AnalysisConnectionManagerTest {
+
+    private CountingDataSource dataSource;
+    private AnalysisConnectionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new CountingDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    private AnalysisConnectionManager manager(int maxConnections, long timeoutMillis, boolean reuse) {
+        manager = new AnalysisConnectionManager(maxConnections, timeoutMillis, reuse, 60_000L, 16);
+        return manager;
+    }
+
+    @Test
+    void exhaustedBudgetReturnsNullWithoutWaiting() throws SQLException {
+        AnalysisConnectionManager manager = manager(1, 0L, false);
+        AnalysisConnection first = manager.acquire(dataSource.proxy);
+        assertNotNull(first);
+        assertNull(manager.acquire(dataSource.proxy));
+        assertEquals(1, manager.getExhaustedCount());
+
+        first.close();
+        AnalysisConnection second = manager.acquire(dataSource.proxy);
+        assertNotNull(second);
+        second.close();
+        assertEquals(2, dataSource.opened.get());
+    }
+
+    @Test
+    void timeoutWaitsBeforeGivingUp() throws SQLException {
+        AnalysisConnectionManager manager = manager(1, 100L, false);
+        try (AnalysisConnection ignored = manager.acquire(dataSource.proxy)) {
+            long start = System.nanoTime();
+            assertNull(manager.acquire(dataSource.proxy));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        }
+    }
+
+    @Test
+    void waitingAcquireGetsReturnedConnection() throws Exception {
+        AnalysisConnectionManager manager = manager(1, -1L, true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AnalysisConnection held = manager.acquire(dataSource.proxy);
+            Future<AnalysisConnection> waiting = executor.submit(() -> manager.acquire(dataSource.proxy));
+            assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+
+            held.close();
+            AnalysisConnection reused = waiting.get(5, TimeUnit.SECONDS);
+            // 预算随连接转给等待的线程，不丢弃分析
+            assertSame(held, reused);
+            reused.close();
+            assertEquals(0, manager.getExhaustedCount());
+            assertEquals(1, dataSource.opened.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void idleConnectionsAreSharedAcrossThreads() throws Exception {
+        int threads = 4;
+        AnalysisConnectionManager manager = manager(2, -1L, true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger concurrent = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int analyzed = 0;
+                    for (int i = 0; i < 50; i++) {
+                        try (AnalysisConnection connection = manager.acquire(dataSource.proxy)) {
+                            peak.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                            try (PreparedStatement ps = connection.getConnection().prepareStatement("SELECT 1");
+                                 ResultSet rs = ps.executeQuery()) {
+                                assertTrue(rs.next());
+                            }
+                            concurrent.decrementAndGet();
+                            analyzed++;
+                        }
+                    }
+                    return analyzed;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                // 分析线程数大于预算时每个线程的分析都完成
+                assertEquals(50, future.get(30, TimeUnit.SECONDS));
+            }
+            assertTrue(peak.get() <= 2);
+            assertTrue(dataSource.opened.get() <= 2);
+            assertEquals(0, manager.getExhaustedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void proxyCloseKeepsPhysicalConnection() throws SQLException {
+        AnalysisConnectionManager manager = manager(1, 0L, true);
+        AnalysisConnection connection = manager.acquire(dataSource.proxy);
+        Connection physical = connection.getConnection().unwrap(Connection.class);
+        connection.getConnection().close();
+        assertFalse(connection.getConnection().isClosed());
+
+        connection.close();
+        assertFalse(physical.isClosed());
+        manager.close();
+        assertTrue(physical.isClosed());
+    }
+
+    @Test
+    void nonReusableConnectionIsClosedOnRelease() throws SQLException {
+        AnalysisConnectionManager manager = manager(1, 0L, false);
+        AnalysisConnection connection = manager.acquire(dataSource.proxy);
+        Connection physical = connection.getConnection().unwrap(Connection.class);
+        connection.close();
+        assertTrue(physical.isClosed());
+    }
+
+    @Test
+    void transactionStateIsResetBeforeReuse() throws SQLException {
+        AnalysisConnectionManager manager = manager(1, 0L, true);
+        AnalysisConnection connection = manager.acquire(dataSource.proxy);
+        connection.getConnection().setAutoCommit(false);
+        connection.close();
+
+        AnalysisConnection reused = manager.acquire(dataSource.proxy);
+        assertSame(connection, reused);
+        assertTrue(reused.getConnection().getAutoCommit());
+        reused.close();
+    }
+
+    @Test
+    void statementsAreCachedOnReusableConnection() throws SQLException {
+        AnalysisConnectionManager manager = manager(1, 0L, true);
+        AnalysisConnection connection = manager.acquire(dataSource.proxy);
+        PreparedStatement first = connection.getConnection().prepareStatement("SELECT ?");
+        PreparedStatement physicalFirst = first.unwrap(PreparedStatement.class);
+        first.close();
+        PreparedStatement second = connection.getConnection().prepareStatement("SELECT ?");
+        assertSame(physicalFirst, second.unwrap(PreparedStatement.class));
+        assertFalse(physicalFirst.isClosed());
+        connection.close();
+    }
+
+    @Test
+    void failedConnectReleasesBudget() {
+        AnalysisConnectionManager manager = manager(1, 0L, false);
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";IFEXISTS=TRUE");
+        assertThrows(SQLException.class, () -> manager.acquire(dataSource.proxy));
+        assertThrows(SQLException.class, () -> manager.acquire(dataSource.proxy));
+        assertEquals(0, manager.getExhaustedCount());
+    }
+
+    /**
+     * 记录打开的物理连接数
+     */
+    private static final class CountingDataSource {
+        private final JdbcDataSource target = new JdbcDataSource();
+        private final AtomicInteger opened = new AtomicInteger();
+        private final DataSource proxy = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (p, method, args) -> {
+                    try {
+                        Object result = method.invoke(target, args);
+                        if ("getConnection".equals(method.getName())) {
+                            opened.incrementAndGet();
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+
+        private void setURL(String url) {
+            target.setURL(url);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.wuya.mybatis.optimizer.helper;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SqlDdlHelper 测试
+ */
+class SqlDdlHelperTest {
+
+    private final Configuration configuration = new Configuration();
+    private final XMLLanguageDriver languageDriver = new XMLLanguageDriver();
+
+    private SqlSource sqlSource(String script) {
+        return languageDriver.createSqlSource(configuration, script, Object.class);
+    }
+
+    @Test
+    void leadingKeywordDecidesDdl() {
+        assertTrue(SqlDdlHelper.isDdl("create index idx_a on t(a)"));
+        assertTrue(SqlDdlHelper.isDdl("  -- 重建索引\n/* hint */ REINDEX TABLE t"));
+        assertFalse(SqlDdlHelper.isDdl("SELECT * FROM t WHERE name = 'DROP TABLE t'"));
+        assertFalse(SqlDdlHelper.isDdl("UPDATE t SET a = 1"));
+        assertFalse(SqlDdlHelper.isDdl("CREATED"));
+        assertFalse(SqlDdlHelper.isDdl("/* 未结束的注释"));
+        assertFalse(SqlDdlHelper.isDdl(null));
+    }
+
+    @Test
+    void createIndexReturnsTable() {
+        assertEquals(Collections.singletonList("orders"),
+                SqlDdlHelper.affectedObjects("CREATE INDEX idx_user ON orders (user_id)"));
+        assertEquals(Collections.singletonList("public.orders"), SqlDdlHelper.affectedObjects(
+                "CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS idx_no ON ONLY public.orders USING btree (no);"));
+        assertEquals(Collections.singletonList("`orders`"),
+                SqlDdlHelper.affectedObjects("CREATE FULLTEXT INDEX idx_note ON `orders`(note)"));
+    }
+
+    @Test
+    void createOtherObjectsAreIgnored() {
+        assertNull(SqlDdlHelper.affectedObjects("CREATE TABLE t (id INT)"));
+        assertNull(SqlDdlHelper.affectedObjects("CREATE VIEW v AS SELECT 1"));
+    }
+
+    @Test
+    void dropIndexReturnsIndexAndTable() {
+        assertEquals(Arrays.asList("idx_user", "orders"),
+                SqlDdlHelper.affectedObjects("DROP INDEX idx_user ON orders"));
+        assertEquals(Arrays.asList("idx_a", "idx_b"),
+                SqlDdlHelper.affectedObjects("DROP INDEX CONCURRENTLY IF EXISTS idx_a, idx_b"));
+    }
+
+    @Test
+    void dropTableReturnsTables() {
+        assertEquals(Arrays.asList("a", "b"), SqlDdlHelper.affectedObjects("DROP TABLE IF EXISTS a, b CASCADE"));
+        assertNull(SqlDdlHelper.affectedObjects("DROP VIEW v"));
+    }
+
+    @Test
+    void alterTableReturnsTable() {
+        assertEquals(Collections.singletonList("orders"),
+                SqlDdlHelper.affectedObjects("ALTER TABLE IF EXISTS ONLY orders ADD COLUMN note TEXT"));
+        assertNull(SqlDdlHelper.affectedObjects("ALTER SEQUENCE s RESTART"));
+    }
+
+    @Test
+    void analyzeAndOptimizeReturnTables() {
+        assertEquals(Arrays.asList("a", "b"),
+                SqlDdlHelper.affectedObjects("ANALYZE NO_WRITE_TO_BINLOG TABLE a, b"));
+        assertEquals(Arrays.asList("orders", "users"),
+                SqlDdlHelper.affectedObjects("ANALYZE VERBOSE orders (user_id, status), users"));
+        assertEquals(Collections.singletonList("t"), SqlDdlHelper.affectedObjects("OPTIMIZE TABLE t"));
+        // 不带表名时涉及所有表
+        assertEquals(Collections.emptyList(), SqlDdlHelper.affectedObjects("ANALYZE;"));
+    }
+
+    @Test
+    void reindexReturnsTargetOrAllTables() {
+        assertEquals(Collections.singletonList("idx_a"),
+                SqlDdlHelper.affectedObjects("REINDEX INDEX CONCURRENTLY idx_a"));
+        assertEquals(Collections.singletonList("orders"), SqlDdlHelper.affectedObjects("REINDEX TABLE orders"));
+        assertEquals(Collections.emptyList(), SqlDdlHelper.affectedObjects("REINDEX DATABASE app"));
+    }
+
+    @Test
+    void nonDdlReturnsNull() {
+        assertNull(SqlDdlHelper.affectedObjects("SELECT id FROM orders"));
+        assertNull(SqlDdlHelper.affectedObjects("INSERT INTO orders VALUES (1)"));
+    }
+
+    @Test
+    void staticMappingsAreCheckedWithoutBoundSql() {
+        assertTrue(SqlDdlHelper.isDdlSource(sqlSource("<script>\n  CREATE INDEX idx_a ON t (a)\n</script>")));
+        assertTrue(SqlDdlHelper.isDdlSource(new StaticSqlSource(configuration, "analyze table t")));
+        assertFalse(SqlDdlHelper.isDdlSource(sqlSource("UPDATE t SET a = #{a} WHERE id = #{id}")));
+    }
+
+    @Test
+    void dynamicMappingsAreCheckedByLeadingText() {
+        assertTrue(SqlDdlHelper.isDdlSource(sqlSource("DROP TABLE ${table}")));
+        assertTrue(SqlDdlHelper.isDdlSource(sqlSource(
+                "<script>\n  ALTER TABLE t <if test='a != null'>ADD COLUMN ${a} INT</if></script>")));
+        assertFalse(SqlDdlHelper.isDdlSource(sqlSource(
+                "<script>UPDATE t <set><if test='a != null'>a = #{a}</if></set> WHERE id = #{id}</script>")));
+        // 以标签开头时无法静态判断
+        assertFalse(SqlDdlHelper.isDdlSource(sqlSource("<script><if test='drop'>DROP TABLE t</if></script>")));
+    }
+
+    @Test
+    void otherSqlSourcesAreNotDdl() {
+        SqlSource provider = parameterObject -> new BoundSql(configuration, "DROP TABLE t", null, parameterObject);
+        assertFalse(SqlDdlHelper.isDdlSource(provider));
+    }
+}
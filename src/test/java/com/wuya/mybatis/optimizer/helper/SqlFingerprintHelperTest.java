@@ -0,0 +1,80 @@
+package com.wuya.mybatis.optimizer.helper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * SqlFingerprintHelper 测试
+ */
+class SqlFingerprintHelperTest {
+
+    @Test
+    void literalsAndPlaceholdersNormalizeToSameFingerprint() {
+        String expected = "SELECT * FROM T WHERE ID = ?";
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("select * from t where id = 1"));
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("SELECT *  FROM t\n WHERE id = ?"));
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("select * from t where id = $1"));
+    }
+
+    @Test
+    void stringAndNumberLiteralsAreReplaced() {
+        assertEquals("SELECT * FROM T WHERE NAME = ? AND X = ? AND Y = ?",
+                SqlFingerprintHelper.fingerprint("select * from t where name = 'O''Reilly' and x = 3.5e10 and y = 0xFF"));
+        assertEquals("SELECT * FROM T WHERE NAME = ?",
+                SqlFingerprintHelper.fingerprint("select * from t where name = 'it\\'s'"));
+    }
+
+    @Test
+    void commentsAreRemoved() {
+        assertEquals("SELECT A FROM T",
+                SqlFingerprintHelper.fingerprint("select /* hint */ a -- trailing\nfrom t"));
+    }
+
+    @Test
+    void quotedIdentifiersKeepTheirCase() {
+        assertEquals("SELECT \"Col\" FROM `tbl`", SqlFingerprintHelper.fingerprint("select \"Col\" from `tbl`"));
+        assertNotEquals(SqlFingerprintHelper.fingerprint("select \"Col\" from t"),
+                SqlFingerprintHelper.fingerprint("select \"col\" from t"));
+    }
+
+    @Test
+    void inListsOfAnyLengthCollapse() {
+        String expected = "SELECT * FROM T WHERE ID IN (?+)";
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("select * from t where id in (?)"));
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("select * from t where id in (1, 2, 3)"));
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("select * from t where id in (?,?,?,?,?)"));
+    }
+
+    @Test
+    void subqueryInIsNotCollapsed() {
+        assertEquals("SELECT * FROM T WHERE ID IN (SELECT ID FROM U)",
+                SqlFingerprintHelper.fingerprint("select * from t where id in (select id from u)"));
+    }
+
+    @Test
+    void identicalValuesRowsCollapse() {
+        String expected = "INSERT INTO T (A, B) VALUES (?, ?)";
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("insert into t (a, b) values (?, ?)"));
+        assertEquals(expected, SqlFingerprintHelper.fingerprint("insert into t (a, b) values (?, ?), (?, ?), (1, 'x')"));
+    }
+
+    @Test
+    void differentValuesRowsAreKept() {
+        assertEquals("INSERT INTO T (A, B) VALUES (?, ?), (?, NOW ())",
+                SqlFingerprintHelper.fingerprint("insert into t (a, b) values (?, ?), (?, now())"));
+    }
+
+    @Test
+    void operatorsAreKeptAsSingleTokens() {
+        assertEquals("SELECT T.A :: TEXT FROM S.T WHERE A || B = ? AND C >= ? AND D <> ?",
+                SqlFingerprintHelper.fingerprint("select t.a::text from s.t where a||b = 'x' and c>=1 and d<>2"));
+    }
+
+    @Test
+    void emptyInputYieldsEmptyFingerprint() {
+        assertEquals("", SqlFingerprintHelper.fingerprint(null));
+        assertEquals("", SqlFingerprintHelper.fingerprint(""));
+    }
+}
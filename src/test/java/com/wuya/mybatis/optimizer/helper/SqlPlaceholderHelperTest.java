@@ -0,0 +1,42 @@
+package com.wuya.mybatis.optimizer.helper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SqlPlaceholderHelper 测试
+ */
+class SqlPlaceholderHelperTest {
+
+    @Test
+    void placeholdersAreNumberedInOrder() {
+        assertEquals("SELECT id FROM t WHERE a = $1 AND b IN ($2, $3)",
+                SqlPlaceholderHelper.toPositional("SELECT id FROM t WHERE a = ? AND b IN (?, ?)", "$"));
+        assertEquals("SELECT id FROM t WHERE a = :1 AND b = :2",
+                SqlPlaceholderHelper.toPositional("SELECT id FROM t WHERE a = ? AND b = ?", ":"));
+    }
+
+    @Test
+    void quotedTextIsKept() {
+        assertEquals("SELECT '?', 'it''s ?', \"col?\" FROM t WHERE a = $1",
+                SqlPlaceholderHelper.toPositional("SELECT '?', 'it''s ?', \"col?\" FROM t WHERE a = ?", "$"));
+    }
+
+    @Test
+    void commentsAreKept() {
+        assertEquals("SELECT id -- a = ?\nFROM t /* b = ? */ WHERE c = $1",
+                SqlPlaceholderHelper.toPositional("SELECT id -- a = ?\nFROM t /* b = ? */ WHERE c = ?", "$"));
+    }
+
+    @Test
+    void jsonOperatorsAreKept() {
+        assertEquals("SELECT id FROM t WHERE tags ?| $1 AND tags ?& $2 AND doc ? 'k'",
+                SqlPlaceholderHelper.toPositional("SELECT id FROM t WHERE tags ?| ? AND tags ?& ? AND doc ?? 'k'", "$"));
+    }
+
+    @Test
+    void unterminatedQuoteDoesNotFail() {
+        assertEquals("SELECT $1, 'abc ?", SqlPlaceholderHelper.toPositional("SELECT ?, 'abc ?", "$"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.wuya.mybatis.optimizer.plan;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PlanCodec 测试
+ */
+class PlanCodecTest {
+
+    private static Map<String, Object> row(String table, Object rows) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1L);
+        row.put("select_type", "SIMPLE");
+        row.put("table", table);
+        row.put("type", "ALL");
+        row.put("key", null);
+        row.put("rows", rows);
+        row.put("filtered", new BigDecimal("10.00"));
+        return row;
+    }
+
+    private static PlanNode tree() {
+        PlanNode root = new PlanNode();
+        root.setOperation("Hash Join");
+        root.setStartupCost(1.5);
+        root.setTotalCost(120.25);
+        root.setEstimatedRows(100);
+        root.setActualRows(95);
+        root.setLoops(1);
+        root.setActualTimeMs(3.2);
+        root.setInnerUnique(Boolean.TRUE);
+        PlanNode scan = new PlanNode();
+        scan.setOperation("Seq Scan");
+        scan.setRelation("orders");
+        scan.setExtra("(status = 1)");
+        scan.setWidth(48);
+        PlanNode index = new PlanNode();
+        index.setOperation("Index Scan");
+        index.setRelation("users");
+        index.setIndex("users_pkey");
+        index.setSortKey("u.id");
+        index.setInnerUnique(Boolean.FALSE);
+        root.addChild(scan);
+        root.addChild(new PlanNode().addChild(index));
+        return root;
+    }
+
+    @Test
+    void rowsRoundTrip() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("long", Long.MAX_VALUE);
+        values.put("int", -1);
+        values.put("double", 0.35);
+        values.put("decimal", new BigDecimal("123.4500"));
+        values.put("boolean", Boolean.TRUE);
+        values.put("string", "Using where; Using filesort");
+        values.put("null", null);
+        List<Map<String, Object>> rows = Arrays.asList(row("orders", 1000L), row("users", 1L), values);
+
+        List<Map<String, Object>> decoded = PlanCodec.decode(PlanCodec.encode(rows, null)).getRows();
+        assertEquals(rows, decoded);
+        // 列顺序保持不变
+        assertEquals(Arrays.asList(values.keySet().toArray()), Arrays.asList(decoded.get(2).keySet().toArray()));
+    }
+
+    @Test
+    void otherTypesAreDecodedAsCompatibleValues() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("short", (short) 7);
+        values.put("float", 1.5f);
+        values.put("other", new StringBuilder("text"));
+        Map<String, Object> decoded = PlanCodec.decode(
+                PlanCodec.encode(Collections.singletonList(values), null)).getRows().get(0);
+        assertEquals(7, decoded.get("short"));
+        assertEquals(1.5, decoded.get("float"));
+        assertEquals("text", decoded.get("other"));
+    }
+
+    @Test
+    void treeRoundTrip() {
+        PlanNode root = PlanCodec.decode(PlanCodec.encode(null, tree())).getRoot();
+        assertEquals("Hash Join", root.getOperation());
+        assertEquals(1.5, root.getStartupCost());
+        assertEquals(120.25, root.getTotalCost());
+        assertEquals(100, root.getEstimatedRows());
+        assertEquals(95, root.getActualRows());
+        assertEquals(1, root.getLoops());
+        assertEquals(3.2, root.getActualTimeMs());
+        assertEquals(Boolean.TRUE, root.getInnerUnique());
+        assertEquals(2, root.getChildren().size());
+
+        PlanNode scan = root.getChildren().get(0);
+        assertEquals("orders", scan.getRelation());
+        assertEquals("(status = 1)", scan.getExtra());
+        assertEquals(48, scan.getWidth());
+        assertEquals(PlanNode.UNKNOWN, scan.getTotalCost());
+        assertEquals(PlanNode.UNKNOWN, scan.getActualRows());
+        assertNull(scan.getIndex());
+        assertNull(scan.getInnerUnique());
+
+        PlanNode index = root.getChildren().get(1).getChildren().get(0);
+        assertEquals("users_pkey", index.getIndex());
+        assertEquals("u.id", index.getSortKey());
+        assertEquals(Boolean.FALSE, index.getInnerUnique());
+    }
+
+    @Test
+    void emptyPlanRoundTrip() {
+        PlanCodec.Decoded decoded = PlanCodec.decode(PlanCodec.encode(null, null));
+        assertTrue(decoded.getRows().isEmpty());
+        assertNull(decoded.getRoot());
+    }
+
+    @Test
+    void repeatedStringsAreWrittenOnce() {
+        List<Map<String, Object>> one = Collections.singletonList(row("orders", 1000L));
+        List<Map<String, Object>> many = Collections.nCopies(20, row("orders", 1000L));
+        int first = PlanCodec.encode(one, null).length;
+        int perRow = (PlanCodec.encode(many, null).length - first) / 19;
+        // 重复行只写字符串下标和数值
+        assertTrue(perRow < first / 2, "每行 " + perRow + " 字节，首行 " + first + " 字节");
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        byte[] bytes = PlanCodec.encode(Collections.singletonList(row("orders", 1L)), tree());
+        bytes[0] = 99;
+        assertThrows(UncheckedIOException.class, () -> PlanCodec.decode(bytes));
+    }
+
+    @Test
+    void truncatedBytesAreRejected() {
+        byte[] bytes = PlanCodec.encode(null, tree());
+        assertThrows(UncheckedIOException.class, () -> PlanCodec.decode(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+}
@@ -0,0 +1,59 @@
+package com.wuya.mybatis.optimizer.sampling;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StatementRateLimiter 测试
+ */
+class StatementRateLimiterTest {
+
+    @Test
+    void firstExecutionIsAlwaysSampled() {
+        StatementRateLimiter limiter = new StatementRateLimiter(1, 1);
+        assertTrue(limiter.tryAcquire("UserMapper.selectById"));
+        assertFalse(limiter.tryAcquire("UserMapper.selectById"));
+    }
+
+    @Test
+    void burstAllowsConsecutivePermits() {
+        StatementRateLimiter limiter = new StatementRateLimiter(1, 3);
+        assertTrue(limiter.tryAcquire("s"));
+        assertTrue(limiter.tryAcquire("s"));
+        assertTrue(limiter.tryAcquire("s"));
+        assertFalse(limiter.tryAcquire("s"));
+    }
+
+    @Test
+    void statementsAreLimitedIndependently() {
+        StatementRateLimiter limiter = new StatementRateLimiter(1, 1);
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b"));
+    }
+
+    @Test
+    void permitsRefillOverTime() throws InterruptedException {
+        // 每 10ms 一个许可
+        StatementRateLimiter limiter = new StatementRateLimiter(6000, 1);
+        assertTrue(limiter.tryAcquire("s"));
+        assertFalse(limiter.tryAcquire("s"));
+        Thread.sleep(30);
+        assertTrue(limiter.tryAcquire("s"));
+    }
+
+    @Test
+    void burstBelowOneIsTreatedAsOne() {
+        StatementRateLimiter limiter = new StatementRateLimiter(1, 0);
+        assertTrue(limiter.tryAcquire("s"));
+        assertFalse(limiter.tryAcquire("s"));
+    }
+
+    @Test
+    void nonPositiveRateIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new StatementRateLimiter(0, 1));
+    }
+}
@@ -0,0 +1,83 @@
+package com.wuya.mybatis.optimizer.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LatencyHistogram 测试
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReturnsZero() {
+        assertEquals(0, new LatencyHistogram().percentile(99));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        for (long nanos = 0; nanos < 8; nanos++) {
+            assertEquals(nanos, LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(nanos)));
+        }
+    }
+
+    @Test
+    void upperBoundIsWithinRelativeError() {
+        for (long nanos = 8; nanos < (1L << 42); nanos = nanos * 3 / 2 + 7) {
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(nanos));
+            assertTrue(upper >= nanos, "upper bound below value: " + nanos);
+            assertTrue(upper - nanos <= nanos / 8, "relative error above 12.5%: " + nanos);
+        }
+    }
+
+    @Test
+    void indexIsMonotonic() {
+        int previous = -1;
+        for (long nanos = 0; nanos < 100_000; nanos++) {
+            int index = LatencyHistogram.indexOf(nanos);
+            assertTrue(index >= previous);
+            previous = index;
+        }
+    }
+
+    @Test
+    void valuesBeyondRangeFallIntoLastBucket() {
+        int last = LatencyHistogram.indexOf(Long.MAX_VALUE);
+        assertEquals(last, LatencyHistogram.indexOf(1L << 50));
+        assertTrue(LatencyHistogram.indexOf((1L << 43) - 1) <= last);
+    }
+
+    @Test
+    void percentilesFollowRecordedDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 90 次 1ms，9 次 10ms，1 次 100ms
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(1), histogram.percentile(50));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(1), histogram.percentile(90));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(10), histogram.percentile(95));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(10), histogram.percentile(99));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(100), histogram.percentile(100));
+    }
+
+    @Test
+    void negativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 8,
+                "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,140 @@
+package com.wuya.mybatis.optimizer.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SqlExecutionStatsRegistry 测试
+ */
+class SqlExecutionStatsRegistryTest {
+
+    @Test
+    void recordsAreAggregatedPerStatement() {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(10);
+        registry.record("UserMapper.selectById", 100);
+        registry.record("UserMapper.selectById", 300);
+        registry.record("OrderMapper.list", 50);
+
+        List<SqlExecutionStatsSnapshot> top = registry.topByTotalTime(10);
+        assertEquals(2, top.size());
+        SqlExecutionStatsSnapshot first = top.get(0);
+        assertEquals("UserMapper.selectById", first.getStatementId());
+        assertEquals(2, first.getCount());
+        assertEquals(400, first.getTotalNanos());
+        assertEquals(300, first.getMaxNanos());
+        assertEquals(200, first.getMeanNanos());
+        assertEquals("OrderMapper.list", top.get(1).getStatementId());
+    }
+
+    @Test
+    void fingerprintsAreTrackedSeparately() {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(10);
+        registry.record("UserMapper.search", "SELECT * FROM users WHERE name = ?", 100);
+        registry.record("UserMapper.search", "SELECT * FROM users WHERE name = ?", 100);
+        registry.record("UserMapper.search", "SELECT * FROM users WHERE age > ?", 500);
+        registry.record("UserMapper.search", 50);
+
+        List<SqlExecutionStatsSnapshot> top = registry.topByTotalTime(10);
+        assertEquals(3, top.size());
+        assertEquals("SELECT * FROM users WHERE age > ?", top.get(0).getFingerprint());
+        assertEquals("SELECT * FROM users WHERE name = ?", top.get(1).getFingerprint());
+        assertEquals(2, top.get(1).getCount());
+        // 没有指纹的执行单独按语句id统计
+        assertNull(top.get(2).getFingerprint());
+        assertEquals("UserMapper.search", top.get(2).getStatementId());
+    }
+
+    @Test
+    void fingerprintEntriesCountTowardsLimit() {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(2);
+        registry.record("a", "f1", 1);
+        registry.record("a", "f2", 1);
+        registry.record("a", "f3", 1);
+
+        assertEquals(2, registry.snapshot().size());
+        assertEquals(1, registry.getDroppedCount());
+    }
+
+    @Test
+    void topByTotalTimeIsLimited() {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(10);
+        for (int i = 1; i <= 5; i++) {
+            registry.record("s" + i, i * 1000L);
+        }
+        List<SqlExecutionStatsSnapshot> top = registry.topByTotalTime(2);
+        assertEquals(2, top.size());
+        assertEquals("s5", top.get(0).getStatementId());
+        assertEquals("s4", top.get(1).getStatementId());
+    }
+
+    @Test
+    void statementsBeyondLimitAreDropped() {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(2);
+        registry.record("a", 1);
+        registry.record("b", 1);
+        registry.record("c", 1);
+        registry.record("c", 1);
+        // 已跟踪的语句不受上限影响
+        registry.record("a", 1);
+
+        assertEquals(2, registry.snapshot().size());
+        assertEquals(2, registry.getDroppedCount());
+    }
+
+    @Test
+    void resetClearsStatisticsAndLimit() {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(1);
+        registry.record("a", 1);
+        registry.record("b", 1);
+        registry.reset();
+
+        assertTrue(registry.snapshot().isEmpty());
+        assertEquals(0, registry.getDroppedCount());
+        registry.record("b", 1);
+        assertEquals(1, registry.snapshot().size());
+    }
+
+    @Test
+    void concurrentRecordsAreNotLost() throws Exception {
+        SqlExecutionStatsRegistry registry = new SqlExecutionStatsRegistry(4);
+        int threads = 8;
+        int perThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        registry.record("s" + (i % 4), 10);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long total = 0;
+        for (SqlExecutionStatsSnapshot snapshot : registry.snapshot()) {
+            total += snapshot.getCount();
+        }
+        assertEquals(4, registry.snapshot().size());
+        assertEquals((long) threads * perThread, total);
+        assertEquals(0, registry.getDroppedCount());
+    }
+}